@@ -0,0 +1,67 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+plugins {
+    id("com.kneelawk.submodule")
+}
+
+submodule {
+    applyFabricLoaderDependency()
+}
+
+dependencies {
+    implementation(project(":xplat", configuration = "namedElements"))
+    // provides the fabric.mod.json so that fabric loader applies codextra's mixins
+    runtimeOnly(project(":fabric", configuration = "namedElements"))
+
+    val jmh_version: String by project
+    implementation("org.openjdk.jmh:jmh-core:$jmh_version")
+    annotationProcessor("org.openjdk.jmh:jmh-generator-annprocess:$jmh_version")
+}
+
+tasks {
+    // Benchmarks are run through fabric loader so that codextra's mixins are applied to FriendlyByteBuf and
+    // RegistryOps. JMH's forked JVMs would not go through fabric loader, so forking is disabled by default.
+    register<JavaExec>("jmh") {
+        group = "benchmark"
+        description = "Runs the Codextra JMH benchmarks."
+
+        dependsOn(named("classes"))
+
+        classpath = sourceSets.main.get().runtimeClasspath
+        mainClass.set("com.kneelawk.codextra.benchmarks.BenchmarkMain")
+        workingDir = layout.buildDirectory.dir("jmh").get().asFile
+
+        val resultFile = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+        val jmhArgs = (project.findProperty("jmhArgs") as String?)?.split(" ")?.filter { it.isNotBlank() }
+            ?: listOf("-f", "0", "-prof", "gc", "-rf", "json", "-rff", resultFile.absolutePath)
+        args(jmhArgs)
+
+        doFirst {
+            workingDir.mkdirs()
+            resultFile.parentFile.mkdirs()
+        }
+    }
+}
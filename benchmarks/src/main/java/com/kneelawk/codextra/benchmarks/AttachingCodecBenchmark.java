@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mojang.datafixers.util.Pair;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+
+import com.kneelawk.codextra.benchmarks.BenchmarkData.Entry;
+
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.ATTACHING_CODEC;
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.CONTEXT;
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.DISPATCH;
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.DISPATCH_CODEC;
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.KEY_ATTACHING_CODEC;
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.MUT_KEY_ATTACHING_CODEC;
+
+/**
+ * Benchmarks the attaching and attachment-dispatching DFU codecs against different kinds of {@link DynamicOps}.
+ * <p>
+ * Each codec is applied to every element of a list, as that is how these codecs are usually used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class AttachingCodecBenchmark {
+    @Param
+    public BenchmarkData.OpsType opsType;
+
+    private List<Entry> entries;
+
+    private DynamicOps<Object> plainOps;
+    private DynamicOps<Object> dispatchOps;
+
+    private Object attachingInput;
+    private Object keyAttachingInput;
+    private Object mutKeyAttachingInput;
+    private Object dispatchInput;
+
+    @Setup
+    public void setup() {
+        entries = BenchmarkData.entries();
+
+        plainOps = (DynamicOps<Object>) opsType.create();
+
+        DynamicOps dispatch = DISPATCH.push(opsType.create(), Map.of("entry", Entry.MAP_CODEC));
+        dispatchOps = CONTEXT.push(dispatch, "context");
+
+        attachingInput = ATTACHING_CODEC.encodeStart(plainOps, entries).getOrThrow();
+        keyAttachingInput = KEY_ATTACHING_CODEC.encodeStart(plainOps, entries).getOrThrow();
+        mutKeyAttachingInput = MUT_KEY_ATTACHING_CODEC.encodeStart(plainOps, entries).getOrThrow();
+        dispatchInput = DISPATCH_CODEC.encodeStart(dispatchOps, entries).getOrThrow();
+    }
+
+    private static DataResult<Pair<List<Entry>, Object>> decode(Codec<List<Entry>> codec, DynamicOps<Object> ops,
+                                                                 Object input) {
+        return codec.decode(ops, input);
+    }
+
+    @Benchmark
+    public Object attachingDecode() {
+        return decode(ATTACHING_CODEC, plainOps, attachingInput);
+    }
+
+    @Benchmark
+    public Object attachingEncode() {
+        return ATTACHING_CODEC.encodeStart(plainOps, entries);
+    }
+
+    @Benchmark
+    public Object keyAttachingDecode() {
+        return decode(KEY_ATTACHING_CODEC, plainOps, keyAttachingInput);
+    }
+
+    @Benchmark
+    public Object keyAttachingEncode() {
+        return KEY_ATTACHING_CODEC.encodeStart(plainOps, entries);
+    }
+
+    @Benchmark
+    public Object mutKeyAttachingDecode() {
+        return decode(MUT_KEY_ATTACHING_CODEC, plainOps, mutKeyAttachingInput);
+    }
+
+    @Benchmark
+    public Object mutKeyAttachingEncode() {
+        return MUT_KEY_ATTACHING_CODEC.encodeStart(plainOps, entries);
+    }
+
+    @Benchmark
+    public Object dispatchDecode() {
+        return decode(DISPATCH_CODEC, dispatchOps, dispatchInput);
+    }
+
+    @Benchmark
+    public Object dispatchEncode() {
+        return DISPATCH_CODEC.encodeStart(dispatchOps, entries);
+    }
+}
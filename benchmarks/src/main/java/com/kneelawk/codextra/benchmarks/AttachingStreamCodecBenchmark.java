@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.Unpooled;
+
+import net.minecraft.network.FriendlyByteBuf;
+
+import com.kneelawk.codextra.benchmarks.BenchmarkData.Entry;
+
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.MUT_READ_ATTACHING_STREAM_CODEC;
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.READ_ATTACHING_STREAM_CODEC;
+
+/**
+ * Benchmarks the read-attaching stream codecs against plain and registry buffers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class AttachingStreamCodecBenchmark {
+    @Param
+    public BenchmarkData.BufType bufType;
+
+    private List<Entry> entries;
+
+    private FriendlyByteBuf readAttachingInput;
+    private FriendlyByteBuf mutReadAttachingInput;
+    private FriendlyByteBuf output;
+
+    @Setup
+    public void setup() {
+        entries = BenchmarkData.entries();
+
+        readAttachingInput = bufType.create(Unpooled.buffer());
+        READ_ATTACHING_STREAM_CODEC.encode(readAttachingInput, entries);
+
+        mutReadAttachingInput = bufType.create(Unpooled.buffer());
+        MUT_READ_ATTACHING_STREAM_CODEC.encode(mutReadAttachingInput, entries);
+
+        output = bufType.create(Unpooled.buffer(readAttachingInput.readableBytes() * 2));
+    }
+
+    @Benchmark
+    public List<Entry> readAttachingDecode() {
+        readAttachingInput.readerIndex(0);
+        return READ_ATTACHING_STREAM_CODEC.decode(readAttachingInput);
+    }
+
+    @Benchmark
+    public FriendlyByteBuf readAttachingEncode() {
+        output.clear();
+        READ_ATTACHING_STREAM_CODEC.encode(output, entries);
+        return output;
+    }
+
+    @Benchmark
+    public List<Entry> mutReadAttachingDecode() {
+        mutReadAttachingInput.readerIndex(0);
+        return MUT_READ_ATTACHING_STREAM_CODEC.decode(mutReadAttachingInput);
+    }
+
+    @Benchmark
+    public FriendlyByteBuf mutReadAttachingEncode() {
+        output.clear();
+        MUT_READ_ATTACHING_STREAM_CODEC.encode(output, entries);
+        return output;
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.impl.attach.AttachmentManagerImpl;
+
+/**
+ * Benchmarks the raw attachment manager operations and attachment lookup through {@link DynamicOps}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+public class AttachmentManagerBenchmark {
+    private static final AttachmentKey<String> PRESENT = AttachmentKey.ofStaticFieldName();
+    private static final AttachmentKey<String> PUSHED = AttachmentKey.ofStaticFieldName();
+    private static final AttachmentKey<String> MISSING = AttachmentKey.ofStaticFieldName();
+
+    @Param
+    public BenchmarkData.OpsType opsType;
+
+    private AttachmentManagerImpl manager;
+    private DynamicOps<?> ops;
+
+    @Setup
+    public void setup() {
+        manager = new AttachmentManagerImpl();
+        manager.push(PRESENT, "present");
+
+        ops = PRESENT.push(opsType.create(), "present");
+    }
+
+    @Benchmark
+    public String pushPop() {
+        manager.push(PUSHED, "pushed");
+        return manager.pop(PUSHED);
+    }
+
+    @Benchmark
+    public String pushPopShadowing() {
+        manager.push(PRESENT, "shadowing");
+        return manager.pop(PRESENT);
+    }
+
+    @Benchmark
+    public String get() {
+        return manager.get(PRESENT);
+    }
+
+    @Benchmark
+    public String getMissing() {
+        return manager.get(MISSING);
+    }
+
+    @Benchmark
+    public DataResult<String> getResult() {
+        return PRESENT.getResult(ops);
+    }
+
+    @Benchmark
+    public String getOrNullOps() {
+        return PRESENT.getOrNull(ops);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.Unpooled;
+
+import com.mojang.serialization.DynamicOps;
+
+import net.minecraft.network.FriendlyByteBuf;
+
+import com.kneelawk.codextra.benchmarks.BenchmarkData.Entry;
+
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.KEY_ATTACHING_CACHED_CODEC;
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.KEY_ATTACHING_SET_CODEC;
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.READ_ATTACHING_CACHED_STREAM_CODEC;
+import static com.kneelawk.codextra.benchmarks.BenchmarkData.READ_ATTACHING_SET_STREAM_CODEC;
+
+/**
+ * Benchmarks key-attaching codecs that build a bundle of attachments for every key against ones that reuse the bundles
+ * from an {@link com.kneelawk.codextra.api.attach.AttachmentsCache}.
+ * <p>
+ * Caches are only worth it for bundles like these. Single attachments are pushed directly by the plain key-attaching
+ * codecs, which {@link AttachingCodecBenchmark} covers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(0)
+@SuppressWarnings("unchecked")
+public class AttachmentsCacheBenchmark {
+    @Param
+    public BenchmarkData.OpsType opsType;
+
+    private List<Entry> entries;
+
+    private DynamicOps<Object> ops;
+    private Object setInput;
+    private Object cachedInput;
+
+    private FriendlyByteBuf setStreamInput;
+    private FriendlyByteBuf cachedStreamInput;
+    private FriendlyByteBuf output;
+
+    @Setup
+    public void setup() {
+        entries = BenchmarkData.entries();
+
+        ops = (DynamicOps<Object>) opsType.create();
+        setInput = KEY_ATTACHING_SET_CODEC.encodeStart(ops, entries).getOrThrow();
+        cachedInput = KEY_ATTACHING_CACHED_CODEC.encodeStart(ops, entries).getOrThrow();
+
+        setStreamInput = new FriendlyByteBuf(Unpooled.buffer());
+        READ_ATTACHING_SET_STREAM_CODEC.encode(setStreamInput, entries);
+
+        cachedStreamInput = new FriendlyByteBuf(Unpooled.buffer());
+        READ_ATTACHING_CACHED_STREAM_CODEC.encode(cachedStreamInput, entries);
+
+        output = new FriendlyByteBuf(Unpooled.buffer(setStreamInput.readableBytes() * 2));
+    }
+
+    @Benchmark
+    public Object keyAttachingSetDecode() {
+        return KEY_ATTACHING_SET_CODEC.decode(ops, setInput);
+    }
+
+    @Benchmark
+    public Object keyAttachingCachedDecode() {
+        return KEY_ATTACHING_CACHED_CODEC.decode(ops, cachedInput);
+    }
+
+    @Benchmark
+    public Object keyAttachingSetEncode() {
+        return KEY_ATTACHING_SET_CODEC.encodeStart(ops, entries);
+    }
+
+    @Benchmark
+    public Object keyAttachingCachedEncode() {
+        return KEY_ATTACHING_CACHED_CODEC.encodeStart(ops, entries);
+    }
+
+    @Benchmark
+    public List<Entry> readAttachingSetDecode() {
+        setStreamInput.readerIndex(0);
+        return READ_ATTACHING_SET_STREAM_CODEC.decode(setStreamInput);
+    }
+
+    @Benchmark
+    public List<Entry> readAttachingCachedDecode() {
+        cachedStreamInput.readerIndex(0);
+        return READ_ATTACHING_CACHED_STREAM_CODEC.decode(cachedStreamInput);
+    }
+
+    @Benchmark
+    public FriendlyByteBuf readAttachingSetEncode() {
+        output.clear();
+        READ_ATTACHING_SET_STREAM_CODEC.encode(output, entries);
+        return output;
+    }
+
+    @Benchmark
+    public FriendlyByteBuf readAttachingCachedEncode() {
+        output.clear();
+        READ_ATTACHING_CACHED_STREAM_CODEC.encode(output, entries);
+        return output;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.netty.buffer.ByteBuf;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.JsonOps;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.resources.RegistryOps;
+import net.minecraft.resources.ResourceLocation;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.AttachmentSet;
+import com.kneelawk.codextra.api.attach.AttachmentsCache;
+import com.kneelawk.codextra.api.attach.stream.ChildBufferFactory;
+import com.kneelawk.codextra.api.util.FunctionUtils;
+
+/**
+ * Shared data and codecs for Codextra benchmarks.
+ */
+public final class BenchmarkData {
+    private BenchmarkData() {}
+
+    public static final int ENTRY_COUNT = 64;
+
+    public static final AttachmentKey<String> CONTEXT = AttachmentKey.ofStaticFieldName();
+    public static final AttachmentKey<Map<String, MapCodec<Entry>>> DISPATCH = AttachmentKey.ofStaticFieldName();
+    public static final AttachmentKey<ResourceLocation> CONTEXT_ID = AttachmentKey.ofStaticFieldName();
+    public static final AttachmentKey<Integer> CONTEXT_LENGTH = AttachmentKey.ofStaticFieldName();
+
+    public record Entry(String name, int value, String context) {
+        public static final MapCodec<Entry> MAP_CODEC = RecordCodecBuilder.mapCodec(instance -> instance.group(
+            Codec.STRING.fieldOf("name").forGetter(Entry::name),
+            Codec.INT.fieldOf("value").forGetter(Entry::value),
+            CONTEXT.retrieve()
+        ).apply(instance, Entry::new));
+        public static final Codec<Entry> CODEC = MAP_CODEC.codec();
+
+        public static final StreamCodec<FriendlyByteBuf, Entry> STREAM_CODEC =
+            StreamCodec.composite(ByteBufCodecs.STRING_UTF8, Entry::name, ByteBufCodecs.VAR_INT, Entry::value,
+                CONTEXT.retrieveStream(), FunctionUtils.nullFunc(), Entry::new);
+    }
+
+    public static final Codec<List<Entry>> ATTACHING_CODEC = CONTEXT.attachingCodec("context", Entry.CODEC).listOf();
+    public static final Codec<List<Entry>> KEY_ATTACHING_CODEC =
+        CONTEXT.keyAttachingCodec(Codec.STRING.fieldOf("context"), Entry.MAP_CODEC, Entry::context).codec().listOf();
+    public static final Codec<List<Entry>> MUT_KEY_ATTACHING_CODEC =
+        CONTEXT.mutKeyAttachingCodec(Codec.STRING.fieldOf("context"), Entry.MAP_CODEC, Entry::context).codec()
+            .listOf();
+    public static final Codec<List<Entry>> DISPATCH_CODEC =
+        DISPATCH.dispatchMapCodec(map -> map.get("entry")).codec().listOf();
+
+    public static final StreamCodec<FriendlyByteBuf, List<Entry>> READ_ATTACHING_STREAM_CODEC =
+        CONTEXT.readAttachingStreamCodec(ByteBufCodecs.STRING_UTF8, Entry.STREAM_CODEC, Entry::context)
+            .apply(ByteBufCodecs.list());
+    public static final StreamCodec<FriendlyByteBuf, List<Entry>> MUT_READ_ATTACHING_STREAM_CODEC =
+        CONTEXT.<FriendlyByteBuf, FriendlyByteBuf, Entry>mutReadAttachingStreamCodec(ByteBufCodecs.STRING_UTF8,
+                ChildBufferFactory.friendly(), Entry.STREAM_CODEC, Entry::context)
+            .apply(ByteBufCodecs.list());
+
+    public static final Codec<List<Entry>> KEY_ATTACHING_SET_CODEC =
+        AttachmentKey.keyAttachingSetCodec(Codec.STRING.fieldOf("context"), BenchmarkData::contextAttachments,
+            Entry.MAP_CODEC, Entry::context).codec().listOf();
+    public static final Codec<List<Entry>> KEY_ATTACHING_CACHED_CODEC =
+        AttachmentKey.keyAttachingCodec(Codec.STRING.fieldOf("context"),
+            AttachmentsCache.of(BenchmarkData::contextAttachments), Entry.MAP_CODEC, Entry::context).codec().listOf();
+    public static final StreamCodec<FriendlyByteBuf, List<Entry>> READ_ATTACHING_SET_STREAM_CODEC =
+        AttachmentKey.<FriendlyByteBuf, String, Entry>readAttachingSetStreamCodec(ByteBufCodecs.STRING_UTF8,
+            BenchmarkData::contextAttachments, Entry.STREAM_CODEC, Entry::context).apply(ByteBufCodecs.list());
+    public static final StreamCodec<FriendlyByteBuf, List<Entry>> READ_ATTACHING_CACHED_STREAM_CODEC =
+        AttachmentKey.<FriendlyByteBuf, String, Entry>readAttachingStreamCodec(ByteBufCodecs.STRING_UTF8,
+            AttachmentsCache.of(BenchmarkData::contextAttachments), Entry.STREAM_CODEC, Entry::context)
+            .apply(ByteBufCodecs.list());
+
+    /**
+     * Creates the bundle of attachments a key-attaching codec attaches for an entry's context.
+     *
+     * @param context the context decoded for an entry.
+     * @return the attachments for that context.
+     */
+    public static AttachmentSet contextAttachments(String context) {
+        return AttachmentSet.builder()
+            .add(CONTEXT, context)
+            .add(CONTEXT_ID, ResourceLocation.withDefaultNamespace(context))
+            .add(CONTEXT_LENGTH, context.length())
+            .build();
+    }
+
+    public static List<Entry> entries() {
+        List<Entry> entries = new ArrayList<>(ENTRY_COUNT);
+        for (int i = 0; i < ENTRY_COUNT; i++) {
+            entries.add(new Entry("entry_" + i, i * 31, "context"));
+        }
+        return entries;
+    }
+
+    /**
+     * The kinds of {@link DynamicOps} benchmarked.
+     */
+    public enum OpsType {
+        JSON {
+            @Override
+            public DynamicOps<?> create() {
+                return JsonOps.INSTANCE;
+            }
+        },
+        NBT {
+            @Override
+            public DynamicOps<?> create() {
+                return NbtOps.INSTANCE;
+            }
+        },
+        REGISTRY {
+            @Override
+            public DynamicOps<?> create() {
+                return RegistryOps.create(JsonOps.INSTANCE, RegistryAccess.EMPTY);
+            }
+        };
+
+        public abstract DynamicOps<?> create();
+    }
+
+    /**
+     * The kinds of buffers benchmarked.
+     */
+    public enum BufType {
+        FRIENDLY {
+            @Override
+            public FriendlyByteBuf create(ByteBuf buf) {
+                return new FriendlyByteBuf(buf);
+            }
+        },
+        REGISTRY {
+            @Override
+            public FriendlyByteBuf create(ByteBuf buf) {
+                return new RegistryFriendlyByteBuf(buf, RegistryAccess.EMPTY);
+            }
+        };
+
+        public abstract FriendlyByteBuf create(ByteBuf buf);
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import net.fabricmc.api.EnvType;
+import net.fabricmc.loader.impl.launch.knot.Knot;
+
+/**
+ * Launches JMH from inside fabric loader's class loader, so that Codextra's mixins are applied to the classes being
+ * benchmarked.
+ * <p>
+ * This is essentially what {@code fabric-loader-junit} does for unit tests. Because of this, benchmarks must be run
+ * without forking ({@code -f 0}), as JMH's forked JVMs would load Minecraft without fabric loader.
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws Throwable {
+        System.setProperty("fabric.development", "true");
+        System.setProperty("fabric.unitTest", "true");
+
+        Knot knot = new Knot(EnvType.SERVER);
+        ClassLoader loader = knot.init(new String[0]);
+        Thread.currentThread().setContextClassLoader(loader);
+
+        Class<?> jmhMain = Class.forName("org.openjdk.jmh.Main", true, loader);
+        MethodHandle main =
+            MethodHandles.publicLookup().findStatic(jmhMain, "main", MethodType.methodType(void.class, String[].class));
+        main.invokeExact(args);
+    }
+}
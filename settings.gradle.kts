@@ -32,3 +32,4 @@ include(":xplat")
 include(":xplat-mojmap")
 include(":fabric", ":fabric:remapCheck")
 include(":neoforge")
+include(":benchmarks")
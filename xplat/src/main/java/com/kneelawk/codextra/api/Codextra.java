@@ -40,6 +40,7 @@ import com.mojang.serialization.MapCodec;
 import com.mojang.serialization.MapLike;
 import com.mojang.serialization.RecordBuilder;
 
+import com.kneelawk.codextra.api.codec.CompiledRecordBuilder;
 import com.kneelawk.codextra.api.codec.ErrorHandlingMapCodec;
 import com.kneelawk.codextra.api.codec.KeyCheckingMapCodec;
 import com.kneelawk.codextra.api.codec.MapKeyDispatchCodec;
@@ -152,6 +153,27 @@ public final class Codextra {
         return new UnitHandlingMapCodec<>(name, codec);
     }
 
+    /**
+     * Creates a builder for a record {@link MapCodec} that has its decoding compiled into a class of its own.
+     * <p>
+     * Example:
+     * <pre>{@code
+     * MapCodec<MyRecord> codec = Codextra.compiledRecord(MyRecord.class)
+     *     .field("name", Codec.STRING)
+     *     .optionalField("count", Codec.INT, 1)
+     *     .retrieve(REGISTRY_ATTACHMENT)
+     *     .build();
+     * }</pre>
+     *
+     * @param recordClass the class of the record to build a codec for.
+     * @param <R>         the record type.
+     * @return the new builder.
+     * @see CompiledRecordBuilder
+     */
+    public static <R extends Record> CompiledRecordBuilder<R> compiledRecord(Class<R> recordClass) {
+        return CompiledRecordBuilder.of(recordClass);
+    }
+
     /**
      * Maps an error using the given function.
      *
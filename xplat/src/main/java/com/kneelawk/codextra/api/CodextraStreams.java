@@ -3,7 +3,37 @@ package com.kneelawk.codextra.api;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+import io.netty.buffer.ByteBuf;
+
+import it.unimi.dsi.fastutil.Hash;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.JavaOps;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.codec.ByteBufCodecs;
 import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.resources.ResourceLocation;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.DeltaBaseline;
+import com.kneelawk.codextra.api.attach.StreamDictionary;
+import com.kneelawk.codextra.api.attach.stream.BackReferenceScopeStreamCodec;
+import com.kneelawk.codextra.api.attach.stream.BackReferenceStreamCodec;
+import com.kneelawk.codextra.api.attach.stream.DeltaStreamCodec;
+import com.kneelawk.codextra.api.attach.stream.DictionaryStreamCodec;
+import com.kneelawk.codextra.api.stream.DeltaCodec;
+import com.kneelawk.codextra.api.stream.FusedStreamCodecBuilder;
+import com.kneelawk.codextra.impl.attach.BackReferenceFrame;
+import com.kneelawk.codextra.impl.attach.ManagerApplierCodec;
+import com.kneelawk.codextra.impl.attach.ManagerGrabberStreamCodec;
+import com.kneelawk.codextra.impl.stream.BinaryCodecStreamCodec;
+import com.kneelawk.codextra.impl.stream.DerivedRecordStreamCodec;
 
 /**
  * Codextra Stream codec utility root class.
@@ -11,6 +41,13 @@ import net.minecraft.network.codec.StreamCodec;
  * For attachments, see {@link com.kneelawk.codextra.api.attach.AttachmentKey}.
  */
 public final class CodextraStreams {
+    private static final StreamCodec<ByteBuf, String> DICTIONARY_STRING = dictionary(ByteBufCodecs.STRING_UTF8);
+    private static final StreamCodec<ByteBuf, ResourceLocation> DICTIONARY_RESOURCE_LOCATION =
+        dictionary(ResourceLocation.STREAM_CODEC);
+
+    // the same quota ByteBufCodecs.fromCodec uses by default
+    private static final Supplier<NbtAccounter> DEFAULT_ACCOUNTER = () -> NbtAccounter.create(0x200000L);
+
     private CodextraStreams() {}
 
     /**
@@ -77,4 +114,351 @@ public final class CodextraStreams {
             }
         };
     }
+
+    /**
+     * Version of {@link ByteBufCodecs#fromCodec(Codec)} that always makes the buffer's attachments available to the
+     * given codec.
+     * <p>
+     * By default, Codextra makes attachments available to every codec passed to {@link ByteBufCodecs#fromCodec(Codec)}.
+     * When the {@code codextra.explicitStreamAttachments} system property is set, that is disabled and only codecs
+     * created through this method see attachments.
+     *
+     * @param codec the codec to encode and decode with.
+     * @param <T>   the value type.
+     * @return the created stream codec.
+     */
+    public static <T> StreamCodec<ByteBuf, T> fromCodec(Codec<T> codec) {
+        return ManagerGrabberStreamCodec.wrap(ByteBufCodecs.fromCodec(ManagerApplierCodec.wrap(codec)));
+    }
+
+    /**
+     * Version of {@link ByteBufCodecs#fromCodec(Codec, Supplier)} that always makes the buffer's attachments available
+     * to the given codec.
+     *
+     * @param codec             the codec to encode and decode with.
+     * @param accounterSupplier supplies the NBT accounter used when decoding.
+     * @param <T>               the value type.
+     * @return the created stream codec.
+     * @see #fromCodec(Codec)
+     */
+    public static <T> StreamCodec<ByteBuf, T> fromCodec(Codec<T> codec, Supplier<NbtAccounter> accounterSupplier) {
+        return ManagerGrabberStreamCodec.wrap(
+            ByteBufCodecs.fromCodec(ManagerApplierCodec.wrap(codec), accounterSupplier));
+    }
+
+    /**
+     * Version of {@link ByteBufCodecs#fromCodecWithRegistries(Codec)} that always makes the buffer's attachments
+     * available to the given codec.
+     *
+     * @param codec the codec to encode and decode with.
+     * @param <T>   the value type.
+     * @return the created stream codec.
+     * @see #fromCodec(Codec)
+     */
+    public static <T> StreamCodec<RegistryFriendlyByteBuf, T> fromCodecWithRegistries(Codec<T> codec) {
+        return ManagerGrabberStreamCodec.wrap(ByteBufCodecs.fromCodecWithRegistries(ManagerApplierCodec.wrap(codec)));
+    }
+
+    /**
+     * Version of {@link ByteBufCodecs#fromCodecWithRegistries(Codec, Supplier)} that always makes the buffer's
+     * attachments available to the given codec.
+     *
+     * @param codec             the codec to encode and decode with.
+     * @param accounterSupplier supplies the NBT accounter used when decoding.
+     * @param <T>               the value type.
+     * @return the created stream codec.
+     * @see #fromCodec(Codec)
+     */
+    public static <T> StreamCodec<RegistryFriendlyByteBuf, T> fromCodecWithRegistries(Codec<T> codec,
+                                                                                     Supplier<NbtAccounter> accounterSupplier) {
+        return ManagerGrabberStreamCodec.wrap(
+            ByteBufCodecs.fromCodecWithRegistries(ManagerApplierCodec.wrap(codec), accounterSupplier));
+    }
+
+    /**
+     * Version of {@link #fromCodec(Codec)} that writes the codec's output in a compact binary form instead of as NBT.
+     * <p>
+     * The codec is run against {@link JavaOps}, so encoding builds a tree of plain Java objects instead of a tree of
+     * NBT tags, which is then written without field types or tag names. Both sides of a connection must use this
+     * codec, as the binary form cannot be read as NBT.
+     * <p>
+     * Decoded values are charged to an {@link NbtAccounter} with the same quota {@link ByteBufCodecs#fromCodec(Codec)}
+     * uses, using the same size estimates as the equivalent NBT tags.
+     *
+     * @param codec the codec to encode and decode with.
+     * @param <T>   the value type.
+     * @return the created stream codec.
+     */
+    public static <T> StreamCodec<ByteBuf, T> fromCodecBinary(Codec<T> codec) {
+        return fromCodecBinary(codec, DEFAULT_ACCOUNTER);
+    }
+
+    /**
+     * Version of {@link #fromCodecBinary(Codec)} with a custom decoding quota.
+     *
+     * @param codec             the codec to encode and decode with.
+     * @param accounterSupplier supplies the NBT accounter decoded values are charged to.
+     * @param <T>               the value type.
+     * @return the created stream codec.
+     * @see #fromCodecBinary(Codec)
+     */
+    public static <T> StreamCodec<ByteBuf, T> fromCodecBinary(Codec<T> codec,
+                                                              Supplier<NbtAccounter> accounterSupplier) {
+        return ManagerGrabberStreamCodec.wrap(
+            new BinaryCodecStreamCodec<ByteBuf, T>(ManagerApplierCodec.wrap(codec), buf -> JavaOps.INSTANCE,
+                accounterSupplier));
+    }
+
+    /**
+     * Version of {@link #fromCodecWithRegistries(Codec)} that writes the codec's output in a compact binary form
+     * instead of as NBT.
+     *
+     * @param codec the codec to encode and decode with.
+     * @param <T>   the value type.
+     * @return the created stream codec.
+     * @see #fromCodecBinary(Codec)
+     */
+    public static <T> StreamCodec<RegistryFriendlyByteBuf, T> fromCodecBinaryWithRegistries(Codec<T> codec) {
+        return fromCodecBinaryWithRegistries(codec, DEFAULT_ACCOUNTER);
+    }
+
+    /**
+     * Version of {@link #fromCodecBinaryWithRegistries(Codec)} with a custom decoding quota.
+     *
+     * @param codec             the codec to encode and decode with.
+     * @param accounterSupplier supplies the NBT accounter decoded values are charged to.
+     * @param <T>               the value type.
+     * @return the created stream codec.
+     * @see #fromCodecBinary(Codec)
+     */
+    public static <T> StreamCodec<RegistryFriendlyByteBuf, T> fromCodecBinaryWithRegistries(Codec<T> codec,
+                                                                                           Supplier<NbtAccounter> accounterSupplier) {
+        return ManagerGrabberStreamCodec.wrap(
+            new BinaryCodecStreamCodec<RegistryFriendlyByteBuf, T>(ManagerApplierCodec.wrap(codec),
+                buf -> buf.registryAccess().createSerializationContext(JavaOps.INSTANCE), accounterSupplier));
+    }
+
+    /**
+     * Derives a positional binary {@link StreamCodec} from a codec built out of a {@link MapCodec}, like the ones
+     * created by {@link RecordCodecBuilder#create(Function)}.
+     * <p>
+     * The fields are taken from the map codec's {@link MapCodec#keys(DynamicOps)}, so each field's value is written in
+     * the same position every time, without its name. Field values are written in the same compact binary form as
+     * {@link #fromCodecBinary(Codec)}. Codecs that are not map codecs, or that report keys that are not strings, are
+     * handled by {@link #fromCodec(Codec)} instead. If a value encodes to fields that were not reported by
+     * {@link MapCodec#keys(DynamicOps)}, like with flattened dispatch codecs, that value is written as NBT.
+     * <p>
+     * Only the top-level field names are left out. A field whose own codec is a record codec is still written with its
+     * fields' names, as the codecs of individual fields can't be recovered from a record codec. If nested records need
+     * to be positional too, build the outer stream codec with {@link StreamCodec#composite} out of stream codecs
+     * derived from each field's codec instead. Decoded values are charged to the same quota as
+     * {@link #fromCodecBinary(Codec)}.
+     * <p>
+     * Both sides of a connection must use this codec, and must agree on the codec's fields.
+     *
+     * @param codec the codec to derive a stream codec from.
+     * @param <T>   the value type.
+     * @return the derived stream codec.
+     */
+    public static <T> StreamCodec<ByteBuf, T> deriveFromCodec(Codec<T> codec) {
+        String[] fieldNames = DerivedRecordStreamCodec.fieldNames(codec);
+        if (fieldNames == null) return fromCodec(codec);
+
+        Codec<T> applier = ManagerApplierCodec.wrap(codec);
+        return ManagerGrabberStreamCodec.wrap(
+            new DerivedRecordStreamCodec<ByteBuf, T>(applier, fieldNames, ByteBufCodecs.fromCodec(applier),
+                buf -> JavaOps.INSTANCE, DEFAULT_ACCOUNTER));
+    }
+
+    /**
+     * Version of {@link #deriveFromCodec(Codec)} that makes registries available to the codec.
+     *
+     * @param codec the codec to derive a stream codec from.
+     * @param <T>   the value type.
+     * @return the derived stream codec.
+     * @see #deriveFromCodec(Codec)
+     */
+    public static <T> StreamCodec<RegistryFriendlyByteBuf, T> deriveFromCodecWithRegistries(Codec<T> codec) {
+        String[] fieldNames = DerivedRecordStreamCodec.fieldNames(codec);
+        if (fieldNames == null) return fromCodecWithRegistries(codec);
+
+        Codec<T> applier = ManagerApplierCodec.wrap(codec);
+        return ManagerGrabberStreamCodec.wrap(
+            new DerivedRecordStreamCodec<RegistryFriendlyByteBuf, T>(applier, fieldNames,
+                ByteBufCodecs.fromCodecWithRegistries(applier),
+                buf -> buf.registryAccess().createSerializationContext(JavaOps.INSTANCE), DEFAULT_ACCOUNTER));
+    }
+
+    /**
+     * Creates a builder for a record {@link StreamCodec} with its decoding and encoding fused into a class of its own.
+     * <p>
+     * Example:
+     * <pre>{@code
+     * StreamCodec<RegistryFriendlyByteBuf, MyPayload> codec =
+     *     CodextraStreams.<RegistryFriendlyByteBuf, MyPayload>fuse(MyPayload.class)
+     *         .varInt()
+     *         .codec(ByteBufCodecs.STRING_UTF8)
+     *         .retrieve(LEVEL_ATTACHMENT)
+     *         .build();
+     * }</pre>
+     *
+     * @param recordClass the class of the record to build a codec for.
+     * @param <B>         the buffer type.
+     * @param <R>         the record type.
+     * @return the new builder.
+     * @see FusedStreamCodecBuilder
+     */
+    public static <B extends ByteBuf, R extends Record> FusedStreamCodecBuilder<B, R> fuse(Class<R> recordClass) {
+        return FusedStreamCodecBuilder.of(recordClass);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that writes values in full the first time they are written and as small ids every
+     * time after that, using the {@link StreamDictionary} attached with {@link StreamDictionary#KEY}.
+     * <p>
+     * This is intended for values that are repeated across many packets on the same connection, like identifiers.
+     * <p>
+     * Every dictionary codec using the same dictionary shares its ids, so an equal value written in full by one of
+     * them is read back as whatever that codec's literal codec decoded. All dictionary codecs sharing a key must use
+     * literal codecs that decode equal values to equal values of compatible types.
+     * <p>
+     * Values must not be null. Encoding null throws a {@link NullPointerException}, and a literal codec decoding null
+     * is treated as malformed input.
+     * <p>
+     * This codec requires the {@link StreamDictionary#KEY} attachment.
+     *
+     * @param literalCodec the codec for writing values in full.
+     * @param <B>          the buffer type.
+     * @param <V>          the value type.
+     * @return the created stream codec.
+     */
+    public static <B extends ByteBuf, V> StreamCodec<B, V> dictionary(StreamCodec<? super B, V> literalCodec) {
+        return dictionary(StreamDictionary.KEY, literalCodec);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that writes values in full the first time they are written and as small ids every
+     * time after that, using the {@link StreamDictionary} attached with the given key.
+     * <p>
+     * All dictionary codecs sharing a key must use literal codecs that decode equal values to equal values of
+     * compatible types, see {@link #dictionary(StreamCodec)}. Values must not be null.
+     * <p>
+     * This codec requires the given attachment.
+     *
+     * @param key          the key of the dictionary attachment.
+     * @param literalCodec the codec for writing values in full.
+     * @param <B>          the buffer type.
+     * @param <V>          the value type.
+     * @return the created stream codec.
+     * @see #dictionary(StreamCodec)
+     */
+    public static <B extends ByteBuf, V> StreamCodec<B, V> dictionary(AttachmentKey<StreamDictionary> key,
+                                                                      StreamCodec<? super B, V> literalCodec) {
+        return new DictionaryStreamCodec<>(key, literalCodec);
+    }
+
+    /**
+     * {@return a stream codec for strings that uses the attached {@link StreamDictionary}.}
+     *
+     * @see #dictionary(StreamCodec)
+     */
+    public static StreamCodec<ByteBuf, String> dictionaryString() {
+        return DICTIONARY_STRING;
+    }
+
+    /**
+     * {@return a stream codec for resource locations that uses the attached {@link StreamDictionary}.}
+     *
+     * @see #dictionary(StreamCodec)
+     */
+    public static StreamCodec<ByteBuf, ResourceLocation> dictionaryResourceLocation() {
+        return DICTIONARY_RESOURCE_LOCATION;
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that writes each value as the changes from the previous value written on the same
+     * connection, using the {@link DeltaBaseline} attached with the given key.
+     * <p>
+     * The first value is written in full. After that, values equal to the previous one only write a single byte, and
+     * other values are written with {@link DeltaCodec#encodeDelta(ByteBuf, Object, Object)}. This is intended for
+     * periodic snapshots of state that only changes a little between each one.
+     * <p>
+     * This codec requires the given attachment.
+     *
+     * @param key   the key of the baseline attachment.
+     * @param codec the codec for writing values and their changes.
+     * @param <B>   the buffer type.
+     * @param <V>   the value type.
+     * @return the created stream codec.
+     */
+    public static <B extends ByteBuf, V> StreamCodec<B, V> delta(AttachmentKey<DeltaBaseline<V>> key,
+                                                                 DeltaCodec<? super B, V> codec) {
+        return new DeltaStreamCodec<>(key, codec);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that gives every back-reference codec used while encoding or decoding a value a
+     * fresh table of the values it has already written or read.
+     * <p>
+     * This should wrap the top-level codec of large values that repeat the same sub-values many times. The sub-values'
+     * codecs should be wrapped with {@link #backReference(StreamCodec)}.
+     *
+     * @param codec the codec for the top-level value.
+     * @param <B>   the buffer type.
+     * @param <V>   the value type.
+     * @return the created stream codec.
+     */
+    public static <B extends FriendlyByteBuf, V> StreamCodec<B, V> backReferenceScope(
+        StreamCodec<? super B, V> codec) {
+        return new BackReferenceScopeStreamCodec<>(codec);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that writes values equal to ones it has already written within the same
+     * {@link #backReferenceScope(StreamCodec)} as references to the first one.
+     * <p>
+     * When decoding, every reference returns the same instance as the first one read, so decoded values must not be
+     * mutated. Outside a back-reference scope, this writes values exactly like the given codec.
+     *
+     * @param codec the codec for writing values the first time they are written.
+     * @param <B>   the buffer type.
+     * @param <V>   the value type.
+     * @return the created stream codec.
+     */
+    public static <B extends ByteBuf, V> StreamCodec<B, V> backReference(StreamCodec<? super B, V> codec) {
+        return backReference(codec, BackReferenceFrame.EQUALITY);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that writes values it has already written within the same
+     * {@link #backReferenceScope(StreamCodec)} as references to the first one, using the given strategy to find
+     * values that have already been written.
+     * <p>
+     * This is useful for values that do not implement {@link Object#equals(Object)}, like item stacks.
+     *
+     * @param codec    the codec for writing values the first time they are written.
+     * @param strategy the strategy for comparing values.
+     * @param <B>      the buffer type.
+     * @param <V>      the value type.
+     * @return the created stream codec.
+     * @see #backReference(StreamCodec)
+     */
+    public static <B extends ByteBuf, V> StreamCodec<B, V> backReference(StreamCodec<? super B, V> codec,
+                                                                         Hash.Strategy<? super V> strategy) {
+        return new BackReferenceStreamCodec<>(codec, strategy);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that writes values it has already written within the same
+     * {@link #backReferenceScope(StreamCodec)} as references to the first one, comparing values by identity.
+     *
+     * @param codec the codec for writing values the first time they are written.
+     * @param <B>   the buffer type.
+     * @param <V>   the value type.
+     * @return the created stream codec.
+     * @see #backReference(StreamCodec)
+     */
+    public static <B extends ByteBuf, V> StreamCodec<B, V> identityBackReference(StreamCodec<? super B, V> codec) {
+        return backReference(codec, BackReferenceFrame.IDENTITY);
+    }
 }
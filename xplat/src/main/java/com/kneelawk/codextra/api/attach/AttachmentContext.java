@@ -0,0 +1,382 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.netty.buffer.ByteBuf;
+
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+
+import com.mojang.serialization.DynamicOps;
+
+import com.kneelawk.codextra.impl.CodextraImpl;
+
+/**
+ * An immutable set of attachment values.
+ * <p>
+ * Unlike an {@link AttachmentManager}, an attachment context is never modified. Adding or removing an attachment
+ * creates a new context instead, leaving the original untouched. This makes contexts free to snapshot and safe to
+ * share between threads.
+ * <p>
+ * Contexts are intended to hold a handful of attachments. They are stored as small arrays sorted by
+ * {@link AttachmentKey#getIndex()}, so lookups are a binary search and modifications copy the arrays.
+ */
+public final class AttachmentContext {
+    private static final AttachmentKey<?>[] NO_KEYS = new AttachmentKey<?>[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    /**
+     * The context with no attachments.
+     */
+    public static final AttachmentContext EMPTY = new AttachmentContext(NO_KEYS, NO_VALUES);
+
+    // sorted by key index
+    private final AttachmentKey<?>[] keys;
+    private final Object[] values;
+
+    // derived values retrieved from this context, as alternating derived keys and values. Each update publishes a
+    // new array, so racing threads at worst compute the same derived value twice.
+    private volatile Object[] derived = NO_VALUES;
+
+    // takes ownership of the arrays, which must already be sorted by key index
+    AttachmentContext(AttachmentKey<?>[] keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * {@return a new builder for attachment contexts.}
+     */
+    public static Builder builder() {
+        return new Builder(4);
+    }
+
+    /**
+     * Creates a new builder for attachment contexts, sized for the given number of attachments.
+     *
+     * @param expectedSize the number of attachments expected to be added.
+     * @return a new builder.
+     */
+    public static Builder builder(int expectedSize) {
+        return new Builder(Math.max(expectedSize, 1));
+    }
+
+    /**
+     * Gets a snapshot of the attachments currently on the given dynamic ops.
+     *
+     * @param ops the dynamic ops to snapshot the attachments of.
+     * @return a context containing the current value of every attachment on the given ops.
+     */
+    public static AttachmentContext snapshot(DynamicOps<?> ops) {
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(ops);
+        if (manager == null) return EMPTY;
+        return manager.snapshot();
+    }
+
+    /**
+     * Gets a snapshot of the attachments currently on the given buffer.
+     *
+     * @param buf the buffer to snapshot the attachments of.
+     * @return a context containing the current value of every attachment on the given buffer.
+     */
+    public static AttachmentContext snapshot(ByteBuf buf) {
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(buf);
+        if (manager == null) return EMPTY;
+        return manager.snapshot();
+    }
+
+    /**
+     * Creates a new view of the given dynamic ops that has exactly this context's attachments.
+     * <p>
+     * The given ops are not modified. The returned ops have their own attachment manager, so pushing to them does not
+     * affect the given ops or any other view.
+     *
+     * @param ops the dynamic ops to create a view of.
+     * @param <T> the type of the dynamic ops.
+     * @return a new view of the given ops with this context's attachments.
+     */
+    public <T> DynamicOps<T> applyTo(DynamicOps<T> ops) {
+        return CodextraImpl.withContext(ops, this);
+    }
+
+    /**
+     * Creates a new context with the given attachment set to the given value.
+     *
+     * @param key   the attachment key.
+     * @param value the value of the attachment.
+     * @param <A>   the type of attachment.
+     * @return a new context with the given attachment set.
+     */
+    public <A> AttachmentContext with(AttachmentKey<A> key, A value) {
+        if (key instanceof DerivedAttachmentKey<?, A>) {
+            throw new UnsupportedOperationException("Derived attachment " + key + " cannot be set");
+        }
+
+        int pos = find(key.getIndex());
+        if (pos >= 0) {
+            if (values[pos] == value) return this;
+
+            Object[] newValues = values.clone();
+            newValues[pos] = value;
+            return new AttachmentContext(keys, newValues);
+        }
+
+        int insert = -(pos + 1);
+        AttachmentKey<?>[] newKeys = new AttachmentKey<?>[keys.length + 1];
+        Object[] newValues = new Object[values.length + 1];
+        System.arraycopy(keys, 0, newKeys, 0, insert);
+        System.arraycopy(values, 0, newValues, 0, insert);
+        newKeys[insert] = key;
+        newValues[insert] = value;
+        System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+        System.arraycopy(values, insert, newValues, insert + 1, values.length - insert);
+        return new AttachmentContext(newKeys, newValues);
+    }
+
+    /**
+     * Creates a new context without the given attachment.
+     *
+     * @param key the attachment key to remove.
+     * @return a new context without the given attachment, or this context if the attachment was not present.
+     */
+    public AttachmentContext without(AttachmentKey<?> key) {
+        int pos = find(key.getIndex());
+        if (pos < 0) return this;
+        if (keys.length == 1) return EMPTY;
+
+        AttachmentKey<?>[] newKeys = new AttachmentKey<?>[keys.length - 1];
+        Object[] newValues = new Object[values.length - 1];
+        System.arraycopy(keys, 0, newKeys, 0, pos);
+        System.arraycopy(values, 0, newValues, 0, pos);
+        System.arraycopy(keys, pos + 1, newKeys, pos, keys.length - pos - 1);
+        System.arraycopy(values, pos + 1, newValues, pos, values.length - pos - 1);
+        return new AttachmentContext(newKeys, newValues);
+    }
+
+    /**
+     * Gets the value of an attachment.
+     *
+     * @param key the attachment key.
+     * @param <A> the type of attachment.
+     * @return the value of the attachment or {@code null} if the attachment is not present.
+     */
+    @SuppressWarnings("unchecked")
+    public <A> @Nullable A get(AttachmentKey<A> key) {
+        if (key instanceof DerivedAttachmentKey<?, A> derived) return getDerived(derived);
+
+        int pos = find(key.getIndex());
+        if (pos < 0) return null;
+        return (A) values[pos];
+    }
+
+    /**
+     * Checks whether an attachment is present.
+     *
+     * @param key the attachment key.
+     * @return {@code true} if the attachment is present in this context.
+     */
+    public boolean contains(AttachmentKey<?> key) {
+        if (key instanceof DerivedAttachmentKey<?, ?> derived) return contains(derived.getSource());
+        return find(key.getIndex()) >= 0;
+    }
+
+    /**
+     * Gets all attachments in this context.
+     *
+     * @return a new set of all attachments in this context.
+     */
+    public Set<AttachmentKey<?>> getAttachments() {
+        return new ReferenceOpenHashSet<>(keys);
+    }
+
+    /**
+     * {@return the number of attachments in this context.}
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * {@return whether this context has no attachments.}
+     */
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * Gets the key at the given position.
+     * <p>
+     * Positions are ordered by {@link AttachmentKey#getIndex()}.
+     *
+     * @param pos the position in this context, between {@code 0} and {@link #size()}.
+     * @return the key at the given position.
+     */
+    public AttachmentKey<?> keyAt(int pos) {
+        return keys[pos];
+    }
+
+    /**
+     * Gets the value at the given position.
+     *
+     * @param pos the position in this context, between {@code 0} and {@link #size()}.
+     * @return the value at the given position.
+     */
+    public Object valueAt(int pos) {
+        return values[pos];
+    }
+
+    @SuppressWarnings("unchecked")
+    private <S, A> @Nullable A getDerived(DerivedAttachmentKey<S, A> key) {
+        Object[] cached = derived;
+        for (int i = 0; i < cached.length; i += 2) {
+            if (cached[i] == key) return (A) cached[i + 1];
+        }
+
+        A value = key.derive(get(key.getSource()));
+
+        // deriving through another derived key may have added to the cache
+        cached = derived;
+        Object[] newCached = Arrays.copyOf(cached, cached.length + 2);
+        newCached[cached.length] = key;
+        newCached[cached.length + 1] = value;
+        derived = newCached;
+
+        return value;
+    }
+
+    private int find(int index) {
+        int low = 0;
+        int high = keys.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midIndex = keys[mid].getIndex();
+            if (midIndex < index) {
+                low = mid + 1;
+            } else if (midIndex > index) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("AttachmentContext[");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(keys[i].getName()).append('=').append(values[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Builds {@link AttachmentContext}s in one go, instead of creating a new context for every added attachment.
+     * <p>
+     * Attachments added in order of {@link AttachmentKey#getIndex()} are simply appended, which is what snapshots do.
+     */
+    public static final class Builder {
+        private AttachmentKey<?>[] keys;
+        private Object[] values;
+        private int size = 0;
+        // set once the arrays have been handed to a built context, so they get copied before being modified again
+        private boolean built = false;
+
+        private Builder(int capacity) {
+            keys = new AttachmentKey<?>[capacity];
+            values = new Object[capacity];
+        }
+
+        /**
+         * Adds an attachment to this builder, replacing the value if the attachment was already added.
+         *
+         * @param key   the attachment key.
+         * @param value the value of the attachment.
+         * @param <A>   the type of attachment.
+         * @return this builder.
+         */
+        public <A> Builder add(AttachmentKey<A> key, A value) {
+            if (key instanceof DerivedAttachmentKey<?, A>) {
+                throw new UnsupportedOperationException("Derived attachment " + key + " cannot be set");
+            }
+
+            int index = key.getIndex();
+            int pos;
+            if (size == 0 || keys[size - 1].getIndex() < index) {
+                pos = size;
+            } else {
+                pos = Arrays.binarySearch(keys, 0, size, key, (a, b) -> Integer.compare(a.getIndex(), b.getIndex()));
+                if (pos >= 0) {
+                    unshare();
+                    values[pos] = value;
+                    return this;
+                }
+                pos = -(pos + 1);
+            }
+
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                built = false;
+            } else {
+                unshare();
+            }
+
+            System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+            System.arraycopy(values, pos, values, pos + 1, size - pos);
+            keys[pos] = key;
+            values[pos] = value;
+            size++;
+            return this;
+        }
+
+        /**
+         * {@return the built attachment context.}
+         */
+        public AttachmentContext build() {
+            if (size == 0) return EMPTY;
+            if (size == keys.length) {
+                // a builder sized exactly right hands its arrays over instead of copying them
+                built = true;
+                return new AttachmentContext(keys, values);
+            }
+            return new AttachmentContext(Arrays.copyOf(keys, size), Arrays.copyOf(values, size));
+        }
+
+        private void unshare() {
+            if (built) {
+                keys = keys.clone();
+                values = values.clone();
+                built = false;
+            }
+        }
+    }
+}
@@ -26,11 +26,10 @@
 package com.kneelawk.codextra.api.attach;
 
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -59,6 +58,7 @@ import com.kneelawk.codextra.api.attach.codec.IfPresentMapCodec;
 import com.kneelawk.codextra.api.attach.codec.KeyAttachingCodec;
 import com.kneelawk.codextra.api.attach.codec.MutKeyAttachingCodec;
 import com.kneelawk.codextra.api.attach.codec.RetrievalMapCodec;
+import com.kneelawk.codextra.api.attach.codec.RetrieveByIdCodec;
 import com.kneelawk.codextra.api.attach.codec.RetrieveWithCodec;
 import com.kneelawk.codextra.api.attach.codec.RetrieveWithMapCodec;
 import com.kneelawk.codextra.api.attach.stream.AttachingStreamCodec;
@@ -69,6 +69,7 @@ import com.kneelawk.codextra.api.attach.stream.IfPresentStreamCodec;
 import com.kneelawk.codextra.api.attach.stream.MutReadAttachingStreamCodec;
 import com.kneelawk.codextra.api.attach.stream.ReadAttachingStreamCodec;
 import com.kneelawk.codextra.api.attach.stream.RetrievalStreamCodec;
+import com.kneelawk.codextra.api.attach.stream.RetrieveByIdStreamCodec;
 import com.kneelawk.codextra.api.attach.stream.RetrieveWithStreamCodec;
 import com.kneelawk.codextra.api.util.FunctionUtils;
 import com.kneelawk.codextra.impl.CodextraImpl;
@@ -87,8 +88,10 @@ import com.kneelawk.codextra.impl.FieldNameHelper;
 @SuppressWarnings("unused")
 public class AttachmentKey<A> {
     private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+    private static final AtomicInteger NEXT_INDEX = new AtomicInteger();
 
     private final String name;
+    private final int index;
 
     /**
      * Creates a new codec attachment key with the name of the field the attachment key is being assigned to.
@@ -133,7 +136,48 @@ public class AttachmentKey<A> {
         return new AttachmentKey<>(name);
     }
 
-    private AttachmentKey(String name) {this.name = name;}
+    /**
+     * Creates a new attachment key whose value is derived from the value of another attachment.
+     * <p>
+     * This is useful for things like inverting a lookup map that is attached, where the inverted map would otherwise
+     * have to be recomputed for every value retrieving it. The derived value is computed once for each source value
+     * and then reused until the source value is no longer used anywhere.
+     * <p>
+     * The deriver must always return equivalent results for the same source value.
+     *
+     * @param name    the name of this attachment. This name is only used in printing error messages.
+     * @param source  the attachment to derive this attachment's value from.
+     * @param deriver the function to derive this attachment's value from the source attachment's value.
+     * @param <S>     the type of the source attachment.
+     * @param <A>     the type this attachment attaches.
+     * @return the created attachment key.
+     */
+    public static <S, A> DerivedAttachmentKey<S, A> derived(String name, AttachmentKey<S> source,
+                                                            Function<? super S, ? extends A> deriver) {
+        return new DerivedAttachmentKey<>(name, source, deriver);
+    }
+
+    /**
+     * Creates a new attachment key whose value is derived from the value of another attachment.
+     * <p>
+     * The created attachment is named after its source attachment.
+     *
+     * @param source  the attachment to derive this attachment's value from.
+     * @param deriver the function to derive this attachment's value from the source attachment's value.
+     * @param <S>     the type of the source attachment.
+     * @param <A>     the type this attachment attaches.
+     * @return the created attachment key.
+     * @see #derived(String, AttachmentKey, Function)
+     */
+    public static <S, A> DerivedAttachmentKey<S, A> derived(AttachmentKey<S> source,
+                                                            Function<? super S, ? extends A> deriver) {
+        return derived("derived(" + source.getName() + ")", source, deriver);
+    }
+
+    AttachmentKey(String name) {
+        this.name = name;
+        this.index = NEXT_INDEX.getAndIncrement();
+    }
 
     /**
      * Gets this attachment's name.
@@ -144,6 +188,19 @@ public class AttachmentKey<A> {
         return name;
     }
 
+    /**
+     * Gets this attachment's index.
+     * <p>
+     * Every attachment key is given a unique, densely packed index when it is created. Attachment managers use this
+     * index to store attachments in arrays instead of hash maps. Because of this, attachment keys should be created
+     * once and stored in static fields instead of being created on the fly.
+     *
+     * @return this attachment's index.
+     */
+    public int getIndex() {
+        return index;
+    }
+
     @Override
     public String toString() {
         return "AttachmentKey[" + name + "]";
@@ -164,6 +221,25 @@ public class AttachmentKey<A> {
         return CodextraImpl.push(ops, this, value);
     }
 
+    /**
+     * Creates a new view of the given {@link DynamicOps} with the given value attached.
+     * <p>
+     * Unlike {@link #push(DynamicOps, Object)}, this never modifies the given ops. The returned view starts with an
+     * immutable snapshot of the given ops' attachments plus this attachment, and has its own attachment manager. This
+     * means a single base ops, like a {@link net.minecraft.resources.RegistryOps}, can be shared between threads
+     * while each user attaches its own values.
+     * <p>
+     * If the given ops are a {@link net.minecraft.resources.RegistryOps}, the returned view is too.
+     *
+     * @param ops   the dynamic ops to create a view of.
+     * @param value the value to attach.
+     * @param <T>   the type of the dynamic ops.
+     * @return a new view of the given ops with the value attached.
+     */
+    public <T> DynamicOps<T> with(DynamicOps<T> ops, A value) {
+        return CodextraImpl.with(ops, this, value);
+    }
+
     /**
      * Attaches a value to the given {@link FriendlyByteBuf}.
      *
@@ -208,6 +284,75 @@ public class AttachmentKey<A> {
         return CodextraImpl.pop(buf, this);
     }
 
+    /**
+     * Pops a value for this attachment from ops returned by {@link #push(DynamicOps, Object)}, indicating that the
+     * returned ops will not be used again.
+     * <p>
+     * If pushing had to wrap the original ops, the wrapper has no attachments left, and the {@code codextra.poolWrappers}
+     * system property is set, the wrapper is kept in a per-thread pool and reused by later pushes to the same original
+     * ops. <b>The attached ops must not be used after calling this, and nothing decoded with them may keep hold of
+     * them.</b>
+     * <p>
+     * Pooling is off by default, in which case this is the same as popping. With it on, a released wrapper is handed to
+     * whoever pushes to the same ops next, so anything decoded through it that kept hold of its ops, like a passthrough
+     * {@link com.mojang.serialization.Dynamic}, would see someone else's attachments.
+     *
+     * @param attached the ops returned by {@link #push(DynamicOps, Object)}.
+     * @param original the ops originally passed to {@link #push(DynamicOps, Object)}.
+     * @param <T>      the type of the dynamic ops.
+     * @return the popped value, or {@code null} if there was none.
+     */
+    public <T> @Nullable A popAndRelease(DynamicOps<T> attached, DynamicOps<T> original) {
+        A value = CodextraImpl.pop(attached, this);
+        CodextraImpl.release(attached, original);
+        return value;
+    }
+
+    /**
+     * Pops a value for this attachment from a buffer returned by {@link #push(ByteBuf, Object)}, indicating that the
+     * returned buffer will not be used again.
+     * <p>
+     * If pushing had to wrap the original buffer, the wrapper has no attachments left, and the
+     * {@code codextra.poolWrappers} system property is set, the wrapper is kept in a per-thread pool and reused by
+     * later pushes to the same original buffer. <b>The attached buffer must not be used after calling this, and nothing
+     * decoded with it may keep hold of it.</b>
+     * <p>
+     * Pooling is off by default, in which case this is the same as popping. With it on, a released wrapper is handed to
+     * whoever pushes to the same buffer next, so anything decoded through it that kept hold of it would see someone
+     * else's attachments.
+     *
+     * @param attached the buffer returned by {@link #push(ByteBuf, Object)}.
+     * @param original the buffer originally passed to {@link #push(ByteBuf, Object)}.
+     * @return the popped value, or {@code null} if there was none.
+     */
+    public @Nullable A popAndRelease(ByteBuf attached, ByteBuf original) {
+        A value = CodextraImpl.pop(attached, this);
+        CodextraImpl.release(attached, original);
+        return value;
+    }
+
+    /**
+     * Checks whether this attachment is present on the given ops.
+     *
+     * @param ops the dynamic ops to check.
+     * @return {@code true} if this attachment currently has a value on the given ops.
+     */
+    public boolean isPresent(DynamicOps<?> ops) {
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(ops);
+        return manager != null && manager.contains(this);
+    }
+
+    /**
+     * Checks whether this attachment is present on the given buffer.
+     *
+     * @param buf the buffer to check.
+     * @return {@code true} if this attachment currently has a value on the given buffer.
+     */
+    public boolean isPresent(ByteBuf buf) {
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(buf);
+        return manager != null && manager.contains(this);
+    }
+
     /**
      * Gets the current value for this attachment on the given ops.
      *
@@ -215,7 +360,7 @@ public class AttachmentKey<A> {
      * @return the current value, or {@code null} if there is none.
      */
     public @Nullable A getOrNull(DynamicOps<?> ops) {
-        AttachmentManager manager = AttachmentManager.getAttachmentManager(ops);
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(ops);
         if (manager == null) return null;
         return manager.get(this);
     }
@@ -227,7 +372,7 @@ public class AttachmentKey<A> {
      * @return the current value, or {@code null} if there is none.
      */
     public @Nullable A getOrNull(ByteBuf buf) {
-        AttachmentManager manager = AttachmentManager.getAttachmentManager(buf);
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(buf);
         if (manager == null) return null;
         return manager.get(this);
     }
@@ -242,21 +387,14 @@ public class AttachmentKey<A> {
      * or {@link DataResult#error(Supplier)} if this attachment is not present.
      */
     public DataResult<A> getResult(DynamicOps<?> ops) {
-        AttachmentManager manager = AttachmentManager.getAttachmentManager(ops);
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(ops);
         if (manager == null) {
             return DataResult.error(
                 () -> "DynamicOps '" + ops + "' does not support attachments. Attachment [" + getName() +
                     "] not present.");
         }
 
-        A value = manager.get(this);
-        if (value == null) {
-            Set<AttachmentKey<?>> presentAttachments = manager.getAttachments();
-            return DataResult.error(() -> "Attachment [" + getName() + "] not present. Attachments present: [" +
-                presentAttachments.stream().map(AttachmentKey::getName).collect(Collectors.joining(", ")) + "]");
-        }
-
-        return DataResult.success(value);
+        return manager.getResult(this);
     }
 
     /**
@@ -269,19 +407,13 @@ public class AttachmentKey<A> {
      * @throws DecoderException if this attachment is not present.
      */
     public @NotNull A getOrThrow(ByteBuf buf) throws DecoderException {
-        AttachmentManager manager = AttachmentManager.getAttachmentManager(buf);
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(buf);
         if (manager == null) {
             throw new DecoderException(
                 "Buffer '" + buf + "' does not support attachments. Attachment [" + getName() + "] not present.");
         }
 
-        A value = manager.get(this);
-        if (value == null) {
-            throw new DecoderException("Attachment [" + getName() + "] not present. Attachments present: [" +
-                manager.getAttachments().stream().map(AttachmentKey::getName).collect(Collectors.joining(", ")) + "]");
-        }
-
-        return value;
+        return manager.getOrThrow(this);
     }
 
     /**
@@ -297,6 +429,19 @@ public class AttachmentKey<A> {
         return new AttachingCodec<>(attachmentMap, toWrap);
     }
 
+    /**
+     * Creates a {@link Codec} that attaches the given values to the codec context when decoding/encoding the
+     * wrapped codec.
+     *
+     * @param attachments the attachments to attach.
+     * @param toWrap      the codec which will receive the attached values.
+     * @param <R>         the type the codec handles.
+     * @return the created codec.
+     */
+    public static <R> Codec<R> attachingCodec(AttachmentSet attachments, Codec<R> toWrap) {
+        return new AttachingCodec<>(attachments, toWrap);
+    }
+
     /**
      * Creates a {@link Codec} that attaches the given value to the codec context when decoding/encoding the
      * wrapped codec.
@@ -323,6 +468,19 @@ public class AttachmentKey<A> {
         return new AttachingMapCodec<>(attachmentMap, toWrap);
     }
 
+    /**
+     * Creates a {@link MapCodec} that attaches the given values to the codec context when decoding/encoding the
+     * wrapped codec.
+     *
+     * @param attachments the attachments to attach.
+     * @param toWrap      the codec which will receive the attached values.
+     * @param <R>         the type the codec handles.
+     * @return the created map codec.
+     */
+    public static <R> MapCodec<R> attachingMapCodec(AttachmentSet attachments, MapCodec<R> toWrap) {
+        return new AttachingMapCodec<>(attachments, toWrap);
+    }
+
     /**
      * Creates a {@link MapCodec} that attaches the given value to the codec context when decoding/encoding the
      * wrapped codec.
@@ -364,6 +522,34 @@ public class AttachmentKey<A> {
         return streamCodec -> attachingStreamCodec(attachmentMap, streamCodec);
     }
 
+    /**
+     * Creates a {@link StreamCodec} that attaches the given values to the codec context when decoding/encoding the
+     * wrapped codec.
+     *
+     * @param attachments the attachments to attach.
+     * @param toWrap      the codec which will receive the attached values.
+     * @param <B>         the buffer type.
+     * @param <V>         the type the codec handles.
+     * @return the created stream codec.
+     */
+    public static <B extends FriendlyByteBuf, V> StreamCodec<B, V> attachingStreamCodec(AttachmentSet attachments,
+                                                                                        StreamCodec<? super B, V> toWrap) {
+        return new AttachingStreamCodec<>(attachments, toWrap);
+    }
+
+    /**
+     * Creates a {@link StreamCodec.CodecOperation} that attaches the given values to the codec context.
+     *
+     * @param attachments the attachments to attach.
+     * @param <B>         the buffer type.
+     * @param <V>         the type the codec handles.
+     * @return the created stream codec.
+     */
+    public static <B extends FriendlyByteBuf, V> StreamCodec.CodecOperation<B, V, V> attachingStreamOp(
+        AttachmentSet attachments) {
+        return streamCodec -> attachingStreamCodec(attachments, streamCodec);
+    }
+
     /**
      * Creates a {@link StreamCodec} that attaches the given value to the codec context when decoding/encoding the
      * wrapped codec.
@@ -458,6 +644,66 @@ public class AttachmentKey<A> {
         return keyAttachingCodecResult(keyCodec, wrappedCodec, attachmentGetter.andThen(DataResult::success));
     }
 
+    /**
+     * Creates a {@link MapCodec} that decodes one value and uses it to create an {@link AttachmentSet} to attach to
+     * the context when decoding the other value.
+     *
+     * @param keyCodec          the codec for the key to be turned into attachments.
+     * @param attachmentsGetter the function to turn the key into attachments.
+     * @param wrappedCodec      the codec to pass the attachments to.
+     * @param keyGetter         the function to get the key back from the result type.
+     * @param <K>               the key type.
+     * @param <R>               the result type.
+     * @return the created map codec.
+     */
+    public static <K, R> MapCodec<R> keyAttachingSetCodecResult(MapCodec<K> keyCodec,
+                                                                Function<? super K, ? extends DataResult<AttachmentSet>> attachmentsGetter,
+                                                                MapCodec<R> wrappedCodec,
+                                                                Function<? super R, ? extends DataResult<? extends K>> keyGetter) {
+        return KeyAttachingCodec.ofSets(keyCodec, attachmentsGetter, wrappedCodec, keyGetter);
+    }
+
+    /**
+     * Creates a {@link MapCodec} that decodes one value and uses it to create an {@link AttachmentSet} to attach to
+     * the context when decoding the other value.
+     *
+     * @param keyCodec          the codec for the key to be turned into attachments.
+     * @param attachmentsGetter the function to turn the key into attachments.
+     * @param wrappedCodec      the codec to pass the attachments to.
+     * @param keyGetter         the function to get the key back from the result type.
+     * @param <K>               the key type.
+     * @param <R>               the result type.
+     * @return the created map codec.
+     */
+    public static <K, R> MapCodec<R> keyAttachingSetCodec(MapCodec<K> keyCodec,
+                                                          Function<? super K, ? extends AttachmentSet> attachmentsGetter,
+                                                          MapCodec<R> wrappedCodec,
+                                                          Function<? super R, ? extends K> keyGetter) {
+        return keyAttachingSetCodecResult(keyCodec, k -> DataResult.success(attachmentsGetter.apply(k)), wrappedCodec,
+            keyGetter.andThen(DataResult::success));
+    }
+
+    /**
+     * Creates a {@link MapCodec} that decodes one value and uses it to look up the attachments to attach to the context
+     * when decoding the other value.
+     * <p>
+     * The attachments for each key are only created once and are then reused from the given cache.
+     *
+     * @param keyCodec         the codec for the key to be turned into attachments.
+     * @param attachmentsCache the cache to turn the key into attachments.
+     * @param wrappedCodec     the codec to pass the attachments to.
+     * @param keyGetter        the function to get the key back from the result type.
+     * @param <K>              the key type.
+     * @param <R>              the result type.
+     * @return the created map codec.
+     */
+    public static <K, R> MapCodec<R> keyAttachingCodec(MapCodec<K> keyCodec, AttachmentsCache<K> attachmentsCache,
+                                                       MapCodec<R> wrappedCodec,
+                                                       Function<? super R, ? extends K> keyGetter) {
+        return keyAttachingSetCodecResult(keyCodec, attachmentsCache::getResult, wrappedCodec,
+            keyGetter.andThen(DataResult::success));
+    }
+
     /**
      * Creates a {@link StreamCodec} that decodes one value and uses it to create attachments to attach to the context
      * when decoding the result type.
@@ -526,6 +772,64 @@ public class AttachmentKey<A> {
         return streamCodec -> readAttachingStreamCodec(attachmentCodec, streamCodec, attachmentGetter);
     }
 
+    /**
+     * Creates a {@link StreamCodec} that decodes one value and uses it to create an {@link AttachmentSet} to attach to
+     * the context when decoding the result type.
+     *
+     * @param keyCodec          the codec for the key to be turned into attachments.
+     * @param attachmentsGetter the function to turn the key into attachments.
+     * @param wrappedCodec      the codec to pass the attachments to.
+     * @param keyGetter         the function to get the key back from the result type.
+     * @param <B>               the buffer type.
+     * @param <K>               the key type.
+     * @param <V>               the result type.
+     * @return the created stream codec.
+     */
+    public static <B extends FriendlyByteBuf, K, V> StreamCodec<B, V> readAttachingSetStreamCodec(
+        StreamCodec<? super B, K> keyCodec, Function<? super K, ? extends AttachmentSet> attachmentsGetter,
+        StreamCodec<? super B, V> wrappedCodec, Function<? super V, ? extends K> keyGetter) {
+        return ReadAttachingStreamCodec.ofSets(keyCodec, attachmentsGetter, wrappedCodec, keyGetter);
+    }
+
+    /**
+     * Creates a {@link StreamCodec.CodecOperation} that decodes one value and uses it to create an
+     * {@link AttachmentSet} to attach to the context when decoding the result value.
+     *
+     * @param keyCodec          the codec for the key to be turned into attachments.
+     * @param attachmentsGetter the function to turn the key into attachments.
+     * @param keyGetter         the function to get the key back from the result type.
+     * @param <B>               the buffer type.
+     * @param <K>               the key type.
+     * @param <V>               the result type.
+     * @return the created stream codec.
+     */
+    public static <B extends FriendlyByteBuf, K, V> StreamCodec.CodecOperation<B, V, V> readAttachingSetStreamOp(
+        StreamCodec<? super B, K> keyCodec, Function<? super K, ? extends AttachmentSet> attachmentsGetter,
+        Function<? super V, ? extends K> keyGetter) {
+        return streamCodec -> readAttachingSetStreamCodec(keyCodec, attachmentsGetter, streamCodec, keyGetter);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that decodes one value and uses it to look up the attachments to attach to the
+     * context when decoding the result type.
+     * <p>
+     * The attachments for each key are only created once and are then reused from the given cache.
+     *
+     * @param keyCodec         the codec for the key to be turned into attachments.
+     * @param attachmentsCache the cache to turn the key into attachments.
+     * @param wrappedCodec     the codec to pass the attachments to.
+     * @param keyGetter        the function to get the key back from the result type.
+     * @param <B>              the buffer type.
+     * @param <K>              the key type.
+     * @param <V>              the result type.
+     * @return the created stream codec.
+     */
+    public static <B extends FriendlyByteBuf, K, V> StreamCodec<B, V> readAttachingStreamCodec(
+        StreamCodec<? super B, K> keyCodec, AttachmentsCache<K> attachmentsCache, StreamCodec<? super B, V> wrappedCodec,
+        Function<? super V, ? extends K> keyGetter) {
+        return readAttachingSetStreamCodec(keyCodec, attachmentsCache, wrappedCodec, keyGetter);
+    }
+
     /**
      * Creates a {@link MapCodec} that decodes one value and uses it to create the attachments to attach to the context
      * when decoding the other value, but that also allows the mutation of the attachment while encoding, making sure
@@ -597,6 +901,47 @@ public class AttachmentKey<A> {
         return mutKeyAttachingCodecResult(keyCodec, wrappedCodec, attachmentGetter.andThen(DataResult::success));
     }
 
+    /**
+     * Creates a {@link MapCodec} that decodes one value and uses it to create an {@link AttachmentSet} to attach to
+     * the context when decoding the other value, but that also allows the mutation of the attachment while encoding,
+     * making sure those changes show up in the decoded key.
+     *
+     * @param keyCodec          the codec for the key to be turned into attachments.
+     * @param attachmentsGetter the function to turn the key into attachments.
+     * @param wrappedCodec      the codec to pass the attachments to.
+     * @param keyGetter         the function to get the key back from the result type.
+     * @param <K>               the key type.
+     * @param <R>               the result type.
+     * @return the created map codec.
+     */
+    public static <K, R> MapCodec<R> mutKeyAttachingSetCodecResult(MapCodec<K> keyCodec,
+                                                                   Function<? super K, ? extends DataResult<AttachmentSet>> attachmentsGetter,
+                                                                   MapCodec<R> wrappedCodec,
+                                                                   Function<? super R, ? extends DataResult<? extends K>> keyGetter) {
+        return MutKeyAttachingCodec.ofSets(keyCodec, attachmentsGetter, wrappedCodec, keyGetter);
+    }
+
+    /**
+     * Creates a {@link MapCodec} that decodes one value and uses it to create an {@link AttachmentSet} to attach to
+     * the context when decoding the other value, but that also allows the mutation of the attachment while encoding,
+     * making sure those changes show up in the decoded key.
+     *
+     * @param keyCodec          the codec for the key to be turned into attachments.
+     * @param attachmentsGetter the function to turn the key into attachments.
+     * @param wrappedCodec      the codec to pass the attachments to.
+     * @param keyGetter         the function to get the key back from the result type.
+     * @param <K>               the key type.
+     * @param <R>               the result type.
+     * @return the created map codec.
+     */
+    public static <K, R> MapCodec<R> mutKeyAttachingSetCodec(MapCodec<K> keyCodec,
+                                                             Function<? super K, ? extends AttachmentSet> attachmentsGetter,
+                                                             MapCodec<R> wrappedCodec,
+                                                             Function<? super R, ? extends K> keyGetter) {
+        return mutKeyAttachingSetCodecResult(keyCodec, k -> DataResult.success(attachmentsGetter.apply(k)),
+            wrappedCodec, keyGetter.andThen(DataResult::success));
+    }
+
     /**
      * Create a {@link StreamCodec} that decodes one value and uses it to create attachments to attach to the context
      * when decoding the result value, but that also allows the mutation of the attachment while encoding, making sure
@@ -604,8 +949,8 @@ public class AttachmentKey<A> {
      *
      * @param keyCodec          the codec for the key to be turned into attachments.
      * @param attachmentsGetter the function to turn the key into attachments.
-     * @param wrappedBufferCtor for creating the buffer used by the wrapped codec, as writing wrapped codec values to
-     *                          the main buffer must be delayed.
+     * @param wrappedBufferCtor for creating the buffer used by the wrapped codec. Factories that are able to wrap
+     *                          buffers let the wrapped value be encoded and decoded in place.
      * @param wrappedCodec      the codec to pass the attachments to.
      * @param keyGetter         the function to get the key back from the resul type. This may simply create a new key
      *                          if the key is intended to get all its value from being mutated while encoding.
@@ -631,8 +976,8 @@ public class AttachmentKey<A> {
      * This is good for things like palettes.
      *
      * @param attachmentCodec   the attachment's codec.
-     * @param wrappedBufferCtor for creating the buffer used by the wrapped codec, as writing wrapped codec values to
-     *                          the main buffer must be delayed.
+     * @param wrappedBufferCtor for creating the buffer used by the wrapped codec. Factories that are able to wrap
+     *                          buffers let the wrapped value be encoded and decoded in place.
      * @param wrappedCodec      the codec that will be invoked with the attachment attached.
      * @param attachmentGetter  a function for getting the attachment when given the result type. This may simply create
      *                          a new attachment if the attachment is intended to get all its value from being mutated
@@ -649,6 +994,32 @@ public class AttachmentKey<A> {
             attachmentGetter);
     }
 
+    /**
+     * Create a {@link StreamCodec} that decodes one value and uses it to create an {@link AttachmentSet} to attach to
+     * the context when decoding the result value, but that also allows the mutation of the attachment while encoding,
+     * making sure those changes shows up in the decoded key.
+     *
+     * @param keyCodec          the codec for the key to be turned into attachments.
+     * @param attachmentsGetter the function to turn the key into attachments.
+     * @param wrappedBufferCtor for creating the buffer used by the wrapped codec. Factories that are able to wrap
+     *                          buffers let the wrapped value be encoded and decoded in place.
+     * @param wrappedCodec      the codec to pass the attachments to.
+     * @param keyGetter         the function to get the key back from the resul type. This may simply create a new key
+     *                          if the key is intended to get all its value from being mutated while encoding.
+     * @param <B1>              the buffer type of the returned stream codec.
+     * @param <B2>              the buffer type of the wrapped stream codec.
+     * @param <K>               the key type.
+     * @param <V>               the result type.
+     * @return the created stream codec.
+     */
+    public static <B1 extends FriendlyByteBuf, B2 extends FriendlyByteBuf, K, V> StreamCodec<B1, V> mutReadAttachingSetStreamCodec(
+        StreamCodec<? super B1, K> keyCodec, Function<? super K, ? extends AttachmentSet> attachmentsGetter,
+        ChildBufferFactory<? super B1, B2> wrappedBufferCtor, StreamCodec<? super B2, V> wrappedCodec,
+        Function<? super V, ? extends K> keyGetter) {
+        return MutReadAttachingStreamCodec.ofSets(keyCodec, attachmentsGetter, wrappedBufferCtor, wrappedCodec,
+            keyGetter);
+    }
+
     /**
      * Creates a {@link RecordCodecBuilder} that acts as a field, but that only returns the retrieved value.
      * <p>
@@ -815,6 +1186,49 @@ public class AttachmentKey<A> {
         return new RetrieveWithStreamCodec<>(this, withCodec, retriever, reverse);
     }
 
+    /**
+     * Creates a {@link Codec} that encodes values as their ids in the retrieved {@link IdTable}.
+     * <p>
+     * When attachment(s) are used in a codec, the required attachment(s) should be clearly noted in the codec's javadoc.
+     *
+     * @param key the key of the id table attachment.
+     * @param <V> the value type.
+     * @return the created codec.
+     */
+    public static <V> Codec<V> retrieveByIdCodec(AttachmentKey<IdTable<V>> key) {
+        return new RetrieveByIdCodec<>(key);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that encodes values as their var-int ids in the retrieved {@link IdTable}.
+     * <p>
+     * When attachment(s) are used in a codec, the required attachment(s) should be clearly noted in the codec's javadoc.
+     *
+     * @param key the key of the id table attachment.
+     * @param <B> the buffer type.
+     * @param <V> the value type.
+     * @return the created stream codec.
+     */
+    public static <B extends ByteBuf, V> StreamCodec<B, V> retrieveByIdStreamCodec(AttachmentKey<IdTable<V>> key) {
+        return new RetrieveByIdStreamCodec<>(key, true);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that encodes values as their ids in the retrieved {@link IdTable}, always using four
+     * bytes per id.
+     * <p>
+     * This is faster than {@link #retrieveByIdStreamCodec(AttachmentKey)} when ids are usually large.
+     *
+     * @param key the key of the id table attachment.
+     * @param <B> the buffer type.
+     * @param <V> the value type.
+     * @return the created stream codec.
+     */
+    public static <B extends ByteBuf, V> StreamCodec<B, V> retrieveByFixedIdStreamCodec(
+        AttachmentKey<IdTable<V>> key) {
+        return new RetrieveByIdStreamCodec<>(key, false);
+    }
+
     /**
      * Creates a {@link Codec} that delegates to one codec if an attachment is present and another if the attachment
      * is absent.
@@ -996,4 +1410,110 @@ public class AttachmentKey<A> {
         StreamCodec<? super B, V> ifAbsent) {
         return new IfPresentDispatchStreamCodec<>(this, dispatcher, ifAbsent);
     }
+
+    /**
+     * Creates a {@link Codec} that dispatches based on the retrieved attachment, remembering the codec for each
+     * attachment value.
+     * <p>
+     * The dispatcher is only called once for each attachment value, and not on every decode and encode. Values are
+     * compared by identity, so pushing a different attachment value calls the dispatcher again. This means the
+     * dispatcher must always return equivalent codecs for the same attachment value.
+     * <p>
+     * When attachment(s) are used in a codec, the required attachment(s) should be clearly noted in the codec's javadoc.
+     *
+     * @param dispatcher the function for retrieving the correct codec based on the retrieved attachment.
+     * @param <R>        the codec type.
+     * @return the created codec.
+     * @see FunctionUtils#memoizeIdentity(Function)
+     */
+    public <R> Codec<R> dispatchCodecCached(Function<? super A, ? extends Codec<? extends R>> dispatcher) {
+        return dispatchCodecResult(FunctionUtils.<A, DataResult<? extends Codec<? extends R>>>memoizeIdentity(
+            a -> DataResult.success(dispatcher.apply(a))));
+    }
+
+    /**
+     * Creates a {@link MapCodec} that dispatches based on the retrieved attachment, remembering the map codec for each
+     * attachment value.
+     * <p>
+     * When attachment(s) are used in a codec, the required attachment(s) should be clearly noted in the codec's javadoc.
+     *
+     * @param dispatcher the function for retrieving the correct codec based on the retrieved attachment.
+     * @param <R>        the map codec type.
+     * @return the created map codec.
+     * @see #dispatchCodecCached(Function)
+     */
+    public <R> MapCodec<R> dispatchMapCodecCached(Function<? super A, ? extends MapCodec<? extends R>> dispatcher) {
+        return dispatchMapCodecResult(FunctionUtils.<A, DataResult<? extends MapCodec<? extends R>>>memoizeIdentity(
+            a -> DataResult.success(dispatcher.apply(a))));
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that dispatches based on the retrieved attachment, remembering the stream codec for
+     * each attachment value.
+     * <p>
+     * When attachment(s) are used in a codec, the required attachment(s) should be clearly noted in the codec's javadoc.
+     *
+     * @param dispatcher the function for retrieving the correct codec based on the retrieved attachment.
+     * @param <B>        the buffer type.
+     * @param <R>        the result type.
+     * @return the created stream codec.
+     * @see #dispatchCodecCached(Function)
+     */
+    public <B extends ByteBuf, R> StreamCodec<B, R> dispatchStreamCodecCached(
+        Function<? super A, ? extends StreamCodec<? super B, ? extends R>> dispatcher) {
+        return dispatchStreamCodec(
+            FunctionUtils.<A, StreamCodec<? super B, ? extends R>>memoizeIdentity(dispatcher));
+    }
+
+    /**
+     * Creates a {@link Codec} that retrieves an attachment if present and uses it to determine which codec to use
+     * or uses another codec if the attachment is absent, remembering the codec for each attachment value.
+     *
+     * @param dispatcher the function to get the codec based on the retrieved attachment.
+     * @param ifAbsent   the codec used if the attachment is not present.
+     * @param <R>        the result type.
+     * @return the created codec.
+     * @see #dispatchCodecCached(Function)
+     */
+    public <R> Codec<R> dispatchIfPresentCodecCached(Function<? super A, ? extends Codec<? extends R>> dispatcher,
+                                                     Codec<R> ifAbsent) {
+        return dispatchIfPresentCodecResult(
+            FunctionUtils.<A, DataResult<? extends Codec<? extends R>>>memoizeIdentity(
+                a -> DataResult.success(dispatcher.apply(a))), ifAbsent);
+    }
+
+    /**
+     * Creates a {@link MapCodec} that retrieves an attachment if present and uses it to determine which codec to use
+     * or uses another codec if the attachment is absent, remembering the map codec for each attachment value.
+     *
+     * @param dispatcher the function to get the codec based on the retrieved attachment.
+     * @param ifAbsent   the codec used if the attachment is not present.
+     * @param <R>        the result type.
+     * @return the created map codec.
+     * @see #dispatchCodecCached(Function)
+     */
+    public <R> MapCodec<R> dispatchIfPresentMapCodecCached(
+        Function<? super A, ? extends MapCodec<? extends R>> dispatcher, MapCodec<R> ifAbsent) {
+        return dispatchIfPresentMapCodecResult(
+            FunctionUtils.<A, DataResult<? extends MapCodec<? extends R>>>memoizeIdentity(
+                a -> DataResult.success(dispatcher.apply(a))), ifAbsent);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that retrieves an attachment if present and uses it to determine which codec to use
+     * or uses another codec if the attachment is absent, remembering the stream codec for each attachment value.
+     *
+     * @param dispatcher the function to get the codec based on the retrieved attachment.
+     * @param ifAbsent   the codec used if the attachment is not present.
+     * @param <B>        the buffer type.
+     * @param <V>        the result type.
+     * @return the created stream codec.
+     * @see #dispatchCodecCached(Function)
+     */
+    public <B extends ByteBuf, V> StreamCodec<B, V> dispatchIfPresentStreamCodecCached(
+        Function<? super A, ? extends StreamCodec<? super B, ? extends V>> dispatcher,
+        StreamCodec<? super B, V> ifAbsent) {
+        return dispatchIfPresentStreamCodec(
+            FunctionUtils.<A, StreamCodec<? super B, ? extends V>>memoizeIdentity(dispatcher), ifAbsent);
+    }
 }
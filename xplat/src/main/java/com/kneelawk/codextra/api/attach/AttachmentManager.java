@@ -1,11 +1,18 @@
 package com.kneelawk.codextra.api.attach;
 
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
 
+import com.mojang.serialization.DataResult;
 import com.mojang.serialization.DynamicOps;
 
 import net.minecraft.network.FriendlyByteBuf;
@@ -22,23 +29,63 @@ import com.kneelawk.codextra.impl.CodextraImpl;
 public interface AttachmentManager {
     /**
      * Gets the attachment manager for the given dynamic ops.
+     * <p>
+     * Dynamic ops only allocate their attachment manager once something is first pushed to them, so calling this
+     * allocates the attachment manager if it does not exist yet. Use {@link AttachmentKey#getOrNull(DynamicOps)} for
+     * simply reading attachments.
      *
      * @param ops the dynamic ops to get the attachment manager for.
      * @return the attachment manager for the given dynamic ops or
      * {@code null} if the given dynamic ops does not support attachments.
      */
     static @Nullable AttachmentManager getAttachmentManager(DynamicOps<?> ops) {
-        return CodextraImpl.getAttachmentManager(ops);
+        return CodextraImpl.getOrCreateAttachmentManager(ops);
     }
 
     /**
      * Gets the attachment manager for the given buffer.
+     * <p>
+     * Buffers only allocate their attachment manager once something is first pushed to them, so calling this
+     * allocates the attachment manager if it does not exist yet. Use {@link AttachmentKey#getOrNull(ByteBuf)} for
+     * simply reading attachments.
      *
      * @param buf the buffer to get the attachment manager for.
      * @return the attachment manager for the given buffer or
      * {@code null} if the given buffer does not support attachments.
      */
     static @Nullable AttachmentManager getAttachmentManager(ByteBuf buf) {
+        return CodextraImpl.getOrCreateAttachmentManager(buf);
+    }
+
+    /**
+     * Resolves the attachment manager for the given dynamic ops without allocating one.
+     * <p>
+     * Finding the attachment manager can mean walking a chain of delegating dynamic ops. Codecs that read several
+     * attachments while decoding a single value can resolve the attachment manager once and then use
+     * {@link #getResult(AttachmentKey)} for each attachment instead of going through {@link AttachmentKey}'s methods.
+     * <p>
+     * The returned attachment manager should only be read from. Use
+     * {@link AttachmentKey#push(DynamicOps, Object)} to push attachments.
+     *
+     * @param ops the dynamic ops to resolve the attachment manager for.
+     * @return the attachment manager for the given dynamic ops or
+     * {@code null} if the given dynamic ops does not support attachments.
+     */
+    static @Nullable AttachmentManager resolve(DynamicOps<?> ops) {
+        return CodextraImpl.getAttachmentManager(ops);
+    }
+
+    /**
+     * Resolves the attachment manager for the given buffer without allocating one.
+     * <p>
+     * The returned attachment manager should only be read from.
+     *
+     * @param buf the buffer to resolve the attachment manager for.
+     * @return the attachment manager for the given buffer or
+     * {@code null} if the given buffer does not support attachments.
+     * @see #resolve(DynamicOps)
+     */
+    static @Nullable AttachmentManager resolve(ByteBuf buf) {
         return CodextraImpl.getAttachmentManager(buf);
     }
 
@@ -64,6 +111,18 @@ public interface AttachmentManager {
      */
     <A> void push(AttachmentKey<A> key, A value);
 
+    /**
+     * Pushes every attachment in an attachment set.
+     *
+     * @param attachments the attachments to push.
+     */
+    @SuppressWarnings("unchecked")
+    default void pushAll(AttachmentSet attachments) {
+        for (int i = 0, size = attachments.size(); i < size; i++) {
+            push((AttachmentKey<Object>) attachments.keyAt(i), attachments.valueAt(i));
+        }
+    }
+
     /**
      * Pops an attachment.
      *
@@ -73,6 +132,19 @@ public interface AttachmentManager {
      */
     <A> @Nullable A pop(AttachmentKey<A> key);
 
+    /**
+     * Pops every attachment in an attachment set.
+     * <p>
+     * Attachments are popped in the reverse order they were pushed in by {@link #pushAll(AttachmentSet)}.
+     *
+     * @param attachments the attachments to pop.
+     */
+    default void popAll(AttachmentSet attachments) {
+        for (int i = attachments.size() - 1; i >= 0; i--) {
+            pop(attachments.keyAt(i));
+        }
+    }
+
     /**
      * Gets the current value of an attachment.
      *
@@ -82,6 +154,125 @@ public interface AttachmentManager {
      */
     <A> @Nullable A get(AttachmentKey<A> key);
 
+    /**
+     * Gets the current value of an attachment.
+     * <p>
+     * This is intended for use in custom codecs that have resolved their attachment manager with
+     * {@link #resolve(DynamicOps)}.
+     *
+     * @param key the attachment key.
+     * @param <A> the type of attachment.
+     * @return the current value wrapped in {@link DataResult#success(Object)},
+     * or {@link DataResult#error(Supplier)} if the attachment is not present.
+     */
+    default <A> DataResult<A> getResult(AttachmentKey<A> key) {
+        A value = get(key);
+        if (value == null) {
+            Set<AttachmentKey<?>> presentAttachments = getAttachments();
+            return DataResult.error(() -> "Attachment [" + key.getName() + "] not present. Attachments present: [" +
+                presentAttachments.stream().map(AttachmentKey::getName).collect(Collectors.joining(", ")) + "]");
+        }
+
+        return DataResult.success(value);
+    }
+
+    /**
+     * Gets the current value of an attachment or throwing.
+     * <p>
+     * This is intended for use in custom stream codecs that have resolved their attachment manager with
+     * {@link #resolve(ByteBuf)}.
+     *
+     * @param key the attachment key.
+     * @param <A> the type of attachment.
+     * @return the current value.
+     * @throws DecoderException if the attachment is not present.
+     */
+    default <A> @NotNull A getOrThrow(AttachmentKey<A> key) throws DecoderException {
+        A value = get(key);
+        if (value == null) {
+            throw new DecoderException("Attachment [" + key.getName() + "] not present. Attachments present: [" +
+                getAttachments().stream().map(AttachmentKey::getName).collect(Collectors.joining(", ")) + "]");
+        }
+
+        return value;
+    }
+
+    /**
+     * Pushes an {@code int} attachment, storing it without boxing if this attachment manager supports it.
+     *
+     * @param key   the attachment key.
+     * @param value the value to push.
+     */
+    default void pushInt(IntAttachmentKey key, int value) {
+        push(key, value);
+    }
+
+    /**
+     * Pushes a {@code long} attachment, storing it without boxing if this attachment manager supports it.
+     *
+     * @param key   the attachment key.
+     * @param value the value to push.
+     */
+    default void pushLong(LongAttachmentKey key, long value) {
+        push(key, value);
+    }
+
+    /**
+     * Pushes a {@code boolean} attachment, storing it without boxing if this attachment manager supports it.
+     *
+     * @param key   the attachment key.
+     * @param value the value to push.
+     */
+    default void pushBoolean(BooleanAttachmentKey key, boolean value) {
+        push(key, value);
+    }
+
+    /**
+     * Gets the current value of an {@code int} attachment without boxing it if this attachment manager supports it.
+     *
+     * @param key          the attachment key.
+     * @param defaultValue the value to return if the attachment is not present.
+     * @return the current value of the attachment or {@code defaultValue} if the attachment is not present.
+     */
+    default int getInt(IntAttachmentKey key, int defaultValue) {
+        Integer value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Gets the current value of a {@code long} attachment without boxing it if this attachment manager supports it.
+     *
+     * @param key          the attachment key.
+     * @param defaultValue the value to return if the attachment is not present.
+     * @return the current value of the attachment or {@code defaultValue} if the attachment is not present.
+     */
+    default long getLong(LongAttachmentKey key, long defaultValue) {
+        Long value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Gets the current value of a {@code boolean} attachment without boxing it if this attachment manager supports it.
+     *
+     * @param key          the attachment key.
+     * @param defaultValue the value to return if the attachment is not present.
+     * @return the current value of the attachment or {@code defaultValue} if the attachment is not present.
+     */
+    default boolean getBoolean(BooleanAttachmentKey key, boolean defaultValue) {
+        Boolean value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Checks whether an attachment is present.
+     *
+     * @param key the attachment key.
+     * @return {@code true} if the attachment currently has a value.
+     */
+    default boolean contains(AttachmentKey<?> key) {
+        return get(key) != null;
+    }
+
     /**
      * Gets all attachments currently attached.
      * <p>
@@ -96,4 +287,27 @@ public interface AttachmentManager {
      * {@return whether the attachment manager has any attachments.}
      */
     boolean isEmpty();
+
+    /**
+     * Gets an immutable snapshot of the current value of every attachment.
+     * <p>
+     * The returned context is not affected by later pushes and pops to this attachment manager.
+     *
+     * @return a snapshot of this attachment manager's current attachments.
+     */
+    @SuppressWarnings("unchecked")
+    default AttachmentContext snapshot() {
+        Set<AttachmentKey<?>> attachments = getAttachments();
+        if (attachments.isEmpty()) return AttachmentContext.EMPTY;
+
+        // sorting up front lets the builder append every attachment
+        AttachmentKey<?>[] keys = attachments.toArray(new AttachmentKey<?>[0]);
+        Arrays.sort(keys, Comparator.comparingInt(AttachmentKey::getIndex));
+
+        AttachmentContext.Builder builder = AttachmentContext.builder(keys.length);
+        for (AttachmentKey<?> key : keys) {
+            builder.add((AttachmentKey<Object>) key, get(key));
+        }
+        return builder.build();
+    }
 }
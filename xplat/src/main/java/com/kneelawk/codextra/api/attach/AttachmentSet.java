@@ -0,0 +1,279 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import io.netty.buffer.ByteBuf;
+
+import com.mojang.serialization.DynamicOps;
+
+import net.minecraft.network.FriendlyByteBuf;
+
+import com.kneelawk.codextra.impl.CodextraImpl;
+
+/**
+ * An immutable bundle of attachments that can be pushed and popped all at once.
+ * <p>
+ * Attachment sets store their keys and values in parallel arrays, so pushing a set resolves the attachment manager
+ * once and then pushes every attachment in a single pass. Attachment sets should be created up front, when building
+ * codecs, instead of every time they are pushed.
+ */
+public final class AttachmentSet {
+    private static final AttachmentKey<?>[] NO_KEYS = new AttachmentKey<?>[0];
+    private static final Object[] NO_VALUES = new Object[0];
+
+    /**
+     * The attachment set with no attachments.
+     */
+    public static final AttachmentSet EMPTY = new AttachmentSet(NO_KEYS, NO_VALUES);
+
+    private final AttachmentKey<?>[] keys;
+    private final Object[] values;
+
+    private AttachmentSet(AttachmentKey<?>[] keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * {@return the empty attachment set.}
+     */
+    public static AttachmentSet of() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates an attachment set containing a single attachment.
+     *
+     * @param key   the attachment key.
+     * @param value the value to attach.
+     * @param <A>   the type of attachment.
+     * @return the created attachment set.
+     */
+    public static <A> AttachmentSet of(AttachmentKey<A> key, A value) {
+        return new AttachmentSet(new AttachmentKey<?>[]{key}, new Object[]{value});
+    }
+
+    /**
+     * Creates an attachment set containing two attachments.
+     *
+     * @param key1   the first attachment key.
+     * @param value1 the first value to attach.
+     * @param key2   the second attachment key.
+     * @param value2 the second value to attach.
+     * @param <A1>   the type of the first attachment.
+     * @param <A2>   the type of the second attachment.
+     * @return the created attachment set.
+     * @throws IllegalArgumentException if both keys are the same.
+     */
+    public static <A1, A2> AttachmentSet of(AttachmentKey<A1> key1, A1 value1, AttachmentKey<A2> key2, A2 value2) {
+        if (key1 == key2) throw new IllegalArgumentException("Duplicate attachment key: " + key1);
+        return new AttachmentSet(new AttachmentKey<?>[]{key1, key2}, new Object[]{value1, value2});
+    }
+
+    /**
+     * Creates an attachment set containing all the attachments in the given map.
+     *
+     * @param attachmentMap the map of attachments.
+     * @return the created attachment set.
+     */
+    public static AttachmentSet copyOf(Map<AttachmentKey<?>, ?> attachmentMap) {
+        if (attachmentMap.isEmpty()) return EMPTY;
+
+        AttachmentKey<?>[] keys = new AttachmentKey<?>[attachmentMap.size()];
+        Object[] values = new Object[keys.length];
+        int i = 0;
+        for (var entry : attachmentMap.entrySet()) {
+            keys[i] = entry.getKey();
+            values[i] = entry.getValue();
+            i++;
+        }
+
+        return new AttachmentSet(keys, values);
+    }
+
+    /**
+     * {@return a new builder for attachment sets.}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Pushes every attachment in this set to the given {@link DynamicOps}.
+     * <p>
+     * Note: this <em>may</em> wrap the given ops and return the wrapper ops if the original ops did not support
+     * attachments. Always use the returned ops.
+     *
+     * @param ops the dynamic ops to attach to and possibly wrap.
+     * @param <T> the type of the dynamic ops.
+     * @return the dynamic ops with the values attached.
+     */
+    public <T> DynamicOps<T> push(DynamicOps<T> ops) {
+        return CodextraImpl.pushAll(ops, this);
+    }
+
+    /**
+     * Pushes every attachment in this set to the given {@link FriendlyByteBuf}.
+     *
+     * @param buf the buffer to attach to.
+     */
+    public void push(FriendlyByteBuf buf) {
+        CodextraImpl.pushAll(buf, this);
+    }
+
+    /**
+     * Pops every attachment in this set from the given {@link DynamicOps}.
+     *
+     * @param ops the dynamic ops to pop the attachments from.
+     */
+    public void pop(DynamicOps<?> ops) {
+        CodextraImpl.popAll(ops, this);
+    }
+
+    /**
+     * Pops every attachment in this set from the given buffer.
+     *
+     * @param buf the buffer to pop the attachments from.
+     */
+    public void pop(ByteBuf buf) {
+        CodextraImpl.popAll(buf, this);
+    }
+
+    /**
+     * Pops every attachment in this set from ops returned by {@link #push(DynamicOps)}, indicating that the returned
+     * ops will not be used again.
+     * <p>
+     * If pushing had to wrap the original ops, the wrapper has no attachments left, and the {@code codextra.poolWrappers}
+     * system property is set, the wrapper is kept in a per-thread pool and reused by later pushes to the same original
+     * ops. <b>The attached ops must not be used after calling this, and nothing decoded with them may keep hold of
+     * them.</b>
+     * <p>
+     * Pooling is off by default, in which case this is the same as popping. With it on, a released wrapper is handed to
+     * whoever pushes to the same ops next, so anything decoded through it that kept hold of its ops, like a passthrough
+     * {@link com.mojang.serialization.Dynamic}, would see someone else's attachments.
+     *
+     * @param attached the ops returned by {@link #push(DynamicOps)}.
+     * @param original the ops originally passed to {@link #push(DynamicOps)}.
+     * @param <T>      the type of the dynamic ops.
+     */
+    public <T> void popAndRelease(DynamicOps<T> attached, DynamicOps<T> original) {
+        CodextraImpl.popAll(attached, this);
+        CodextraImpl.release(attached, original);
+    }
+
+    /**
+     * {@return the number of attachments in this set.}
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * {@return whether this set has no attachments.}
+     */
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * Gets the key at the given position.
+     *
+     * @param pos the position in this set, between {@code 0} and {@link #size()}.
+     * @return the key at the given position.
+     */
+    public AttachmentKey<?> keyAt(int pos) {
+        return keys[pos];
+    }
+
+    /**
+     * Gets the value at the given position.
+     *
+     * @param pos the position in this set, between {@code 0} and {@link #size()}.
+     * @return the value at the given position.
+     */
+    public Object valueAt(int pos) {
+        return values[pos];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("AttachmentSet[");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(keys[i].getName()).append('=').append(values[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Builds {@link AttachmentSet}s.
+     */
+    public static final class Builder {
+        private AttachmentKey<?>[] keys = new AttachmentKey<?>[4];
+        private Object[] values = new Object[4];
+        private int size = 0;
+
+        private Builder() {}
+
+        /**
+         * Adds an attachment to this builder, replacing the value if the attachment was already added.
+         *
+         * @param key   the attachment key.
+         * @param value the value to attach.
+         * @param <A>   the type of attachment.
+         * @return this builder.
+         */
+        public <A> Builder add(AttachmentKey<A> key, A value) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return this;
+                }
+            }
+
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        /**
+         * {@return the built attachment set.}
+         */
+        public AttachmentSet build() {
+            if (size == 0) return EMPTY;
+            return new AttachmentSet(Arrays.copyOf(keys, size), Arrays.copyOf(values, size));
+        }
+    }
+}
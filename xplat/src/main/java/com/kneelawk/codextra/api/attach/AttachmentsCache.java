@@ -0,0 +1,164 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach;
+
+import java.util.function.Function;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import com.mojang.serialization.DataResult;
+
+/**
+ * A bounded, thread-safe cache of the {@link AttachmentSet}s created for each key by key-attaching codecs.
+ * <p>
+ * Key-attaching codecs normally turn their decoded key into attachments for every value they decode and encode. When
+ * keys come from a small set of values, like {@link net.minecraft.resources.ResourceLocation}s or enum constants,
+ * caching these attachment sets avoids rebuilding identical sets over and over.
+ * <p>
+ * This only pays off for bundles of several attachments, or attachments that are expensive to compute from the key. A
+ * key that is attached as a single attachment is pushed directly by the plain key-attaching codecs, which is cheaper
+ * than any cache lookup.
+ * <p>
+ * Keys are compared with {@link Object#equals(Object)}, so they must not be mutated while they are in the cache. This
+ * is why there are no cached variants of the mutable key-attaching codecs. The least recently used entries are evicted
+ * once the cache holds more than its maximum size.
+ *
+ * @param <K> the key type.
+ */
+public final class AttachmentsCache<K> implements Function<K, AttachmentSet> {
+    /**
+     * The maximum size used by caches created without specifying one.
+     */
+    public static final long DEFAULT_MAXIMUM_SIZE = 256;
+
+    private final Function<? super K, ? extends AttachmentSet> attachmentsGetter;
+    private final LoadingCache<K, DataResult<AttachmentSet>> cache;
+
+    private AttachmentsCache(Function<? super K, ? extends AttachmentSet> attachmentsGetter, long maximumSize) {
+        this.attachmentsGetter = attachmentsGetter;
+        // the success results are cached too, as the codecs want them anyway
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats()
+            .build(CacheLoader.<K, DataResult<AttachmentSet>>from(
+                key -> DataResult.<AttachmentSet>success(attachmentsGetter.apply(key))));
+    }
+
+    /**
+     * Creates a new attachments cache with the {@linkplain #DEFAULT_MAXIMUM_SIZE default maximum size}.
+     *
+     * @param attachmentsGetter the function to turn keys into attachments.
+     * @param <K>               the key type.
+     * @return the new attachments cache.
+     */
+    public static <K> AttachmentsCache<K> of(Function<? super K, ? extends AttachmentSet> attachmentsGetter) {
+        return new AttachmentsCache<>(attachmentsGetter, DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Creates a new attachments cache.
+     *
+     * @param attachmentsGetter the function to turn keys into attachments.
+     * @param maximumSize       the maximum number of keys to keep attachments for.
+     * @param <K>               the key type.
+     * @return the new attachments cache.
+     */
+    public static <K> AttachmentsCache<K> of(Function<? super K, ? extends AttachmentSet> attachmentsGetter,
+                                             long maximumSize) {
+        return new AttachmentsCache<>(attachmentsGetter, maximumSize);
+    }
+
+    /**
+     * Gets the attachments for the given key, creating them if they are not cached.
+     *
+     * @param key the key to get the attachments for.
+     * @return the attachments for the given key.
+     */
+    @Override
+    public AttachmentSet apply(K key) {
+        return getResult(key).getOrThrow();
+    }
+
+    /**
+     * Gets the attachments for the given key wrapped in a {@link DataResult}, creating them if they are not cached.
+     *
+     * @param key the key to get the attachments for.
+     * @return the attachments for the given key wrapped in {@link DataResult#success(Object)}.
+     */
+    public DataResult<AttachmentSet> getResult(K key) {
+        try {
+            return cache.getUnchecked(key);
+        } catch (UncheckedExecutionException e) {
+            // don't hide the getter's own exceptions
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    /**
+     * {@return the number of times attachments were found in this cache.}
+     */
+    public long hitCount() {
+        return cache.stats().hitCount();
+    }
+
+    /**
+     * {@return the number of times attachments had to be created because they weren't in this cache.}
+     */
+    public long missCount() {
+        return cache.stats().missCount();
+    }
+
+    /**
+     * {@return the number of entries evicted from this cache because it was full.}
+     */
+    public long evictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    /**
+     * {@return the fraction of lookups that found their attachments in this cache, or 1 if there were none.}
+     */
+    public double hitRate() {
+        return cache.stats().hitRate();
+    }
+
+    /**
+     * Discards every cached attachment set.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    @Override
+    public String toString() {
+        CacheStats stats = cache.stats();
+        return "AttachmentsCache[" + attachmentsGetter + " hits=" + stats.hitCount() + " misses=" +
+            stats.missCount() + "]";
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+
+import com.mojang.serialization.DynamicOps;
+
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.resources.ResourceLocation;
+
+import com.kneelawk.codextra.impl.CodextraImpl;
+import com.kneelawk.codextra.impl.FieldNameHelper;
+
+/**
+ * An attachment key for {@code boolean} flags that are stored without boxing.
+ * <p>
+ * Values pushed with {@link #pushBoolean(DynamicOps, boolean)} are stored unboxed by the attachment manager and can be
+ * read back with {@link #getBoolean(DynamicOps, boolean)} without going through {@link Boolean}.
+ */
+public final class BooleanAttachmentKey extends PrimitiveAttachmentKey<Boolean> {
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    BooleanAttachmentKey(String name) {
+        super(name);
+    }
+
+    /**
+     * Creates a new {@code boolean} attachment key with the name of the field the attachment key is being assigned to.
+     *
+     * @return the created attachment key.
+     * @see AttachmentKey#ofStaticFieldName()
+     */
+    public static BooleanAttachmentKey ofStaticFieldName() {
+        Class<?> caller = STACK_WALKER.getCallerClass();
+        String name = caller.getName() + "." +
+            FieldNameHelper.getCurrentlyInitializingFieldName(caller, BooleanAttachmentKey.class);
+        return new BooleanAttachmentKey(name);
+    }
+
+    /**
+     * Creates a new {@code boolean} attachment key.
+     *
+     * @param name the name of this attachment. This name is only used for printing error messages.
+     * @return the created attachment key.
+     */
+    public static BooleanAttachmentKey of(ResourceLocation name) {
+        return of(name.toString());
+    }
+
+    /**
+     * Creates a new {@code boolean} attachment key.
+     *
+     * @param name the name of this attachment. This name is only used for printing error messages.
+     * @return the created attachment key.
+     */
+    public static BooleanAttachmentKey of(String name) {
+        return new BooleanAttachmentKey(name);
+    }
+
+    @Override
+    public Boolean box(long bits) {
+        return bits != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "BooleanAttachmentKey[" + getName() + "]";
+    }
+
+    /**
+     * Pushes a {@code boolean} value to the given {@link DynamicOps} without boxing it.
+     * <p>
+     * Note: this <em>may</em> wrap the given ops and return the wrapper ops if the original ops did not support
+     * attachments. Always use the returned ops.
+     *
+     * @param ops   the dynamic ops to attach to and possibly wrap.
+     * @param value the value to attach.
+     * @param <T>   the type of the dynamic ops.
+     * @return the dynamic ops with the value attached.
+     */
+    public <T> DynamicOps<T> pushBoolean(DynamicOps<T> ops, boolean value) {
+        return CodextraImpl.pushUnboxed(ops, this, value ? 1L : 0L);
+    }
+
+    /**
+     * Attaches a {@code boolean} value to the given {@link FriendlyByteBuf} without boxing it.
+     *
+     * @param buf   the buffer to attach to.
+     * @param value the value to attach.
+     */
+    public void pushBoolean(FriendlyByteBuf buf, boolean value) {
+        CodextraImpl.pushUnboxed(buf, this, value ? 1L : 0L);
+    }
+
+    /**
+     * Attaches a {@code boolean} value to the given {@link ByteBuf} without boxing it.
+     * <p>
+     * Note: this <em>may</em> wrap the given buffer and return the wrapper buffer if the original buffer did not
+     * support attachments. Always use the returned buffer.
+     *
+     * @param buf   the buffer to attach to and possibly wrap.
+     * @param value the value to attach.
+     * @return the buffer with the value attached.
+     */
+    public ByteBuf pushBoolean(ByteBuf buf, boolean value) {
+        return CodextraImpl.pushUnboxed(buf, this, value ? 1L : 0L);
+    }
+
+    /**
+     * Gets the current value for this attachment on the given ops without boxing it.
+     *
+     * @param ops          the dynamic ops to get the attached value from.
+     * @param defaultValue the value to return if this attachment is not present.
+     * @return the current value, or {@code defaultValue} if there is none.
+     */
+    public boolean getBoolean(DynamicOps<?> ops, boolean defaultValue) {
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(ops);
+        if (manager == null) return defaultValue;
+        return manager.getBoolean(this, defaultValue);
+    }
+
+    /**
+     * Gets the current value for this attachment on the given buffer without boxing it.
+     *
+     * @param buf          the buffer to get the attached value from.
+     * @param defaultValue the value to return if this attachment is not present.
+     * @return the current value, or {@code defaultValue} if there is none.
+     */
+    public boolean getBoolean(ByteBuf buf, boolean defaultValue) {
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(buf);
+        if (manager == null) return defaultValue;
+        return manager.getBoolean(this, defaultValue);
+    }
+
+    /**
+     * Gets the current value for this attachment on the given buffer without boxing it, or throwing.
+     * <p>
+     * This is intended for use in custom {@link StreamCodec}s.
+     *
+     * @param buf the buffer to get the attached value from.
+     * @return the current value.
+     * @throws DecoderException if this attachment is not present.
+     */
+    public boolean getBooleanOrThrow(ByteBuf buf) throws DecoderException {
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(buf);
+        // the boxing path builds the error message
+        if (manager == null || !manager.contains(this)) return getOrThrow(buf);
+        return manager.getBoolean(this, false);
+    }
+}
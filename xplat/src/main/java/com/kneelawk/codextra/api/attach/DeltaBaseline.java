@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Holds the last value written and the last value read on a connection, to be used as the baselines for delta
+ * encoding the next values.
+ * <p>
+ * Delta baselines are intended to be attached to each packet's buffer and used with
+ * {@link com.kneelawk.codextra.api.CodextraStreams#delta(AttachmentKey, com.kneelawk.codextra.api.stream.DeltaCodec)}.
+ * Both sides of a connection must start with empty baselines and read every delta-encoded value in the order it was
+ * written. Baselines are not thread-safe and should only be used from the connection's thread.
+ *
+ * @param <V> the value type.
+ */
+public final class DeltaBaseline<V> {
+    private @Nullable V written;
+    private @Nullable V read;
+
+    private DeltaBaseline() {}
+
+    /**
+     * {@return a new delta baseline with no previous values.}
+     *
+     * @param <V> the value type.
+     */
+    public static <V> DeltaBaseline<V> create() {
+        return new DeltaBaseline<>();
+    }
+
+    /**
+     * {@return the last value written, or {@code null} if none has been written yet.}
+     */
+    public @Nullable V getWritten() {
+        return written;
+    }
+
+    /**
+     * Sets the last value written.
+     *
+     * @param written the value that was just written.
+     */
+    public void setWritten(@Nullable V written) {
+        this.written = written;
+    }
+
+    /**
+     * {@return the last value read, or {@code null} if none has been read yet.}
+     */
+    public @Nullable V getRead() {
+        return read;
+    }
+
+    /**
+     * Sets the last value read.
+     *
+     * @param read the value that was just read.
+     */
+    public void setRead(@Nullable V read) {
+        this.read = read;
+    }
+
+    /**
+     * Forgets both baselines, so the next values are written and read in full.
+     * <p>
+     * Both sides of a connection must clear their baselines at the same point in the stream.
+     */
+    public void clear() {
+        written = null;
+        read = null;
+    }
+
+    @Override
+    public String toString() {
+        return "DeltaBaseline[" + written + " " + read + "]";
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach;
+
+import java.util.function.Function;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An attachment key whose value is computed from the value of another attachment, instead of being pushed.
+ * <p>
+ * The derived value is computed the first time it is retrieved for each pushed value of the source attachment, and is
+ * stored alongside that value in the attachment manager until the value is popped. Pushing a new source value, even
+ * an equal one, computes a new derived value, while popping it goes back to the derived value of the previous one.
+ * Values derived from an {@link AttachmentContext} are stored in that context.
+ * <p>
+ * Derived attachments cannot be pushed or popped themselves.
+ *
+ * @param <S> the type of the source attachment.
+ * @param <A> the type of the derived attachment.
+ */
+public final class DerivedAttachmentKey<S, A> extends AttachmentKey<A> {
+    private final AttachmentKey<S> source;
+    private final Function<? super S, ? extends A> deriver;
+
+    DerivedAttachmentKey(String name, AttachmentKey<S> source, Function<? super S, ? extends A> deriver) {
+        super(name);
+        this.source = source;
+        this.deriver = deriver;
+    }
+
+    /**
+     * {@return the attachment this attachment's value is derived from.}
+     */
+    public AttachmentKey<S> getSource() {
+        return source;
+    }
+
+    /**
+     * Computes the derived value for the given source value.
+     * <p>
+     * This always calls the deriver. Retrieving this attachment from a buffer, dynamic ops, or context reuses the
+     * value computed for the current source value instead.
+     *
+     * @param sourceValue the value of the source attachment.
+     * @return the derived value, or {@code null} if the source value is {@code null}.
+     */
+    public @Nullable A derive(@Nullable S sourceValue) {
+        if (sourceValue == null) return null;
+        return deriver.apply(sourceValue);
+    }
+
+    @Override
+    public String toString() {
+        return "DerivedAttachmentKey[" + getName() + " " + source + "]";
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+
+/**
+ * An immutable, bidirectional mapping between small non-negative integer ids and values.
+ * <p>
+ * Id tables are intended to be attached and used with the {@code retrieveById} codecs in {@link AttachmentKey}, which
+ * encode values as their ids. Ids are looked up in a dense array and values are looked up in a primitive-valued hash
+ * map, so neither direction boxes.
+ *
+ * @param <V> the value type.
+ */
+public final class IdTable<V> {
+    /**
+     * The id returned by {@link #getId(Object)} for values that are not in the table.
+     */
+    public static final int NO_ID = -1;
+
+    private final Object[] byId;
+    private final Object2IntMap<V> toId;
+    private final int size;
+
+    private IdTable(Object[] byId, Object2IntMap<V> toId, int size) {
+        this.byId = byId;
+        this.toId = toId;
+        this.size = size;
+    }
+
+    /**
+     * Creates an id table where each value's id is its index in the given list.
+     * <p>
+     * Values are compared with {@link Object#equals(Object)}. If a value is present multiple times, its id is its
+     * first index.
+     *
+     * @param values the values in id order.
+     * @param <V>    the value type.
+     * @return the new id table.
+     */
+    public static <V> IdTable<V> of(List<? extends V> values) {
+        return ofList(values, new Object2IntOpenHashMap<>(values.size()));
+    }
+
+    /**
+     * Creates an id table where each value's id is its index in the given list.
+     * <p>
+     * Values are compared by identity. This is faster for values that are singletons, like registry entries.
+     *
+     * @param values the values in id order.
+     * @param <V>    the value type.
+     * @return the new id table.
+     */
+    public static <V> IdTable<V> identityOf(List<? extends V> values) {
+        return ofList(values, new Reference2IntOpenHashMap<>(values.size()));
+    }
+
+    /**
+     * Creates an id table from a map of ids to values.
+     * <p>
+     * Ids do not have to be contiguous, but the table allocates an array as large as the largest id, so ids should be
+     * small. Values are compared with {@link Object#equals(Object)}.
+     *
+     * @param map the map of ids to values.
+     * @param <V> the value type.
+     * @return the new id table.
+     * @throws IllegalArgumentException if any id is negative.
+     */
+    public static <V> IdTable<V> copyOf(Map<Integer, ? extends V> map) {
+        int length = 0;
+        for (int id : map.keySet()) {
+            if (id < 0) throw new IllegalArgumentException("Negative id " + id + " in id table");
+            length = Math.max(length, id + 1);
+        }
+
+        Object[] byId = new Object[length];
+        Object2IntMap<V> toId = new Object2IntOpenHashMap<>(map.size());
+        toId.defaultReturnValue(NO_ID);
+        for (Map.Entry<Integer, ? extends V> entry : map.entrySet()) {
+            int id = entry.getKey();
+            byId[id] = entry.getValue();
+            // keep the smallest id for duplicate values, so building a table doesn't depend on map iteration order
+            int existing = toId.getInt(entry.getValue());
+            if (existing == NO_ID || id < existing) toId.put(entry.getValue(), id);
+        }
+
+        return new IdTable<>(byId, toId, map.size());
+    }
+
+    private static <V> IdTable<V> ofList(List<? extends V> values, Object2IntMap<V> toId) {
+        toId.defaultReturnValue(NO_ID);
+        Object[] byId = values.toArray();
+        for (int i = 0; i < byId.length; i++) {
+            toId.putIfAbsent(values.get(i), i);
+        }
+        return new IdTable<>(byId, toId, byId.length);
+    }
+
+    /**
+     * Gets the value with the given id.
+     *
+     * @param id the id of the value to get.
+     * @return the value with the given id, or {@code null} if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public @Nullable V byId(int id) {
+        if (id < 0 || id >= byId.length) return null;
+        return (V) byId[id];
+    }
+
+    /**
+     * Gets the id of the given value.
+     *
+     * @param value the value to get the id of.
+     * @return the id of the given value, or {@link #NO_ID} if the value is not in this table.
+     */
+    public int getId(V value) {
+        return toId.getInt(value);
+    }
+
+    /**
+     * Checks whether the given value is in this table.
+     *
+     * @param value the value to check.
+     * @return {@code true} if the given value has an id in this table.
+     */
+    public boolean contains(V value) {
+        return toId.containsKey(value);
+    }
+
+    /**
+     * {@return the number of ids in this table.}
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return "IdTable" + Arrays.toString(byId);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach;
+
+import java.util.function.IntFunction;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.resources.ResourceLocation;
+
+import com.kneelawk.codextra.api.attach.codec.IntDispatchCodec;
+import com.kneelawk.codextra.api.attach.codec.IntRetrievalMapCodec;
+import com.kneelawk.codextra.api.attach.stream.IntDispatchStreamCodec;
+import com.kneelawk.codextra.api.attach.stream.IntRetrievalStreamCodec;
+import com.kneelawk.codextra.api.util.FunctionUtils;
+import com.kneelawk.codextra.impl.CodextraImpl;
+import com.kneelawk.codextra.impl.FieldNameHelper;
+
+/**
+ * An attachment key for {@code int} values, like protocol or format versions, that are stored without boxing.
+ * <p>
+ * Values pushed with {@link #pushInt(DynamicOps, int)} are stored unboxed by the attachment manager and can be read
+ * back with {@link #getInt(DynamicOps, int)} without allocating. The codecs created by
+ * {@link #retrieveInt(IntFunction)} and {@link #dispatchIntCodec(IntFunction)} read the attachment the same way.
+ */
+public final class IntAttachmentKey extends PrimitiveAttachmentKey<Integer> {
+    private static final StackWalker STACK_WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    IntAttachmentKey(String name) {
+        super(name);
+    }
+
+    /**
+     * Creates a new {@code int} attachment key with the name of the field the attachment key is being assigned to.
+     *
+     * @return the created attachment key.
+     * @see AttachmentKey#ofStaticFieldName()
+     */
+    public static IntAttachmentKey ofStaticFieldName() {
+        Class<?> caller = STACK_WALKER.getCallerClass();
+        String name = caller.getName() + "." +
+            FieldNameHelper.getCurrentlyInitializingFieldName(caller, IntAttachmentKey.class);
+        return new IntAttachmentKey(name);
+    }
+
+    /**
+     * Creates a new {@code int} attachment key.
+     *
+     * @param name the name of this attachment. This name is only used for printing error messages.
+     * @return the created attachment key.
+     */
+    public static IntAttachmentKey of(ResourceLocation name) {
+        return of(name.toString());
+    }
+
+    /**
+     * Creates a new {@code int} attachment key.
+     *
+     * @param name the name of this attachment. This name is only used for printing error messages.
+     * @return the created attachment key.
+     */
+    public static IntAttachmentKey of(String name) {
+        return new IntAttachmentKey(name);
+    }
+
+    @Override
+    public Integer box(long bits) {
+        return (int) bits;
+    }
+
+    @Override
+    public String toString() {
+        return "IntAttachmentKey[" + getName() + "]";
+    }
+
+    /**
+     * Pushes an {@code int} value to the given {@link DynamicOps} without boxing it.
+     * <p>
+     * Note: this <em>may</em> wrap the given ops and return the wrapper ops if the original ops did not support
+     * attachments. Always use the returned ops.
+     *
+     * @param ops   the dynamic ops to attach to and possibly wrap.
+     * @param value the value to attach.
+     * @param <T>   the type of the dynamic ops.
+     * @return the dynamic ops with the value attached.
+     */
+    public <T> DynamicOps<T> pushInt(DynamicOps<T> ops, int value) {
+        return CodextraImpl.pushUnboxed(ops, this, value);
+    }
+
+    /**
+     * Attaches an {@code int} value to the given {@link FriendlyByteBuf} without boxing it.
+     *
+     * @param buf   the buffer to attach to.
+     * @param value the value to attach.
+     */
+    public void pushInt(FriendlyByteBuf buf, int value) {
+        CodextraImpl.pushUnboxed(buf, this, value);
+    }
+
+    /**
+     * Attaches an {@code int} value to the given {@link ByteBuf} without boxing it.
+     * <p>
+     * Note: this <em>may</em> wrap the given buffer and return the wrapper buffer if the original buffer did not
+     * support attachments. Always use the returned buffer.
+     *
+     * @param buf   the buffer to attach to and possibly wrap.
+     * @param value the value to attach.
+     * @return the buffer with the value attached.
+     */
+    public ByteBuf pushInt(ByteBuf buf, int value) {
+        return CodextraImpl.pushUnboxed(buf, this, value);
+    }
+
+    /**
+     * Gets the current value for this attachment on the given ops without boxing it.
+     *
+     * @param ops          the dynamic ops to get the attached value from.
+     * @param defaultValue the value to return if this attachment is not present.
+     * @return the current value, or {@code defaultValue} if there is none.
+     */
+    public int getInt(DynamicOps<?> ops, int defaultValue) {
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(ops);
+        if (manager == null) return defaultValue;
+        return manager.getInt(this, defaultValue);
+    }
+
+    /**
+     * Gets the current value for this attachment on the given buffer without boxing it.
+     *
+     * @param buf          the buffer to get the attached value from.
+     * @param defaultValue the value to return if this attachment is not present.
+     * @return the current value, or {@code defaultValue} if there is none.
+     */
+    public int getInt(ByteBuf buf, int defaultValue) {
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(buf);
+        if (manager == null) return defaultValue;
+        return manager.getInt(this, defaultValue);
+    }
+
+    /**
+     * Gets the current value for this attachment on the given buffer without boxing it, or throwing.
+     * <p>
+     * This is intended for use in custom {@link StreamCodec}s.
+     *
+     * @param buf the buffer to get the attached value from.
+     * @return the current value.
+     * @throws DecoderException if this attachment is not present.
+     */
+    public int getIntOrThrow(ByteBuf buf) throws DecoderException {
+        AttachmentManager manager = CodextraImpl.getAttachmentManager(buf);
+        // the boxing path builds the error message
+        if (manager == null || !manager.contains(this)) return getOrThrow(buf);
+        return manager.getInt(this, 0);
+    }
+
+    /**
+     * Creates a {@link RecordCodecBuilder} that acts as a field, but that only returns a value retrieved from this
+     * attachment's unboxed value.
+     * <p>
+     * When attachment(s) are used in a codec, the required attachment(s) should be clearly noted in the codec's javadoc.
+     *
+     * @param retriever the function for retrieving the desired value from the attachment value.
+     * @param <O>       the object the field will be a part of.
+     * @param <R>       the field type.
+     * @return the created {@link RecordCodecBuilder}.
+     */
+    public <O, R> RecordCodecBuilder<O, R> retrieveInt(IntFunction<? extends R> retriever) {
+        return new IntRetrievalMapCodec<R>(this, retriever).forGetter(o -> null);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that retrieves a value from this attachment's unboxed value.
+     * <p>
+     * This function does no encoding and does not need a valid value to encode. When creating a composite stream codec,
+     * you can use {@link FunctionUtils#nullFunc()}.
+     * <p>
+     * When attachment(s) are used in a codec, the required attachment(s) should be clearly noted in the codec's javadoc.
+     *
+     * @param retriever the function for retrieving the desired value from the attachment value.
+     * @param <B>       the buffer type.
+     * @param <V>       the value type.
+     * @return the created stream codec.
+     */
+    public <B extends ByteBuf, V> StreamCodec<B, V> retrieveIntStream(IntFunction<? extends V> retriever) {
+        return new IntRetrievalStreamCodec<>(this, retriever);
+    }
+
+    /**
+     * Creates a {@link Codec} that chooses which codec to use based on this attachment's unboxed value.
+     * <p>
+     * The dispatcher is called for every value decoded or encoded, so dispatchers that build codecs should look them
+     * up in something like an array instead.
+     * <p>
+     * When attachment(s) are used in a codec, the required attachment(s) should be clearly noted in the codec's javadoc.
+     *
+     * @param dispatcher the function that gets the codec to use from the attachment value.
+     * @param <R>        the result type.
+     * @return the created codec.
+     */
+    public <R> Codec<R> dispatchIntCodec(IntFunction<? extends Codec<? extends R>> dispatcher) {
+        return new IntDispatchCodec<>(this, dispatcher);
+    }
+
+    /**
+     * Creates a {@link StreamCodec} that chooses which stream codec to use based on this attachment's unboxed value.
+     * <p>
+     * When attachment(s) are used in a codec, the required attachment(s) should be clearly noted in the codec's javadoc.
+     *
+     * @param dispatcher the function that gets the stream codec to use from the attachment value.
+     * @param <B>        the buffer type.
+     * @param <V>        the value type.
+     * @return the created stream codec.
+     */
+    public <B extends ByteBuf, V> StreamCodec<B, V> dispatchIntStreamCodec(
+        IntFunction<? extends StreamCodec<? super B, ? extends V>> dispatcher) {
+        return new IntDispatchStreamCodec<>(this, dispatcher);
+    }
+}
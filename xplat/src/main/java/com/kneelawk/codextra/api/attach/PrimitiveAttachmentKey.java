@@ -0,0 +1,55 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach;
+
+/**
+ * An attachment key for a primitive value that attachment managers can store without boxing.
+ * <p>
+ * Primitive attachments can still be pushed and retrieved through the regular {@link AttachmentKey} methods, but doing
+ * so boxes their values. Hot decode paths should use the primitive methods on the specific key types instead.
+ *
+ * @param <A> the boxed type of the primitive value.
+ * @see IntAttachmentKey
+ * @see LongAttachmentKey
+ * @see BooleanAttachmentKey
+ */
+public abstract sealed class PrimitiveAttachmentKey<A> extends AttachmentKey<A>
+    permits IntAttachmentKey, LongAttachmentKey, BooleanAttachmentKey {
+    PrimitiveAttachmentKey(String name) {
+        super(name);
+    }
+
+    /**
+     * Boxes a value that an attachment manager stored unboxed.
+     * <p>
+     * Attachment managers store every kind of primitive value in a {@code long}. This is only used when a primitive
+     * attachment is retrieved through a method that has to return a boxed value.
+     *
+     * @param bits the stored value.
+     * @return the boxed value.
+     */
+    public abstract A box(long bits);
+}
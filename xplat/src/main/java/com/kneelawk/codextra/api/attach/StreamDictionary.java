@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import net.minecraft.network.VarInt;
+import net.minecraft.network.codec.StreamCodec;
+
+/**
+ * A bounded, per-connection dictionary of values that have already been sent, so that repeated values can be sent as
+ * small ids instead.
+ * <p>
+ * The first time a value is written, it is written in full and assigned the next id. Later writes of an equal value
+ * only write that id. The reading side assigns ids in the same order it reads values in full, so both sides' tables
+ * stay in sync as long as every packet written with a dictionary is read with the dictionary on the other side, in
+ * the same order.
+ * <p>
+ * Ids are assigned round-robin from a fixed number of slots. Once every slot is used, assigning a new id evicts the
+ * value that was assigned that slot the longest time ago, which both sides can do without communicating.
+ * <p>
+ * A dictionary keeps separate tables for the values it writes and the values it reads, so a single dictionary can be
+ * used for both directions of a connection. Dictionaries are not thread-safe and should only be used from the
+ * connection's thread.
+ * <p>
+ * Ids are shared between every codec that uses the same dictionary. A value written in full by one codec may later be
+ * written as an id by another codec writing an equal value, and is then read back as the value the first codec's
+ * literal codec decoded. Codecs sharing a dictionary must therefore use literal codecs that agree with each other on
+ * which values are equal, or use separate dictionaries.
+ * <p>
+ * Dictionaries are usually pushed to each packet's buffer with {@link #KEY} and used through
+ * {@link com.kneelawk.codextra.api.CodextraStreams#dictionary(StreamCodec)}.
+ */
+public final class StreamDictionary {
+    /**
+     * The attachment key the dictionary stream codecs look for by default.
+     */
+    public static final AttachmentKey<StreamDictionary> KEY = AttachmentKey.ofStaticFieldName();
+
+    /**
+     * The number of ids a dictionary created with {@link #create()} has.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    // the value written to indicate a value is written in full instead of as an id
+    private static final int LITERAL = 0;
+
+    private final int capacity;
+
+    private final Object[] writeValues;
+    private final Object2IntMap<Object> writeIds;
+    private int writeNext = 0;
+
+    private final Object[] readValues;
+    private int readNext = 0;
+
+    private StreamDictionary(int capacity) {
+        this.capacity = capacity;
+        writeValues = new Object[capacity];
+        writeIds = new Object2IntOpenHashMap<>(capacity);
+        writeIds.defaultReturnValue(-1);
+        readValues = new Object[capacity];
+    }
+
+    /**
+     * {@return a new, empty dictionary with {@link #DEFAULT_CAPACITY} ids.}
+     */
+    public static StreamDictionary create() {
+        return new StreamDictionary(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new, empty dictionary.
+     * <p>
+     * Both sides of a connection must use the same capacity.
+     *
+     * @param capacity the number of ids the dictionary has before it starts evicting old values.
+     * @return the new dictionary.
+     * @throws IllegalArgumentException if the capacity is not positive.
+     */
+    public static StreamDictionary create(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Dictionary capacity must be positive: " + capacity);
+        return new StreamDictionary(capacity);
+    }
+
+    /**
+     * {@return the number of ids this dictionary has before it starts evicting old values.}
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Writes a value, either as the id it was previously assigned or in full.
+     * <p>
+     * Values are compared with {@link Object#equals(Object)}, so they should be immutable. Null values are rejected,
+     * as the reading side has no way to tell an id assigned to null from one that was never assigned.
+     *
+     * @param buf          the buffer to write to.
+     * @param value        the value to write.
+     * @param literalCodec the codec to write the value in full with, if it does not have an id yet.
+     * @param <B>          the buffer type.
+     * @param <V>          the value type.
+     * @throws NullPointerException if the value is null.
+     */
+    public <B extends ByteBuf, V> void write(B buf, V value, StreamCodec<? super B, V> literalCodec) {
+        Objects.requireNonNull(value, "Dictionary values cannot be null");
+
+        int id = writeIds.getInt(value);
+        if (id >= 0) {
+            VarInt.write(buf, id + 1);
+            return;
+        }
+
+        VarInt.write(buf, LITERAL);
+        literalCodec.encode(buf, value);
+
+        Object evicted = writeValues[writeNext];
+        if (evicted != null) writeIds.removeInt(evicted);
+        writeValues[writeNext] = value;
+        writeIds.put(value, writeNext);
+        writeNext = (writeNext + 1) % capacity;
+    }
+
+    /**
+     * Reads a value written by {@link #write(ByteBuf, Object, StreamCodec)}.
+     *
+     * @param buf          the buffer to read from.
+     * @param literalCodec the codec to read the value in full with, if it was written in full.
+     * @param <B>          the buffer type.
+     * @param <V>          the value type.
+     * @return the read value.
+     * @throws DecoderException if the value was written as an id that has not been assigned, or the literal codec
+     *                          decoded null.
+     */
+    @SuppressWarnings("unchecked")
+    public <B extends ByteBuf, V> V read(B buf, StreamCodec<? super B, V> literalCodec) throws DecoderException {
+        int id = VarInt.read(buf);
+        if (id == LITERAL) {
+            V value = literalCodec.decode(buf);
+            // an empty slot means unassigned, so null can't be given an id
+            if (value == null) throw new DecoderException("Dictionary literal decoded to null");
+            readValues[readNext] = value;
+            readNext = (readNext + 1) % capacity;
+            return value;
+        }
+
+        // Ids are shared by every codec using this dictionary, so this value may have been read in full by a different
+        // literal codec. The writing side only reuses an id for an equal value, so this is the right value as long as
+        // all those codecs decode equal values the same way.
+        Object value = id > 0 && id <= capacity ? readValues[id - 1] : null;
+        if (value == null) throw new DecoderException("Unassigned dictionary id " + (id - 1));
+        return (V) value;
+    }
+
+    /**
+     * Forgets every value in this dictionary.
+     * <p>
+     * Both sides of a connection must clear their dictionaries at the same point in the stream, for example when
+     * switching protocols.
+     */
+    public void clear() {
+        Arrays.fill(writeValues, null);
+        writeIds.clear();
+        writeNext = 0;
+        Arrays.fill(readValues, null);
+        readNext = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "StreamDictionary[" + capacity + "]";
+    }
+}
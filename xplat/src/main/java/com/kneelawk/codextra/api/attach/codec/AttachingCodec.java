@@ -8,6 +8,7 @@ import com.mojang.serialization.DataResult;
 import com.mojang.serialization.DynamicOps;
 
 import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.AttachmentSet;
 
 /**
  * {@link Codec} for attaching a value and passing it as context to the wrapped codec.
@@ -15,7 +16,7 @@ import com.kneelawk.codextra.api.attach.AttachmentKey;
  * @param <R> the codec type of the codec this codec wraps.
  */
 public class AttachingCodec<R> implements Codec<R> {
-    private final Map<AttachmentKey<?>, ?> attachmentMap;
+    private final AttachmentSet attachments;
     private final Codec<R> wrapped;
 
     /**
@@ -29,7 +30,7 @@ public class AttachingCodec<R> implements Codec<R> {
      * @return the created codec.
      */
     public static <A, R> AttachingCodec<R> single(AttachmentKey<A> key, A value, Codec<R> wrapped) {
-        return new AttachingCodec<>(Map.of(key, value), wrapped);
+        return new AttachingCodec<>(AttachmentSet.of(key, value), wrapped);
     }
 
     /**
@@ -39,42 +40,38 @@ public class AttachingCodec<R> implements Codec<R> {
      * @param wrapped       the codec to pass the attachments to.
      */
     public AttachingCodec(Map<AttachmentKey<?>, ?> attachmentMap, Codec<R> wrapped) {
-        this.attachmentMap = attachmentMap;
+        this(AttachmentSet.copyOf(attachmentMap), wrapped);
+    }
+
+    /**
+     * Creates a new {@link AttachingCodec}.
+     *
+     * @param attachments the attachments to attach.
+     * @param wrapped     the codec to pass the attachments to.
+     */
+    public AttachingCodec(AttachmentSet attachments, Codec<R> wrapped) {
+        this.attachments = attachments;
         this.wrapped = wrapped;
     }
 
     @Override
     public <T> DataResult<Pair<R, T>> decode(DynamicOps<T> ops, T input) {
-        DynamicOps<T> attached = push(ops);
+        DynamicOps<T> attached = attachments.push(ops);
         DataResult<Pair<R, T>> result = wrapped.decode(attached, input);
-        pop(attached);
+        attachments.popAndRelease(attached, ops);
         return result;
     }
 
     @Override
     public <T> DataResult<T> encode(R input, DynamicOps<T> ops, T prefix) {
-        DynamicOps<T> attached = push(ops);
+        DynamicOps<T> attached = attachments.push(ops);
         DataResult<T> result = wrapped.encode(input, attached, prefix);
-        pop(attached);
+        attachments.popAndRelease(attached, ops);
         return result;
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> DynamicOps<T> push(DynamicOps<T> ops) {
-        for (var entry : attachmentMap.entrySet()) {
-            ops = ((AttachmentKey<Object>) entry.getKey()).push(ops, entry.getValue());
-        }
-        return ops;
-    }
-
-    private <T> void pop(DynamicOps<T> ops) {
-        for (var key : attachmentMap.keySet()) {
-            key.pop(ops);
-        }
-    }
-
     @Override
     public String toString() {
-        return "AttachingCodec[" + attachmentMap + " " + wrapped + "]";
+        return "AttachingCodec[" + attachments + " " + wrapped + "]";
     }
 }
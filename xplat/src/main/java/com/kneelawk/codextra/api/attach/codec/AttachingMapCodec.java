@@ -10,6 +10,7 @@ import com.mojang.serialization.MapLike;
 import com.mojang.serialization.RecordBuilder;
 
 import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.AttachmentSet;
 
 /**
  * {@link MapCodec} for attaching a value and passing it
@@ -17,7 +18,7 @@ import com.kneelawk.codextra.api.attach.AttachmentKey;
  * @param <R> the type of the map codec this map codec wraps.
  */
 public class AttachingMapCodec<R> extends MapCodec<R> {
-    private final Map<AttachmentKey<?>, ?> attachmentMap;
+    private final AttachmentSet attachments;
     private final MapCodec<R> wrapped;
 
     /**
@@ -31,7 +32,7 @@ public class AttachingMapCodec<R> extends MapCodec<R> {
      * @return the created codec.
      */
     public static <A, R> AttachingMapCodec<R> single(AttachmentKey<A> key, A value, MapCodec<R> wrapped) {
-        return new AttachingMapCodec<>(Map.of(key, value), wrapped);
+        return new AttachingMapCodec<>(AttachmentSet.of(key, value), wrapped);
     }
 
     /**
@@ -41,7 +42,17 @@ public class AttachingMapCodec<R> extends MapCodec<R> {
      * @param wrapped       the codec to pass the attachments to.
      */
     public AttachingMapCodec(Map<AttachmentKey<?>, ?> attachmentMap, MapCodec<R> wrapped) {
-        this.attachmentMap = attachmentMap;
+        this(AttachmentSet.copyOf(attachmentMap), wrapped);
+    }
+
+    /**
+     * Creates a new {@link AttachingMapCodec}.
+     *
+     * @param attachments the attachments to attach.
+     * @param wrapped     the codec to pass the attachments to.
+     */
+    public AttachingMapCodec(AttachmentSet attachments, MapCodec<R> wrapped) {
+        this.attachments = attachments;
         this.wrapped = wrapped;
     }
 
@@ -52,36 +63,22 @@ public class AttachingMapCodec<R> extends MapCodec<R> {
 
     @Override
     public <T> DataResult<R> decode(DynamicOps<T> ops, MapLike<T> input) {
-        DynamicOps<T> attached = push(ops);
+        DynamicOps<T> attached = attachments.push(ops);
         DataResult<R> result = wrapped.decode(attached, input);
-        pop(attached);
+        attachments.popAndRelease(attached, ops);
         return result;
     }
 
     @Override
     public <T> RecordBuilder<T> encode(R input, DynamicOps<T> ops, RecordBuilder<T> prefix) {
-        DynamicOps<T> attached = push(ops);
+        DynamicOps<T> attached = attachments.push(ops);
         RecordBuilder<T> result = wrapped.encode(input, attached, OpsReplacingRecordBuilder.wrap(prefix, attached));
-        pop(attached);
+        attachments.popAndRelease(attached, ops);
         return OpsReplacingRecordBuilder.unwrap(result, prefix, ops);
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> DynamicOps<T> push(DynamicOps<T> ops) {
-        for (var entry : attachmentMap.entrySet()) {
-            ops = ((AttachmentKey<Object>) entry.getKey()).push(ops, entry.getValue());
-        }
-        return ops;
-    }
-
-    private <T> void pop(DynamicOps<T> ops) {
-        for (var key : attachmentMap.keySet()) {
-            key.pop(ops);
-        }
-    }
-
     @Override
     public String toString() {
-        return "AttachingMapCodec[" + attachmentMap + " " + wrapped + "]";
+        return "AttachingMapCodec[" + attachments + " " + wrapped + "]";
     }
 }
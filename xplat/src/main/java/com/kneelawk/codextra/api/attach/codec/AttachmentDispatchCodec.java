@@ -19,6 +19,7 @@ import com.kneelawk.codextra.api.util.FunctionUtils;
 public class AttachmentDispatchCodec<A, R> implements Codec<R> {
     private final AttachmentKey<A> key;
     private final Function<? super A, ? extends DataResult<? extends Codec<? extends R>>> dispatcher;
+    private final Function<? super A, DataResult<Codec<? extends R>>> dispatchResult;
 
     /**
      * Creates a new {@link AttachmentDispatchCodec}.
@@ -30,11 +31,13 @@ public class AttachmentDispatchCodec<A, R> implements Codec<R> {
                                    Function<? super A, ? extends DataResult<? extends Codec<? extends R>>> dispatcher) {
         this.key = key;
         this.dispatcher = dispatcher;
+        // composed once here instead of on every decode and encode
+        this.dispatchResult = dispatcher.andThen(FunctionUtils.<Codec<? extends R>>dataIdentity());
     }
 
     @Override
     public <T> DataResult<Pair<R, T>> decode(DynamicOps<T> ops, T input) {
-        return key.getResult(ops).flatMap(dispatcher.andThen(FunctionUtils.dataIdentity()))
+        return key.getResult(ops).flatMap(dispatchResult)
             .flatMap(codec -> codec.decode(ops, input).map(pair -> pair.mapFirst(Function.identity())));
     }
 
@@ -42,7 +45,7 @@ public class AttachmentDispatchCodec<A, R> implements Codec<R> {
     @Override
     public <T> DataResult<T> encode(R input, DynamicOps<T> ops, T prefix) {
         // intentional case, as dispatching makes sure the same codec is used for encoding as decoding
-        return key.getResult(ops).flatMap(dispatcher.andThen(FunctionUtils.dataIdentity()))
+        return key.getResult(ops).flatMap(dispatchResult)
             .flatMap(codec -> ((Codec<R>) codec).encode(input, ops, prefix));
     }
 
@@ -23,6 +23,7 @@ public class AttachmentDispatchMapCodec<A, R> extends MapCodec<R> {
 
     private final AttachmentKey<A> key;
     private final Function<? super A, ? extends DataResult<? extends MapCodec<? extends R>>> dispatcher;
+    private final Function<? super A, DataResult<MapCodec<? extends R>>> dispatchResult;
 
     /**
      * Creates a new {@link AttachmentDispatchMapCodec}.
@@ -34,6 +35,8 @@ public class AttachmentDispatchMapCodec<A, R> extends MapCodec<R> {
                                       Function<? super A, ? extends DataResult<? extends MapCodec<? extends R>>> dispatcher) {
         this.key = key;
         this.dispatcher = dispatcher;
+        // composed once here instead of on every decode and encode
+        this.dispatchResult = dispatcher.andThen(FunctionUtils.<MapCodec<? extends R>>dataIdentity());
     }
 
     @Override
@@ -44,7 +47,7 @@ public class AttachmentDispatchMapCodec<A, R> extends MapCodec<R> {
     @Override
     public <T> DataResult<R> decode(DynamicOps<T> ops, MapLike<T> input) {
         if (ops.compressMaps()) {
-            return key.getResult(ops).flatMap(dispatcher.andThen(FunctionUtils.dataIdentity())).flatMap(codec -> {
+            return key.getResult(ops).flatMap(dispatchResult).flatMap(codec -> {
                 T inputObj = input.get(COMPRESSED_KEY);
                 if (inputObj == null) {
                     return DataResult.error(() -> "Input does not have \"" + COMPRESSED_KEY + "\" entry: " + input);
@@ -53,7 +56,7 @@ public class AttachmentDispatchMapCodec<A, R> extends MapCodec<R> {
             });
         }
 
-        return key.getResult(ops).flatMap(dispatcher.andThen(FunctionUtils.dataIdentity()))
+        return key.getResult(ops).flatMap(dispatchResult)
             .flatMap(codec -> codec.decode(ops, input)).map(Function.identity());
     }
 
@@ -61,7 +64,7 @@ public class AttachmentDispatchMapCodec<A, R> extends MapCodec<R> {
     @Override
     public <T> RecordBuilder<T> encode(R input, DynamicOps<T> ops, RecordBuilder<T> prefix) {
         DataResult<? extends MapCodec<? extends R>> dispatchedResult =
-            key.getResult(ops).flatMap(dispatcher.andThen(FunctionUtils.dataIdentity()));
+            key.getResult(ops).flatMap(dispatchResult);
         if (dispatchedResult.isError()) {
             return prefix.withErrorsFrom(dispatchedResult);
         }
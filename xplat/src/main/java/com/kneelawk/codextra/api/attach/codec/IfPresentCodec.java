@@ -32,7 +32,7 @@ public class IfPresentCodec<R> implements Codec<R> {
 
     @Override
     public <T> DataResult<Pair<R, T>> decode(DynamicOps<T> ops, T input) {
-        if (key.getOrNull(ops) != null) {
+        if (key.isPresent(ops)) {
             return ifPresent.decode(ops, input);
         } else {
             return ifAbsent.decode(ops, input);
@@ -41,7 +41,7 @@ public class IfPresentCodec<R> implements Codec<R> {
 
     @Override
     public <T> DataResult<T> encode(R input, DynamicOps<T> ops, T prefix) {
-        if (key.getOrNull(ops) != null) {
+        if (key.isPresent(ops)) {
             return ifPresent.encode(input, ops, prefix);
         } else {
             return ifAbsent.encode(input, ops, prefix);
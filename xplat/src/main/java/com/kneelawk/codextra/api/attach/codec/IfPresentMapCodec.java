@@ -40,7 +40,7 @@ public class IfPresentMapCodec<R> extends MapCodec<R> {
 
     @Override
     public <T> DataResult<R> decode(DynamicOps<T> ops, MapLike<T> input) {
-        if (key.getOrNull(ops) != null) {
+        if (key.isPresent(ops)) {
             return ifPresent.decode(ops, input);
         } else {
             return ifAbsent.decode(ops, input);
@@ -49,7 +49,7 @@ public class IfPresentMapCodec<R> extends MapCodec<R> {
 
     @Override
     public <T> RecordBuilder<T> encode(R input, DynamicOps<T> ops, RecordBuilder<T> prefix) {
-        if (key.getOrNull(ops) != null) {
+        if (key.isPresent(ops)) {
             return ifPresent.encode(input, ops, prefix);
         } else {
             return ifAbsent.encode(input, ops, prefix);
@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach.codec;
+
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+import com.mojang.datafixers.util.Pair;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+
+import com.kneelawk.codextra.api.attach.AttachmentManager;
+import com.kneelawk.codextra.api.attach.IntAttachmentKey;
+
+/**
+ * A {@link Codec} that retrieves an {@code int} attachment without boxing it and determines which codec to use based
+ * on that attachment.
+ *
+ * @param <R> the type this codec handles.
+ */
+public class IntDispatchCodec<R> implements Codec<R> {
+    private final IntAttachmentKey key;
+    private final IntFunction<? extends Codec<? extends R>> dispatcher;
+
+    /**
+     * Creates a new {@link IntDispatchCodec}.
+     *
+     * @param key        the key of the attachment to retrieve.
+     * @param dispatcher the function to get the codec based on the retrieved attachment.
+     */
+    public IntDispatchCodec(IntAttachmentKey key, IntFunction<? extends Codec<? extends R>> dispatcher) {
+        this.key = key;
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public <T> DataResult<Pair<R, T>> decode(DynamicOps<T> ops, T input) {
+        AttachmentManager manager = AttachmentManager.resolve(ops);
+        if (manager == null || !manager.contains(key)) return missing(key, ops);
+        Codec<? extends R> codec = dispatcher.apply(manager.getInt(key, 0));
+        return codec.decode(ops, input).map(pair -> pair.mapFirst(Function.identity()));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> DataResult<T> encode(R input, DynamicOps<T> ops, T prefix) {
+        AttachmentManager manager = AttachmentManager.resolve(ops);
+        if (manager == null || !manager.contains(key)) return missing(key, ops);
+        // intentional cast, as dispatching makes sure the same codec is used for encoding as decoding
+        Codec<R> codec = (Codec<R>) dispatcher.apply(manager.getInt(key, 0));
+        return codec.encode(input, ops, prefix);
+    }
+
+    // only used when the attachment is missing, so the boxing path can build the error message
+    static <R> DataResult<R> missing(IntAttachmentKey key, DynamicOps<?> ops) {
+        return key.getResult(ops)
+            .flatMap(value -> DataResult.error(() -> "Attachment [" + key.getName() + "] not present."));
+    }
+
+    @Override
+    public String toString() {
+        return "IntDispatchCodec[" + key + " " + dispatcher + "]";
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach.codec;
+
+import java.util.function.IntFunction;
+import java.util.stream.Stream;
+
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.MapLike;
+import com.mojang.serialization.RecordBuilder;
+
+import com.kneelawk.codextra.api.attach.AttachmentManager;
+import com.kneelawk.codextra.api.attach.IntAttachmentKey;
+
+/**
+ * {@link MapCodec} for retrieving a value from an {@code int} attachment without boxing the attachment.
+ *
+ * @param <R> the type of value to return.
+ */
+public class IntRetrievalMapCodec<R> extends MapCodec<R> {
+    private final IntAttachmentKey key;
+    private final IntFunction<? extends R> retriever;
+
+    /**
+     * Creates a new {@link IntRetrievalMapCodec}.
+     *
+     * @param key       the key of the attachment to retrieve.
+     * @param retriever the function that retrieves the desired value from the attachment value.
+     */
+    public IntRetrievalMapCodec(IntAttachmentKey key, IntFunction<? extends R> retriever) {
+        this.key = key;
+        this.retriever = retriever;
+    }
+
+    @Override
+    public <T> Stream<T> keys(DynamicOps<T> ops) {
+        return Stream.empty();
+    }
+
+    @Override
+    public <T> DataResult<R> decode(DynamicOps<T> ops, MapLike<T> input) {
+        AttachmentManager manager = AttachmentManager.resolve(ops);
+        if (manager == null || !manager.contains(key)) return IntDispatchCodec.missing(key, ops);
+        return DataResult.success(retriever.apply(manager.getInt(key, 0)));
+    }
+
+    @Override
+    public <T> RecordBuilder<T> encode(R input, DynamicOps<T> ops, RecordBuilder<T> prefix) {
+        return prefix;
+    }
+
+    @Override
+    public String toString() {
+        return "IntRetrievalMapCodec[" + key + " " + retriever + "]";
+    }
+}
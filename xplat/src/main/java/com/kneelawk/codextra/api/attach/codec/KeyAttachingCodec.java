@@ -4,6 +4,8 @@ import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
+import org.jetbrains.annotations.Nullable;
+
 import com.mojang.serialization.DataResult;
 import com.mojang.serialization.DynamicOps;
 import com.mojang.serialization.MapCodec;
@@ -11,7 +13,7 @@ import com.mojang.serialization.MapLike;
 import com.mojang.serialization.RecordBuilder;
 
 import com.kneelawk.codextra.api.attach.AttachmentKey;
-import com.kneelawk.codextra.api.util.FunctionUtils;
+import com.kneelawk.codextra.api.attach.AttachmentSet;
 
 /**
  * A {@link MapCodec} that decodes one value and uses it to create attachments to attach to the context when decoding
@@ -22,9 +24,11 @@ import com.kneelawk.codextra.api.util.FunctionUtils;
  */
 public class KeyAttachingCodec<K, R> extends MapCodec<R> {
     private final MapCodec<K> keyCodec;
-    private final Function<? super K, ? extends DataResult<? extends Map<AttachmentKey<?>, ?>>> attachmentsGetter;
+    private final Function<? super K, ? extends DataResult<AttachmentSet>> attachmentsGetter;
     private final MapCodec<R> wrappedCodec;
     private final Function<? super R, ? extends DataResult<? extends K>> keyGetter;
+    // set when the key is itself the only attachment, so it can be pushed without building an attachment set
+    private final @Nullable AttachmentKey<K> singleKey;
 
     /**
      * Creates a new {@link KeyAttachingCodec} that uses its key as its single attachment.
@@ -40,11 +44,16 @@ public class KeyAttachingCodec<K, R> extends MapCodec<R> {
     public static <A, R> KeyAttachingCodec<A, R> single(AttachmentKey<A> key, MapCodec<A> keyCodec,
                                                         MapCodec<R> wrappedCodec,
                                                         Function<? super R, ? extends DataResult<? extends A>> keyGetter) {
-        return new KeyAttachingCodec<>(keyCodec, a -> DataResult.success(Map.of(key, a)), wrappedCodec, keyGetter);
+        return new KeyAttachingCodec<>(keyCodec, wrappedCodec, keyGetter,
+            a -> DataResult.success(AttachmentSet.of(key, a)), key);
     }
 
     /**
      * Creates a new {@link KeyAttachingCodec}.
+     * <p>
+     * Each map returned by the attachments getter is copied into an {@link AttachmentSet} before its attachments are
+     * pushed, so changes made to the map afterward are not seen by the wrapped codec. Use
+     * {@link #ofSets(MapCodec, Function, MapCodec, Function)} to skip the copy.
      *
      * @param keyCodec          the codec for the key to be turned into attachments.
      * @param attachmentsGetter the function to turn the key into attachments.
@@ -55,10 +64,37 @@ public class KeyAttachingCodec<K, R> extends MapCodec<R> {
                              Function<? super K, ? extends DataResult<? extends Map<AttachmentKey<?>, ?>>> attachmentsGetter,
                              MapCodec<R> wrappedCodec,
                              Function<? super R, ? extends DataResult<? extends K>> keyGetter) {
+        this(keyCodec, wrappedCodec, keyGetter, k -> attachmentsGetter.apply(k).map(AttachmentSet::copyOf), null);
+    }
+
+    /**
+     * Creates a new {@link KeyAttachingCodec} that turns its key into an {@link AttachmentSet}.
+     *
+     * @param keyCodec          the codec for the key to be turned into attachments.
+     * @param attachmentsGetter the function to turn the key into attachments.
+     * @param wrappedCodec      the codec to pass the attachments to.
+     * @param keyGetter         the function to get the key back from the result type.
+     * @param <K>               the key type.
+     * @param <R>               the result type.
+     * @return the new codec.
+     */
+    public static <K, R> KeyAttachingCodec<K, R> ofSets(MapCodec<K> keyCodec,
+                                                        Function<? super K, ? extends DataResult<AttachmentSet>> attachmentsGetter,
+                                                        MapCodec<R> wrappedCodec,
+                                                        Function<? super R, ? extends DataResult<? extends K>> keyGetter) {
+        return new KeyAttachingCodec<>(keyCodec, wrappedCodec, keyGetter, attachmentsGetter, null);
+    }
+
+    // argument order differs from the public constructor so the two don't have the same erasure
+    private KeyAttachingCodec(MapCodec<K> keyCodec, MapCodec<R> wrappedCodec,
+                              Function<? super R, ? extends DataResult<? extends K>> keyGetter,
+                              Function<? super K, ? extends DataResult<AttachmentSet>> attachmentsGetter,
+                              @Nullable AttachmentKey<K> singleKey) {
         this.keyCodec = keyCodec;
         this.attachmentsGetter = attachmentsGetter;
         this.wrappedCodec = wrappedCodec;
         this.keyGetter = keyGetter;
+        this.singleKey = singleKey;
     }
 
     @Override
@@ -68,11 +104,20 @@ public class KeyAttachingCodec<K, R> extends MapCodec<R> {
 
     @Override
     public <T> DataResult<R> decode(DynamicOps<T> ops, MapLike<T> input) {
-        return keyCodec.decode(ops, input).flatMap(attachmentsGetter.andThen(FunctionUtils.dataIdentity()))
-            .flatMap(attachmentMap -> {
-                DynamicOps<T> attached = push(ops, attachmentMap);
+        if (singleKey != null) {
+            return keyCodec.decode(ops, input).flatMap(key -> {
+                DynamicOps<T> attached = singleKey.push(ops, key);
                 DataResult<R> result = wrappedCodec.decode(attached, input);
-                pop(attached, attachmentMap);
+                singleKey.popAndRelease(attached, ops);
+                return result;
+            });
+        }
+
+        return keyCodec.decode(ops, input).flatMap(attachmentsGetter)
+            .flatMap(attachments -> {
+                DynamicOps<T> attached = attachments.push(ops);
+                DataResult<R> result = wrappedCodec.decode(attached, input);
+                attachments.popAndRelease(attached, ops);
                 return result;
             });
     }
@@ -85,36 +130,33 @@ public class KeyAttachingCodec<K, R> extends MapCodec<R> {
         }
 
         K key = keyResult.result().get();
-        DataResult<? extends Map<AttachmentKey<?>, ?>> attachmentMapResult = attachmentsGetter.apply(key);
-        if (attachmentMapResult.isError()) {
-            return prefix.withErrorsFrom(attachmentMapResult);
+        if (singleKey != null) {
+            prefix = keyCodec.encode(key, ops, prefix);
+
+            DynamicOps<T> attached = singleKey.push(ops, key);
+            RecordBuilder<T> wrapped =
+                wrappedCodec.encode(input, attached, OpsReplacingRecordBuilder.wrap(prefix, attached));
+            singleKey.popAndRelease(attached, ops);
+
+            return OpsReplacingRecordBuilder.unwrap(wrapped, prefix, ops);
+        }
+
+        DataResult<AttachmentSet> attachmentsResult = attachmentsGetter.apply(key);
+        if (attachmentsResult.isError()) {
+            return prefix.withErrorsFrom(attachmentsResult);
         }
 
         prefix = keyCodec.encode(key, ops, prefix);
 
-        Map<AttachmentKey<?>, ?> attachmentMap = attachmentMapResult.result().get();
-        DynamicOps<T> attached = push(ops, attachmentMap);
+        AttachmentSet attachments = attachmentsResult.result().get();
+        DynamicOps<T> attached = attachments.push(ops);
         RecordBuilder<T> wrapped =
             wrappedCodec.encode(input, attached, OpsReplacingRecordBuilder.wrap(prefix, attached));
-        pop(attached, attachmentMap);
+        attachments.popAndRelease(attached, ops);
 
         return OpsReplacingRecordBuilder.unwrap(wrapped, prefix, ops);
     }
 
-    @SuppressWarnings("unchecked")
-    private <T> DynamicOps<T> push(DynamicOps<T> ops, Map<AttachmentKey<?>, ?> attachmentMap) {
-        for (var entry : attachmentMap.entrySet()) {
-            ops = ((AttachmentKey<Object>) entry.getKey()).push(ops, entry.getValue());
-        }
-        return ops;
-    }
-
-    private <T> void pop(DynamicOps<T> ops, Map<AttachmentKey<?>, ?> attachmentMap) {
-        for (var key : attachmentMap.keySet()) {
-            key.pop(ops);
-        }
-    }
-
     @Override
     public String toString() {
         return "KeyAttachingCodec[" + keyCodec + " " + attachmentsGetter + " " + wrappedCodec + " " + keyGetter + "]";
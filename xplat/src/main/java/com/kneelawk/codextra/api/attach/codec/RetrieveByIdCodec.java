@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach.codec;
+
+import com.mojang.datafixers.util.Pair;
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.IdTable;
+
+/**
+ * A {@link Codec} that encodes values as their ids in an attached {@link IdTable}.
+ *
+ * @param <V> the value type.
+ */
+public class RetrieveByIdCodec<V> implements Codec<V> {
+    private final AttachmentKey<IdTable<V>> key;
+
+    /**
+     * Creates a new {@link RetrieveByIdCodec}.
+     *
+     * @param key the key of the id table attachment.
+     */
+    public RetrieveByIdCodec(AttachmentKey<IdTable<V>> key) {
+        this.key = key;
+    }
+
+    @Override
+    public <T> DataResult<Pair<V, T>> decode(DynamicOps<T> ops, T input) {
+        return key.getResult(ops).flatMap(table -> ops.getNumberValue(input).flatMap(number -> {
+            int id = number.intValue();
+            V value = table.byId(id);
+            if (value == null) {
+                return DataResult.error(() -> "Unknown id " + id + " in attachment [" + key.getName() + "]");
+            }
+            return DataResult.success(Pair.of(value, ops.empty()));
+        }));
+    }
+
+    @Override
+    public <T> DataResult<T> encode(V input, DynamicOps<T> ops, T prefix) {
+        return key.getResult(ops).flatMap(table -> {
+            int id = table.getId(input);
+            if (id == IdTable.NO_ID) {
+                return DataResult.error(() -> "Value " + input + " has no id in attachment [" + key.getName() + "]");
+            }
+            return ops.mergeToPrimitive(prefix, ops.createInt(id));
+        });
+    }
+
+    @Override
+    public String toString() {
+        return "RetrieveByIdCodec[" + key + "]";
+    }
+}
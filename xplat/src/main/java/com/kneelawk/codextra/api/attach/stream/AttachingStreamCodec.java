@@ -31,6 +31,7 @@ import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.codec.StreamCodec;
 
 import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.AttachmentSet;
 
 /**
  * A {@link StreamCodec} for attaching a value and passing it as context to the wrapped codec.
@@ -39,7 +40,7 @@ import com.kneelawk.codextra.api.attach.AttachmentKey;
  * @param <V> the result type.
  */
 public class AttachingStreamCodec<B extends FriendlyByteBuf, V> implements StreamCodec<B, V> {
-    private final Map<AttachmentKey<?>, ?> attachmentMap;
+    private final AttachmentSet attachments;
     private final StreamCodec<? super B, V> wrapped;
 
     /**
@@ -55,7 +56,7 @@ public class AttachingStreamCodec<B extends FriendlyByteBuf, V> implements Strea
      */
     public static <A, B extends FriendlyByteBuf, V> AttachingStreamCodec<B, V> single(AttachmentKey<A> key, A value,
                                                                                       StreamCodec<? super B, V> wrapped) {
-        return new AttachingStreamCodec<>(Map.of(key, value), wrapped);
+        return new AttachingStreamCodec<>(AttachmentSet.of(key, value), wrapped);
     }
 
     /**
@@ -65,45 +66,42 @@ public class AttachingStreamCodec<B extends FriendlyByteBuf, V> implements Strea
      * @param wrapped       the stream codec to pass the attachments to.
      */
     public AttachingStreamCodec(Map<AttachmentKey<?>, ?> attachmentMap, StreamCodec<? super B, V> wrapped) {
-        this.attachmentMap = attachmentMap;
+        this(AttachmentSet.copyOf(attachmentMap), wrapped);
+    }
+
+    /**
+     * Creates a new {@link AttachingStreamCodec}.
+     *
+     * @param attachments the attachments to attach.
+     * @param wrapped     the stream codec to pass the attachments to.
+     */
+    public AttachingStreamCodec(AttachmentSet attachments, StreamCodec<? super B, V> wrapped) {
+        this.attachments = attachments;
         this.wrapped = wrapped;
     }
 
     @Override
     public V decode(B object) {
-        push(object);
+        attachments.push(object);
         try {
             return wrapped.decode(object);
         } finally {
-            pop(object);
+            attachments.pop(object);
         }
     }
 
     @Override
     public void encode(B object, V object2) {
-        push(object);
+        attachments.push(object);
         try {
             wrapped.encode(object, object2);
         } finally {
-            pop(object);
-        }
-    }
-
-    @SuppressWarnings("unchecked")
-    private void push(FriendlyByteBuf buf) {
-        for (var entry : attachmentMap.entrySet()) {
-            ((AttachmentKey<Object>) entry.getKey()).push(buf, entry.getValue());
-        }
-    }
-
-    private void pop(FriendlyByteBuf buf) {
-        for (var key : attachmentMap.keySet()) {
-            key.pop(buf);
+            attachments.pop(object);
         }
     }
 
     @Override
     public String toString() {
-        return "AttachingStreamCodec[" + attachmentMap + " " + wrapped + "]";
+        return "AttachingStreamCodec[" + attachments + " " + wrapped + "]";
     }
 }
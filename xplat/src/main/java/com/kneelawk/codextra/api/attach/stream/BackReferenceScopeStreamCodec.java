@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach.stream;
+
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.codec.StreamCodec;
+
+import com.kneelawk.codextra.impl.attach.BackReferenceFrame;
+
+/**
+ * A {@link StreamCodec} that gives every {@link BackReferenceStreamCodec} used by the wrapped codec a fresh table of
+ * the values already written or read, which is discarded once the wrapped codec is done.
+ *
+ * @param <B> the buffer type.
+ * @param <V> the value type.
+ */
+public class BackReferenceScopeStreamCodec<B extends FriendlyByteBuf, V> implements StreamCodec<B, V> {
+    private final StreamCodec<? super B, V> wrapped;
+
+    /**
+     * Creates a new {@link BackReferenceScopeStreamCodec}.
+     *
+     * @param wrapped the codec to give back-reference tables to.
+     */
+    public BackReferenceScopeStreamCodec(StreamCodec<? super B, V> wrapped) {
+        this.wrapped = wrapped;
+    }
+
+    @Override
+    public V decode(B object) {
+        BackReferenceFrame.KEY.push(object, new BackReferenceFrame());
+        try {
+            return wrapped.decode(object);
+        } finally {
+            BackReferenceFrame.KEY.pop(object);
+        }
+    }
+
+    @Override
+    public void encode(B object, V object2) {
+        BackReferenceFrame.KEY.push(object, new BackReferenceFrame());
+        try {
+            wrapped.encode(object, object2);
+        } finally {
+            BackReferenceFrame.KEY.pop(object);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BackReferenceScopeStreamCodec[" + wrapped + "]";
+    }
+}
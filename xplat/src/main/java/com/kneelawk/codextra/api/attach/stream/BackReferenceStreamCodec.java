@@ -0,0 +1,105 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach.stream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+
+import it.unimi.dsi.fastutil.Hash;
+
+import net.minecraft.network.VarInt;
+import net.minecraft.network.codec.StreamCodec;
+
+import com.kneelawk.codextra.impl.attach.BackReferenceFrame;
+
+/**
+ * A {@link StreamCodec} that writes values that have already been written within the same
+ * {@link BackReferenceScopeStreamCodec} as references to the first time they were written.
+ * <p>
+ * Outside a back-reference scope, this simply passes through to the wrapped codec.
+ *
+ * @param <B> the buffer type.
+ * @param <V> the value type.
+ */
+public class BackReferenceStreamCodec<B extends ByteBuf, V> implements StreamCodec<B, V> {
+    private final StreamCodec<? super B, V> wrapped;
+    private final Hash.Strategy<? super V> strategy;
+
+    /**
+     * Creates a new {@link BackReferenceStreamCodec}.
+     *
+     * @param wrapped  the codec for writing values the first time they are written.
+     * @param strategy the strategy for finding values that have already been written.
+     */
+    public BackReferenceStreamCodec(StreamCodec<? super B, V> wrapped, Hash.Strategy<? super V> strategy) {
+        this.wrapped = wrapped;
+        this.strategy = strategy;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V decode(B buf) {
+        BackReferenceFrame frame = BackReferenceFrame.KEY.getOrNull(buf);
+        if (frame == null) return wrapped.decode(buf);
+        BackReferenceFrame.Table table = frame.getTable(this, strategy);
+
+        int reference = VarInt.read(buf);
+        if (reference == 0) {
+            V value = wrapped.decode(buf);
+            table.addRead(value);
+            return value;
+        }
+
+        Object value = table.getRead(reference - 1);
+        if (value == null) throw new DecoderException("Unknown back-reference " + (reference - 1));
+        return (V) value;
+    }
+
+    @Override
+    public void encode(B buf, V value) {
+        BackReferenceFrame frame = BackReferenceFrame.KEY.getOrNull(buf);
+        if (frame == null) {
+            wrapped.encode(buf, value);
+            return;
+        }
+        BackReferenceFrame.Table table = frame.getTable(this, strategy);
+
+        int id = table.getWrittenId(value);
+        if (id >= 0) {
+            VarInt.write(buf, id + 1);
+            return;
+        }
+
+        VarInt.write(buf, 0);
+        wrapped.encode(buf, value);
+        table.addWritten(value);
+    }
+
+    @Override
+    public String toString() {
+        return "BackReferenceStreamCodec[" + wrapped + " " + strategy + "]";
+    }
+}
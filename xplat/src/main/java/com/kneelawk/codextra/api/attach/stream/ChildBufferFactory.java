@@ -1,15 +1,50 @@
 package com.kneelawk.codextra.api.attach.stream;
 
+import org.jetbrains.annotations.Nullable;
+
+import io.netty.buffer.ByteBuf;
+
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+
+import com.kneelawk.codextra.impl.attach.ChildBufferFactories;
+
 /**
  * Creates a buffer that inherits metadata (like {@link net.minecraft.core.RegistryAccess}) from a parent buffer.
  * <p>
  * Note: Codextra buffer attachments are usually automatically synced separately, unless stated otherwise.
+ * <p>
+ * Codecs using child buffers release them once they are done with them.
  *
  * @param <B1> the parent buffer type.
  * @param <B2> the child buffer type.
  */
 @FunctionalInterface
 public interface ChildBufferFactory<B1, B2> {
+    /**
+     * Gets a child buffer factory for {@link FriendlyByteBuf}s.
+     * <p>
+     * Child buffers are allocated with the parent buffer's allocator, and are able to wrap parts of the parent buffer
+     * without copying.
+     *
+     * @return a child buffer factory for {@link FriendlyByteBuf}s.
+     */
+    static ChildBufferFactory<FriendlyByteBuf, FriendlyByteBuf> friendly() {
+        return ChildBufferFactories.FRIENDLY;
+    }
+
+    /**
+     * Gets a child buffer factory for {@link RegistryFriendlyByteBuf}s.
+     * <p>
+     * Child buffers are allocated with the parent buffer's allocator, and are able to wrap parts of the parent buffer
+     * without copying. Child buffers use the parent buffer's {@link net.minecraft.core.RegistryAccess}.
+     *
+     * @return a child buffer factory for {@link RegistryFriendlyByteBuf}s.
+     */
+    static ChildBufferFactory<RegistryFriendlyByteBuf, RegistryFriendlyByteBuf> registryFriendly() {
+        return ChildBufferFactories.REGISTRY_FRIENDLY;
+    }
+
     /**
      * Create a new, blank buffer with the given initial capacity
      * and with metadata (like {@link net.minecraft.core.RegistryAccess}) from the parent buffer.
@@ -21,4 +56,23 @@ public interface ChildBufferFactory<B1, B2> {
      * @return a new, blank buffer.
      */
     B2 create(int initialCapacity, B1 parent);
+
+    /**
+     * Creates a buffer that reads from and writes to the given contents
+     * and with metadata (like {@link net.minecraft.core.RegistryAccess}) from the parent buffer.
+     * <p>
+     * This lets codecs decode from a slice of the parent buffer, or encode straight into the parent buffer, without
+     * copying. The returned buffer must share the contents' reader and writer indices. It takes ownership of the given
+     * contents, so releasing the returned buffer must release the contents too.
+     * <p>
+     * Factories that can't wrap existing buffers return {@code null}, in which case a buffer from
+     * {@link #create(int, Object)} is used and the contents are copied into or out of it.
+     *
+     * @param contents the buffer to read from or write to.
+     * @param parent   the parent buffer to get metadata from.
+     * @return a buffer backed by the given contents, or {@code null} if this factory can't wrap buffers.
+     */
+    default @Nullable B2 wrap(ByteBuf contents, B1 parent) {
+        return null;
+    }
 }
@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach.stream;
+
+import java.util.Objects;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+
+import net.minecraft.network.codec.StreamCodec;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.DeltaBaseline;
+import com.kneelawk.codextra.api.stream.DeltaCodec;
+
+/**
+ * A {@link StreamCodec} that writes values as the changes from the previous value, kept in an attached
+ * {@link DeltaBaseline}.
+ *
+ * @param <B> the buffer type.
+ * @param <V> the value type.
+ */
+public class DeltaStreamCodec<B extends ByteBuf, V> implements StreamCodec<B, V> {
+    private static final byte FULL = 0;
+    private static final byte UNCHANGED = 1;
+    private static final byte DELTA = 2;
+
+    private final AttachmentKey<DeltaBaseline<V>> key;
+    private final DeltaCodec<? super B, V> codec;
+
+    /**
+     * Creates a new {@link DeltaStreamCodec}.
+     *
+     * @param key   the key of the baseline attachment.
+     * @param codec the codec for writing values and their changes.
+     */
+    public DeltaStreamCodec(AttachmentKey<DeltaBaseline<V>> key, DeltaCodec<? super B, V> codec) {
+        this.key = key;
+        this.codec = codec;
+    }
+
+    @Override
+    public V decode(B buf) {
+        DeltaBaseline<V> baseline = key.getOrThrow(buf);
+        byte header = buf.readByte();
+
+        V value;
+        if (header == FULL) {
+            value = codec.decode(buf);
+        } else {
+            V previous = baseline.getRead();
+            if (previous == null) {
+                throw new DecoderException("Received a delta for attachment [" + key.getName() + "] with no baseline");
+            }
+
+            if (header == UNCHANGED) {
+                value = previous;
+            } else if (header == DELTA) {
+                value = codec.decodeDelta(buf, previous);
+            } else {
+                throw new DecoderException("Unknown delta header " + header);
+            }
+        }
+
+        baseline.setRead(value);
+        return value;
+    }
+
+    @Override
+    public void encode(B buf, V value) {
+        DeltaBaseline<V> baseline = key.getOrThrow(buf);
+        V previous = baseline.getWritten();
+
+        if (previous == null) {
+            buf.writeByte(FULL);
+            codec.encode(buf, value);
+        } else if (Objects.equals(previous, value)) {
+            buf.writeByte(UNCHANGED);
+        } else {
+            buf.writeByte(DELTA);
+            codec.encodeDelta(buf, previous, value);
+        }
+
+        baseline.setWritten(value);
+    }
+
+    @Override
+    public String toString() {
+        return "DeltaStreamCodec[" + key + " " + codec + "]";
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach.stream;
+
+import io.netty.buffer.ByteBuf;
+
+import net.minecraft.network.codec.StreamCodec;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.StreamDictionary;
+
+/**
+ * A {@link StreamCodec} that writes repeated values as ids in an attached {@link StreamDictionary}.
+ *
+ * @param <B> the buffer type.
+ * @param <V> the value type.
+ */
+public class DictionaryStreamCodec<B extends ByteBuf, V> implements StreamCodec<B, V> {
+    private final AttachmentKey<StreamDictionary> key;
+    private final StreamCodec<? super B, V> literalCodec;
+
+    /**
+     * Creates a new {@link DictionaryStreamCodec}.
+     *
+     * @param key          the key of the dictionary attachment.
+     * @param literalCodec the codec for values that are not in the dictionary yet.
+     */
+    public DictionaryStreamCodec(AttachmentKey<StreamDictionary> key, StreamCodec<? super B, V> literalCodec) {
+        this.key = key;
+        this.literalCodec = literalCodec;
+    }
+
+    @Override
+    public V decode(B buf) {
+        return key.getOrThrow(buf).read(buf, literalCodec);
+    }
+
+    @Override
+    public void encode(B buf, V value) {
+        key.getOrThrow(buf).write(buf, value, literalCodec);
+    }
+
+    @Override
+    public String toString() {
+        return "DictionaryStreamCodec[" + key + " " + literalCodec + "]";
+    }
+}
@@ -33,7 +33,7 @@ public class IfPresentStreamCodec<B extends ByteBuf, V> implements StreamCodec<B
 
     @Override
     public V decode(B buf) {
-        if (key.getOrNull(buf) != null) {
+        if (key.isPresent(buf)) {
             return ifPresent.decode(buf);
         } else {
             return ifAbsent.decode(buf);
@@ -42,7 +42,7 @@ public class IfPresentStreamCodec<B extends ByteBuf, V> implements StreamCodec<B
 
     @Override
     public void encode(B buf, V input) {
-        if (key.getOrNull(buf) != null) {
+        if (key.isPresent(buf)) {
             ifPresent.encode(buf, input);
         } else {
             ifAbsent.encode(buf, input);
@@ -3,11 +3,16 @@ package com.kneelawk.codextra.api.attach.stream;
 import java.util.Map;
 import java.util.function.Function;
 
+import org.jetbrains.annotations.Nullable;
+
+import io.netty.buffer.ByteBuf;
+
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.codec.StreamCodec;
 
 import com.kneelawk.codextra.api.attach.AttachmentKey;
 import com.kneelawk.codextra.api.attach.AttachmentManager;
+import com.kneelawk.codextra.api.attach.AttachmentSet;
 
 /**
  * A {@link StreamCodec} that decodes one value and uses it create attachments to attach to the context when decoding
@@ -15,6 +20,10 @@ import com.kneelawk.codextra.api.attach.AttachmentManager;
  * in the decoded key.
  * <p>
  * This is good for things like palettes.
+ * <p>
+ * The wrapped value is written before the key, as the key can only be written once the wrapped value is done mutating
+ * it. When the buffer factory is able to wrap buffers, the wrapped value is written to and read from the main buffer
+ * without copying.
  *
  * @param <B1> the buffer type of this stream codec.
  * @param <B2> the buffer type of the wrapped codec.
@@ -23,19 +32,24 @@ import com.kneelawk.codextra.api.attach.AttachmentManager;
  */
 public class MutReadAttachingStreamCodec<B1 extends FriendlyByteBuf, B2 extends FriendlyByteBuf, K, V>
     implements StreamCodec<B1, V> {
+    // wrapped value lengths are written as VarInts padded to their maximum length, so they can be filled in afterward
+    private static final int LENGTH_BYTES = 5;
+
     private final StreamCodec<? super B1, K> keyCodec;
-    private final Function<? super K, ? extends Map<AttachmentKey<?>, ?>> attachmentsGetter;
+    private final Function<? super K, ? extends AttachmentSet> attachmentsGetter;
     private final ChildBufferFactory<? super B1, B2> wrappedBufferCtor;
     private final StreamCodec<? super B2, V> wrappedCodec;
     private final Function<? super V, ? extends K> keyGetter;
+    // set when the key is itself the only attachment, so it can be pushed without building an attachment set
+    private final @Nullable AttachmentKey<K> singleKey;
 
     /**
      * Creates a new {@link MutReadAttachingStreamCodec} that uses its key as its single attachment.
      *
      * @param key               the attachment key.
      * @param keyCodec          the codec for the attachment.
-     * @param wrappedBufferCtor for creating the buffer used by the wrapped codec, as writing wrapped codec values to
-     *                          the main buffer must be delayed.
+     * @param wrappedBufferCtor for creating the buffer used by the wrapped codec. Factories that are able to wrap
+     *                          buffers let the wrapped value be encoded and decoded in place.
      * @param wrappedCodec      the codec to pass the attachment to.
      * @param keyGetter         a function for getting the attachment when given the result type. This may simply create
      *                          a new attachment if the attachment is intended to get all its value from being mutated
@@ -49,17 +63,21 @@ public class MutReadAttachingStreamCodec<B1 extends FriendlyByteBuf, B2 extends
     public static <A, B1 extends FriendlyByteBuf, B2 extends FriendlyByteBuf, V> MutReadAttachingStreamCodec<B1, B2, A, V> single(
         AttachmentKey<A> key, StreamCodec<? super B1, A> keyCodec, ChildBufferFactory<? super B1, B2> wrappedBufferCtor,
         StreamCodec<? super B2, V> wrappedCodec, Function<? super V, ? extends A> keyGetter) {
-        return new MutReadAttachingStreamCodec<>(keyCodec, a -> Map.of(key, a), wrappedBufferCtor, wrappedCodec,
-            keyGetter);
+        return new MutReadAttachingStreamCodec<>(keyCodec, wrappedBufferCtor, wrappedCodec, keyGetter,
+            a -> AttachmentSet.of(key, a), key);
     }
 
     /**
      * Creates a new {@link MutReadAttachingStreamCodec}.
+     * <p>
+     * The attachments getter's map is copied into an {@link AttachmentSet} each time the getter is called, and only
+     * that copy is pushed, so mutating the map while the wrapped codec runs has no effect on its attachments. Use
+     * {@link #ofSets(StreamCodec, Function, ChildBufferFactory, StreamCodec, Function)} to skip the copy.
      *
      * @param keyCodec          the codec for the key to be turned into attachments.
      * @param attachmentsGetter the function to turn the key into attachments.
-     * @param wrappedBufferCtor for creating the buffer used by the wrapped codec, as writing wrapped codec values to
-     *                          the main buffer must be delayed.
+     * @param wrappedBufferCtor for creating the buffer used by the wrapped codec. Factories that are able to wrap
+     *                          buffers let the wrapped value be encoded and decoded in place.
      * @param wrappedCodec      the codec to pass the attachments to.
      * @param keyGetter         the function to get the key back from the result type. This may simply create
      *                          a new key if the key is intended to get all its value from being mutated
@@ -70,29 +88,77 @@ public class MutReadAttachingStreamCodec<B1 extends FriendlyByteBuf, B2 extends
                                        ChildBufferFactory<? super B1, B2> wrappedBufferCtor,
                                        StreamCodec<? super B2, V> wrappedCodec,
                                        Function<? super V, ? extends K> keyGetter) {
+        this(keyCodec, wrappedBufferCtor, wrappedCodec, keyGetter,
+            k -> AttachmentSet.copyOf(attachmentsGetter.apply(k)), null);
+    }
+
+    /**
+     * Creates a new {@link MutReadAttachingStreamCodec} that turns its key into an {@link AttachmentSet}.
+     *
+     * @param keyCodec          the codec for the key to be turned into attachments.
+     * @param attachmentsGetter the function to turn the key into attachments.
+     * @param wrappedBufferCtor for creating the buffer used by the wrapped codec. Factories that are able to wrap
+     *                          buffers let the wrapped value be encoded and decoded in place.
+     * @param wrappedCodec      the codec to pass the attachments to.
+     * @param keyGetter         the function to get the key back from the result type.
+     * @param <B1>              the buffer type of this stream codec.
+     * @param <B2>              the buffer type of the wrapped codec.
+     * @param <K>               the key type.
+     * @param <V>               the result type.
+     * @return the new stream codec.
+     */
+    public static <B1 extends FriendlyByteBuf, B2 extends FriendlyByteBuf, K, V> MutReadAttachingStreamCodec<B1, B2, K, V> ofSets(
+        StreamCodec<? super B1, K> keyCodec, Function<? super K, ? extends AttachmentSet> attachmentsGetter,
+        ChildBufferFactory<? super B1, B2> wrappedBufferCtor, StreamCodec<? super B2, V> wrappedCodec,
+        Function<? super V, ? extends K> keyGetter) {
+        return new MutReadAttachingStreamCodec<>(keyCodec, wrappedBufferCtor, wrappedCodec, keyGetter,
+            attachmentsGetter, null);
+    }
+
+    // argument order differs from the public constructor so the two don't have the same erasure
+    private MutReadAttachingStreamCodec(StreamCodec<? super B1, K> keyCodec,
+                                        ChildBufferFactory<? super B1, B2> wrappedBufferCtor,
+                                        StreamCodec<? super B2, V> wrappedCodec,
+                                        Function<? super V, ? extends K> keyGetter,
+                                        Function<? super K, ? extends AttachmentSet> attachmentsGetter,
+                                        @Nullable AttachmentKey<K> singleKey) {
         this.keyCodec = keyCodec;
         this.attachmentsGetter = attachmentsGetter;
         this.wrappedBufferCtor = wrappedBufferCtor;
         this.wrappedCodec = wrappedCodec;
         this.keyGetter = keyGetter;
+        this.singleKey = singleKey;
     }
 
     @Override
     public V decode(B1 buf) {
-        K key = keyCodec.decode(buf);
-
-        Map<AttachmentKey<?>, ?> attachmentMap = attachmentsGetter.apply(key);
+        int wrappedBufLen = buf.readVarInt();
+        ByteBuf contents = buf.readRetainedSlice(wrappedBufLen);
 
-        push(buf, attachmentMap);
+        K key;
+        AttachmentSet attachments;
         try {
-            int wrappedBufLen = buf.readVarInt();
-            B2 wrappedBuf = wrappedBufferCtor.create(wrappedBufLen, buf);
-            AttachmentManager.sync(buf, wrappedBuf);
-            buf.readBytes(wrappedBuf, wrappedBufLen);
+            // the key comes after the wrapped value, as it can only be encoded once the wrapped value has been
+            key = keyCodec.decode(buf);
+
+            // single attachments skip building an attachment set
+            attachments = singleKey != null ? null : attachmentsGetter.apply(key);
+        } catch (Throwable t) {
+            contents.release();
+            throw t;
+        }
 
-            return wrappedCodec.decode(wrappedBuf);
+        B2 wrappedBuf = readBuffer(buf, contents);
+        try {
+            push(buf, key, attachments);
+            try {
+                AttachmentManager.sync(buf, wrappedBuf);
+                return wrappedCodec.decode(wrappedBuf);
+            } finally {
+                pop(buf, attachments);
+            }
         } finally {
-            pop(buf, attachmentMap);
+            wrappedBuf.release();
         }
     }
 
@@ -100,37 +166,111 @@ public class MutReadAttachingStreamCodec<B1 extends FriendlyByteBuf, B2 extends
     public void encode(B1 buf, V input) {
         K key = keyGetter.apply(input);
 
-        Map<AttachmentKey<?>, ?> attachmentMap = attachmentsGetter.apply(key);
+        AttachmentSet attachments = singleKey != null ? null : attachmentsGetter.apply(key);
+
+        // The wrapped value is encoded straight into the main buffer behind a length slot that gets filled in
+        // afterward. The key is written last, as the wrapped codec may still be mutating it.
+        int start = buf.writerIndex();
+        try {
+            buf.writeZero(LENGTH_BYTES);
 
+            push(buf, key, attachments);
+            try {
+                encodeWrapped(buf, input);
+            } finally {
+                pop(buf, attachments);
+            }
+
+            setPaddedVarInt(buf, start, buf.writerIndex() - start - LENGTH_BYTES);
+
+            keyCodec.encode(buf, key);
+        } catch (Throwable t) {
+            // don't leave half a value in the buffer
+            buf.writerIndex(start);
+            throw t;
+        }
+    }
+
+    // always takes ownership of the contents
+    private B2 readBuffer(B1 buf, ByteBuf contents) {
         B2 wrappedBuf;
-        push(buf, attachmentMap);
         try {
+            wrappedBuf = wrappedBufferCtor.wrap(contents, buf);
+        } catch (Throwable t) {
+            contents.release();
+            throw t;
+        }
+        if (wrappedBuf != null) return wrappedBuf;
+
+        try {
+            wrappedBuf = wrappedBufferCtor.create(contents.readableBytes(), buf);
+            try {
+                wrappedBuf.writeBytes(contents);
+            } catch (Throwable t) {
+                wrappedBuf.release();
+                throw t;
+            }
+            return wrappedBuf;
+        } finally {
+            contents.release();
+        }
+    }
+
+    private void encodeWrapped(B1 buf, V input) {
+        // the child buffer takes ownership of what it wraps, so it gets its own reference to the main buffer
+        buf.retain();
+        B2 wrappedBuf;
+        try {
+            wrappedBuf = wrappedBufferCtor.wrap(buf, buf);
+        } catch (Throwable t) {
+            buf.release();
+            throw t;
+        }
+
+        if (wrappedBuf == null) {
+            // factories that can't wrap buffers have their output copied in
+            buf.release();
             wrappedBuf = wrappedBufferCtor.create(0, buf);
-            AttachmentManager.sync(buf, wrappedBuf);
+            try {
+                AttachmentManager.sync(buf, wrappedBuf);
+                wrappedCodec.encode(wrappedBuf, input);
+                buf.writeBytes(wrappedBuf, wrappedBuf.readerIndex(), wrappedBuf.readableBytes());
+            } finally {
+                wrappedBuf.release();
+            }
+            return;
+        }
 
+        try {
+            AttachmentManager.sync(buf, wrappedBuf);
             wrappedCodec.encode(wrappedBuf, input);
         } finally {
-            pop(buf, attachmentMap);
+            wrappedBuf.release();
         }
+    }
 
-        // this stuff should not happen if wrappedCodec.encode fails
-        keyCodec.encode(buf, key);
-
-        // write the wrapped buffer
-        buf.writeVarInt(wrappedBuf.readableBytes());
-        buf.writeBytes(wrappedBuf, wrappedBuf.readerIndex(), wrappedBuf.readableBytes());
+    // a VarInt padded out to its maximum length, which VarInt.read still accepts
+    private static void setPaddedVarInt(ByteBuf buf, int index, int value) {
+        for (int i = 0; i < LENGTH_BYTES - 1; i++) {
+            buf.setByte(index + i, (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf.setByte(index + LENGTH_BYTES - 1, value);
     }
 
-    @SuppressWarnings("unchecked")
-    private void push(FriendlyByteBuf buf, Map<AttachmentKey<?>, ?> attachmentMap) {
-        for (var entry : attachmentMap.entrySet()) {
-            ((AttachmentKey<Object>) entry.getKey()).push(buf, entry.getValue());
+    private void push(B1 buf, K key, @Nullable AttachmentSet attachments) {
+        if (attachments == null) {
+            singleKey.push(buf, key);
+        } else {
+            attachments.push(buf);
         }
     }
 
-    private void pop(FriendlyByteBuf buf, Map<AttachmentKey<?>, ?> attachmentMap) {
-        for (var key : attachmentMap.keySet()) {
-            key.pop(buf);
+    private void pop(B1 buf, @Nullable AttachmentSet attachments) {
+        if (attachments == null) {
+            singleKey.pop(buf);
+        } else {
+            attachments.pop(buf);
         }
     }
 
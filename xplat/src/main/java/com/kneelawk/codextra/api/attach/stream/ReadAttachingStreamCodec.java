@@ -28,10 +28,13 @@ package com.kneelawk.codextra.api.attach.stream;
 import java.util.Map;
 import java.util.function.Function;
 
+import org.jetbrains.annotations.Nullable;
+
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.network.codec.StreamCodec;
 
 import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.AttachmentSet;
 
 /**
  * A {@link StreamCodec} that decodes one value and uses it to create attachments to attach to the context when
@@ -43,9 +46,11 @@ import com.kneelawk.codextra.api.attach.AttachmentKey;
  */
 public class ReadAttachingStreamCodec<B extends FriendlyByteBuf, K, V> implements StreamCodec<B, V> {
     private final StreamCodec<? super B, K> keyCodec;
-    private final Function<? super K, ? extends Map<AttachmentKey<?>, ?>> attachmentsGetter;
+    private final Function<? super K, ? extends AttachmentSet> attachmentsGetter;
     private final StreamCodec<? super B, V> wrappedCodec;
     private final Function<? super V, ? extends K> keyGetter;
+    // set when the key is itself the only attachment, so it can be pushed without building an attachment set
+    private final @Nullable AttachmentKey<K> singleKey;
 
     /**
      * Creates a new {@link ReadAttachingStreamCodec} that uses its key as its single attachment.
@@ -63,11 +68,15 @@ public class ReadAttachingStreamCodec<B extends FriendlyByteBuf, K, V> implement
                                                                                              StreamCodec<? super B, A> keyCodec,
                                                                                              StreamCodec<? super B, V> wrappedCodec,
                                                                                              Function<? super V, ? extends A> keyGetter) {
-        return new ReadAttachingStreamCodec<>(keyCodec, a -> Map.of(key, a), wrappedCodec, keyGetter);
+        return new ReadAttachingStreamCodec<>(keyCodec, wrappedCodec, keyGetter, a -> AttachmentSet.of(key, a), key);
     }
 
     /**
      * Creates a new {@link ReadAttachingStreamCodec}.
+     * <p>
+     * Each map returned by the attachments getter is copied into an {@link AttachmentSet} before being pushed, so the
+     * wrapped codec only sees the map's contents as of that call. Use
+     * {@link #ofSets(StreamCodec, Function, StreamCodec, Function)} to skip the copy.
      *
      * @param keyCodec          the codec for the key to be turned into attachments.
      * @param attachmentsGetter the function to turn the key into attachments.
@@ -78,23 +87,60 @@ public class ReadAttachingStreamCodec<B extends FriendlyByteBuf, K, V> implement
                                     Function<? super K, ? extends Map<AttachmentKey<?>, ?>> attachmentsGetter,
                                     StreamCodec<? super B, V> wrappedCodec,
                                     Function<? super V, ? extends K> keyGetter) {
+        this(keyCodec, wrappedCodec, keyGetter, k -> AttachmentSet.copyOf(attachmentsGetter.apply(k)), null);
+    }
+
+    /**
+     * Creates a new {@link ReadAttachingStreamCodec} that turns its key into an {@link AttachmentSet}.
+     *
+     * @param keyCodec          the codec for the key to be turned into attachments.
+     * @param attachmentsGetter the function to turn the key into attachments.
+     * @param wrappedCodec      the codec to pass the attachments to.
+     * @param keyGetter         the function to get the key back from the result type.
+     * @param <B>               the buffer type.
+     * @param <K>               the key type.
+     * @param <V>               the result type.
+     * @return the new stream codec.
+     */
+    public static <B extends FriendlyByteBuf, K, V> ReadAttachingStreamCodec<B, K, V> ofSets(
+        StreamCodec<? super B, K> keyCodec, Function<? super K, ? extends AttachmentSet> attachmentsGetter,
+        StreamCodec<? super B, V> wrappedCodec, Function<? super V, ? extends K> keyGetter) {
+        return new ReadAttachingStreamCodec<>(keyCodec, wrappedCodec, keyGetter, attachmentsGetter, null);
+    }
+
+    // argument order differs from the public constructor so the two don't have the same erasure
+    private ReadAttachingStreamCodec(StreamCodec<? super B, K> keyCodec,
+                                     StreamCodec<? super B, V> wrappedCodec,
+                                     Function<? super V, ? extends K> keyGetter,
+                                     Function<? super K, ? extends AttachmentSet> attachmentsGetter,
+                                     @Nullable AttachmentKey<K> singleKey) {
         this.keyCodec = keyCodec;
         this.attachmentsGetter = attachmentsGetter;
         this.wrappedCodec = wrappedCodec;
         this.keyGetter = keyGetter;
+        this.singleKey = singleKey;
     }
 
     @Override
     public V decode(B object) {
         K key = keyCodec.decode(object);
 
-        Map<AttachmentKey<?>, ?> attachmentMap = attachmentsGetter.apply(key);
+        if (singleKey != null) {
+            singleKey.push(object, key);
+            try {
+                return wrappedCodec.decode(object);
+            } finally {
+                singleKey.pop(object);
+            }
+        }
+
+        AttachmentSet attachments = attachmentsGetter.apply(key);
 
-        push(object, attachmentMap);
+        attachments.push(object);
         try {
             return wrappedCodec.decode(object);
         } finally {
-            pop(object, attachmentMap);
+            attachments.pop(object);
         }
     }
 
@@ -102,28 +148,27 @@ public class ReadAttachingStreamCodec<B extends FriendlyByteBuf, K, V> implement
     public void encode(B object, V object2) {
         K key = keyGetter.apply(object2);
 
-        Map<AttachmentKey<?>, ?> attachmentMap = attachmentsGetter.apply(key);
+        if (singleKey != null) {
+            keyCodec.encode(object, key);
+
+            singleKey.push(object, key);
+            try {
+                wrappedCodec.encode(object, object2);
+            } finally {
+                singleKey.pop(object);
+            }
+            return;
+        }
+
+        AttachmentSet attachments = attachmentsGetter.apply(key);
 
         keyCodec.encode(object, key);
 
-        push(object, attachmentMap);
+        attachments.push(object);
         try {
             wrappedCodec.encode(object, object2);
         } finally {
-            pop(object, attachmentMap);
-        }
-    }
-
-    @SuppressWarnings("unchecked")
-    private void push(FriendlyByteBuf buf, Map<AttachmentKey<?>, ?> attachmentMap) {
-        for (var entry : attachmentMap.entrySet()) {
-            ((AttachmentKey<Object>) entry.getKey()).push(buf, entry.getValue());
-        }
-    }
-
-    private void pop(FriendlyByteBuf buf, Map<AttachmentKey<?>, ?> attachmentMap) {
-        for (var key : attachmentMap.keySet()) {
-            key.pop(buf);
+            attachments.pop(object);
         }
     }
 
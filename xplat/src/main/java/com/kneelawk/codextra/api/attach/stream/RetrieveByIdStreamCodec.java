@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.attach.stream;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+
+import net.minecraft.network.VarInt;
+import net.minecraft.network.codec.StreamCodec;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.IdTable;
+
+/**
+ * A {@link StreamCodec} that encodes values as their ids in an attached {@link IdTable}.
+ *
+ * @param <B> the buffer type.
+ * @param <V> the value type.
+ */
+public class RetrieveByIdStreamCodec<B extends ByteBuf, V> implements StreamCodec<B, V> {
+    private final AttachmentKey<IdTable<V>> key;
+    private final boolean varInt;
+
+    /**
+     * Creates a new {@link RetrieveByIdStreamCodec}.
+     *
+     * @param key    the key of the id table attachment.
+     * @param varInt whether to encode ids as var-ints instead of fixed-size ints.
+     */
+    public RetrieveByIdStreamCodec(AttachmentKey<IdTable<V>> key, boolean varInt) {
+        this.key = key;
+        this.varInt = varInt;
+    }
+
+    @Override
+    public V decode(B buf) {
+        IdTable<V> table = key.getOrThrow(buf);
+        int id = varInt ? VarInt.read(buf) : buf.readInt();
+        V value = table.byId(id);
+        if (value == null) {
+            throw new DecoderException("Unknown id " + id + " in attachment [" + key.getName() + "]");
+        }
+        return value;
+    }
+
+    @Override
+    public void encode(B buf, V value) {
+        IdTable<V> table = key.getOrThrow(buf);
+        int id = table.getId(value);
+        if (id == IdTable.NO_ID) {
+            throw new EncoderException("Value " + value + " has no id in attachment [" + key.getName() + "]");
+        }
+
+        if (varInt) {
+            VarInt.write(buf, id);
+        } else {
+            buf.writeInt(id);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RetrieveByIdStreamCodec[" + key + " " + (varInt ? "varint" : "int") + "]";
+    }
+}
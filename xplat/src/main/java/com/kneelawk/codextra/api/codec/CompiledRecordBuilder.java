@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.kneelawk.codextra.api.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.impl.codec.CompiledRecordCodec.Component;
+import com.kneelawk.codextra.impl.codec.CompiledRecordGenerator;
+
+/**
+ * Builds record {@link MapCodec}s that have their decoding compiled into a class of their own.
+ * <p>
+ * Components are added in the same order as the record's components. Each component is either a field, read from the
+ * map with a codec, or a retrieval, read from an attachment. The built codec decodes with a generated method that
+ * reads every field straight from the input map, looks up the attachment manager once for all retrievals, and calls
+ * the record's constructor directly, without going through {@link RecordCodecBuilder}'s applicative functions. When
+ * decoding fails, the codec reports the same errors and partial results a {@link RecordCodecBuilder} codec would.
+ * <p>
+ * Codecs should be built once, when initializing, as each one generates a class.
+ *
+ * @param <R> the record type.
+ */
+public final class CompiledRecordBuilder<R> {
+    private final Class<R> recordClass;
+    private final List<Component> components = new ArrayList<>();
+
+    private CompiledRecordBuilder(Class<R> recordClass) {
+        this.recordClass = recordClass;
+    }
+
+    /**
+     * Creates a new builder for the given record class.
+     *
+     * @param recordClass the class of the record to build a codec for.
+     * @param <R>         the record type.
+     * @return the new builder.
+     */
+    public static <R extends Record> CompiledRecordBuilder<R> of(Class<R> recordClass) {
+        return new CompiledRecordBuilder<>(recordClass);
+    }
+
+    /**
+     * Adds a required field as the next component.
+     *
+     * @param name  the field's name.
+     * @param codec the field's codec.
+     * @return this builder.
+     */
+    @SuppressWarnings("unchecked")
+    public CompiledRecordBuilder<R> field(String name, Codec<?> codec) {
+        components.add(Component.field(name, (Codec<Object>) codec));
+        return this;
+    }
+
+    /**
+     * Adds an optional field with a default value as the next component, like
+     * {@link Codec#optionalFieldOf(String, Object)}.
+     *
+     * @param name         the field's name.
+     * @param codec        the field's codec.
+     * @param defaultValue the value to use when the field is missing. Must not be {@code null}.
+     * @param <A>          the field type.
+     * @return this builder.
+     * @throws NullPointerException if the default value is {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    public <A> CompiledRecordBuilder<R> optionalField(String name, Codec<A> codec, A defaultValue) {
+        Objects.requireNonNull(defaultValue, "defaultValue");
+        components.add(Component.defaultedField(name, (Codec<Object>) codec, defaultValue));
+        return this;
+    }
+
+    /**
+     * Adds an optional field as the next component, like {@link Codec#optionalFieldOf(String)}. The record component
+     * must be an {@link Optional}, which is empty when the field is missing.
+     *
+     * @param name  the field's name.
+     * @param codec the codec for the field's value inside the {@link Optional}.
+     * @return this builder.
+     */
+    @SuppressWarnings("unchecked")
+    public CompiledRecordBuilder<R> optionalField(String name, Codec<?> codec) {
+        components.add(Component.optionalField(name, (Codec<Object>) codec));
+        return this;
+    }
+
+    /**
+     * Adds a retrieval of the given attachment as the next component, like {@link AttachmentKey#retrieve()}.
+     *
+     * @param key the key of the attachment to retrieve.
+     * @return this builder.
+     */
+    public CompiledRecordBuilder<R> retrieve(AttachmentKey<?> key) {
+        return retrieve(key, Function.identity());
+    }
+
+    /**
+     * Adds a retrieval of a value from the given attachment as the next component, like
+     * {@link AttachmentKey#retrieve(Function)}.
+     *
+     * @param key       the key of the attachment to retrieve.
+     * @param retriever the function for retrieving the desired value from the attachment value.
+     * @param <A>       the attachment type.
+     * @return this builder.
+     */
+    @SuppressWarnings("unchecked")
+    public <A> CompiledRecordBuilder<R> retrieve(AttachmentKey<A> key, Function<? super A, ?> retriever) {
+        components.add(
+            Component.retrieval((AttachmentKey<Object>) key, (Function<Object, Object>) (Function<?, ?>) retriever));
+        return this;
+    }
+
+    /**
+     * Builds the codec.
+     * <p>
+     * If the current environment does not allow generating classes, this logs a warning and returns a codec that
+     * decodes the same way without a generated class.
+     *
+     * @return the built codec.
+     * @throws IllegalArgumentException if the number of components does not match the record's, if a field added with
+     *                                  {@link #optionalField(String, Codec)} is not an {@link Optional} component, or
+     *                                  if the record's constructor or accessors cannot be accessed.
+     */
+    public MapCodec<R> build() {
+        return CompiledRecordGenerator.create(recordClass, components);
+    }
+}
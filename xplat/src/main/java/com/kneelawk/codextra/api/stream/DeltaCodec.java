@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.stream;
+
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import io.netty.buffer.ByteBuf;
+
+import com.mojang.datafixers.util.Function3;
+import com.mojang.datafixers.util.Function4;
+
+import net.minecraft.network.codec.StreamCodec;
+
+/**
+ * A {@link StreamCodec} that can also write a value as the changes from a baseline value.
+ * <p>
+ * The reading side must have the same baseline value to apply the changes to. This is usually handled by
+ * {@link com.kneelawk.codextra.api.CodextraStreams#delta(com.kneelawk.codextra.api.attach.AttachmentKey, DeltaCodec)},
+ * which keeps the last value sent on a connection as the baseline for the next one.
+ * <p>
+ * Values written with delta codecs are kept as baselines, so they must not be mutated after they have been written or
+ * read.
+ *
+ * @param <B> the buffer type.
+ * @param <V> the value type.
+ */
+public interface DeltaCodec<B extends ByteBuf, V> extends StreamCodec<B, V> {
+    /**
+     * Writes the changes between a baseline and a value.
+     * <p>
+     * This is only called when the value is not equal to the baseline.
+     *
+     * @param buf      the buffer to write to.
+     * @param baseline the baseline value the reading side already has.
+     * @param value    the value to write.
+     */
+    void encodeDelta(B buf, V baseline, V value);
+
+    /**
+     * Reads changes written by {@link #encodeDelta(ByteBuf, Object, Object)} and applies them to a baseline.
+     *
+     * @param buf      the buffer to read from.
+     * @param baseline the baseline value the writing side used.
+     * @return the value with the changes applied.
+     */
+    V decodeDelta(B buf, V baseline);
+
+    /**
+     * Creates a delta codec that writes the whole value whenever it changes.
+     * <p>
+     * This is intended for small fields of {@link #composite(DeltaCodec, Function, DeltaCodec, Function, BiFunction)}
+     * records, where the record already records which fields changed.
+     *
+     * @param codec the codec for the whole value.
+     * @param <B>   the buffer type.
+     * @param <V>   the value type.
+     * @return the created delta codec.
+     */
+    static <B extends ByteBuf, V> DeltaCodec<B, V> of(StreamCodec<? super B, V> codec) {
+        return new WholeDeltaCodec<>(codec);
+    }
+
+    /**
+     * Creates a delta codec for lists that writes the elements that were replaced, inserted, and removed.
+     * <p>
+     * Elements are compared with {@link Object#equals(Object)}. Changes are found by skipping the elements the two
+     * lists start and end with in common, so this works best for lists where elements are appended, removed, or
+     * replaced in a single area at a time.
+     *
+     * @param elementCodec the codec for the list's elements.
+     * @param <B>          the buffer type.
+     * @param <E>          the element type.
+     * @return the created delta codec.
+     */
+    static <B extends ByteBuf, E> DeltaCodec<B, List<E>> list(StreamCodec<? super B, E> elementCodec) {
+        return new ListDeltaCodec<>(elementCodec);
+    }
+
+    /**
+     * Creates a delta codec for a record with one field.
+     *
+     * @param codec1      the first field's codec.
+     * @param getter1     the first field's getter.
+     * @param constructor the record's constructor.
+     * @param <B>         the buffer type.
+     * @param <V>         the record type.
+     * @param <F1>        the first field's type.
+     * @return the created delta codec.
+     * @see #composite(DeltaCodec, Function, DeltaCodec, Function, BiFunction)
+     */
+    @SuppressWarnings("unchecked")
+    static <B extends ByteBuf, V, F1> DeltaCodec<B, V> composite(DeltaCodec<? super B, F1> codec1,
+                                                                   Function<V, F1> getter1,
+                                                                   Function<F1, V> constructor) {
+        return new RecordDeltaCodec<>(new DeltaCodec<?, ?>[]{codec1}, new Function<?, ?>[]{getter1},
+            fields -> constructor.apply((F1) fields[0]));
+    }
+
+    /**
+     * Creates a delta codec for a record with two fields.
+     * <p>
+     * Changes are written as a bitmask of the fields that changed, followed by the changes to each changed field.
+     *
+     * @param codec1      the first field's codec.
+     * @param getter1     the first field's getter.
+     * @param codec2      the second field's codec.
+     * @param getter2     the second field's getter.
+     * @param constructor the record's constructor.
+     * @param <B>         the buffer type.
+     * @param <V>         the record type.
+     * @param <F1>        the first field's type.
+     * @param <F2>        the second field's type.
+     * @return the created delta codec.
+     */
+    @SuppressWarnings("unchecked")
+    static <B extends ByteBuf, V, F1, F2> DeltaCodec<B, V> composite(DeltaCodec<? super B, F1> codec1,
+                                                                       Function<V, F1> getter1,
+                                                                       DeltaCodec<? super B, F2> codec2,
+                                                                       Function<V, F2> getter2,
+                                                                       BiFunction<F1, F2, V> constructor) {
+        return new RecordDeltaCodec<>(new DeltaCodec<?, ?>[]{codec1, codec2}, new Function<?, ?>[]{getter1, getter2},
+            fields -> constructor.apply((F1) fields[0], (F2) fields[1]));
+    }
+
+    /**
+     * Creates a delta codec for a record with three fields.
+     *
+     * @param codec1      the first field's codec.
+     * @param getter1     the first field's getter.
+     * @param codec2      the second field's codec.
+     * @param getter2     the second field's getter.
+     * @param codec3      the third field's codec.
+     * @param getter3     the third field's getter.
+     * @param constructor the record's constructor.
+     * @param <B>         the buffer type.
+     * @param <V>         the record type.
+     * @param <F1>        the first field's type.
+     * @param <F2>        the second field's type.
+     * @param <F3>        the third field's type.
+     * @return the created delta codec.
+     * @see #composite(DeltaCodec, Function, DeltaCodec, Function, BiFunction)
+     */
+    @SuppressWarnings("unchecked")
+    static <B extends ByteBuf, V, F1, F2, F3> DeltaCodec<B, V> composite(DeltaCodec<? super B, F1> codec1,
+                                                                           Function<V, F1> getter1,
+                                                                           DeltaCodec<? super B, F2> codec2,
+                                                                           Function<V, F2> getter2,
+                                                                           DeltaCodec<? super B, F3> codec3,
+                                                                           Function<V, F3> getter3,
+                                                                           Function3<F1, F2, F3, V> constructor) {
+        return new RecordDeltaCodec<>(new DeltaCodec<?, ?>[]{codec1, codec2, codec3},
+            new Function<?, ?>[]{getter1, getter2, getter3},
+            fields -> constructor.apply((F1) fields[0], (F2) fields[1], (F3) fields[2]));
+    }
+
+    /**
+     * Creates a delta codec for a record with four fields.
+     *
+     * @param codec1      the first field's codec.
+     * @param getter1     the first field's getter.
+     * @param codec2      the second field's codec.
+     * @param getter2     the second field's getter.
+     * @param codec3      the third field's codec.
+     * @param getter3     the third field's getter.
+     * @param codec4      the fourth field's codec.
+     * @param getter4     the fourth field's getter.
+     * @param constructor the record's constructor.
+     * @param <B>         the buffer type.
+     * @param <V>         the record type.
+     * @param <F1>        the first field's type.
+     * @param <F2>        the second field's type.
+     * @param <F3>        the third field's type.
+     * @param <F4>        the fourth field's type.
+     * @return the created delta codec.
+     * @see #composite(DeltaCodec, Function, DeltaCodec, Function, BiFunction)
+     */
+    @SuppressWarnings("unchecked")
+    static <B extends ByteBuf, V, F1, F2, F3, F4> DeltaCodec<B, V> composite(DeltaCodec<? super B, F1> codec1,
+                                                                               Function<V, F1> getter1,
+                                                                               DeltaCodec<? super B, F2> codec2,
+                                                                               Function<V, F2> getter2,
+                                                                               DeltaCodec<? super B, F3> codec3,
+                                                                               Function<V, F3> getter3,
+                                                                               DeltaCodec<? super B, F4> codec4,
+                                                                               Function<V, F4> getter4,
+                                                                               Function4<F1, F2, F3, F4, V> constructor) {
+        return new RecordDeltaCodec<>(new DeltaCodec<?, ?>[]{codec1, codec2, codec3, codec4},
+            new Function<?, ?>[]{getter1, getter2, getter3, getter4},
+            fields -> constructor.apply((F1) fields[0], (F2) fields[1], (F3) fields[2], (F4) fields[3]));
+    }
+}
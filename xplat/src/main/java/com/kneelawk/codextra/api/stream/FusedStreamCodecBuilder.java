@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.kneelawk.codextra.api.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import io.netty.buffer.ByteBuf;
+
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.impl.stream.FusedStreamCodec.Component;
+import com.kneelawk.codextra.impl.stream.FusedStreamCodec.Kind;
+import com.kneelawk.codextra.impl.stream.FusedStreamCodecGenerator;
+
+/**
+ * Builds record {@link StreamCodec}s that have their decoding and encoding fused into a class of their own.
+ * <p>
+ * Components are added in the same order as the record's components. The built codec reads and writes primitive
+ * components directly on the buffer, without boxing them, passes them straight to the record's constructor, and looks
+ * up the attachment manager once for all retrievals. Other components go through their own stream codecs, called
+ * directly from the generated class. This replaces a chain of {@link StreamCodec#composite} and retrieval codecs with
+ * a single straight-line decode and encode.
+ * <p>
+ * Primitive components are written in the same format as their {@link ByteBufCodecs} counterparts, so a fused codec
+ * can replace an equivalent composite codec without changing the wire format.
+ * <p>
+ * Codecs should be built once, when initializing, as each one generates a class.
+ *
+ * @param <B> the buffer type.
+ * @param <R> the record type.
+ */
+public final class FusedStreamCodecBuilder<B extends ByteBuf, R> {
+    private final Class<R> recordClass;
+    private final List<Component> components = new ArrayList<>();
+
+    private FusedStreamCodecBuilder(Class<R> recordClass) {
+        this.recordClass = recordClass;
+    }
+
+    /**
+     * Creates a new builder for the given record class.
+     *
+     * @param recordClass the class of the record to build a codec for.
+     * @param <B>         the buffer type.
+     * @param <R>         the record type.
+     * @return the new builder.
+     */
+    public static <B extends ByteBuf, R extends Record> FusedStreamCodecBuilder<B, R> of(Class<R> recordClass) {
+        return new FusedStreamCodecBuilder<>(recordClass);
+    }
+
+    /**
+     * Adds an {@code int} component written like {@link ByteBufCodecs#VAR_INT}.
+     *
+     * @return this builder.
+     */
+    public FusedStreamCodecBuilder<B, R> varInt() {
+        return primitive(Kind.VAR_INT);
+    }
+
+    /**
+     * Adds a {@code long} component written like {@link ByteBufCodecs#VAR_LONG}.
+     *
+     * @return this builder.
+     */
+    public FusedStreamCodecBuilder<B, R> varLong() {
+        return primitive(Kind.VAR_LONG);
+    }
+
+    /**
+     * Adds a {@code byte} component written like {@link ByteBufCodecs#BYTE}.
+     *
+     * @return this builder.
+     */
+    public FusedStreamCodecBuilder<B, R> byteValue() {
+        return primitive(Kind.BYTE);
+    }
+
+    /**
+     * Adds a {@code short} component written like {@link ByteBufCodecs#SHORT}.
+     *
+     * @return this builder.
+     */
+    public FusedStreamCodecBuilder<B, R> shortValue() {
+        return primitive(Kind.SHORT);
+    }
+
+    /**
+     * Adds an {@code int} component written like {@link ByteBufCodecs#INT}.
+     *
+     * @return this builder.
+     */
+    public FusedStreamCodecBuilder<B, R> intValue() {
+        return primitive(Kind.INT);
+    }
+
+    /**
+     * Adds a {@code long} component written as a fixed-size long.
+     *
+     * @return this builder.
+     */
+    public FusedStreamCodecBuilder<B, R> longValue() {
+        return primitive(Kind.LONG);
+    }
+
+    /**
+     * Adds a {@code float} component written like {@link ByteBufCodecs#FLOAT}.
+     *
+     * @return this builder.
+     */
+    public FusedStreamCodecBuilder<B, R> floatValue() {
+        return primitive(Kind.FLOAT);
+    }
+
+    /**
+     * Adds a {@code double} component written like {@link ByteBufCodecs#DOUBLE}.
+     *
+     * @return this builder.
+     */
+    public FusedStreamCodecBuilder<B, R> doubleValue() {
+        return primitive(Kind.DOUBLE);
+    }
+
+    /**
+     * Adds a {@code boolean} component written like {@link ByteBufCodecs#BOOL}.
+     *
+     * @return this builder.
+     */
+    public FusedStreamCodecBuilder<B, R> bool() {
+        return primitive(Kind.BOOLEAN);
+    }
+
+    private FusedStreamCodecBuilder<B, R> primitive(Kind kind) {
+        components.add(Component.primitive(kind));
+        return this;
+    }
+
+    /**
+     * Adds a component written with the given stream codec.
+     *
+     * @param codec the component's stream codec.
+     * @return this builder.
+     */
+    @SuppressWarnings("unchecked")
+    public FusedStreamCodecBuilder<B, R> codec(StreamCodec<? super B, ?> codec) {
+        components.add(Component.codec((StreamCodec<Object, Object>) codec));
+        return this;
+    }
+
+    /**
+     * Adds a retrieval of the given attachment as the next component, like {@link AttachmentKey#retrieveStream()}.
+     *
+     * @param key the key of the attachment to retrieve.
+     * @return this builder.
+     */
+    public FusedStreamCodecBuilder<B, R> retrieve(AttachmentKey<?> key) {
+        return retrieve(key, Function.identity());
+    }
+
+    /**
+     * Adds a retrieval of a value from the given attachment as the next component, like
+     * {@link AttachmentKey#retrieveStream(Function)}.
+     *
+     * @param key       the key of the attachment to retrieve.
+     * @param retriever the function for retrieving the desired value from the attachment value.
+     * @param <A>       the attachment type.
+     * @return this builder.
+     */
+    @SuppressWarnings("unchecked")
+    public <A> FusedStreamCodecBuilder<B, R> retrieve(AttachmentKey<A> key, Function<? super A, ?> retriever) {
+        components.add(
+            Component.retrieval((AttachmentKey<Object>) key, (Function<Object, Object>) (Function<?, ?>) retriever));
+        return this;
+    }
+
+    /**
+     * Builds the stream codec.
+     * <p>
+     * If the current environment does not allow generating classes, this logs a warning and returns a codec that
+     * reads and writes the same format without a generated class.
+     *
+     * @return the built stream codec.
+     * @throws IllegalArgumentException if the number of components does not match the record's, if a primitive
+     *                                  component does not match the record component's type, or if the record's
+     *                                  constructor or accessors cannot be accessed.
+     */
+    public StreamCodec<B, R> build() {
+        return FusedStreamCodecGenerator.create(recordClass, components);
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.stream;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+
+import net.minecraft.network.VarInt;
+import net.minecraft.network.codec.StreamCodec;
+
+// writes lists as a sequence of replace, insert, and remove operations, see DeltaCodec.list
+final class ListDeltaCodec<B extends ByteBuf, E> implements DeltaCodec<B, List<E>> {
+    private static final int END = 0;
+    private static final int REPLACE = 1;
+    private static final int INSERT = 2;
+    private static final int REMOVE = 3;
+
+    private final StreamCodec<? super B, E> elementCodec;
+
+    ListDeltaCodec(StreamCodec<? super B, E> elementCodec) {
+        this.elementCodec = elementCodec;
+    }
+
+    @Override
+    public List<E> decode(B buf) {
+        int size = VarInt.read(buf);
+        if (size < 0) throw new DecoderException("Invalid list size " + size);
+
+        // don't trust the size for allocating
+        List<E> list = new ArrayList<>(Math.min(size, 256));
+        for (int i = 0; i < size; i++) {
+            list.add(elementCodec.decode(buf));
+        }
+        return list;
+    }
+
+    @Override
+    public void encode(B buf, List<E> value) {
+        VarInt.write(buf, value.size());
+        for (E element : value) {
+            elementCodec.encode(buf, element);
+        }
+    }
+
+    @Override
+    public void encodeDelta(B buf, List<E> baseline, List<E> value) {
+        int baselineSize = baseline.size();
+        int size = value.size();
+
+        // skip the elements both lists start and end with
+        int start = 0;
+        while (start < baselineSize && start < size && Objects.equals(baseline.get(start), value.get(start))) {
+            start++;
+        }
+        int baselineEnd = baselineSize;
+        int end = size;
+        while (baselineEnd > start && end > start &&
+            Objects.equals(baseline.get(baselineEnd - 1), value.get(end - 1))) {
+            baselineEnd--;
+            end--;
+        }
+
+        // replace the elements the changed areas have in common, then insert or remove the rest
+        int common = Math.min(baselineEnd - start, end - start);
+        for (int i = start; i < start + common; i++) {
+            if (!Objects.equals(baseline.get(i), value.get(i))) {
+                VarInt.write(buf, REPLACE);
+                VarInt.write(buf, i);
+                elementCodec.encode(buf, value.get(i));
+            }
+        }
+        for (int i = start + common; i < end; i++) {
+            VarInt.write(buf, INSERT);
+            VarInt.write(buf, i);
+            elementCodec.encode(buf, value.get(i));
+        }
+        for (int i = start + common; i < baselineEnd; i++) {
+            // each removal shifts the next element to be removed down to the same index
+            VarInt.write(buf, REMOVE);
+            VarInt.write(buf, start + common);
+        }
+
+        VarInt.write(buf, END);
+    }
+
+    @Override
+    public List<E> decodeDelta(B buf, List<E> baseline) {
+        List<E> list = new ArrayList<>(baseline);
+        while (true) {
+            int op = VarInt.read(buf);
+            if (op == END) return list;
+
+            int index = VarInt.read(buf);
+            switch (op) {
+                case REPLACE -> {
+                    checkIndex(index, list.size() - 1);
+                    list.set(index, elementCodec.decode(buf));
+                }
+                case INSERT -> {
+                    checkIndex(index, list.size());
+                    list.add(index, elementCodec.decode(buf));
+                }
+                case REMOVE -> {
+                    checkIndex(index, list.size() - 1);
+                    list.remove(index);
+                }
+                default -> throw new DecoderException("Unknown list delta operation " + op);
+            }
+        }
+    }
+
+    private static void checkIndex(int index, int max) {
+        if (index < 0 || index > max) throw new DecoderException("List delta index " + index + " out of bounds");
+    }
+
+    @Override
+    public String toString() {
+        return "ListDeltaCodec[" + elementCodec + "]";
+    }
+}
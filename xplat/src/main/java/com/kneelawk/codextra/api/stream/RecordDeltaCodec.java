@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.stream;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+import io.netty.buffer.ByteBuf;
+
+import net.minecraft.network.VarInt;
+
+// writes a bitmask of the fields that changed followed by the changes to each of those fields, see
+// DeltaCodec.composite
+final class RecordDeltaCodec<B extends ByteBuf, V> implements DeltaCodec<B, V> {
+    private final DeltaCodec<? super B, Object>[] codecs;
+    private final Function<V, Object>[] getters;
+    private final Function<Object[], V> constructor;
+
+    @SuppressWarnings("unchecked")
+    RecordDeltaCodec(DeltaCodec<?, ?>[] codecs, Function<?, ?>[] getters, Function<Object[], V> constructor) {
+        // the changed-field bitmask is written as a var-int
+        if (codecs.length > Integer.SIZE) {
+            throw new IllegalArgumentException("Delta records can have at most " + Integer.SIZE + " fields");
+        }
+
+        this.codecs = (DeltaCodec<? super B, Object>[]) codecs;
+        this.getters = (Function<V, Object>[]) getters;
+        this.constructor = constructor;
+    }
+
+    @Override
+    public V decode(B buf) {
+        Object[] fields = new Object[codecs.length];
+        for (int i = 0; i < codecs.length; i++) {
+            fields[i] = codecs[i].decode(buf);
+        }
+        return constructor.apply(fields);
+    }
+
+    @Override
+    public void encode(B buf, V value) {
+        for (int i = 0; i < codecs.length; i++) {
+            codecs[i].encode(buf, getters[i].apply(value));
+        }
+    }
+
+    @Override
+    public void encodeDelta(B buf, V baseline, V value) {
+        Object[] baselineFields = new Object[codecs.length];
+        Object[] fields = new Object[codecs.length];
+        int changed = 0;
+        for (int i = 0; i < codecs.length; i++) {
+            baselineFields[i] = getters[i].apply(baseline);
+            fields[i] = getters[i].apply(value);
+            if (!Objects.equals(baselineFields[i], fields[i])) changed |= 1 << i;
+        }
+
+        VarInt.write(buf, changed);
+        for (int i = 0; i < codecs.length; i++) {
+            if ((changed & (1 << i)) != 0) codecs[i].encodeDelta(buf, baselineFields[i], fields[i]);
+        }
+    }
+
+    @Override
+    public V decodeDelta(B buf, V baseline) {
+        int changed = VarInt.read(buf);
+        Object[] fields = new Object[codecs.length];
+        for (int i = 0; i < codecs.length; i++) {
+            Object baselineField = getters[i].apply(baseline);
+            fields[i] = (changed & (1 << i)) != 0 ? codecs[i].decodeDelta(buf, baselineField) : baselineField;
+        }
+        return constructor.apply(fields);
+    }
+
+    @Override
+    public String toString() {
+        return "RecordDeltaCodec[" + codecs.length + "]";
+    }
+}
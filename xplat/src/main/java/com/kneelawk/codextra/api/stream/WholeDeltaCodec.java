@@ -0,0 +1,64 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.api.stream;
+
+import io.netty.buffer.ByteBuf;
+
+import net.minecraft.network.codec.StreamCodec;
+
+// writes the whole value whenever it changes, see DeltaCodec.of
+final class WholeDeltaCodec<B extends ByteBuf, V> implements DeltaCodec<B, V> {
+    private final StreamCodec<? super B, V> codec;
+
+    WholeDeltaCodec(StreamCodec<? super B, V> codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public V decode(B buf) {
+        return codec.decode(buf);
+    }
+
+    @Override
+    public void encode(B buf, V value) {
+        codec.encode(buf, value);
+    }
+
+    @Override
+    public void encodeDelta(B buf, V baseline, V value) {
+        codec.encode(buf, value);
+    }
+
+    @Override
+    public V decodeDelta(B buf, V baseline) {
+        return codec.decode(buf);
+    }
+
+    @Override
+    public String toString() {
+        return "WholeDeltaCodec[" + codec + "]";
+    }
+}
@@ -32,6 +32,7 @@ import org.jetbrains.annotations.Nullable;
 import com.mojang.serialization.DataResult;
 
 import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.impl.IdentityMemoizedFunction;
 
 /**
  * Utilities for working with java functional programming.
@@ -61,4 +62,30 @@ public final class FunctionUtils {
     public static <I, O> Function<I, @Nullable O> nullFunc() {
         return input -> null;
     }
+
+    /**
+     * Creates a function that remembers the results of the given function, keyed on the identity of their inputs.
+     * <p>
+     * This is intended for functions like attachment dispatchers that build a codec out of a long-lived attachment
+     * value. Inputs are held weakly, so pushing a new attachment value simply computes a new result while the old value
+     * can still be garbage-collected. Results are held softly, so they are only discarded and recomputed when memory
+     * runs low. The most recent input and result are checked before anything else, so repeatedly applying the function
+     * to the same input is cheap.
+     * <p>
+     * The given function should always return equivalent results for the same input. {@code null} inputs and results
+     * are not remembered.
+     *
+     * @param function the function whose results to remember.
+     * @param <I>      the input type.
+     * @param <O>      the output type.
+     * @return the memoizing function.
+     */
+    public static <I, O> Function<I, O> memoizeIdentity(Function<? super I, ? extends O> function) {
+        if (function instanceof IdentityMemoizedFunction<?, ?>) {
+            @SuppressWarnings("unchecked")
+            Function<I, O> memoized = (Function<I, O>) function;
+            return memoized;
+        }
+        return new IdentityMemoizedFunction<>(function);
+    }
 }
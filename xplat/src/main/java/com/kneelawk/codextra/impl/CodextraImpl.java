@@ -25,76 +25,78 @@
 
 package com.kneelawk.codextra.impl;
 
-import java.util.function.Function;
-
 import org.jetbrains.annotations.Nullable;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.FastThreadLocal;
 
 import com.mojang.serialization.DynamicOps;
 
 import net.minecraft.network.FriendlyByteBuf;
 import net.minecraft.resources.DelegatingOps;
+import net.minecraft.resources.RegistryOps;
 
+import com.kneelawk.codextra.api.attach.AttachmentContext;
 import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.AttachmentSet;
+import com.kneelawk.codextra.api.attach.PrimitiveAttachmentKey;
 import com.kneelawk.codextra.impl.attach.AttachmentManagerImpl;
 import com.kneelawk.codextra.impl.attach.AttachmentOps;
+import com.kneelawk.codextra.impl.attach.StreamManagerStack;
+import com.kneelawk.codextra.impl.attach.WrapperPool;
 import com.kneelawk.codextra.impl.mixin.api.CodextraAttachmentManagerHolder;
+import com.kneelawk.codextra.impl.mixin.api.CodextraHolderResolver;
 import com.kneelawk.codextra.impl.mixin.impl.DelegatingOpsAccessor;
+import com.kneelawk.codextra.impl.mixin.impl.RegistryOpsAccessor;
 
 public class CodextraImpl {
-    private static final ThreadLocal<AttachmentManagerImpl> STREAM_MANAGER = new ThreadLocal<>();
+    // When set, ByteBufCodecs.fromCodec no longer makes attachments available to every codec, and only codecs created
+    // through CodextraStreams.fromCodec/fromCodecWithRegistries see the buffer's attachments.
+    public static final boolean EXPLICIT_STREAM_ATTACHMENTS = Boolean.getBoolean("codextra.explicitStreamAttachments");
 
-    public static @Nullable AttachmentManagerImpl streamManager() {
-        return STREAM_MANAGER.get();
-    }
+    // When set, ByteBufCodecs.fromCodec decodes straight from the buffer with NbtViewOps instead of reading a Tag tree
+    // first. This is opt-in because codecs that keep hold of their input, like passthrough codecs, would end up holding
+    // views into a buffer that gets released after decoding.
+    public static final boolean NBT_VIEW_DECODE = Boolean.getBoolean("codextra.nbtViewDecode");
 
-    public static void putStreamManager(ByteBuf buf) {
-        STREAM_MANAGER.set(getAttachmentManager(buf));
-    }
+    // netty event loop threads are FastThreadLocalThreads, making this an array load instead of a hash lookup there
+    private static final FastThreadLocal<StreamManagerStack> STREAM_MANAGERS = new FastThreadLocal<>() {
+        @Override
+        protected StreamManagerStack initialValue() {
+            return new StreamManagerStack();
+        }
+    };
 
-    public static void removeStreamManager() {
-        STREAM_MANAGER.remove();
+    public static @Nullable AttachmentManagerImpl streamManager() {
+        return STREAM_MANAGERS.get().peek();
     }
 
-    public static <T, R> R wrapWithStreamManager(DynamicOps<T> ops, Function<DynamicOps<T>, R> wrapped) {
-        AttachmentManagerImpl manager = STREAM_MANAGER.get();
-        AttachmentManagerImpl oldManager = null;
-        CodextraAttachmentManagerHolder holder = CodextraImpl.getHolder(ops);
-        if (manager != null) {
-            if (holder != null) {
-                oldManager = holder.codextra_getAttachmentManager();
-                holder.codextra_setAttachmentManager(manager);
-            } else {
-                AttachmentOps<T> newOps = new AttachmentOps<>(ops);
-                newOps.codextra_setAttachmentManager(manager);
-                ops = newOps;
-            }
-        }
+    // returns the stack to pop in a finally block, or null if nothing was pushed
+    public static @Nullable StreamManagerStack pushStreamManager(ByteBuf buf) {
+        AttachmentManagerImpl manager = getAttachmentManager(buf);
+        // nothing to apply to the ops, so don't touch the thread-local at all. Codecs nested in another stream codec
+        // will just keep seeing the enclosing buffer's attachments.
+        if (manager == null || manager.isEmpty()) return null;
 
-        try {
-            return wrapped.apply(ops);
-        } finally {
-            if (holder != null && oldManager != null) {
-                holder.codextra_setAttachmentManager(oldManager);
-            }
-        }
+        StreamManagerStack stack = STREAM_MANAGERS.get();
+        stack.push(manager);
+        return stack;
     }
 
     public static void sync(FriendlyByteBuf from, FriendlyByteBuf to) {
         CodextraAttachmentManagerHolder fromHolder = (CodextraAttachmentManagerHolder) from;
         CodextraAttachmentManagerHolder toHolder = (CodextraAttachmentManagerHolder) to;
-        toHolder.codextra_setAttachmentManager(fromHolder.codextra_getAttachmentManager());
+        toHolder.codextra_setAttachmentManager(fromHolder.codextra_getOrCreateAttachmentManager());
     }
 
     public static <A, T> DynamicOps<T> push(DynamicOps<T> ops, AttachmentKey<A> key, A value) {
         CodextraAttachmentManagerHolder holder = getHolder(ops);
         if (holder == null) {
-            ops = new AttachmentOps<>(ops);
+            ops = acquireAttachmentOps(ops);
             holder = (CodextraAttachmentManagerHolder) ops;
         }
 
-        AttachmentManagerImpl manager = holder.codextra_getAttachmentManager();
+        AttachmentManagerImpl manager = holder.codextra_getOrCreateAttachmentManager();
         manager.push(key, value);
 
         return ops;
@@ -102,23 +104,140 @@ public class CodextraImpl {
 
     public static <A> void push(FriendlyByteBuf buf, AttachmentKey<A> key, A value) {
         CodextraAttachmentManagerHolder holder = (CodextraAttachmentManagerHolder) buf;
-        AttachmentManagerImpl manager = holder.codextra_getAttachmentManager();
+        AttachmentManagerImpl manager = holder.codextra_getOrCreateAttachmentManager();
         manager.push(key, value);
     }
 
     public static <A> ByteBuf push(ByteBuf buf, AttachmentKey<A> key, A value) {
         CodextraAttachmentManagerHolder holder = getHolder(buf);
         if (holder == null) {
-            buf = new FriendlyByteBuf(buf);
+            ByteBuf pooled = (ByteBuf) acquirePooled(buf);
+            buf = pooled != null ? pooled : new FriendlyByteBuf(buf);
             holder = (CodextraAttachmentManagerHolder) buf;
         }
 
-        AttachmentManagerImpl manager = holder.codextra_getAttachmentManager();
+        AttachmentManagerImpl manager = holder.codextra_getOrCreateAttachmentManager();
         manager.push(key, value);
 
         return buf;
     }
 
+    public static <T> DynamicOps<T> pushUnboxed(DynamicOps<T> ops, PrimitiveAttachmentKey<?> key, long bits) {
+        CodextraAttachmentManagerHolder holder = getHolder(ops);
+        if (holder == null) {
+            ops = acquireAttachmentOps(ops);
+            holder = (CodextraAttachmentManagerHolder) ops;
+        }
+
+        holder.codextra_getOrCreateAttachmentManager().pushUnboxed(key, bits);
+
+        return ops;
+    }
+
+    public static void pushUnboxed(FriendlyByteBuf buf, PrimitiveAttachmentKey<?> key, long bits) {
+        CodextraAttachmentManagerHolder holder = (CodextraAttachmentManagerHolder) buf;
+        holder.codextra_getOrCreateAttachmentManager().pushUnboxed(key, bits);
+    }
+
+    public static ByteBuf pushUnboxed(ByteBuf buf, PrimitiveAttachmentKey<?> key, long bits) {
+        CodextraAttachmentManagerHolder holder = getHolder(buf);
+        if (holder == null) {
+            ByteBuf pooled = (ByteBuf) acquirePooled(buf);
+            buf = pooled != null ? pooled : new FriendlyByteBuf(buf);
+            holder = (CodextraAttachmentManagerHolder) buf;
+        }
+
+        holder.codextra_getOrCreateAttachmentManager().pushUnboxed(key, bits);
+
+        return buf;
+    }
+
+    public static <T> DynamicOps<T> pushAll(DynamicOps<T> ops, AttachmentSet attachments) {
+        if (attachments.isEmpty()) return ops;
+
+        CodextraAttachmentManagerHolder holder = getHolder(ops);
+        if (holder == null) {
+            ops = acquireAttachmentOps(ops);
+            holder = (CodextraAttachmentManagerHolder) ops;
+        }
+
+        holder.codextra_getOrCreateAttachmentManager().pushAll(attachments);
+
+        return ops;
+    }
+
+    public static void pushAll(FriendlyByteBuf buf, AttachmentSet attachments) {
+        if (attachments.isEmpty()) return;
+
+        CodextraAttachmentManagerHolder holder = (CodextraAttachmentManagerHolder) buf;
+        holder.codextra_getOrCreateAttachmentManager().pushAll(attachments);
+    }
+
+    public static void popAll(DynamicOps<?> ops, AttachmentSet attachments) {
+        AttachmentManagerImpl manager = getAttachmentManager(ops);
+        if (manager != null) {
+            manager.popAll(attachments);
+        }
+    }
+
+    public static void popAll(ByteBuf buf, AttachmentSet attachments) {
+        AttachmentManagerImpl manager = getAttachmentManager(buf);
+        if (manager != null) {
+            manager.popAll(attachments);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> DynamicOps<T> acquireAttachmentOps(DynamicOps<T> ops) {
+        DynamicOps<T> pooled = (DynamicOps<T>) acquirePooled(ops);
+        return pooled != null ? pooled : AttachmentOps.create(ops);
+    }
+
+    private static @Nullable Object acquirePooled(Object base) {
+        return WrapperPool.isEnabled() ? WrapperPool.get().acquire(base) : null;
+    }
+
+    // hands a wrapper created by push back to the pool, if pooling is enabled, it is one, and all its attachments have
+    // been popped
+    public static void release(DynamicOps<?> attached, DynamicOps<?> original) {
+        if (!WrapperPool.isEnabled() || attached == original) return;
+
+        AttachmentManagerImpl manager = getAttachmentManager(attached);
+        if (manager == null || !manager.isEmpty()) return;
+
+        WrapperPool.get().release(original, attached);
+    }
+
+    public static void release(ByteBuf attached, ByteBuf original) {
+        if (!WrapperPool.isEnabled() || attached == original) return;
+
+        AttachmentManagerImpl manager = getAttachmentManager(attached);
+        if (manager == null || !manager.isEmpty()) return;
+
+        WrapperPool.get().release(original, attached);
+    }
+
+    public static <A, T> DynamicOps<T> with(DynamicOps<T> ops, AttachmentKey<A> key, A value) {
+        return withContext(ops, AttachmentContext.snapshot(ops).with(key, value));
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> DynamicOps<T> withContext(DynamicOps<T> ops, AttachmentContext context) {
+        DynamicOps<T> view;
+        if (ops instanceof RegistryOps<T>) {
+            // keep the view a RegistryOps so registry-aware codecs still work with it
+            DynamicOps<T> delegate = (DynamicOps<T>) ((DelegatingOpsAccessor) ops).codextra_getDelegate();
+            RegistryOps.RegistryInfoLookup lookupProvider = ((RegistryOpsAccessor) ops).codextra_getLookupProvider();
+            view = RegistryOpsAccessor.codextra_create(delegate, lookupProvider);
+        } else {
+            view = AttachmentOps.create(ops);
+        }
+
+        ((CodextraAttachmentManagerHolder) view).codextra_setAttachmentManager(new AttachmentManagerImpl(context));
+
+        return view;
+    }
+
     public static <A> @Nullable A pop(DynamicOps<?> ops, AttachmentKey<A> key) {
         AttachmentManagerImpl manager = getAttachmentManager(ops);
         if (manager != null) {
@@ -135,6 +254,18 @@ public class CodextraImpl {
         return null;
     }
 
+    public static @Nullable AttachmentManagerImpl getOrCreateAttachmentManager(DynamicOps<?> ops) {
+        CodextraAttachmentManagerHolder holder = getHolder(ops);
+        if (holder == null) return null;
+        return holder.codextra_getOrCreateAttachmentManager();
+    }
+
+    public static @Nullable AttachmentManagerImpl getOrCreateAttachmentManager(ByteBuf buf) {
+        CodextraAttachmentManagerHolder holder = getHolder(buf);
+        if (holder == null) return null;
+        return holder.codextra_getOrCreateAttachmentManager();
+    }
+
     public static @Nullable AttachmentManagerImpl getAttachmentManager(DynamicOps<?> ops) {
         CodextraAttachmentManagerHolder holder = getHolder(ops);
         if (holder == null) return null;
@@ -147,20 +278,17 @@ public class CodextraImpl {
         return holder.codextra_getAttachmentManager();
     }
 
-    private static @Nullable CodextraAttachmentManagerHolder getHolder(DynamicOps<?> ops) {
+    public static @Nullable CodextraAttachmentManagerHolder getHolder(DynamicOps<?> ops) {
         if (ops instanceof CodextraAttachmentManagerHolder holder) return holder;
 
-        // check the delegates of delegating ops, just in case someone wrapped our AttachmentOps
-        while (ops instanceof DelegatingOps<?>) {
-            ops = ((DelegatingOpsAccessor) ops).codextra_getDelegate();
-
-            if (ops instanceof CodextraAttachmentManagerHolder holder) return holder;
-        }
+        // check the delegates of delegating ops, just in case someone wrapped our AttachmentOps. Each delegating ops
+        // caches what its chain resolves to, so deeply wrapped ops are only walked once.
+        if (ops instanceof DelegatingOps<?>) return ((CodextraHolderResolver) ops).codextra_resolveHolder();
 
         return null;
     }
 
-    private static @Nullable CodextraAttachmentManagerHolder getHolder(ByteBuf buf) {
+    public static @Nullable CodextraAttachmentManagerHolder getHolder(ByteBuf buf) {
         if (buf instanceof CodextraAttachmentManagerHolder holder) return holder;
         return null;
     }
@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.impl;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+import com.google.common.cache.CacheBuilder;
+
+import org.jetbrains.annotations.Nullable;
+
+public final class IdentityMemoizedFunction<I, O> implements Function<I, O> {
+    private final Function<? super I, ? extends O> function;
+
+    // Keys are compared by identity and held weakly, so replacing an attachment value with a new one simply misses
+    // and the old value can still be collected. Values are soft rather than strong, as they commonly reference their
+    // keys, but soft so that results nothing else holds on to, like freshly built codecs, survive between lookups.
+    private final ConcurrentMap<I, O> cache = CacheBuilder.newBuilder().weakKeys().softValues().<I, O>build().asMap();
+
+    // Records are safely published, so racing threads see either a whole hit or a stale one, never a torn one. This
+    // keeps the most recent input alive.
+    private @Nullable LastHit<I, O> lastHit;
+
+    public IdentityMemoizedFunction(Function<? super I, ? extends O> function) {this.function = function;}
+
+    @Override
+    public O apply(I input) {
+        LastHit<I, O> hit = lastHit;
+        if (hit != null && hit.input == input) return hit.output;
+
+        // the cache can't hold nulls
+        if (input == null) return function.apply(null);
+
+        O output = cache.get(input);
+        if (output == null) {
+            output = function.apply(input);
+            if (output == null) return null;
+            cache.put(input, output);
+        }
+
+        lastHit = new LastHit<>(input, output);
+        return output;
+    }
+
+    @Override
+    public String toString() {
+        return "IdentityMemoizedFunction[" + function + "]";
+    }
+
+    private record LastHit<I, O>(I input, O output) {}
+}
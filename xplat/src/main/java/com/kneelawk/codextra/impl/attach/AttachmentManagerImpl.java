@@ -25,62 +25,364 @@
 
 package com.kneelawk.codextra.impl.attach;
 
-import java.util.Map;
+import java.util.Arrays;
 import java.util.Set;
 
 import org.jetbrains.annotations.Nullable;
 
-import it.unimi.dsi.fastutil.objects.Reference2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 
+import com.kneelawk.codextra.api.attach.AttachmentContext;
 import com.kneelawk.codextra.api.attach.AttachmentKey;
 import com.kneelawk.codextra.api.attach.AttachmentManager;
+import com.kneelawk.codextra.api.attach.BooleanAttachmentKey;
+import com.kneelawk.codextra.api.attach.DerivedAttachmentKey;
+import com.kneelawk.codextra.api.attach.IntAttachmentKey;
+import com.kneelawk.codextra.api.attach.LongAttachmentKey;
+import com.kneelawk.codextra.api.attach.PrimitiveAttachmentKey;
 
 public class AttachmentManagerImpl implements AttachmentManager {
-    private final Map<AttachmentKey<?>, Holder<?>> holders = new Reference2ObjectLinkedOpenHashMap<>();
+    /**
+     * Shared empty manager handed out by attachment holders that have never had anything pushed to them.
+     * <p>
+     * Holders must swap this out for a real manager before pushing, see
+     * {@link com.kneelawk.codextra.impl.mixin.api.CodextraAttachmentManagerHolder#codextra_getOrCreateAttachmentManager()}.
+     */
+    public static final AttachmentManagerImpl EMPTY = new Empty();
 
-    public AttachmentManagerImpl() {}
+    private static final AttachmentKey<?>[] NO_KEYS = new AttachmentKey<?>[0];
+    private static final Object[] NO_VALUES = new Object[0];
+    private static final int[] NO_INTS = new int[0];
+    private static final long[] NO_BITS = new long[0];
+    private static final Object[][] NO_DERIVED = new Object[0][];
+
+    // stored in the value stack in place of primitive values that are stored unboxed in stackBits
+    private static final Object UNBOXED = new Object();
+
+    // per-key state, indexed by AttachmentKey.getIndex()
+    private AttachmentKey<?>[] keys = NO_KEYS;
+    // position + 1 of the key's top-most value in the value stack, 0 if the key is not present
+    private int[] tops = NO_INTS;
+    // one bit per attachment key index, set when that attachment is present
+    private long[] present = NO_BITS;
+    private int presentCount = 0;
+
+    // value stack, shared by all keys
+    private Object[] stackValues = NO_VALUES;
+    // unboxed primitive values, only meaningful where stackValues holds UNBOXED
+    private long[] stackBits = NO_BITS;
+    // position + 1 of the value this one shadows, 0 if none
+    private int[] stackPrev = NO_INTS;
+    // key index owning each value, -1 for holes left by out-of-order pops
+    private int[] stackKey = NO_INTS;
+    // derived values computed from each value, as alternating derived keys and values, null until one is retrieved
+    private Object[][] stackDerived = NO_DERIVED;
+    private int stackSize = 0;
+
+    // immutable attachments this manager was seeded with, shadowed by anything pushed
+    private AttachmentContext base;
+
+    public AttachmentManagerImpl() {
+        this(AttachmentContext.EMPTY);
+    }
+
+    public AttachmentManagerImpl(AttachmentContext base) {
+        this.base = base;
+    }
 
     @Override
-    @SuppressWarnings("unchecked")
     public <A> void push(AttachmentKey<A> key, A value) {
-        Holder<A> cur = new Holder<>(value);
-        cur.prev = (Holder<A>) holders.put(key, cur);
+        if (key instanceof DerivedAttachmentKey<?, A>) throw derivedModification(key);
+        pushSlot(key, value, 0L);
+    }
+
+    @Override
+    public void pushInt(IntAttachmentKey key, int value) {
+        pushUnboxed(key, value);
+    }
+
+    @Override
+    public void pushLong(LongAttachmentKey key, long value) {
+        pushUnboxed(key, value);
+    }
+
+    @Override
+    public void pushBoolean(BooleanAttachmentKey key, boolean value) {
+        pushUnboxed(key, value ? 1L : 0L);
+    }
+
+    public void pushUnboxed(PrimitiveAttachmentKey<?> key, long bits) {
+        pushSlot(key, UNBOXED, bits);
+    }
+
+    private void pushSlot(AttachmentKey<?> key, Object value, long bits) {
+        int index = key.getIndex();
+        ensureKeyCapacity(index);
+        ensureStackCapacity(stackSize + 1);
+
+        int pos = stackSize++;
+        stackValues[pos] = value;
+        stackBits[pos] = bits;
+        stackKey[pos] = index;
+        stackPrev[pos] = tops[index];
+        stackDerived[pos] = null;
+
+        if (tops[index] == 0) {
+            keys[index] = key;
+            present[index >>> 6] |= 1L << index;
+            presentCount++;
+        }
+        tops[index] = pos + 1;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public <A> @Nullable A pop(AttachmentKey<A> key) {
-        Holder<A> popped = (Holder<A>) holders.remove(key);
-        if (popped == null) return null;
-        if (popped.prev != null) {
-            holders.put(key, popped.prev);
+        if (key instanceof DerivedAttachmentKey<?, A>) throw derivedModification(key);
+
+        int index = key.getIndex();
+        int top = index < tops.length ? tops[index] : 0;
+        if (top == 0) {
+            // popping a seeded value just drops it from this manager's view of the base context
+            A baseValue = base.get(key);
+            if (baseValue != null) base = base.without(key);
+            return baseValue;
+        }
+
+        int pos = top - 1;
+        A value = valueAt(key, pos);
+        tops[index] = stackPrev[pos];
+        stackValues[pos] = null;
+        stackKey[pos] = -1;
+        stackDerived[pos] = null;
+
+        // attachments are usually popped in the reverse order they were pushed, but if one wasn't then the hole it
+        // left gets cleaned up once everything above it is popped
+        while (stackSize > 0 && stackKey[stackSize - 1] == -1) {
+            stackSize--;
+        }
+
+        if (tops[index] == 0) {
+            present[index >>> 6] &= ~(1L << index);
+            presentCount--;
         }
-        return popped.value;
+
+        return value;
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public <A> @Nullable A get(AttachmentKey<A> key) {
-        Holder<A> holder = (Holder<A>) holders.get(key);
-        if (holder == null) return null;
-        return holder.value;
+        if (key instanceof DerivedAttachmentKey<?, A> derived) return getDerived(derived);
+
+        int index = key.getIndex();
+        int top = index < tops.length ? tops[index] : 0;
+        if (top == 0) return base.get(key);
+        return valueAt(key, top - 1);
+    }
+
+    @Override
+    public int getInt(IntAttachmentKey key, int defaultValue) {
+        int slot = slotOf(key);
+        Object value = slot < 0 ? base.get(key) : stackValues[slot];
+        if (value == UNBOXED) return (int) stackBits[slot];
+        return value != null ? (Integer) value : defaultValue;
+    }
+
+    @Override
+    public long getLong(LongAttachmentKey key, long defaultValue) {
+        int slot = slotOf(key);
+        Object value = slot < 0 ? base.get(key) : stackValues[slot];
+        if (value == UNBOXED) return stackBits[slot];
+        return value != null ? (Long) value : defaultValue;
+    }
+
+    @Override
+    public boolean getBoolean(BooleanAttachmentKey key, boolean defaultValue) {
+        int slot = slotOf(key);
+        Object value = slot < 0 ? base.get(key) : stackValues[slot];
+        if (value == UNBOXED) return stackBits[slot] != 0;
+        return value != null ? (Boolean) value : defaultValue;
+    }
+
+    @Override
+    public boolean contains(AttachmentKey<?> key) {
+        if (key instanceof DerivedAttachmentKey<?, ?> derived) return contains(derived.getSource());
+
+        int index = key.getIndex();
+        int word = index >>> 6;
+        if (word < present.length && (present[word] & (1L << index)) != 0) return true;
+        return base.contains(key);
     }
 
     @Override
     public Set<AttachmentKey<?>> getAttachments() {
-        return new ReferenceOpenHashSet<>(holders.keySet());
+        Set<AttachmentKey<?>> attachments = new ReferenceOpenHashSet<>(presentCount + base.size());
+        for (int i = 0; i < base.size(); i++) {
+            attachments.add(base.keyAt(i));
+        }
+        for (int word = 0; word < present.length; word++) {
+            long bits = present[word];
+            while (bits != 0) {
+                attachments.add(keys[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+                bits &= bits - 1;
+            }
+        }
+        return attachments;
     }
 
     @Override
     public boolean isEmpty() {
-        return holders.isEmpty();
+        return presentCount == 0 && base.isEmpty();
     }
 
-    private static class Holder<A> {
-        final A value;
-        Holder<A> prev = null;
+    @Override
+    @SuppressWarnings("unchecked")
+    public AttachmentContext snapshot() {
+        if (presentCount == 0) return base;
+
+        // both the base context and the present bits are in key index order, so they can be merged in one pass
+        int baseSize = base.size();
+        int basePos = 0;
+        AttachmentContext.Builder builder = AttachmentContext.builder(baseSize + presentCount);
+        for (int word = 0; word < present.length; word++) {
+            long bits = present[word];
+            while (bits != 0) {
+                int index = (word << 6) + Long.numberOfTrailingZeros(bits);
+                while (basePos < baseSize && base.keyAt(basePos).getIndex() < index) {
+                    builder.add((AttachmentKey<Object>) base.keyAt(basePos), base.valueAt(basePos));
+                    basePos++;
+                }
+                // pushed values hide the base context's value
+                if (basePos < baseSize && base.keyAt(basePos).getIndex() == index) basePos++;
+
+                AttachmentKey<Object> key = (AttachmentKey<Object>) keys[index];
+                builder.add(key, valueAt(key, tops[index] - 1));
+                bits &= bits - 1;
+            }
+        }
+        for (; basePos < baseSize; basePos++) {
+            builder.add((AttachmentKey<Object>) base.keyAt(basePos), base.valueAt(basePos));
+        }
+        return builder.build();
+    }
+
+    // position of the key's top-most value in the value stack, -1 if only the base context could have it
+    private int slotOf(AttachmentKey<?> key) {
+        int index = key.getIndex();
+        return index < tops.length ? tops[index] - 1 : -1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <A> A valueAt(AttachmentKey<A> key, int pos) {
+        Object value = stackValues[pos];
+        // only primitive keys ever push unboxed values
+        if (value == UNBOXED) return ((PrimitiveAttachmentKey<A>) key).box(stackBits[pos]);
+        return (A) value;
+    }
 
-        private Holder(A value) {this.value = value;}
+    @SuppressWarnings("unchecked")
+    private <S, A> @Nullable A getDerived(DerivedAttachmentKey<S, A> key) {
+        AttachmentKey<?> root = key.getSource();
+        while (root instanceof DerivedAttachmentKey<?, ?> derived) {
+            root = derived.getSource();
+        }
+
+        // values derived from the base context are cached by the context itself
+        int slot = slotOf(root);
+        if (slot < 0) return base.get(key);
+
+        // derived values live next to the value they were derived from, so they go away when it is popped
+        Object[] derived = stackDerived[slot];
+        if (derived != null) {
+            for (int i = 0; i < derived.length; i += 2) {
+                if (derived[i] == key) return (A) derived[i + 1];
+            }
+        }
+
+        A value = key.derive(get(key.getSource()));
+
+        // deriving through another derived key may have filled in this slot's cache
+        derived = stackDerived[slot];
+        if (derived == null) {
+            derived = new Object[2];
+        } else {
+            derived = Arrays.copyOf(derived, derived.length + 2);
+        }
+        derived[derived.length - 2] = key;
+        derived[derived.length - 1] = value;
+        stackDerived[slot] = derived;
+
+        return value;
+    }
+
+    private static UnsupportedOperationException derivedModification(AttachmentKey<?> key) {
+        return new UnsupportedOperationException("Derived attachment " + key + " cannot be pushed or popped");
+    }
+
+    private void ensureKeyCapacity(int index) {
+        if (index < tops.length) return;
+
+        // present is always sized to cover tops
+        int newLength = Math.max(index + 1, Math.max(tops.length * 2, 8));
+        keys = Arrays.copyOf(keys, newLength);
+        tops = Arrays.copyOf(tops, newLength);
+        present = Arrays.copyOf(present, (newLength + 63) >>> 6);
+    }
+
+    private void ensureStackCapacity(int size) {
+        if (size <= stackValues.length) return;
+
+        int newLength = Math.max(size, Math.max(stackValues.length * 2, 8));
+        stackValues = Arrays.copyOf(stackValues, newLength);
+        stackBits = Arrays.copyOf(stackBits, newLength);
+        stackPrev = Arrays.copyOf(stackPrev, newLength);
+        stackKey = Arrays.copyOf(stackKey, newLength);
+        stackDerived = Arrays.copyOf(stackDerived, newLength);
+    }
+
+    private static final class Empty extends AttachmentManagerImpl {
+        @Override
+        public <A> void push(AttachmentKey<A> key, A value) {
+            throw new UnsupportedOperationException("Cannot push to the shared empty attachment manager");
+        }
+
+        @Override
+        public void pushUnboxed(PrimitiveAttachmentKey<?> key, long bits) {
+            throw new UnsupportedOperationException("Cannot push to the shared empty attachment manager");
+        }
+
+        @Override
+        public <A> @Nullable A pop(AttachmentKey<A> key) {
+            return null;
+        }
+
+        @Override
+        public <A> @Nullable A get(AttachmentKey<A> key) {
+            return null;
+        }
+
+        @Override
+        public boolean contains(AttachmentKey<?> key) {
+            return false;
+        }
+
+        @Override
+        public Set<AttachmentKey<?>> getAttachments() {
+            return Set.of();
+        }
+
+        @Override
+        public AttachmentContext snapshot() {
+            return AttachmentContext.EMPTY;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "AttachmentManagerImpl.EMPTY";
+        }
     }
 }
@@ -26,23 +26,52 @@
 package com.kneelawk.codextra.impl.attach;
 
 import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.JsonOps;
 
+import net.minecraft.nbt.NbtOps;
 import net.minecraft.resources.DelegatingOps;
 
 import com.kneelawk.codextra.impl.mixin.api.CodextraAttachmentManagerHolder;
 
 public class AttachmentOps<T> extends DelegatingOps<T> implements CodextraAttachmentManagerHolder {
-    private AttachmentManagerImpl attachmentManager = new AttachmentManagerImpl();
+    private AttachmentManagerImpl attachmentManager = AttachmentManagerImpl.EMPTY;
 
     public AttachmentOps(DynamicOps<T> delegate) {
         super(delegate);
     }
 
+    // Creates a new ops holding an empty attachment manager that behaves like the given ops. The common base ops get
+    // subclasses that hold the manager themselves, so their ops calls don't go through a delegate. JavaOps can't be
+    // subclassed, so it still gets wrapped.
+    @SuppressWarnings("unchecked")
+    public static <T> DynamicOps<T> create(DynamicOps<T> ops) {
+        // exact class checks, because we'd lose the behavior of any other subclasses by not delegating to them
+        Class<?> clazz = ops.getClass();
+        if (clazz == JsonOps.class || clazz == AttachmentJsonOps.class) {
+            return (DynamicOps<T>) new AttachmentJsonOps(ops.compressMaps());
+        } else if (clazz == NbtOps.class || clazz == AttachmentNbtOps.class) {
+            return (DynamicOps<T>) new AttachmentNbtOps();
+        } else if (clazz == AttachmentOps.class) {
+            // no need to stack attachment ops on top of each other
+            return new AttachmentOps<>(((AttachmentOps<T>) ops).delegate);
+        }
+
+        return new AttachmentOps<>(ops);
+    }
+
     @Override
     public AttachmentManagerImpl codextra_getAttachmentManager() {
         return attachmentManager;
     }
 
+    @Override
+    public AttachmentManagerImpl codextra_getOrCreateAttachmentManager() {
+        if (attachmentManager == AttachmentManagerImpl.EMPTY) {
+            attachmentManager = new AttachmentManagerImpl();
+        }
+        return attachmentManager;
+    }
+
     @Override
     public void codextra_setAttachmentManager(AttachmentManagerImpl manager) {
         attachmentManager = manager;
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.impl.attach;
+
+import java.util.Objects;
+
+import org.jetbrains.annotations.Nullable;
+
+import it.unimi.dsi.fastutil.Hash;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectMap;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.impl.CodextraConstants;
+
+/**
+ * The values already written or read by each back-reference codec while encoding or decoding a single top-level value.
+ * <p>
+ * Each back-reference codec gets its own table, so ids only depend on the order that codec sees values in.
+ */
+public final class BackReferenceFrame {
+    public static final AttachmentKey<BackReferenceFrame> KEY =
+        AttachmentKey.of(CodextraConstants.rl("back_references"));
+
+    public static final Hash.Strategy<Object> EQUALITY = new Hash.Strategy<>() {
+        @Override
+        public int hashCode(Object o) {
+            return Objects.hashCode(o);
+        }
+
+        @Override
+        public boolean equals(Object a, Object b) {
+            return Objects.equals(a, b);
+        }
+    };
+
+    public static final Hash.Strategy<Object> IDENTITY = new Hash.Strategy<>() {
+        @Override
+        public int hashCode(Object o) {
+            return System.identityHashCode(o);
+        }
+
+        @Override
+        public boolean equals(Object a, Object b) {
+            return a == b;
+        }
+    };
+
+    private final Reference2ObjectMap<Object, Table> tables = new Reference2ObjectOpenHashMap<>();
+
+    public Table getTable(Object codec, Hash.Strategy<?> strategy) {
+        Table table = tables.get(codec);
+        if (table == null) {
+            table = new Table(strategy);
+            tables.put(codec, table);
+        }
+        return table;
+    }
+
+    public static final class Table {
+        private final Object2IntMap<Object> writtenIds;
+        private final ObjectArrayList<Object> readValues = new ObjectArrayList<>();
+        private int writtenCount = 0;
+
+        @SuppressWarnings("unchecked")
+        private Table(Hash.Strategy<?> strategy) {
+            writtenIds = new Object2IntOpenCustomHashMap<>((Hash.Strategy<Object>) strategy);
+            writtenIds.defaultReturnValue(-1);
+        }
+
+        // -1 if the value has not been written yet
+        public int getWrittenId(Object value) {
+            return writtenIds.getInt(value);
+        }
+
+        public void addWritten(Object value) {
+            // the reading side assigns an id to every value read in full, so this always uses up an id even if an equal
+            // value was somehow added while writing this one's contents
+            writtenIds.putIfAbsent(value, writtenCount++);
+        }
+
+        public @Nullable Object getRead(int id) {
+            return id >= 0 && id < readValues.size() ? readValues.get(id) : null;
+        }
+
+        public void addRead(Object value) {
+            readValues.add(value);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.impl.attach;
+
+import io.netty.buffer.ByteBuf;
+
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+
+import com.kneelawk.codextra.api.attach.stream.ChildBufferFactory;
+
+public final class ChildBufferFactories {
+    public static final ChildBufferFactory<FriendlyByteBuf, FriendlyByteBuf> FRIENDLY = new ChildBufferFactory<>() {
+        @Override
+        public FriendlyByteBuf create(int initialCapacity, FriendlyByteBuf parent) {
+            // the parent's allocator is usually pooled while on a netty thread
+            return new FriendlyByteBuf(parent.alloc().buffer(initialCapacity));
+        }
+
+        @Override
+        public FriendlyByteBuf wrap(ByteBuf contents, FriendlyByteBuf parent) {
+            return new FriendlyByteBuf(contents);
+        }
+
+        @Override
+        public String toString() {
+            return "ChildBufferFactory[friendly]";
+        }
+    };
+
+    public static final ChildBufferFactory<RegistryFriendlyByteBuf, RegistryFriendlyByteBuf> REGISTRY_FRIENDLY =
+        new ChildBufferFactory<>() {
+            @Override
+            public RegistryFriendlyByteBuf create(int initialCapacity, RegistryFriendlyByteBuf parent) {
+                return new RegistryFriendlyByteBuf(parent.alloc().buffer(initialCapacity), parent.registryAccess());
+            }
+
+            @Override
+            public RegistryFriendlyByteBuf wrap(ByteBuf contents, RegistryFriendlyByteBuf parent) {
+                return new RegistryFriendlyByteBuf(contents, parent.registryAccess());
+            }
+
+            @Override
+            public String toString() {
+                return "ChildBufferFactory[registryFriendly]";
+            }
+        };
+
+    private ChildBufferFactories() {}
+}
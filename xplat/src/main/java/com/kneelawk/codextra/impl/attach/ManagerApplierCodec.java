@@ -6,19 +6,62 @@ import com.mojang.serialization.DataResult;
 import com.mojang.serialization.DynamicOps;
 
 import com.kneelawk.codextra.impl.CodextraImpl;
+import com.kneelawk.codextra.impl.mixin.api.CodextraAttachmentManagerHolder;
 
 public class ManagerApplierCodec<R> implements Codec<R> {
     private final Codec<R> wrapped;
 
     public ManagerApplierCodec(Codec<R> wrapped) {this.wrapped = wrapped;}
 
+    public static <R> Codec<R> wrap(Codec<R> codec) {
+        if (codec instanceof ManagerApplierCodec<R>) return codec;
+        return new ManagerApplierCodec<>(codec);
+    }
+
     @Override
     public <T> DataResult<Pair<R, T>> decode(DynamicOps<T> ops, T input) {
-        return CodextraImpl.wrapWithStreamManager(ops, newOps -> wrapped.decode(newOps, input));
+        AttachmentManagerImpl manager = CodextraImpl.streamManager();
+        if (manager == null) return wrapped.decode(ops, input);
+
+        CodextraAttachmentManagerHolder holder = CodextraImpl.getHolder(ops);
+        if (holder == null) {
+            DynamicOps<T> attached = AttachmentOps.create(ops);
+            ((CodextraAttachmentManagerHolder) attached).codextra_setAttachmentManager(manager);
+            return wrapped.decode(attached, input);
+        }
+
+        AttachmentManagerImpl oldManager = holder.codextra_getAttachmentManager();
+        holder.codextra_setAttachmentManager(manager);
+        try {
+            return wrapped.decode(ops, input);
+        } finally {
+            holder.codextra_setAttachmentManager(oldManager);
+        }
     }
 
     @Override
     public <T> DataResult<T> encode(R input, DynamicOps<T> ops, T prefix) {
-        return CodextraImpl.wrapWithStreamManager(ops, newOps -> wrapped.encode(input, newOps, prefix));
+        AttachmentManagerImpl manager = CodextraImpl.streamManager();
+        if (manager == null) return wrapped.encode(input, ops, prefix);
+
+        CodextraAttachmentManagerHolder holder = CodextraImpl.getHolder(ops);
+        if (holder == null) {
+            DynamicOps<T> attached = AttachmentOps.create(ops);
+            ((CodextraAttachmentManagerHolder) attached).codextra_setAttachmentManager(manager);
+            return wrapped.encode(input, attached, prefix);
+        }
+
+        AttachmentManagerImpl oldManager = holder.codextra_getAttachmentManager();
+        holder.codextra_setAttachmentManager(manager);
+        try {
+            return wrapped.encode(input, ops, prefix);
+        } finally {
+            holder.codextra_setAttachmentManager(oldManager);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ManagerApplierCodec[" + wrapped + "]";
     }
 }
@@ -13,22 +13,33 @@ public class ManagerGrabberStreamCodec<B, V> implements StreamCodec<B, V> {
 
     public ManagerGrabberStreamCodec(StreamCodec<B, V> wrapped) {this.wrapped = wrapped;}
 
+    public static <B, V> StreamCodec<B, V> wrap(StreamCodec<B, V> streamCodec) {
+        if (streamCodec instanceof ManagerGrabberStreamCodec<B, V>) return streamCodec;
+        return new ManagerGrabberStreamCodec<>(streamCodec);
+    }
+
     @Override
     public @NotNull V decode(@NotNull B stream) {
-        if (stream instanceof ByteBuf buf) {
-            CodextraImpl.putStreamManager(buf);
+        StreamManagerStack stack = stream instanceof ByteBuf buf ? CodextraImpl.pushStreamManager(buf) : null;
+        try {
+            return wrapped.decode(stream);
+        } finally {
+            if (stack != null) stack.pop();
         }
-        V decoded = wrapped.decode(stream);
-        CodextraImpl.removeStreamManager();
-        return decoded;
     }
 
     @Override
     public void encode(@NotNull B stream, @NotNull V input) {
-        if (stream instanceof ByteBuf buf) {
-            CodextraImpl.putStreamManager(buf);
+        StreamManagerStack stack = stream instanceof ByteBuf buf ? CodextraImpl.pushStreamManager(buf) : null;
+        try {
+            wrapped.encode(stream, input);
+        } finally {
+            if (stack != null) stack.pop();
         }
-        wrapped.encode(stream, input);
-        CodextraImpl.removeStreamManager();
+    }
+
+    @Override
+    public String toString() {
+        return "ManagerGrabberStreamCodec[" + wrapped + "]";
     }
 }
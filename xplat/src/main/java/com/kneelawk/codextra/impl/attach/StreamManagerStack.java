@@ -0,0 +1,58 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.impl.attach;
+
+import java.util.Arrays;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Per-thread stack of the attachment managers of the buffers currently being decoded/encoded by codec-backed stream
+ * codecs.
+ * <p>
+ * This is reused for the lifetime of its thread, so pushing and popping does not allocate once it has grown.
+ */
+public final class StreamManagerStack {
+    private AttachmentManagerImpl[] managers = new AttachmentManagerImpl[4];
+    private int size = 0;
+
+    public void push(AttachmentManagerImpl manager) {
+        if (size == managers.length) {
+            managers = Arrays.copyOf(managers, size * 2);
+        }
+        managers[size++] = manager;
+    }
+
+    public void pop() {
+        if (size == 0) throw new IllegalStateException("Stream manager stack underflow");
+        managers[--size] = null;
+    }
+
+    public @Nullable AttachmentManagerImpl peek() {
+        if (size == 0) return null;
+        return managers[size - 1];
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.impl.attach;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.netty.util.concurrent.FastThreadLocal;
+
+/**
+ * Per-thread pool of the attachment-holding wrappers created around dynamic ops and buffers that don't support
+ * attachments themselves.
+ * <p>
+ * Wrappers are keyed on the identity of the ops or buffer they wrap. Only wrappers that have had all their attachments
+ * popped are released into the pool, so an acquired wrapper always starts out empty and keeps its attachment manager's
+ * already-grown storage.
+ * <p>
+ * Pooling is only enabled with the {@code codextra.poolWrappers} system property, as values decoded through a wrapper
+ * must not keep hold of it once it has been released.
+ */
+public final class WrapperPool {
+    private static final int MAX_SIZE = 16;
+
+    // This is opt-in because a released wrapper is handed to whoever pushes to the same ops next, so anything decoded
+    // through it that kept hold of its ops, like a passthrough Dynamic or a lazily evaluated codec, would see someone
+    // else's attachments. Tests toggle this to cover the pooled path.
+    private static volatile boolean enabled = Boolean.getBoolean("codextra.poolWrappers");
+
+    private static final FastThreadLocal<WrapperPool> POOLS = new FastThreadLocal<>() {
+        @Override
+        protected WrapperPool initialValue() {
+            return new WrapperPool();
+        }
+    };
+
+    private final Object[] bases = new Object[MAX_SIZE];
+    private final Object[] wrappers = new Object[MAX_SIZE];
+    private int size = 0;
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // wrappers already in the pool are dropped when disabling, so they can't be handed out if pooling is enabled again
+    public static void setEnabled(boolean enabled) {
+        WrapperPool.enabled = enabled;
+        if (!enabled) get().clear();
+    }
+
+    public static WrapperPool get() {
+        return POOLS.get();
+    }
+
+    public @Nullable Object acquire(Object base) {
+        // most recently released first, as that's most likely to be the one we're after
+        for (int i = size - 1; i >= 0; i--) {
+            if (bases[i] == base) {
+                Object wrapper = wrappers[i];
+                size--;
+                bases[i] = bases[size];
+                wrappers[i] = wrappers[size];
+                bases[size] = null;
+                wrappers[size] = null;
+                return wrapper;
+            }
+        }
+
+        return null;
+    }
+
+    public void release(Object base, Object wrapper) {
+        // a full pool just lets the wrapper get garbage collected
+        if (size == MAX_SIZE) return;
+        // releasing twice must not let two callers acquire the same wrapper
+        for (int i = 0; i < size; i++) {
+            if (wrappers[i] == wrapper) return;
+        }
+
+        bases[size] = base;
+        wrappers[size] = wrapper;
+        size++;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            bases[i] = null;
+            wrappers[i] = null;
+        }
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.kneelawk.codextra.impl.codec;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.MapLike;
+import com.mojang.serialization.RecordBuilder;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.codec.RetrievalMapCodec;
+import com.kneelawk.codextra.impl.CodextraImpl;
+import com.kneelawk.codextra.impl.attach.AttachmentManagerImpl;
+
+// Record map codec whose decode is overridden by a class generated by CompiledRecordGenerator. This class's own decode
+// is the slow path, used when the generated decode runs into an error or when generating the class failed, and
+// produces the same errors and partial results a RecordCodecBuilder codec would.
+public class CompiledRecordCodec<R> extends MapCodec<R> {
+    // returned by the helpers below when the generated decode has to fall back to the slow path
+    static final Object FAILED = new Object();
+
+    private final Class<R> recordClass;
+    private final Component[] components;
+    // takes the record's components as Objects and returns the record as an Object
+    private final MethodHandle constructor;
+    // (Object)Object getters for each component, null for retrieved components
+    private final @Nullable MethodHandle[] getters;
+    private final MapCodec<?>[] mapCodecs;
+
+    public CompiledRecordCodec(Class<R> recordClass, Component[] components, MethodHandle constructor,
+                               @Nullable MethodHandle[] getters) {
+        this.recordClass = recordClass;
+        this.components = components;
+        this.constructor = constructor;
+        this.getters = getters;
+
+        mapCodecs = new MapCodec<?>[components.length];
+        for (int i = 0; i < components.length; i++) {
+            mapCodecs[i] = components[i].toMapCodec();
+        }
+    }
+
+    @Override
+    public <T> Stream<T> keys(DynamicOps<T> ops) {
+        return Stream.of(mapCodecs).flatMap(codec -> codec.keys(ops));
+    }
+
+    @Override
+    public <T> DataResult<R> decode(DynamicOps<T> ops, MapLike<T> input) {
+        return slowDecode(ops, input);
+    }
+
+    <T> DataResult<R> slowDecode(DynamicOps<T> ops, MapLike<T> input) {
+        Object[] values = new Object[components.length];
+        StringBuilder errors = null;
+        boolean complete = true;
+
+        for (int i = 0; i < mapCodecs.length; i++) {
+            DataResult<?> result = mapCodecs[i].decode(ops, input);
+
+            Optional<?> value = result.resultOrPartial();
+            if (value.isPresent()) {
+                values[i] = value.get();
+            } else {
+                complete = false;
+            }
+
+            Optional<? extends DataResult.Error<?>> error = result.error();
+            if (error.isPresent()) {
+                if (errors == null) {
+                    errors = new StringBuilder();
+                } else {
+                    errors.append("; ");
+                }
+                errors.append(error.get().message());
+            }
+        }
+
+        if (errors == null) return DataResult.success(construct(values));
+
+        String message = errors.toString();
+        if (complete) return DataResult.error(() -> message, construct(values));
+        return DataResult.error(() -> message);
+    }
+
+    private R construct(Object[] values) {
+        try {
+            return recordClass.cast(constructor.invokeWithArguments(values));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Error constructing " + recordClass.getName(), e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> RecordBuilder<T> encode(R input, DynamicOps<T> ops, RecordBuilder<T> prefix) {
+        for (int i = 0; i < mapCodecs.length; i++) {
+            MethodHandle getter = getters[i];
+            if (getter == null) continue;
+
+            Object value;
+            try {
+                value = getter.invokeExact((Object) input);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Error getting component of " + recordClass.getName(), e);
+            }
+
+            prefix = ((MapCodec<Object>) mapCodecs[i]).encode(value, ops, prefix);
+        }
+        return prefix;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledRecordCodec[" + recordClass.getName() + "]";
+    }
+
+    // helpers called by generated decode methods
+
+    static AttachmentManagerImpl manager(DynamicOps<?> ops) {
+        AttachmentManagerImpl manager = CodextraImpl.getAttachmentManager(ops);
+        return manager == null ? AttachmentManagerImpl.EMPTY : manager;
+    }
+
+    static <T> Object field(DynamicOps<T> ops, MapLike<T> input, String name, Codec<?> codec) {
+        T value = input.get(name);
+        if (value == null) return FAILED;
+        return parse(ops, value, codec);
+    }
+
+    static <T> Object defaultedField(DynamicOps<T> ops, MapLike<T> input, String name, Codec<?> codec,
+                                     Object defaultValue) {
+        T value = input.get(name);
+        if (value == null) return defaultValue;
+        return parse(ops, value, codec);
+    }
+
+    static <T> Object optionalField(DynamicOps<T> ops, MapLike<T> input, String name, Codec<?> codec) {
+        T value = input.get(name);
+        if (value == null) return Optional.empty();
+        Object parsed = parse(ops, value, codec);
+        return parsed == FAILED ? FAILED : Optional.of(parsed);
+    }
+
+    private static <T> Object parse(DynamicOps<T> ops, T value, Codec<?> codec) {
+        DataResult<?> result = codec.parse(ops, value);
+        return result.isSuccess() ? result.getOrThrow() : FAILED;
+    }
+
+    static Object retrieve(AttachmentManagerImpl manager, AttachmentKey<?> key) {
+        Object value = manager.get(key);
+        return value == null ? FAILED : value;
+    }
+
+    static DataResult<Object> success(Object value) {
+        return DataResult.success(value);
+    }
+
+    public enum Kind {
+        // a required field
+        FIELD,
+        // a field with a default value, like Codec.optionalFieldOf(name, defaultValue)
+        DEFAULTED_FIELD,
+        // an Optional field, like Codec.optionalFieldOf(name)
+        OPTIONAL_FIELD,
+        RETRIEVAL
+    }
+
+    // One record component. Fields have a name and codec, retrieved components have a key and retriever. Only defaulted
+    // fields have a default value.
+    public record Component(Kind kind, @Nullable String name, @Nullable Codec<Object> codec,
+                            @Nullable Object defaultValue, @Nullable AttachmentKey<Object> key,
+                            @Nullable Function<Object, Object> retriever) {
+        public static Component field(String name, Codec<Object> codec) {
+            return new Component(Kind.FIELD, name, codec, null, null, null);
+        }
+
+        public static Component defaultedField(String name, Codec<Object> codec, Object defaultValue) {
+            Objects.requireNonNull(defaultValue, "defaultValue");
+            return new Component(Kind.DEFAULTED_FIELD, name, codec, defaultValue, null, null);
+        }
+
+        public static Component optionalField(String name, Codec<Object> codec) {
+            return new Component(Kind.OPTIONAL_FIELD, name, codec, null, null, null);
+        }
+
+        public static Component retrieval(AttachmentKey<Object> key, Function<Object, Object> retriever) {
+            return new Component(Kind.RETRIEVAL, null, null, null, key, retriever);
+        }
+
+        public boolean isRetrieval() {
+            return kind == Kind.RETRIEVAL;
+        }
+
+        MapCodec<?> toMapCodec() {
+            return switch (kind) {
+                case FIELD -> codec.fieldOf(name);
+                case DEFAULTED_FIELD -> codec.optionalFieldOf(name, defaultValue);
+                case OPTIONAL_FIELD -> codec.optionalFieldOf(name);
+                case RETRIEVAL -> new RetrievalMapCodec<>(key, retriever.andThen(DataResult::success));
+            };
+        }
+    }
+}
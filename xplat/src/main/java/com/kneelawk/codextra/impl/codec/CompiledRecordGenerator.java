@@ -0,0 +1,313 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.kneelawk.codextra.impl.codec;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.MapLike;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.impl.CodextraLog;
+import com.kneelawk.codextra.impl.attach.AttachmentManagerImpl;
+import com.kneelawk.codextra.impl.codec.CompiledRecordCodec.Component;
+import com.kneelawk.codextra.impl.codec.CompiledRecordCodec.Kind;
+
+// Generates a hidden subclass of CompiledRecordCodec per record shape, with a straight-line decode method. The
+// generated class never names the record type or any caller types: codecs, keys, retrievers and the constructor all
+// come in through class data and are stored in static final fields, so the JIT treats them as constants.
+public final class CompiledRecordGenerator {
+    private static final String BASE = Type.getInternalName(CompiledRecordCodec.class);
+    private static final String NAME = BASE + "$Compiled";
+    private static final String OBJECT = Type.getInternalName(Object.class);
+    private static final String OBJECT_DESC = Type.getDescriptor(Object.class);
+    private static final String CODEC_DESC = Type.getDescriptor(Codec.class);
+    private static final String KEY_DESC = Type.getDescriptor(AttachmentKey.class);
+    private static final String FUNCTION = Type.getInternalName(Function.class);
+    private static final String FUNCTION_DESC = Type.getDescriptor(Function.class);
+    private static final String METHOD_HANDLE = Type.getInternalName(MethodHandle.class);
+    private static final String METHOD_HANDLE_DESC = Type.getDescriptor(MethodHandle.class);
+    private static final String OPS_DESC = Type.getDescriptor(DynamicOps.class);
+    private static final String MAP_LIKE_DESC = Type.getDescriptor(MapLike.class);
+    private static final String MANAGER_DESC = Type.getDescriptor(AttachmentManagerImpl.class);
+    private static final String RESULT_DESC = Type.getDescriptor(DataResult.class);
+    private static final String DECODE_DESC = "(" + OPS_DESC + MAP_LIKE_DESC + ")" + RESULT_DESC;
+    private static final MethodType CONSTRUCTOR_TYPE =
+        MethodType.methodType(void.class, Class.class, Component[].class, MethodHandle.class, MethodHandle[].class);
+
+    private CompiledRecordGenerator() {}
+
+    public static <R> CompiledRecordCodec<R> create(Class<R> recordClass, List<Component> componentList) {
+        if (!recordClass.isRecord()) throw new IllegalArgumentException(recordClass.getName() + " is not a record");
+        RecordComponent[] recordComponents = recordClass.getRecordComponents();
+        if (recordComponents.length != componentList.size()) {
+            throw new IllegalArgumentException(
+                "Record " + recordClass.getName() + " has " + recordComponents.length + " components but " +
+                    componentList.size() + " were given");
+        }
+
+        Component[] components = componentList.toArray(Component[]::new);
+        for (int i = 0; i < components.length; i++) {
+            if (components[i].kind() == Kind.OPTIONAL_FIELD &&
+                recordComponents[i].getType() != Optional.class) {
+                throw new IllegalArgumentException(
+                    "Optional field " + components[i].name() + " must be an Optional, but record component " +
+                        recordComponents[i].getName() + " is a " + recordComponents[i].getType().getName());
+            }
+        }
+
+        MethodHandle constructor;
+        MethodHandle[] getters = new MethodHandle[components.length];
+        try {
+            MethodHandles.Lookup lookup = recordLookup(recordClass);
+
+            Class<?>[] types = new Class<?>[recordComponents.length];
+            for (int i = 0; i < recordComponents.length; i++) {
+                types[i] = recordComponents[i].getType();
+                if (!components[i].isRetrieval()) {
+                    getters[i] = lookup.unreflect(recordComponents[i].getAccessor())
+                        .asType(MethodType.methodType(Object.class, Object.class));
+                }
+            }
+
+            constructor = lookup.findConstructor(recordClass, MethodType.methodType(void.class, types))
+                .asType(MethodType.genericMethodType(types.length));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to access record " + recordClass.getName(), e);
+        }
+
+        try {
+            MethodHandles.Lookup hidden = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(generate(components), classData(components, constructor), true);
+            MethodHandle codecConstructor = hidden.findConstructor(hidden.lookupClass(), CONSTRUCTOR_TYPE);
+            @SuppressWarnings("unchecked")
+            CompiledRecordCodec<R> codec =
+                (CompiledRecordCodec<R>) codecConstructor.invoke(recordClass, components, constructor, getters);
+            return codec;
+        } catch (Throwable e) {
+            CodextraLog.LOGGER.warn("Unable to generate a record codec for {}, falling back to the slow path",
+                recordClass.getName(), e);
+            return new CompiledRecordCodec<>(recordClass, components, constructor, getters);
+        }
+    }
+
+    private static MethodHandles.Lookup recordLookup(Class<?> recordClass) {
+        try {
+            return MethodHandles.privateLookupIn(recordClass, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            // the record's module isn't open to us, so only public records will work
+            return MethodHandles.publicLookup();
+        }
+    }
+
+    // the constructor, then each component's codec or key, then each component's default value or retriever
+    private static Object[] classData(Component[] components, MethodHandle constructor) {
+        List<Object> data = new ArrayList<>();
+        data.add(constructor);
+        for (Component component : components) {
+            if (component.isRetrieval()) {
+                data.add(component.key());
+                data.add(component.retriever());
+            } else {
+                data.add(component.codec());
+                data.add(component.defaultValue());
+            }
+        }
+        return data.toArray();
+    }
+
+    private static byte[] generate(Component[] components) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                // every merge point in the generated code has matching frames, and loading classes by name wouldn't
+                // find the hidden class anyways
+                return OBJECT;
+            }
+        };
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, NAME, null, BASE, null);
+
+        cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "constructor", METHOD_HANDLE_DESC,
+            null, null).visitEnd();
+        for (int i = 0; i < components.length; i++) {
+            boolean retrieval = components[i].isRetrieval();
+            cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "first" + i,
+                retrieval ? KEY_DESC : CODEC_DESC, null, null).visitEnd();
+            cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "second" + i,
+                retrieval ? FUNCTION_DESC : OBJECT_DESC, null, null).visitEnd();
+        }
+
+        generateStaticInit(cw, components);
+        generateConstructor(cw);
+        generateDecode(cw, components);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void generateStaticInit(ClassWriter cw, Component[] components) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(MethodHandles.class), "lookup",
+            Type.getMethodDescriptor(Type.getType(MethodHandles.Lookup.class)), false);
+        mv.visitLdcInsn("_");
+        mv.visitLdcInsn(Type.getType(Object[].class));
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(MethodHandles.class), "classData",
+            Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(MethodHandles.Lookup.class),
+                Type.getType(String.class), Type.getType(Class.class)), false);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(Object[].class));
+        mv.visitVarInsn(Opcodes.ASTORE, 0);
+
+        int index = 0;
+        loadData(mv, index++, METHOD_HANDLE);
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, NAME, "constructor", METHOD_HANDLE_DESC);
+        for (int i = 0; i < components.length; i++) {
+            boolean retrieval = components[i].isRetrieval();
+            loadData(mv, index++, Type.getType(retrieval ? KEY_DESC : CODEC_DESC).getInternalName());
+            mv.visitFieldInsn(Opcodes.PUTSTATIC, NAME, "first" + i, retrieval ? KEY_DESC : CODEC_DESC);
+            loadData(mv, index++, retrieval ? FUNCTION : OBJECT);
+            mv.visitFieldInsn(Opcodes.PUTSTATIC, NAME, "second" + i, retrieval ? FUNCTION_DESC : OBJECT_DESC);
+        }
+
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void loadData(MethodVisitor mv, int index, String type) {
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitLdcInsn(index);
+        mv.visitInsn(Opcodes.AALOAD);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, type);
+    }
+
+    private static void generateConstructor(ClassWriter cw) {
+        String desc = CONSTRUCTOR_TYPE.toMethodDescriptorString();
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", desc, null, null);
+        mv.visitCode();
+        for (int i = 0; i <= 4; i++) {
+            mv.visitVarInsn(Opcodes.ALOAD, i);
+        }
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, BASE, "<init>", desc, false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void generateDecode(ClassWriter cw, Component[] components) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "decode", DECODE_DESC, null, null);
+        mv.visitCode();
+
+        // locals: 0 = this, 1 = ops, 2 = input, 3 = attachment manager, 4+ = component values
+        boolean anyRetrievals = false;
+        for (Component component : components) {
+            anyRetrievals |= component.isRetrieval();
+        }
+        if (anyRetrievals) {
+            // one manager lookup for every retrieved component
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, BASE, "manager", "(" + OPS_DESC + ")" + MANAGER_DESC, false);
+            mv.visitVarInsn(Opcodes.ASTORE, 3);
+        }
+
+        for (int i = 0; i < components.length; i++) {
+            Component component = components[i];
+            int local = 4 + i;
+
+            if (component.isRetrieval()) {
+                mv.visitVarInsn(Opcodes.ALOAD, 3);
+                mv.visitFieldInsn(Opcodes.GETSTATIC, NAME, "first" + i, KEY_DESC);
+                mv.visitMethodInsn(Opcodes.INVOKESTATIC, BASE, "retrieve",
+                    "(" + MANAGER_DESC + KEY_DESC + ")" + OBJECT_DESC, false);
+            } else {
+                mv.visitVarInsn(Opcodes.ALOAD, 1);
+                mv.visitVarInsn(Opcodes.ALOAD, 2);
+                mv.visitLdcInsn(component.name());
+                mv.visitFieldInsn(Opcodes.GETSTATIC, NAME, "first" + i, CODEC_DESC);
+                String fieldDesc = OPS_DESC + MAP_LIKE_DESC + Type.getDescriptor(String.class) + CODEC_DESC;
+                switch (component.kind()) {
+                    case DEFAULTED_FIELD -> {
+                        mv.visitFieldInsn(Opcodes.GETSTATIC, NAME, "second" + i, OBJECT_DESC);
+                        mv.visitMethodInsn(Opcodes.INVOKESTATIC, BASE, "defaultedField",
+                            "(" + fieldDesc + OBJECT_DESC + ")" + OBJECT_DESC, false);
+                    }
+                    case OPTIONAL_FIELD -> mv.visitMethodInsn(Opcodes.INVOKESTATIC, BASE, "optionalField",
+                        "(" + fieldDesc + ")" + OBJECT_DESC, false);
+                    default -> mv.visitMethodInsn(Opcodes.INVOKESTATIC, BASE, "field",
+                        "(" + fieldDesc + ")" + OBJECT_DESC, false);
+                }
+            }
+            mv.visitVarInsn(Opcodes.ASTORE, local);
+
+            // anything unusual goes to the slow path, which gathers every error the way RecordCodecBuilder does
+            Label success = new Label();
+            mv.visitVarInsn(Opcodes.ALOAD, local);
+            mv.visitFieldInsn(Opcodes.GETSTATIC, BASE, "FAILED", OBJECT_DESC);
+            mv.visitJumpInsn(Opcodes.IF_ACMPNE, success);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, BASE, "slowDecode", DECODE_DESC, false);
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitLabel(success);
+
+            if (component.isRetrieval()) {
+                mv.visitFieldInsn(Opcodes.GETSTATIC, NAME, "second" + i, FUNCTION_DESC);
+                mv.visitVarInsn(Opcodes.ALOAD, local);
+                mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, FUNCTION, "apply", "(" + OBJECT_DESC + ")" + OBJECT_DESC,
+                    true);
+                mv.visitVarInsn(Opcodes.ASTORE, local);
+            }
+        }
+
+        mv.visitFieldInsn(Opcodes.GETSTATIC, NAME, "constructor", METHOD_HANDLE_DESC);
+        for (int i = 0; i < components.length; i++) {
+            mv.visitVarInsn(Opcodes.ALOAD, 4 + i);
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact",
+            MethodType.genericMethodType(components.length).toMethodDescriptorString(), false);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, BASE, "success", "(" + OBJECT_DESC + ")" + RESULT_DESC, false);
+        mv.visitInsn(Opcodes.ARETURN);
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+}
@@ -28,8 +28,12 @@ package com.kneelawk.codextra.impl.mixin.api;
 import com.kneelawk.codextra.impl.attach.AttachmentManagerImpl;
 
 public interface CodextraAttachmentManagerHolder {
+    // may return AttachmentManagerImpl.EMPTY if nothing has been pushed yet, never allocates
     AttachmentManagerImpl codextra_getAttachmentManager();
 
+    // allocates a real attachment manager if this holder is still using AttachmentManagerImpl.EMPTY
+    AttachmentManagerImpl codextra_getOrCreateAttachmentManager();
+
     // set the attachment manager after creation, just in case we can't pass it in through the constructor somehow
     void codextra_setAttachmentManager(AttachmentManagerImpl manager);
 }
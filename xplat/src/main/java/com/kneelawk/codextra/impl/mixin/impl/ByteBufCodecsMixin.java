@@ -3,6 +3,7 @@ package com.kneelawk.codextra.impl.mixin.impl;
 import java.util.function.Supplier;
 
 import com.llamalad7.mixinextras.injector.ModifyReturnValue;
+import com.llamalad7.mixinextras.sugar.Local;
 
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
@@ -12,16 +13,21 @@ import io.netty.buffer.ByteBuf;
 
 import com.mojang.serialization.Codec;
 
+import net.minecraft.nbt.NbtAccounter;
 import net.minecraft.network.RegistryFriendlyByteBuf;
 import net.minecraft.network.codec.ByteBufCodecs;
 import net.minecraft.network.codec.StreamCodec;
 
+import com.kneelawk.codextra.impl.CodextraImpl;
 import com.kneelawk.codextra.impl.attach.ManagerApplierCodec;
 import com.kneelawk.codextra.impl.attach.ManagerGrabberStreamCodec;
+import com.kneelawk.codextra.impl.stream.NbtViewOps;
+import com.kneelawk.codextra.impl.stream.NbtViewStreamCodec;
 
 /**
  * Transfers the AttachmentManager from the StreamCodec's context to the Codec's ops when calling
  * {@link ByteBufCodecs#fromCodec(Codec, Supplier)} or {@link ByteBufCodecs#fromCodecWithRegistries(Codec, Supplier)}.
+ * When {@code codextra.nbtViewDecode} is set, this also makes those stream codecs decode through NbtViewOps.
  */
 @Mixin(ByteBufCodecs.class)
 public interface ByteBufCodecsMixin {
@@ -29,28 +35,42 @@ public interface ByteBufCodecsMixin {
         method = "fromCodec(Lcom/mojang/serialization/Codec;Ljava/util/function/Supplier;)Lnet/minecraft/network/codec/StreamCodec;",
         at = @At("HEAD"), argsOnly = true)
     private static Codec<Object> codextra_wrapFromCodecCodec(Codec<Object> value) {
-        return new ManagerApplierCodec<>(value);
+        if (CodextraImpl.EXPLICIT_STREAM_ATTACHMENTS) return value;
+        return ManagerApplierCodec.wrap(value);
     }
 
     @ModifyReturnValue(
         method = "fromCodec(Lcom/mojang/serialization/Codec;Ljava/util/function/Supplier;)Lnet/minecraft/network/codec/StreamCodec;",
         at = @At("RETURN"))
-    private static StreamCodec<ByteBuf, Object> codextra_wrapFromCodecReturn(StreamCodec<ByteBuf, Object> original) {
-        return new ManagerGrabberStreamCodec<>(original);
+    private static StreamCodec<ByteBuf, Object> codextra_wrapFromCodecReturn(
+        StreamCodec<ByteBuf, Object> original, @Local(argsOnly = true) Codec<Object> codec,
+        @Local(argsOnly = true) Supplier<NbtAccounter> accounterSupplier) {
+        if (CodextraImpl.NBT_VIEW_DECODE) {
+            original = new NbtViewStreamCodec<>(original, codec, accounterSupplier, buf -> new NbtViewOps());
+        }
+        if (CodextraImpl.EXPLICIT_STREAM_ATTACHMENTS) return original;
+        return ManagerGrabberStreamCodec.wrap(original);
     }
 
     @ModifyVariable(
         method = "fromCodecWithRegistries(Lcom/mojang/serialization/Codec;Ljava/util/function/Supplier;)Lnet/minecraft/network/codec/StreamCodec;",
         at = @At("HEAD"), argsOnly = true)
     private static Codec<Object> codextra_wrapFromCodecWithRegistriesCodec(Codec<Object> value) {
-        return new ManagerApplierCodec<>(value);
+        if (CodextraImpl.EXPLICIT_STREAM_ATTACHMENTS) return value;
+        return ManagerApplierCodec.wrap(value);
     }
 
     @ModifyReturnValue(
         method = "fromCodecWithRegistries(Lcom/mojang/serialization/Codec;Ljava/util/function/Supplier;)Lnet/minecraft/network/codec/StreamCodec;",
         at = @At("RETURN"))
     private static StreamCodec<RegistryFriendlyByteBuf, Object> codextra_wrapFromCodecWithRegistriesReturn(
-        StreamCodec<RegistryFriendlyByteBuf, Object> original) {
-        return new ManagerGrabberStreamCodec<>(original);
+        StreamCodec<RegistryFriendlyByteBuf, Object> original, @Local(argsOnly = true) Codec<Object> codec,
+        @Local(argsOnly = true) Supplier<NbtAccounter> accounterSupplier) {
+        if (CodextraImpl.NBT_VIEW_DECODE) {
+            original = new NbtViewStreamCodec<>(original, codec, accounterSupplier,
+                buf -> buf.registryAccess().createSerializationContext(new NbtViewOps()));
+        }
+        if (CodextraImpl.EXPLICIT_STREAM_ATTACHMENTS) return original;
+        return ManagerGrabberStreamCodec.wrap(original);
     }
 }
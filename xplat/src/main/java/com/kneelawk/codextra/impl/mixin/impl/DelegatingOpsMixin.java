@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.impl.mixin.impl;
+
+import org.jetbrains.annotations.Nullable;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.Unique;
+
+import com.mojang.serialization.DynamicOps;
+
+import net.minecraft.resources.DelegatingOps;
+
+import com.kneelawk.codextra.impl.CodextraImpl;
+import com.kneelawk.codextra.impl.mixin.api.CodextraAttachmentManagerHolder;
+import com.kneelawk.codextra.impl.mixin.api.CodextraHolderResolver;
+
+@Mixin(DelegatingOps.class)
+public abstract class DelegatingOpsMixin<T> implements CodextraHolderResolver {
+    @Unique
+    private static final Object CODEXTRA_NO_HOLDER = new Object();
+
+    @Shadow
+    @Final
+    protected DynamicOps<T> delegate;
+
+    // The delegate is final, so whatever holder the chain resolves to never changes. This is either null (not resolved
+    // yet), CODEXTRA_NO_HOLDER, or the holder. Racing threads would just store the same thing.
+    @Unique
+    private @Nullable Object codextra_resolvedHolder;
+
+    @Override
+    public @Nullable CodextraAttachmentManagerHolder codextra_resolveHolder() {
+        Object resolved = codextra_resolvedHolder;
+        if (resolved == null) {
+            // recursing caches the holder at every level of the chain
+            resolved = CodextraImpl.getHolder(delegate);
+            if (resolved == null) resolved = CODEXTRA_NO_HOLDER;
+            codextra_resolvedHolder = resolved;
+        }
+
+        return resolved == CODEXTRA_NO_HOLDER ? null : (CodextraAttachmentManagerHolder) resolved;
+    }
+}
@@ -25,8 +25,7 @@
 
 package com.kneelawk.codextra.impl.mixin.impl;
 
-import java.util.Objects;
-
+import org.jetbrains.annotations.Nullable;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Unique;
 import org.spongepowered.asm.mixin.injection.At;
@@ -44,17 +43,42 @@ import com.kneelawk.codextra.impl.mixin.api.CodextraAttachmentManagerHolder;
 @Mixin(RegistryOps.class)
 public class RegistryOpsMixin implements CodextraAttachmentManagerHolder {
     @Unique
-    private AttachmentManagerImpl codextra_attachmentManager;
+    private AttachmentManagerImpl codextra_attachmentManager = AttachmentManagerImpl.EMPTY;
+
+    // the holder we were created from, whose attachment manager we share once it has one
+    @Unique
+    private @Nullable CodextraAttachmentManagerHolder codextra_parentHolder;
 
     @Inject(method = "<init>", at = @At("RETURN"))
     private void codextra_onCreate(DynamicOps<?> delegate, RegistryOps.RegistryInfoLookup lookupProvider,
                                    CallbackInfo ci) {
-        AttachmentManagerImpl manager = CodextraImpl.getAttachmentManager(delegate);
-        codextra_attachmentManager = Objects.requireNonNullElseGet(manager, AttachmentManagerImpl::new);
+        codextra_parentHolder = CodextraImpl.getHolder(delegate);
     }
 
     @Override
     public AttachmentManagerImpl codextra_getAttachmentManager() {
+        if (codextra_attachmentManager == AttachmentManagerImpl.EMPTY && codextra_parentHolder != null) {
+            // the parent's manager is shared, so only adopt it once it actually exists
+            AttachmentManagerImpl parentManager = codextra_parentHolder.codextra_getAttachmentManager();
+            if (parentManager != AttachmentManagerImpl.EMPTY) {
+                codextra_attachmentManager = parentManager;
+                codextra_parentHolder = null;
+            }
+            return parentManager;
+        }
+        return codextra_attachmentManager;
+    }
+
+    @Override
+    public AttachmentManagerImpl codextra_getOrCreateAttachmentManager() {
+        if (codextra_attachmentManager == AttachmentManagerImpl.EMPTY) {
+            if (codextra_parentHolder != null) {
+                codextra_attachmentManager = codextra_parentHolder.codextra_getOrCreateAttachmentManager();
+                codextra_parentHolder = null;
+            } else {
+                codextra_attachmentManager = new AttachmentManagerImpl();
+            }
+        }
         return codextra_attachmentManager;
     }
 
@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.impl.stream;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DynamicOps;
+
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.network.codec.StreamCodec;
+
+// like ByteBufCodecs.fromCodec, but writes the codec's output with BinaryValues instead of as NBT
+public class BinaryCodecStreamCodec<B extends ByteBuf, V> implements StreamCodec<B, V> {
+    private final Codec<V> codec;
+    private final Function<? super B, ? extends DynamicOps<Object>> opsGetter;
+    private final Supplier<NbtAccounter> accounterSupplier;
+
+    public BinaryCodecStreamCodec(Codec<V> codec, Function<? super B, ? extends DynamicOps<Object>> opsGetter,
+                                  Supplier<NbtAccounter> accounterSupplier) {
+        this.codec = codec;
+        this.opsGetter = opsGetter;
+        this.accounterSupplier = accounterSupplier;
+    }
+
+    @Override
+    public V decode(B buf) {
+        Object value = BinaryValues.read(buf, accounterSupplier.get());
+        return codec.parse(opsGetter.apply(buf), value)
+            .getOrThrow(msg -> new DecoderException("Failed to decode: " + msg + " " + value));
+    }
+
+    @Override
+    public void encode(B buf, V value) {
+        Object encoded = codec.encodeStart(opsGetter.apply(buf), value)
+            .getOrThrow(msg -> new EncoderException("Failed to encode: " + msg + " " + value));
+        BinaryValues.write(buf, encoded);
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryCodecStreamCodec[" + codec + "]";
+    }
+}
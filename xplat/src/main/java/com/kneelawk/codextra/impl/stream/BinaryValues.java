@@ -0,0 +1,264 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package com.kneelawk.codextra.impl.stream;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+
+import com.mojang.datafixers.util.Unit;
+import com.mojang.serialization.JavaOps;
+
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.network.VarInt;
+import net.minecraft.network.VarLong;
+
+/**
+ * Writes and reads the plain Java object trees produced by {@link JavaOps} in a compact tagged binary form.
+ * <p>
+ * Unlike binary NBT, this has no named root, stores lists without an element type, and stores integers as zig-zag
+ * var-ints.
+ */
+public final class BinaryValues {
+    private static final int MAX_DEPTH = 512;
+    // lists and maps never pre-size past this, as their sizes come from the peer
+    private static final int MAX_PRESIZE = 64;
+
+    private static final byte EMPTY = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte BYTE = 3;
+    private static final byte SHORT = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+    private static final byte STRING = 9;
+    private static final byte BYTES = 10;
+    private static final byte INTS = 11;
+    private static final byte LONGS = 12;
+    private static final byte LIST = 13;
+    private static final byte MAP = 14;
+
+    private BinaryValues() {}
+
+    public static void write(ByteBuf buf, Object value) {
+        write(buf, value, 0);
+    }
+
+    // every value read is charged to the accounter using the same heap estimates as the matching NBT tags
+    public static Object read(ByteBuf buf, NbtAccounter accounter) {
+        byte type = buf.readByte();
+        return switch (type) {
+            case EMPTY -> JavaOps.INSTANCE.empty();
+            case FALSE -> {
+                accounter.accountBytes(9);
+                yield false;
+            }
+            case TRUE -> {
+                accounter.accountBytes(9);
+                yield true;
+            }
+            case BYTE -> {
+                accounter.accountBytes(9);
+                yield buf.readByte();
+            }
+            case SHORT -> {
+                accounter.accountBytes(10);
+                yield buf.readShort();
+            }
+            case INT -> {
+                accounter.accountBytes(12);
+                int n = VarInt.read(buf);
+                yield (n >>> 1) ^ -(n & 1);
+            }
+            case LONG -> {
+                accounter.accountBytes(16);
+                long n = VarLong.read(buf);
+                yield (n >>> 1) ^ -(n & 1);
+            }
+            case FLOAT -> {
+                accounter.accountBytes(12);
+                yield buf.readFloat();
+            }
+            case DOUBLE -> {
+                accounter.accountBytes(16);
+                yield buf.readDouble();
+            }
+            case STRING -> {
+                accounter.accountBytes(36);
+                yield readString(buf, accounter);
+            }
+            case BYTES -> {
+                int length = readLength(buf);
+                accounter.accountBytes(24 + length);
+                byte[] bytes = new byte[length];
+                buf.readBytes(bytes);
+                yield bytes;
+            }
+            case INTS -> {
+                int length = readLength(buf);
+                accounter.accountBytes(24 + 4L * length);
+                int[] ints = new int[length];
+                for (int i = 0; i < ints.length; i++) {
+                    int n = VarInt.read(buf);
+                    ints[i] = (n >>> 1) ^ -(n & 1);
+                }
+                yield ints;
+            }
+            case LONGS -> {
+                int length = readLength(buf);
+                accounter.accountBytes(24 + 8L * length);
+                long[] longs = new long[length];
+                for (int i = 0; i < longs.length; i++) {
+                    long n = VarLong.read(buf);
+                    longs[i] = (n >>> 1) ^ -(n & 1);
+                }
+                yield longs;
+            }
+            case LIST -> {
+                int size = readLength(buf);
+                accounter.accountBytes(37 + 4L * size);
+                accounter.pushDepth();
+                List<Object> list = new ArrayList<>(Math.min(size, MAX_PRESIZE));
+                for (int i = 0; i < size; i++) {
+                    list.add(read(buf, accounter));
+                }
+                accounter.popDepth();
+                yield list;
+            }
+            case MAP -> {
+                int size = readLength(buf);
+                accounter.accountBytes(48 + 32L * size);
+                accounter.pushDepth();
+                Map<Object, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    Object key = read(buf, accounter);
+                    map.put(key, read(buf, accounter));
+                }
+                accounter.popDepth();
+                yield map;
+            }
+            default -> throw new DecoderException("Unknown binary value type " + type);
+        };
+    }
+
+    private static void write(ByteBuf buf, Object value, int depth) {
+        if (depth > MAX_DEPTH) throw new EncoderException("Value nested deeper than " + MAX_DEPTH);
+
+        if (value == null || value instanceof Unit) {
+            buf.writeByte(EMPTY);
+        } else if (value instanceof Boolean b) {
+            buf.writeByte(b ? TRUE : FALSE);
+        } else if (value instanceof Byte b) {
+            buf.writeByte(BYTE);
+            buf.writeByte(b);
+        } else if (value instanceof Short s) {
+            buf.writeByte(SHORT);
+            buf.writeShort(s);
+        } else if (value instanceof Integer i) {
+            buf.writeByte(INT);
+            VarInt.write(buf, (i << 1) ^ (i >> 31));
+        } else if (value instanceof Long l) {
+            buf.writeByte(LONG);
+            VarLong.write(buf, (l << 1) ^ (l >> 63));
+        } else if (value instanceof Float f) {
+            buf.writeByte(FLOAT);
+            buf.writeFloat(f);
+        } else if (value instanceof Number n) {
+            buf.writeByte(DOUBLE);
+            buf.writeDouble(n.doubleValue());
+        } else if (value instanceof String s) {
+            buf.writeByte(STRING);
+            writeString(buf, s);
+        } else if (value instanceof byte[] bytes) {
+            buf.writeByte(BYTES);
+            VarInt.write(buf, bytes.length);
+            buf.writeBytes(bytes);
+        } else if (value instanceof ByteBuffer bytes) {
+            buf.writeByte(BYTES);
+            VarInt.write(buf, bytes.remaining());
+            buf.writeBytes(bytes.duplicate());
+        } else if (value instanceof int[] ints) {
+            buf.writeByte(INTS);
+            VarInt.write(buf, ints.length);
+            for (int i : ints) {
+                VarInt.write(buf, (i << 1) ^ (i >> 31));
+            }
+        } else if (value instanceof long[] longs) {
+            buf.writeByte(LONGS);
+            VarInt.write(buf, longs.length);
+            for (long l : longs) {
+                VarLong.write(buf, (l << 1) ^ (l >> 63));
+            }
+        } else if (value instanceof List<?> list) {
+            buf.writeByte(LIST);
+            VarInt.write(buf, list.size());
+            for (Object element : list) {
+                write(buf, element, depth + 1);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            buf.writeByte(MAP);
+            VarInt.write(buf, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(buf, entry.getKey(), depth + 1);
+                write(buf, entry.getValue(), depth + 1);
+            }
+        } else {
+            throw new EncoderException("Unsupported value type " + value.getClass().getName());
+        }
+    }
+
+    private static void writeString(ByteBuf buf, String s) {
+        VarInt.write(buf, ByteBufUtil.utf8Bytes(s));
+        buf.writeCharSequence(s, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuf buf, NbtAccounter accounter) {
+        int length = readLength(buf);
+        accounter.accountBytes(2L * length);
+        String s = buf.toString(buf.readerIndex(), length, StandardCharsets.UTF_8);
+        buf.skipBytes(length);
+        return s;
+    }
+
+    // every element takes at least one byte, so this keeps a bad length from allocating more than the buffer holds
+    private static int readLength(ByteBuf buf) {
+        int length = VarInt.read(buf);
+        if (length < 0 || length > buf.readableBytes()) {
+            throw new DecoderException("Length " + length + " exceeds remaining " + buf.readableBytes() + " bytes");
+        }
+        return length;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.kneelawk.codextra.impl.stream;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.JavaOps;
+import com.mojang.serialization.MapCodec;
+
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.network.codec.StreamCodec;
+
+// Writes the output of a map codec positionally, using the field names the map codec reports from keys(), so field
+// names never go over the wire. Values that encode to anything other than a map of known fields fall back to NBT.
+// Only top-level names are stripped: keys() doesn't expose the codecs of individual fields, so nested record values are
+// written by BinaryValues as maps, names included.
+public class DerivedRecordStreamCodec<B extends ByteBuf, V> implements StreamCodec<B, V> {
+    private static final byte POSITIONAL = 0;
+    private static final byte FALLBACK = 1;
+
+    private final Codec<V> codec;
+    private final String[] fieldNames;
+    private final Object2IntOpenHashMap<String> fieldIndices;
+    private final StreamCodec<? super B, V> fallback;
+    private final Function<? super B, ? extends DynamicOps<Object>> opsGetter;
+    private final Supplier<NbtAccounter> accounterSupplier;
+
+    public DerivedRecordStreamCodec(Codec<V> codec, String[] fieldNames, StreamCodec<? super B, V> fallback,
+                                    Function<? super B, ? extends DynamicOps<Object>> opsGetter,
+                                    Supplier<NbtAccounter> accounterSupplier) {
+        this.codec = codec;
+        this.fieldNames = fieldNames;
+        this.fallback = fallback;
+        this.opsGetter = opsGetter;
+        this.accounterSupplier = accounterSupplier;
+
+        fieldIndices = new Object2IntOpenHashMap<>(fieldNames.length);
+        fieldIndices.defaultReturnValue(-1);
+        for (int i = 0; i < fieldNames.length; i++) {
+            fieldIndices.put(fieldNames[i], i);
+        }
+    }
+
+    // Gets the fields of a codec made from a MapCodec, like the ones RecordCodecBuilder.create makes. Codextra's own
+    // map codecs report their keys accurately, with retrievals reporting none as they have nothing on the wire.
+    // Returns null if the codec isn't a map codec or has keys that aren't strings.
+    public static String @Nullable [] fieldNames(Codec<?> codec) {
+        if (!(codec instanceof MapCodec.MapCodecCodec<?> mapCodecCodec)) return null;
+
+        Set<String> names = new LinkedHashSet<>();
+        for (Object key : mapCodecCodec.codec().keys(JavaOps.INSTANCE).toList()) {
+            if (!(key instanceof String name)) return null;
+            names.add(name);
+        }
+
+        return names.toArray(String[]::new);
+    }
+
+    @Override
+    public V decode(B buf) {
+        byte mode = buf.readByte();
+        if (mode == FALLBACK) return fallback.decode(buf);
+        if (mode != POSITIONAL) throw new DecoderException("Unknown derived codec mode: " + mode);
+
+        byte[] present = new byte[(fieldNames.length + 7) >> 3];
+        buf.readBytes(present);
+
+        NbtAccounter accounter = accounterSupplier.get();
+        Map<Object, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < fieldNames.length; i++) {
+            if ((present[i >> 3] & (1 << (i & 7))) != 0) {
+                map.put(fieldNames[i], BinaryValues.read(buf, accounter));
+            }
+        }
+
+        return codec.parse(opsGetter.apply(buf), map)
+            .getOrThrow(msg -> new DecoderException("Failed to decode: " + msg + " " + map));
+    }
+
+    @Override
+    public void encode(B buf, V value) {
+        Object encoded = codec.encodeStart(opsGetter.apply(buf), value)
+            .getOrThrow(msg -> new EncoderException("Failed to encode: " + msg + " " + value));
+
+        Object[] fields = positionalFields(encoded);
+        if (fields == null) {
+            // something like a flattened dispatch wrote keys that weren't declared up front
+            buf.writeByte(FALLBACK);
+            fallback.encode(buf, value);
+            return;
+        }
+
+        buf.writeByte(POSITIONAL);
+        byte[] present = new byte[(fieldNames.length + 7) >> 3];
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) present[i >> 3] |= (byte) (1 << (i & 7));
+        }
+        buf.writeBytes(present);
+
+        for (Object field : fields) {
+            if (field != null) BinaryValues.write(buf, field);
+        }
+    }
+
+    private Object @Nullable [] positionalFields(Object encoded) {
+        if (!(encoded instanceof Map<?, ?> map)) return null;
+
+        Object[] fields = new Object[fieldNames.length];
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof String name)) return null;
+            int index = fieldIndices.getInt(name);
+            if (index < 0) return null;
+            fields[index] = entry.getValue();
+        }
+        return fields;
+    }
+
+    @Override
+    public String toString() {
+        return "DerivedRecordStreamCodec[" + codec + "]";
+    }
+}
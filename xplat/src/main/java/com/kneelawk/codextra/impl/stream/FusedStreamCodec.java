@@ -0,0 +1,179 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.kneelawk.codextra.impl.stream;
+
+import java.lang.invoke.MethodHandle;
+import java.util.function.Function;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.netty.buffer.ByteBuf;
+
+import net.minecraft.network.VarInt;
+import net.minecraft.network.VarLong;
+import net.minecraft.network.codec.StreamCodec;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.impl.CodextraImpl;
+import com.kneelawk.codextra.impl.attach.AttachmentManagerImpl;
+
+// Record stream codec whose decode and encode are overridden by a class generated by FusedStreamCodecGenerator. This
+// class's own decode and encode box every primitive and are only used when generating the class failed.
+public class FusedStreamCodec<B extends ByteBuf, R> implements StreamCodec<B, R> {
+    private final Class<R> recordClass;
+    private final Component[] components;
+    // takes primitive components unboxed and everything else as Objects, returns the record as an Object
+    private final MethodHandle constructor;
+    // (Object)T getters for each component, where T is the primitive type or Object, null for retrieved components
+    private final @Nullable MethodHandle[] getters;
+
+    public FusedStreamCodec(Class<R> recordClass, Component[] components, MethodHandle constructor,
+                            @Nullable MethodHandle[] getters) {
+        this.recordClass = recordClass;
+        this.components = components;
+        this.constructor = constructor;
+        this.getters = getters;
+    }
+
+    @Override
+    public R decode(B buf) {
+        AttachmentManagerImpl manager = manager(buf);
+        Object[] values = new Object[components.length];
+        for (int i = 0; i < components.length; i++) {
+            Component component = components[i];
+            values[i] = switch (component.kind()) {
+                case VAR_INT -> VarInt.read(buf);
+                case VAR_LONG -> VarLong.read(buf);
+                case BYTE -> buf.readByte();
+                case SHORT -> buf.readShort();
+                case INT -> buf.readInt();
+                case LONG -> buf.readLong();
+                case FLOAT -> buf.readFloat();
+                case DOUBLE -> buf.readDouble();
+                case BOOLEAN -> buf.readBoolean();
+                case CODEC -> component.codec().decode(buf);
+                case RETRIEVAL -> component.retriever().apply(retrieve(manager, buf, component.key()));
+            };
+        }
+
+        try {
+            return recordClass.cast(constructor.invokeWithArguments(values));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("Error constructing " + recordClass.getName(), e);
+        }
+    }
+
+    @Override
+    public void encode(B buf, R value) {
+        for (int i = 0; i < components.length; i++) {
+            Component component = components[i];
+            MethodHandle getter = getters[i];
+            if (getter == null) continue;
+
+            Object field;
+            try {
+                field = getter.invoke(value);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Error getting component of " + recordClass.getName(), e);
+            }
+
+            switch (component.kind()) {
+                case VAR_INT -> VarInt.write(buf, (Integer) field);
+                case VAR_LONG -> VarLong.write(buf, (Long) field);
+                case BYTE -> buf.writeByte((Byte) field);
+                case SHORT -> buf.writeShort((Short) field);
+                case INT -> buf.writeInt((Integer) field);
+                case LONG -> buf.writeLong((Long) field);
+                case FLOAT -> buf.writeFloat((Float) field);
+                case DOUBLE -> buf.writeDouble((Double) field);
+                case BOOLEAN -> buf.writeBoolean((Boolean) field);
+                case CODEC -> component.codec().encode(buf, field);
+                case RETRIEVAL -> {}
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FusedStreamCodec[" + recordClass.getName() + "]";
+    }
+
+    // helpers called by generated methods
+
+    static @Nullable AttachmentManagerImpl manager(ByteBuf buf) {
+        return CodextraImpl.getAttachmentManager(buf);
+    }
+
+    static Object retrieve(@Nullable AttachmentManagerImpl manager, ByteBuf buf, AttachmentKey<?> key) {
+        // without a manager, let the key produce its usual error
+        if (manager == null) return key.getOrThrow(buf);
+        return manager.getOrThrow(key);
+    }
+
+    public enum Kind {
+        VAR_INT(int.class),
+        VAR_LONG(long.class),
+        BYTE(byte.class),
+        SHORT(short.class),
+        INT(int.class),
+        LONG(long.class),
+        FLOAT(float.class),
+        DOUBLE(double.class),
+        BOOLEAN(boolean.class),
+        CODEC(Object.class),
+        RETRIEVAL(Object.class);
+
+        // the type this kind is passed around as in generated code
+        public final Class<?> type;
+
+        Kind(Class<?> type) {
+            this.type = type;
+        }
+
+        public boolean isPrimitive() {
+            return type.isPrimitive();
+        }
+    }
+
+    // One record component. Codec components have a codec, retrieved components have a key and retriever.
+    public record Component(Kind kind, @Nullable StreamCodec<Object, Object> codec,
+                            @Nullable AttachmentKey<Object> key, @Nullable Function<Object, Object> retriever) {
+        public static Component primitive(Kind kind) {
+            return new Component(kind, null, null, null);
+        }
+
+        public static Component codec(StreamCodec<Object, Object> codec) {
+            return new Component(Kind.CODEC, codec, null, null);
+        }
+
+        public static Component retrieval(AttachmentKey<Object> key, Function<Object, Object> retriever) {
+            return new Component(Kind.RETRIEVAL, null, key, retriever);
+        }
+    }
+}
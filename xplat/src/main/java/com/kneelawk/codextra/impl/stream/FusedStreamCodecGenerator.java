@@ -0,0 +1,368 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.kneelawk.codextra.impl.stream;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+import io.netty.buffer.ByteBuf;
+
+import net.minecraft.network.VarInt;
+import net.minecraft.network.VarLong;
+import net.minecraft.network.codec.StreamCodec;
+
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.impl.CodextraLog;
+import com.kneelawk.codextra.impl.attach.AttachmentManagerImpl;
+import com.kneelawk.codextra.impl.stream.FusedStreamCodec.Component;
+import com.kneelawk.codextra.impl.stream.FusedStreamCodec.Kind;
+
+// Generates a hidden subclass of FusedStreamCodec per record shape, with straight-line decode and encode methods that
+// read and write primitives directly and keep them unboxed all the way to the record's constructor and from its
+// accessors. Like CompiledRecordGenerator, the generated class never names the record or any caller types.
+public final class FusedStreamCodecGenerator {
+    private static final String BASE = Type.getInternalName(FusedStreamCodec.class);
+    private static final String NAME = BASE + "$Fused";
+    private static final String OBJECT_DESC = Type.getDescriptor(Object.class);
+    private static final String BYTE_BUF = Type.getInternalName(ByteBuf.class);
+    private static final String BYTE_BUF_DESC = Type.getDescriptor(ByteBuf.class);
+    private static final String STREAM_CODEC = Type.getInternalName(StreamCodec.class);
+    private static final String STREAM_CODEC_DESC = Type.getDescriptor(StreamCodec.class);
+    private static final String KEY_DESC = Type.getDescriptor(AttachmentKey.class);
+    private static final String FUNCTION = Type.getInternalName(Function.class);
+    private static final String FUNCTION_DESC = Type.getDescriptor(Function.class);
+    private static final String METHOD_HANDLE = Type.getInternalName(MethodHandle.class);
+    private static final String METHOD_HANDLE_DESC = Type.getDescriptor(MethodHandle.class);
+    private static final String MANAGER_DESC = Type.getDescriptor(AttachmentManagerImpl.class);
+    private static final MethodType CONSTRUCTOR_TYPE =
+        MethodType.methodType(void.class, Class.class, Component[].class, MethodHandle.class, MethodHandle[].class);
+
+    private FusedStreamCodecGenerator() {}
+
+    public static <B extends ByteBuf, R> StreamCodec<B, R> create(Class<R> recordClass, List<Component> componentList) {
+        if (!recordClass.isRecord()) throw new IllegalArgumentException(recordClass.getName() + " is not a record");
+        RecordComponent[] recordComponents = recordClass.getRecordComponents();
+        if (recordComponents.length != componentList.size()) {
+            throw new IllegalArgumentException(
+                "Record " + recordClass.getName() + " has " + recordComponents.length + " components but " +
+                    componentList.size() + " were given");
+        }
+
+        Component[] components = componentList.toArray(Component[]::new);
+        MethodHandle constructor;
+        MethodHandle[] getters = new MethodHandle[components.length];
+        try {
+            MethodHandles.Lookup lookup = recordLookup(recordClass);
+
+            Class<?>[] types = new Class<?>[recordComponents.length];
+            Class<?>[] passedTypes = new Class<?>[recordComponents.length];
+            for (int i = 0; i < recordComponents.length; i++) {
+                types[i] = recordComponents[i].getType();
+                Kind kind = components[i].kind();
+                if (kind.isPrimitive() && types[i] != kind.type) {
+                    throw new IllegalArgumentException(
+                        "Component " + recordComponents[i].getName() + " of " + recordClass.getName() +
+                            " has type " + types[i].getName() + " but is being read as " + kind.type.getName());
+                }
+                passedTypes[i] = kind.type;
+
+                if (kind != Kind.RETRIEVAL) {
+                    getters[i] = lookup.unreflect(recordComponents[i].getAccessor())
+                        .asType(MethodType.methodType(kind.type, Object.class));
+                }
+            }
+
+            constructor = lookup.findConstructor(recordClass, MethodType.methodType(void.class, types))
+                .asType(MethodType.methodType(Object.class, passedTypes));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Unable to access record " + recordClass.getName(), e);
+        }
+
+        try {
+            MethodHandles.Lookup hidden = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(generate(components, constructor),
+                    classData(components, constructor, getters), true);
+            MethodHandle codecConstructor = hidden.findConstructor(hidden.lookupClass(), CONSTRUCTOR_TYPE);
+            @SuppressWarnings("unchecked")
+            StreamCodec<B, R> codec =
+                (StreamCodec<B, R>) codecConstructor.invoke(recordClass, components, constructor, getters);
+            return codec;
+        } catch (Throwable e) {
+            CodextraLog.LOGGER.warn("Unable to generate a fused stream codec for {}, falling back to the slow path",
+                recordClass.getName(), e);
+            return new FusedStreamCodec<>(recordClass, components, constructor, getters);
+        }
+    }
+
+    private static MethodHandles.Lookup recordLookup(Class<?> recordClass) {
+        try {
+            return MethodHandles.privateLookupIn(recordClass, MethodHandles.lookup());
+        } catch (IllegalAccessException e) {
+            // the record's module isn't open to us, so only public records will work
+            return MethodHandles.publicLookup();
+        }
+    }
+
+    // the constructor, then each component's codec and getter, or key and retriever
+    private static Object[] classData(Component[] components, MethodHandle constructor, MethodHandle[] getters) {
+        List<Object> data = new ArrayList<>();
+        data.add(constructor);
+        for (int i = 0; i < components.length; i++) {
+            Component component = components[i];
+            if (component.kind() == Kind.RETRIEVAL) {
+                data.add(component.key());
+                data.add(component.retriever());
+            } else {
+                data.add(component.codec());
+                data.add(getters[i]);
+            }
+        }
+        return data.toArray();
+    }
+
+    private static byte[] generate(Component[] components, MethodHandle constructor) {
+        // there are no branches in the generated code, but don't let ASM go looking for the hidden class by name
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return Type.getInternalName(Object.class);
+            }
+        };
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, NAME, null, BASE, null);
+
+        cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "constructor", METHOD_HANDLE_DESC,
+            null, null).visitEnd();
+        for (int i = 0; i < components.length; i++) {
+            boolean retrieval = components[i].kind() == Kind.RETRIEVAL;
+            cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "first" + i,
+                retrieval ? KEY_DESC : STREAM_CODEC_DESC, null, null).visitEnd();
+            cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "second" + i,
+                retrieval ? FUNCTION_DESC : METHOD_HANDLE_DESC, null, null).visitEnd();
+        }
+
+        generateStaticInit(cw, components);
+        generateConstructor(cw);
+        generateDecode(cw, components, constructor);
+        generateEncode(cw, components);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void generateStaticInit(ClassWriter cw, Component[] components) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(MethodHandles.class), "lookup",
+            Type.getMethodDescriptor(Type.getType(MethodHandles.Lookup.class)), false);
+        mv.visitLdcInsn("_");
+        mv.visitLdcInsn(Type.getType(Object[].class));
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(MethodHandles.class), "classData",
+            Type.getMethodDescriptor(Type.getType(Object.class), Type.getType(MethodHandles.Lookup.class),
+                Type.getType(String.class), Type.getType(Class.class)), false);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getInternalName(Object[].class));
+        mv.visitVarInsn(Opcodes.ASTORE, 0);
+
+        int index = 0;
+        putData(mv, index++, "constructor", METHOD_HANDLE_DESC);
+        for (int i = 0; i < components.length; i++) {
+            boolean retrieval = components[i].kind() == Kind.RETRIEVAL;
+            putData(mv, index++, "first" + i, retrieval ? KEY_DESC : STREAM_CODEC_DESC);
+            putData(mv, index++, "second" + i, retrieval ? FUNCTION_DESC : METHOD_HANDLE_DESC);
+        }
+
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void putData(MethodVisitor mv, int index, String field, String desc) {
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitLdcInsn(index);
+        mv.visitInsn(Opcodes.AALOAD);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, Type.getType(desc).getInternalName());
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, NAME, field, desc);
+    }
+
+    private static void generateConstructor(ClassWriter cw) {
+        String desc = CONSTRUCTOR_TYPE.toMethodDescriptorString();
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", desc, null, null);
+        mv.visitCode();
+        for (int i = 0; i <= 4; i++) {
+            mv.visitVarInsn(Opcodes.ALOAD, i);
+        }
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, BASE, "<init>", desc, false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void generateDecode(ClassWriter cw, Component[] components, MethodHandle constructor) {
+        // overrides decode(ByteBuf), which the StreamCodec bridge method calls
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "decode", "(" + BYTE_BUF_DESC + ")" + OBJECT_DESC, null,
+            null);
+        mv.visitCode();
+
+        // locals: 0 = this, 1 = buf, 2 = attachment manager, 3+ = component values
+
+        boolean anyRetrievals = false;
+        for (Component component : components) {
+            anyRetrievals |= component.kind() == Kind.RETRIEVAL;
+        }
+        if (anyRetrievals) {
+            // one manager lookup for every retrieved component
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+            mv.visitMethodInsn(Opcodes.INVOKESTATIC, BASE, "manager", "(" + BYTE_BUF_DESC + ")" + MANAGER_DESC, false);
+            mv.visitVarInsn(Opcodes.ASTORE, 2);
+        }
+
+        int[] locals = new int[components.length];
+        int nextLocal = 3;
+        for (int i = 0; i < components.length; i++) {
+            Component component = components[i];
+            Type type = Type.getType(component.kind().type);
+            locals[i] = nextLocal;
+            nextLocal += type.getSize();
+
+            switch (component.kind()) {
+                case VAR_INT -> readStatic(mv, VarInt.class, "I");
+                case VAR_LONG -> readStatic(mv, VarLong.class, "J");
+                case BYTE -> readBuf(mv, "readByte", "B");
+                case SHORT -> readBuf(mv, "readShort", "S");
+                case INT -> readBuf(mv, "readInt", "I");
+                case LONG -> readBuf(mv, "readLong", "J");
+                case FLOAT -> readBuf(mv, "readFloat", "F");
+                case DOUBLE -> readBuf(mv, "readDouble", "D");
+                case BOOLEAN -> readBuf(mv, "readBoolean", "Z");
+                case CODEC -> {
+                    mv.visitFieldInsn(Opcodes.GETSTATIC, NAME, "first" + i, STREAM_CODEC_DESC);
+                    mv.visitVarInsn(Opcodes.ALOAD, 1);
+                    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, STREAM_CODEC, "decode",
+                        "(" + OBJECT_DESC + ")" + OBJECT_DESC, true);
+                }
+                case RETRIEVAL -> {
+                    mv.visitFieldInsn(Opcodes.GETSTATIC, NAME, "second" + i, FUNCTION_DESC);
+                    mv.visitVarInsn(Opcodes.ALOAD, 2);
+                    mv.visitVarInsn(Opcodes.ALOAD, 1);
+                    mv.visitFieldInsn(Opcodes.GETSTATIC, NAME, "first" + i, KEY_DESC);
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, BASE, "retrieve",
+                        "(" + MANAGER_DESC + BYTE_BUF_DESC + KEY_DESC + ")" + OBJECT_DESC, false);
+                    mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, FUNCTION, "apply",
+                        "(" + OBJECT_DESC + ")" + OBJECT_DESC, true);
+                }
+            }
+            mv.visitVarInsn(type.getOpcode(Opcodes.ISTORE), locals[i]);
+        }
+
+        mv.visitFieldInsn(Opcodes.GETSTATIC, NAME, "constructor", METHOD_HANDLE_DESC);
+        for (int i = 0; i < components.length; i++) {
+            mv.visitVarInsn(Type.getType(components[i].kind().type).getOpcode(Opcodes.ILOAD), locals[i]);
+        }
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact",
+            constructor.type().toMethodDescriptorString(), false);
+        mv.visitInsn(Opcodes.ARETURN);
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void readStatic(MethodVisitor mv, Class<?> owner, String desc) {
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(owner), "read", "(" + BYTE_BUF_DESC + ")" + desc,
+            false);
+    }
+
+    private static void readBuf(MethodVisitor mv, String name, String desc) {
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, BYTE_BUF, name, "()" + desc, false);
+    }
+
+    private static void generateEncode(ClassWriter cw, Component[] components) {
+        // overrides encode(ByteBuf, Object), which the StreamCodec bridge method calls
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "encode", "(" + BYTE_BUF_DESC + OBJECT_DESC + ")V",
+            null, null);
+        mv.visitCode();
+
+        // locals: 0 = this, 1 = buf, 2 = value
+
+        for (int i = 0; i < components.length; i++) {
+            Component component = components[i];
+            Kind kind = component.kind();
+            if (kind == Kind.RETRIEVAL) continue;
+
+            if (kind == Kind.CODEC) {
+                mv.visitFieldInsn(Opcodes.GETSTATIC, NAME, "first" + i, STREAM_CODEC_DESC);
+            }
+            mv.visitVarInsn(Opcodes.ALOAD, 1);
+
+            // getter.invokeExact(value)
+            String typeDesc = Type.getDescriptor(kind.type);
+            mv.visitFieldInsn(Opcodes.GETSTATIC, NAME, "second" + i, METHOD_HANDLE_DESC);
+            mv.visitVarInsn(Opcodes.ALOAD, 2);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, METHOD_HANDLE, "invokeExact",
+                "(" + OBJECT_DESC + ")" + typeDesc, false);
+
+            switch (kind) {
+                case VAR_INT -> writeStatic(mv, VarInt.class, "I");
+                case VAR_LONG -> writeStatic(mv, VarLong.class, "J");
+                // ByteBuf takes bytes and shorts as ints
+                case BYTE, SHORT -> writeBuf(mv, kind == Kind.BYTE ? "writeByte" : "writeShort", "I");
+                case INT -> writeBuf(mv, "writeInt", "I");
+                case LONG -> writeBuf(mv, "writeLong", "J");
+                case FLOAT -> writeBuf(mv, "writeFloat", "F");
+                case DOUBLE -> writeBuf(mv, "writeDouble", "D");
+                case BOOLEAN -> writeBuf(mv, "writeBoolean", "Z");
+                case CODEC -> mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, STREAM_CODEC, "encode",
+                    "(" + OBJECT_DESC + OBJECT_DESC + ")V", true);
+                default -> throw new IllegalStateException("Unexpected kind: " + kind);
+            }
+        }
+
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void writeStatic(MethodVisitor mv, Class<?> owner, String desc) {
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type.getInternalName(owner), "write",
+            "(" + BYTE_BUF_DESC + desc + ")" + BYTE_BUF_DESC, false);
+        mv.visitInsn(Opcodes.POP);
+    }
+
+    private static void writeBuf(MethodVisitor mv, String name, String desc) {
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, BYTE_BUF, name, "(" + desc + ")" + BYTE_BUF_DESC, false);
+        mv.visitInsn(Opcodes.POP);
+    }
+}
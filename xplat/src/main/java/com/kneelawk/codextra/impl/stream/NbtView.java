@@ -0,0 +1,404 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.kneelawk.codextra.impl.stream;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.Nullable;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.handler.codec.DecoderException;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import net.minecraft.nbt.EndTag;
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.Tag;
+import net.minecraft.nbt.TagTypes;
+
+// An NBT value that is either a range of a binary NBT buffer or an already materialized Tag. Buffer-backed views only
+// hold offsets into the buffer, so they are only valid while the buffer they were read from is.
+public final class NbtView {
+    static final NbtView EMPTY = new NbtView(EndTag.INSTANCE);
+
+    private final @Nullable ByteBuf buf;
+    private final byte type;
+    private final int offset;
+    private final int end;
+    private @Nullable Tag tag;
+
+    // compound entry index, built the first time an entry is looked up
+    private @Nullable Object2IntOpenHashMap<String> nameIndex;
+    private String[] names;
+    private byte[] types;
+    private int[] offsets;
+    private int[] ends;
+
+    private NbtView(ByteBuf buf, byte type, int offset, int end) {
+        this.buf = buf;
+        this.type = type;
+        this.offset = offset;
+        this.end = end;
+    }
+
+    private NbtView(Tag tag) {
+        buf = null;
+        type = tag.getId();
+        offset = 0;
+        end = 0;
+        this.tag = tag;
+    }
+
+    static NbtView of(Tag tag) {
+        return tag == EndTag.INSTANCE ? EMPTY : new NbtView(tag);
+    }
+
+    // Reads a nameless network root tag, checking that the whole tag is present and charging it to the accounter the
+    // same way loading it as a Tag would. The buffer's reader index is moved past the tag, but nothing inside it is
+    // decoded.
+    static NbtView readRoot(ByteBuf buf, NbtAccounter accounter) {
+        int start = buf.readerIndex();
+        int limit = buf.writerIndex();
+        require(start, 1, limit);
+        byte type = buf.getByte(start);
+        if (type == Tag.TAG_END) throw new DecoderException("Expected non-null compound tag");
+
+        int end = skip(buf, type, start + 1, limit, accounter);
+        buf.readerIndex(end);
+        return new NbtView(buf, type, start + 1, end);
+    }
+
+    byte type() {
+        return type;
+    }
+
+    @Nullable Tag tag() {
+        return tag;
+    }
+
+    boolean isBuffered() {
+        return buf != null;
+    }
+
+    Tag toTag() {
+        if (tag == null) {
+            // the whole root was already charged to the packet's accounter with these same estimates when it was read
+            try {
+                DataInput input = new ByteBufInputStream(buf.slice(offset, end - offset));
+                tag = TagTypes.getType(type).load(input, NbtAccounter.unlimitedHeap());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return tag;
+    }
+
+    Number number() {
+        return switch (type) {
+            case Tag.TAG_BYTE -> buf.getByte(offset);
+            case Tag.TAG_SHORT -> buf.getShort(offset);
+            case Tag.TAG_INT -> buf.getInt(offset);
+            case Tag.TAG_LONG -> buf.getLong(offset);
+            case Tag.TAG_FLOAT -> buf.getFloat(offset);
+            case Tag.TAG_DOUBLE -> buf.getDouble(offset);
+            default -> throw new IllegalStateException("Not a number: " + type);
+        };
+    }
+
+    boolean isNumber() {
+        return type >= Tag.TAG_BYTE && type <= Tag.TAG_DOUBLE;
+    }
+
+    String string() {
+        return readUtf(buf, offset + 2, buf.getUnsignedShort(offset));
+    }
+
+    byte elementType() {
+        return buf.getByte(offset);
+    }
+
+    byte[] byteArray() {
+        byte[] bytes = new byte[buf.getInt(offset)];
+        buf.getBytes(offset + 4, bytes);
+        return bytes;
+    }
+
+    IntStream intArray() {
+        int start = offset + 4;
+        return IntStream.range(0, buf.getInt(offset)).map(i -> buf.getInt(start + (i << 2)));
+    }
+
+    long[] longArray() {
+        long[] longs = new long[buf.getInt(offset)];
+        for (int i = 0; i < longs.length; i++) {
+            longs[i] = buf.getLong(offset + 4 + (i << 3));
+        }
+        return longs;
+    }
+
+    // elements of a list or array, as views of their own
+    Stream<NbtView> elements() {
+        int count = buf.getInt(offset + (type == Tag.TAG_LIST ? 1 : 0));
+        return switch (type) {
+            case Tag.TAG_BYTE_ARRAY -> fixedElements(Tag.TAG_BYTE, offset + 4, count, 1);
+            case Tag.TAG_INT_ARRAY -> fixedElements(Tag.TAG_INT, offset + 4, count, 4);
+            case Tag.TAG_LONG_ARRAY -> fixedElements(Tag.TAG_LONG, offset + 4, count, 8);
+            case Tag.TAG_LIST -> {
+                byte elementType = buf.getByte(offset);
+                int start = offset + 5;
+                int size = fixedSize(elementType);
+                if (size >= 0) yield fixedElements(elementType, start, count, size);
+
+                // the list was validated by readRoot, so walking it again can't fail
+                NbtView[] views = new NbtView[count];
+                int pos = start;
+                for (int i = 0; i < count; i++) {
+                    int elementEnd = skip(buf, elementType, pos, end, NbtAccounter.unlimitedHeap());
+                    views[i] = new NbtView(buf, elementType, pos, elementEnd);
+                    pos = elementEnd;
+                }
+                yield Stream.of(views);
+            }
+            default -> throw new IllegalStateException("Not a list: " + type);
+        };
+    }
+
+    private Stream<NbtView> fixedElements(byte elementType, int start, int count, int size) {
+        return IntStream.range(0, count).mapToObj(i -> {
+            int pos = start + i * size;
+            return new NbtView(buf, elementType, pos, pos + size);
+        });
+    }
+
+    int entryCount() {
+        buildIndex();
+        return names.length;
+    }
+
+    String nameAt(int i) {
+        return names[i];
+    }
+
+    NbtView valueAt(int i) {
+        return new NbtView(buf, types[i], offsets[i], ends[i]);
+    }
+
+    @Nullable NbtView get(String name) {
+        buildIndex();
+        int i = nameIndex.getInt(name);
+        return i < 0 ? null : valueAt(i);
+    }
+
+    private void buildIndex() {
+        if (nameIndex != null) return;
+
+        int count = 0;
+        String[] names = new String[8];
+        byte[] types = new byte[8];
+        int[] offsets = new int[8];
+        int[] ends = new int[8];
+
+        int pos = offset;
+        byte entryType;
+        while ((entryType = buf.getByte(pos)) != Tag.TAG_END) {
+            int nameLength = buf.getUnsignedShort(pos + 1);
+            int valueOffset = pos + 3 + nameLength;
+            int valueEnd = skip(buf, entryType, valueOffset, end, NbtAccounter.unlimitedHeap());
+
+            if (count == names.length) {
+                names = Arrays.copyOf(names, count * 2);
+                types = Arrays.copyOf(types, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            names[count] = readUtf(buf, pos + 3, nameLength);
+            types[count] = entryType;
+            offsets[count] = valueOffset;
+            ends[count] = valueEnd;
+            count++;
+
+            pos = valueEnd;
+        }
+
+        Object2IntOpenHashMap<String> nameIndex = new Object2IntOpenHashMap<>(count);
+        nameIndex.defaultReturnValue(-1);
+        for (int i = 0; i < count; i++) {
+            // CompoundTag keeps the last duplicate, so we do too
+            nameIndex.put(names[i], i);
+        }
+
+        this.names = Arrays.copyOf(names, count);
+        this.types = types;
+        this.offsets = offsets;
+        this.ends = ends;
+        this.nameIndex = nameIndex;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(toTag());
+    }
+
+    private static int fixedSize(byte type) {
+        return switch (type) {
+            case Tag.TAG_END -> 0;
+            case Tag.TAG_BYTE -> 1;
+            case Tag.TAG_SHORT -> 2;
+            case Tag.TAG_INT, Tag.TAG_FLOAT -> 4;
+            case Tag.TAG_LONG, Tag.TAG_DOUBLE -> 8;
+            default -> -1;
+        };
+    }
+
+    // Finds the end of the payload of the given type starting at pos, making sure it doesn't run past limit. Each tag
+    // is charged the same heap estimate its TagType charges when loading it, so the accounter's quota means the same
+    // thing as for vanilla decoding. Fixed-size tags are estimated at 8 bytes plus their payload.
+    private static int skip(ByteBuf buf, byte type, int pos, int limit, NbtAccounter accounter) {
+        int size = fixedSize(type);
+        if (size >= 0) {
+            accounter.accountBytes(8 + size);
+            return require(pos, size, limit);
+        }
+
+        switch (type) {
+            case Tag.TAG_BYTE_ARRAY -> {
+                int length = arrayLength(buf, pos, limit);
+                accounter.accountBytes(24 + length);
+                return require(pos + 4, length, limit);
+            }
+            case Tag.TAG_STRING -> {
+                require(pos, 2, limit);
+                int length = buf.getUnsignedShort(pos);
+                // charged by encoded length, which is never less than the number of chars it decodes to
+                accounter.accountBytes(36 + 2L * length);
+                return require(pos + 2, length, limit);
+            }
+            case Tag.TAG_LIST -> {
+                require(pos, 5, limit);
+                byte elementType = buf.getByte(pos);
+                int count = buf.getInt(pos + 1);
+                if (count < 0) throw new DecoderException("Negative NBT list length: " + count);
+                if (elementType == Tag.TAG_END && count > 0) {
+                    throw new DecoderException("Missing type on NBT list");
+                }
+                accounter.accountBytes(37 + 4L * count);
+
+                int elementSize = fixedSize(elementType);
+                if (elementSize >= 0) {
+                    accounter.accountBytes((8L + elementSize) * count);
+                    return require(pos + 5, (long) count * elementSize, limit);
+                }
+
+                accounter.pushDepth();
+                pos += 5;
+                for (int i = 0; i < count; i++) {
+                    pos = skip(buf, elementType, pos, limit, accounter);
+                }
+                accounter.popDepth();
+                return pos;
+            }
+            case Tag.TAG_COMPOUND -> {
+                accounter.accountBytes(48);
+                accounter.pushDepth();
+                while (true) {
+                    require(pos, 1, limit);
+                    byte entryType = buf.getByte(pos);
+                    if (entryType == Tag.TAG_END) break;
+
+                    require(pos + 1, 2, limit);
+                    int nameLength = buf.getUnsignedShort(pos + 1);
+                    // the entry's name and its map entry
+                    accounter.accountBytes(28 + 2L * nameLength + 36);
+                    int nameEnd = require(pos + 3, nameLength, limit);
+                    pos = skip(buf, entryType, nameEnd, limit, accounter);
+                }
+                accounter.popDepth();
+                return pos + 1;
+            }
+            case Tag.TAG_INT_ARRAY -> {
+                int length = arrayLength(buf, pos, limit);
+                accounter.accountBytes(24 + 4L * length);
+                return require(pos + 4, length * 4L, limit);
+            }
+            case Tag.TAG_LONG_ARRAY -> {
+                int length = arrayLength(buf, pos, limit);
+                accounter.accountBytes(24 + 8L * length);
+                return require(pos + 4, length * 8L, limit);
+            }
+            default -> throw new DecoderException("Unknown NBT tag type: " + type);
+        }
+    }
+
+    private static int arrayLength(ByteBuf buf, int pos, int limit) {
+        require(pos, 4, limit);
+        int length = buf.getInt(pos);
+        if (length < 0) throw new DecoderException("Negative NBT array length: " + length);
+        return length;
+    }
+
+    // returns the end of the range, throwing if it is out of bounds
+    private static int require(int pos, long length, int limit) {
+        long end = pos + length;
+        if (end > limit) throw new DecoderException("NBT tag extends past the end of the buffer");
+        return (int) end;
+    }
+
+    // the same modified UTF-8 that DataInput.readUTF reads
+    private static String readUtf(ByteBuf buf, int pos, int length) {
+        char[] chars = new char[length];
+        int count = 0;
+        int i = pos;
+        int end = pos + length;
+        while (i < end) {
+            int a = buf.getByte(i) & 0xFF;
+            if (a < 0x80) {
+                chars[count++] = (char) a;
+                i++;
+            } else if ((a & 0xE0) == 0xC0) {
+                if (i + 2 > end) throw new DecoderException("Malformed NBT string");
+                int b = buf.getByte(i + 1);
+                if ((b & 0xC0) != 0x80) throw new DecoderException("Malformed NBT string");
+                chars[count++] = (char) (((a & 0x1F) << 6) | (b & 0x3F));
+                i += 2;
+            } else if ((a & 0xF0) == 0xE0) {
+                if (i + 3 > end) throw new DecoderException("Malformed NBT string");
+                int b = buf.getByte(i + 1);
+                int c = buf.getByte(i + 2);
+                if ((b & 0xC0) != 0x80 || (c & 0xC0) != 0x80) throw new DecoderException("Malformed NBT string");
+                chars[count++] = (char) (((a & 0x0F) << 12) | ((b & 0x3F) << 6) | (c & 0x3F));
+                i += 3;
+            } else {
+                throw new DecoderException("Malformed NBT string");
+            }
+        }
+        return new String(chars, 0, count);
+    }
+}
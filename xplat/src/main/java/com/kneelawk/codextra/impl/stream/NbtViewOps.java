@@ -0,0 +1,341 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.kneelawk.codextra.impl.stream;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.mojang.datafixers.util.Pair;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.MapLike;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+
+import com.kneelawk.codextra.impl.attach.AttachmentManagerImpl;
+import com.kneelawk.codextra.impl.mixin.api.CodextraAttachmentManagerHolder;
+
+// Read-only NBT ops over NbtViews. Reads are served straight from the buffer, while anything that builds or modifies a
+// value materializes its inputs and goes through NbtOps. Instances carry an attachment manager, so create one per
+// decode.
+public class NbtViewOps implements DynamicOps<NbtView>, CodextraAttachmentManagerHolder {
+    private AttachmentManagerImpl attachmentManager = AttachmentManagerImpl.EMPTY;
+
+    public NbtViewOps() {}
+
+    @Override
+    public AttachmentManagerImpl codextra_getAttachmentManager() {
+        return attachmentManager;
+    }
+
+    @Override
+    public AttachmentManagerImpl codextra_getOrCreateAttachmentManager() {
+        if (attachmentManager == AttachmentManagerImpl.EMPTY) {
+            attachmentManager = new AttachmentManagerImpl();
+        }
+        return attachmentManager;
+    }
+
+    @Override
+    public void codextra_setAttachmentManager(AttachmentManagerImpl manager) {
+        attachmentManager = manager;
+    }
+
+    @Override
+    public NbtView empty() {
+        return NbtView.EMPTY;
+    }
+
+    @Override
+    public NbtView emptyMap() {
+        return NbtView.of(new CompoundTag());
+    }
+
+    @Override
+    public NbtView emptyList() {
+        return NbtView.of(new ListTag());
+    }
+
+    @Override
+    public <U> U convertTo(DynamicOps<U> outOps, NbtView input) {
+        return NbtOps.INSTANCE.convertTo(outOps, input.toTag());
+    }
+
+    @Override
+    public DataResult<Number> getNumberValue(NbtView input) {
+        if (!input.isBuffered()) return NbtOps.INSTANCE.getNumberValue(input.tag());
+        if (input.isNumber()) return DataResult.success(input.number());
+        return DataResult.error(() -> "Not a number");
+    }
+
+    @Override
+    public DataResult<String> getStringValue(NbtView input) {
+        if (!input.isBuffered()) return NbtOps.INSTANCE.getStringValue(input.tag());
+        if (input.type() == Tag.TAG_STRING) return DataResult.success(input.string());
+        return DataResult.error(() -> "Not a string");
+    }
+
+    @Override
+    public DataResult<Stream<Pair<NbtView, NbtView>>> getMapValues(NbtView input) {
+        if (!input.isBuffered()) {
+            return NbtOps.INSTANCE.getMapValues(input.tag())
+                .map(entries -> entries.map(entry -> Pair.of(NbtView.of(entry.getFirst()),
+                    NbtView.of(entry.getSecond()))));
+        }
+        if (input.type() != Tag.TAG_COMPOUND) return DataResult.error(() -> "Not a map: " + input);
+        return DataResult.success(entries(input));
+    }
+
+    @Override
+    public DataResult<MapLike<NbtView>> getMap(NbtView input) {
+        if (!input.isBuffered()) {
+            return NbtOps.INSTANCE.getMap(input.tag()).map(map -> new MapLike<>() {
+                @Override
+                public @Nullable NbtView get(NbtView key) {
+                    Tag value = map.get(key.toTag());
+                    return value == null ? null : NbtView.of(value);
+                }
+
+                @Override
+                public @Nullable NbtView get(String key) {
+                    Tag value = map.get(key);
+                    return value == null ? null : NbtView.of(value);
+                }
+
+                @Override
+                public Stream<Pair<NbtView, NbtView>> entries() {
+                    return map.entries()
+                        .map(entry -> Pair.of(NbtView.of(entry.getFirst()), NbtView.of(entry.getSecond())));
+                }
+
+                @Override
+                public String toString() {
+                    return "MapLike[" + map + "]";
+                }
+            });
+        }
+        if (input.type() != Tag.TAG_COMPOUND) return DataResult.error(() -> "Not a map: " + input);
+
+        return DataResult.success(new MapLike<>() {
+            @Override
+            public @Nullable NbtView get(NbtView key) {
+                DataResult<String> name = getStringValue(key);
+                return name.result().map(input::get).orElse(null);
+            }
+
+            @Override
+            public @Nullable NbtView get(String key) {
+                return input.get(key);
+            }
+
+            @Override
+            public Stream<Pair<NbtView, NbtView>> entries() {
+                return NbtViewOps.this.entries(input);
+            }
+
+            @Override
+            public String toString() {
+                return "MapLike[" + input + "]";
+            }
+        });
+    }
+
+    private Stream<Pair<NbtView, NbtView>> entries(NbtView compound) {
+        return IntStream.range(0, compound.entryCount())
+            .mapToObj(i -> Pair.of(createString(compound.nameAt(i)), compound.valueAt(i)));
+    }
+
+    @Override
+    public DataResult<Stream<NbtView>> getStream(NbtView input) {
+        if (!input.isBuffered()) return NbtOps.INSTANCE.getStream(input.tag()).map(stream -> stream.map(NbtView::of));
+
+        return switch (input.type()) {
+            case Tag.TAG_LIST -> {
+                if (input.elementType() == Tag.TAG_COMPOUND) {
+                    yield DataResult.success(input.elements().map(NbtViewOps::tryUnwrap));
+                }
+                yield DataResult.success(input.elements());
+            }
+            case Tag.TAG_BYTE_ARRAY, Tag.TAG_INT_ARRAY, Tag.TAG_LONG_ARRAY -> DataResult.success(input.elements());
+            default -> DataResult.error(() -> "Not a list");
+        };
+    }
+
+    // NbtOps writes heterogeneous lists as lists of compounds with a single "" entry, and unwraps them when reading
+    private static NbtView tryUnwrap(NbtView compound) {
+        if (compound.entryCount() == 1 && compound.nameAt(0).isEmpty()) return compound.valueAt(0);
+        return compound;
+    }
+
+    @Override
+    public DataResult<ByteBuffer> getByteBuffer(NbtView input) {
+        if (!input.isBuffered()) return NbtOps.INSTANCE.getByteBuffer(input.tag());
+        if (input.type() == Tag.TAG_BYTE_ARRAY) return DataResult.success(ByteBuffer.wrap(input.byteArray()));
+        return DynamicOps.super.getByteBuffer(input);
+    }
+
+    @Override
+    public DataResult<IntStream> getIntStream(NbtView input) {
+        if (!input.isBuffered()) return NbtOps.INSTANCE.getIntStream(input.tag());
+        if (input.type() == Tag.TAG_INT_ARRAY) return DataResult.success(input.intArray());
+        return DynamicOps.super.getIntStream(input);
+    }
+
+    @Override
+    public DataResult<LongStream> getLongStream(NbtView input) {
+        if (!input.isBuffered()) return NbtOps.INSTANCE.getLongStream(input.tag());
+        if (input.type() == Tag.TAG_LONG_ARRAY) return DataResult.success(LongStream.of(input.longArray()));
+        return DynamicOps.super.getLongStream(input);
+    }
+
+    @Override
+    public NbtView createNumeric(Number i) {
+        return NbtView.of(NbtOps.INSTANCE.createNumeric(i));
+    }
+
+    @Override
+    public NbtView createByte(byte value) {
+        return NbtView.of(NbtOps.INSTANCE.createByte(value));
+    }
+
+    @Override
+    public NbtView createShort(short value) {
+        return NbtView.of(NbtOps.INSTANCE.createShort(value));
+    }
+
+    @Override
+    public NbtView createInt(int value) {
+        return NbtView.of(NbtOps.INSTANCE.createInt(value));
+    }
+
+    @Override
+    public NbtView createLong(long value) {
+        return NbtView.of(NbtOps.INSTANCE.createLong(value));
+    }
+
+    @Override
+    public NbtView createFloat(float value) {
+        return NbtView.of(NbtOps.INSTANCE.createFloat(value));
+    }
+
+    @Override
+    public NbtView createDouble(double value) {
+        return NbtView.of(NbtOps.INSTANCE.createDouble(value));
+    }
+
+    @Override
+    public NbtView createBoolean(boolean value) {
+        return NbtView.of(NbtOps.INSTANCE.createBoolean(value));
+    }
+
+    @Override
+    public NbtView createString(String value) {
+        return NbtView.of(StringTag.valueOf(value));
+    }
+
+    @Override
+    public NbtView createByteList(ByteBuffer input) {
+        return NbtView.of(NbtOps.INSTANCE.createByteList(input));
+    }
+
+    @Override
+    public NbtView createIntList(IntStream input) {
+        return NbtView.of(NbtOps.INSTANCE.createIntList(input));
+    }
+
+    @Override
+    public NbtView createLongList(LongStream input) {
+        return NbtView.of(NbtOps.INSTANCE.createLongList(input));
+    }
+
+    @Override
+    public NbtView createList(Stream<NbtView> input) {
+        return NbtView.of(NbtOps.INSTANCE.createList(input.map(NbtView::toTag)));
+    }
+
+    @Override
+    public NbtView createMap(Stream<Pair<NbtView, NbtView>> map) {
+        return NbtView.of(
+            NbtOps.INSTANCE.createMap(map.map(entry -> Pair.of(entry.getFirst().toTag(), entry.getSecond().toTag()))));
+    }
+
+    @Override
+    public DataResult<NbtView> mergeToList(NbtView list, NbtView value) {
+        return NbtOps.INSTANCE.mergeToList(list.toTag(), value.toTag()).map(NbtView::of);
+    }
+
+    @Override
+    public DataResult<NbtView> mergeToList(NbtView list, List<NbtView> values) {
+        return NbtOps.INSTANCE.mergeToList(list.toTag(), values.stream().map(NbtView::toTag).toList())
+            .map(NbtView::of);
+    }
+
+    @Override
+    public DataResult<NbtView> mergeToMap(NbtView map, NbtView key, NbtView value) {
+        return NbtOps.INSTANCE.mergeToMap(map.toTag(), key.toTag(), value.toTag()).map(NbtView::of);
+    }
+
+    @Override
+    public DataResult<NbtView> mergeToMap(NbtView map, MapLike<NbtView> values) {
+        MapLike<Tag> tags = new MapLike<>() {
+            @Override
+            public @Nullable Tag get(Tag key) {
+                NbtView value = values.get(NbtView.of(key));
+                return value == null ? null : value.toTag();
+            }
+
+            @Override
+            public @Nullable Tag get(String key) {
+                NbtView value = values.get(key);
+                return value == null ? null : value.toTag();
+            }
+
+            @Override
+            public Stream<Pair<Tag, Tag>> entries() {
+                return values.entries().map(entry -> Pair.of(entry.getFirst().toTag(), entry.getSecond().toTag()));
+            }
+        };
+        return NbtOps.INSTANCE.mergeToMap(map.toTag(), tags).map(NbtView::of);
+    }
+
+    @Override
+    public NbtView remove(NbtView input, String key) {
+        return NbtView.of(NbtOps.INSTANCE.remove(input.toTag(), key));
+    }
+
+    @Override
+    public String toString() {
+        return "NbtView";
+    }
+}
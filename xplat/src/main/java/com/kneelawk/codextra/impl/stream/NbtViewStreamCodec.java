@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Cyan Kneelawk.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+package com.kneelawk.codextra.impl.stream;
+
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DecoderException;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DynamicOps;
+
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.network.codec.StreamCodec;
+
+// Decodes ByteBufCodecs.fromCodec payloads through NbtViewOps instead of reading a whole Tag tree first. Encoding is
+// left to the original stream codec, so the wire format doesn't change.
+public class NbtViewStreamCodec<B extends ByteBuf, V> implements StreamCodec<B, V> {
+    private final StreamCodec<B, V> original;
+    private final Codec<V> codec;
+    private final Supplier<NbtAccounter> accounterSupplier;
+    private final Function<? super B, ? extends DynamicOps<NbtView>> opsGetter;
+
+    public NbtViewStreamCodec(StreamCodec<B, V> original, Codec<V> codec, Supplier<NbtAccounter> accounterSupplier,
+                              Function<? super B, ? extends DynamicOps<NbtView>> opsGetter) {
+        this.original = original;
+        this.codec = codec;
+        this.accounterSupplier = accounterSupplier;
+        this.opsGetter = opsGetter;
+    }
+
+    @Override
+    public V decode(B buf) {
+        // views point into the buffer, so the codec must be done with them by the time this returns
+        NbtView root = NbtView.readRoot(buf, accounterSupplier.get());
+        return codec.parse(opsGetter.apply(buf), root)
+            .getOrThrow(msg -> new DecoderException("Failed to decode: " + msg + " " + root));
+    }
+
+    @Override
+    public void encode(B buf, V value) {
+        original.encode(buf, value);
+    }
+
+    @Override
+    public String toString() {
+        return "NbtViewStreamCodec[" + codec + "]";
+    }
+}
@@ -1,9 +1,13 @@
 package com.kneelawk.codextra.api.attach;
 
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
 
 import org.junit.jupiter.api.Test;
 
@@ -11,13 +15,25 @@ import com.mojang.serialization.Codec;
 import com.mojang.serialization.DataResult;
 import com.mojang.serialization.DynamicOps;
 import com.mojang.serialization.JsonOps;
+import com.mojang.serialization.MapCodec;
 import com.mojang.serialization.codecs.RecordCodecBuilder;
 
+import net.minecraft.nbt.NbtOps;
+import net.minecraft.nbt.Tag;
 import net.minecraft.resources.ResourceLocation;
 
 import com.kneelawk.codextra.impl.CodextraConstants;
+import com.kneelawk.codextra.impl.attach.AttachmentJsonOps;
+import com.kneelawk.codextra.impl.attach.AttachmentNbtOps;
+import com.kneelawk.codextra.impl.attach.AttachmentOps;
+import com.kneelawk.codextra.impl.attach.WrapperPool;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -80,4 +96,317 @@ public class AttachmentTests {
         DispatchTest result = DispatchTest.CODEC.parse(ops, JsonParser.parseString(testString)).getOrThrow();
         assertSame(test, result);
     }
+
+    @Test
+    void shadowingTest() {
+        DynamicOps<JsonElement> ops = JsonOps.INSTANCE;
+        assertFalse(TEST_ATTACHMENT.isPresent(ops));
+
+        ops = TEST_ATTACHMENT.push(ops, "outer");
+        TEST_ATTACHMENT.push(ops, "inner");
+        assertEquals("inner", TEST_ATTACHMENT.getOrNull(ops));
+
+        assertEquals("inner", TEST_ATTACHMENT.pop(ops));
+        assertTrue(TEST_ATTACHMENT.isPresent(ops));
+        assertEquals("outer", TEST_ATTACHMENT.getOrNull(ops));
+
+        assertEquals("outer", TEST_ATTACHMENT.pop(ops));
+        assertFalse(TEST_ATTACHMENT.isPresent(ops));
+        assertNull(TEST_ATTACHMENT.getOrNull(ops));
+    }
+
+    @Test
+    void withTest() {
+        DynamicOps<JsonElement> base = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "base");
+
+        DynamicOps<JsonElement> view = TEST_ATTACHMENT.with(base, "view");
+        assertEquals("view", TEST_ATTACHMENT.getOrNull(view));
+        assertEquals("base", TEST_ATTACHMENT.getOrNull(base));
+
+        TEST_ATTACHMENT.push(view, "pushed");
+        assertEquals("pushed", TEST_ATTACHMENT.getOrNull(view));
+        assertEquals("base", TEST_ATTACHMENT.getOrNull(base));
+
+        AttachmentContext snapshot = AttachmentContext.snapshot(view);
+        TEST_ATTACHMENT.pop(view);
+        assertEquals("view", TEST_ATTACHMENT.getOrNull(view));
+        assertEquals("pushed", snapshot.get(TEST_ATTACHMENT));
+    }
+
+    @Test
+    void snapshotTest() {
+        AttachmentContext base = AttachmentContext.builder()
+            .add(OTHER_ATTACHMENT, "base other")
+            .add(TEST_ATTACHMENT, "base test")
+            .build();
+        assertEquals(2, base.size());
+        assertEquals("base test", base.get(TEST_ATTACHMENT));
+        assertEquals("base other", base.get(OTHER_ATTACHMENT));
+        // contexts are kept sorted however the builder was filled
+        assertTrue(base.keyAt(0).getIndex() < base.keyAt(1).getIndex());
+
+        DynamicOps<JsonElement> view = base.applyTo(JsonOps.INSTANCE);
+        assertSame(base, AttachmentContext.snapshot(view));
+
+        // pushed values hide the base context's, and are merged with the rest of it
+        TEST_ATTACHMENT.push(view, "pushed");
+        AttachmentContext snapshot = AttachmentContext.snapshot(view);
+        assertEquals(2, snapshot.size());
+        assertEquals("pushed", snapshot.get(TEST_ATTACHMENT));
+        assertEquals("base other", snapshot.get(OTHER_ATTACHMENT));
+        assertEquals("base test", base.get(TEST_ATTACHMENT));
+    }
+
+    private static final AttachmentKey<String> OTHER_ATTACHMENT = AttachmentKey.ofStaticFieldName();
+
+    @Test
+    void attachmentSetTest() {
+        AttachmentSet set = AttachmentSet.of(TEST_ATTACHMENT, "Hello World", OTHER_ATTACHMENT, "other");
+
+        DynamicOps<JsonElement> ops = set.push(JsonOps.INSTANCE);
+        assertEquals("Hello World", TEST_ATTACHMENT.getOrNull(ops));
+        assertEquals("other", OTHER_ATTACHMENT.getOrNull(ops));
+
+        set.pop(ops);
+        assertFalse(TEST_ATTACHMENT.isPresent(ops));
+        assertFalse(OTHER_ATTACHMENT.isPresent(ops));
+
+        Codec<BasicTest> codec = AttachmentKey.attachingCodec(set, BasicTest.CODEC);
+        BasicTest test =
+            codec.parse(JsonOps.INSTANCE, JsonParser.parseString("{\"test\": \"Testing!\"}")).getOrThrow();
+        assertEquals("Hello World", test.hello);
+    }
+
+    @Test
+    void resolveTest() {
+        assertNull(AttachmentManager.resolve(JsonOps.INSTANCE));
+
+        DynamicOps<JsonElement> ops = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "Hello World");
+        AttachmentManager manager = AttachmentManager.resolve(ops);
+        assertNotNull(manager);
+        assertEquals("Hello World", manager.getResult(TEST_ATTACHMENT).getOrThrow());
+        assertTrue(manager.getResult(OTHER_ATTACHMENT).isError());
+    }
+
+    @Test
+    void opsSubclassTest() {
+        // the common base ops get subclasses holding the attachments themselves instead of a delegating wrapper
+        DynamicOps<JsonElement> json = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "json");
+        assertInstanceOf(AttachmentJsonOps.class, json);
+        assertFalse(json.compressMaps());
+        assertEquals("json", TEST_ATTACHMENT.getOrNull(json));
+        TEST_ATTACHMENT.pop(json);
+
+        DynamicOps<JsonElement> compressed = TEST_ATTACHMENT.push(JsonOps.COMPRESSED, "compressed");
+        assertInstanceOf(AttachmentJsonOps.class, compressed);
+        assertTrue(compressed.compressMaps());
+        TEST_ATTACHMENT.pop(compressed);
+
+        DynamicOps<Tag> nbt = TEST_ATTACHMENT.push(NbtOps.INSTANCE, "nbt");
+        assertInstanceOf(AttachmentNbtOps.class, nbt);
+        assertEquals("nbt", TEST_ATTACHMENT.getOrNull(nbt));
+        TEST_ATTACHMENT.pop(nbt);
+
+        // other subclasses get wrapped, so their own behavior is kept
+        DynamicOps<JsonElement> custom = new JsonOps(false) {
+            @Override
+            public JsonElement createString(String value) {
+                return super.createString(value.toUpperCase(Locale.ROOT));
+            }
+        };
+        DynamicOps<JsonElement> wrapped = TEST_ATTACHMENT.push(custom, "custom");
+        assertInstanceOf(AttachmentOps.class, wrapped);
+        assertEquals("custom", TEST_ATTACHMENT.getOrNull(wrapped));
+        assertEquals(new JsonPrimitive("HELLO"), wrapped.createString("hello"));
+        TEST_ATTACHMENT.pop(wrapped);
+    }
+
+    @Test
+    void releaseTest() {
+        DynamicOps<JsonElement> first = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "first");
+        assertEquals("first", TEST_ATTACHMENT.popAndRelease(first, JsonOps.INSTANCE));
+
+        // released wrappers are only reused when pooling is enabled
+        DynamicOps<JsonElement> second = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "second");
+        assertEquals(WrapperPool.isEnabled(), first == second);
+        assertEquals("second", TEST_ATTACHMENT.getOrNull(second));
+        TEST_ATTACHMENT.pop(second);
+    }
+
+    @Test
+    void pooledReleaseTest() {
+        boolean wasEnabled = WrapperPool.isEnabled();
+        WrapperPool.setEnabled(true);
+        WrapperPool.get().clear();
+        try {
+            DynamicOps<JsonElement> first = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "first");
+            assertEquals("first", TEST_ATTACHMENT.popAndRelease(first, JsonOps.INSTANCE));
+            // releasing twice must not put the wrapper in the pool twice
+            TEST_ATTACHMENT.popAndRelease(first, JsonOps.INSTANCE);
+            assertEquals(1, WrapperPool.get().size());
+
+            // the released wrapper is reused, starting out empty
+            DynamicOps<JsonElement> second = OTHER_ATTACHMENT.push(JsonOps.INSTANCE, "second");
+            assertSame(first, second);
+            assertFalse(TEST_ATTACHMENT.isPresent(second));
+            assertEquals("second", OTHER_ATTACHMENT.getOrNull(second));
+
+            // pushing to the original ops again while the wrapper is in use must not hand out the same wrapper
+            DynamicOps<JsonElement> nested = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "nested");
+            assertNotSame(second, nested);
+            assertEquals("nested", TEST_ATTACHMENT.getOrNull(nested));
+            assertFalse(OTHER_ATTACHMENT.isPresent(nested));
+            assertFalse(TEST_ATTACHMENT.isPresent(second));
+
+            TEST_ATTACHMENT.popAndRelease(nested, JsonOps.INSTANCE);
+            assertEquals("second", OTHER_ATTACHMENT.getOrNull(second));
+            OTHER_ATTACHMENT.popAndRelease(second, JsonOps.INSTANCE);
+            assertEquals(2, WrapperPool.get().size());
+
+            // both wrappers get handed out again, once each
+            DynamicOps<JsonElement> third = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "third");
+            DynamicOps<JsonElement> fourth = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "fourth");
+            assertNotSame(third, fourth);
+            assertTrue(third == second || third == nested);
+            assertTrue(fourth == second || fourth == nested);
+            assertEquals(0, WrapperPool.get().size());
+
+            // wrappers that still have attachments aren't pooled
+            OTHER_ATTACHMENT.push(third, "other");
+            TEST_ATTACHMENT.popAndRelease(third, JsonOps.INSTANCE);
+            assertEquals(0, WrapperPool.get().size());
+            assertEquals("other", OTHER_ATTACHMENT.getOrNull(third));
+
+            OTHER_ATTACHMENT.pop(third);
+            TEST_ATTACHMENT.pop(fourth);
+        } finally {
+            WrapperPool.setEnabled(wasEnabled);
+        }
+    }
+
+    @Test
+    void cachedDispatchTest() {
+        AtomicInteger dispatches = new AtomicInteger();
+        Codec<DispatchTest> codec = DISPATCH_ATTACHMENT.dispatchCodecCached(map -> {
+            dispatches.incrementAndGet();
+            return ResourceLocation.CODEC.xmap(map::get, DispatchTest::name);
+        });
+
+        DispatchTest test = new DispatchTest("Hello World!", CodextraConstants.rl("test"));
+        DynamicOps<JsonElement> ops = DISPATCH_ATTACHMENT.push(JsonOps.INSTANCE, Map.of(test.name, test));
+        JsonElement input = JsonParser.parseString("\"codextra:test\"");
+
+        assertSame(test, codec.parse(ops, input).getOrThrow());
+        assertSame(test, codec.parse(ops, input).getOrThrow());
+        assertEquals(1, dispatches.get());
+
+        DispatchTest other = new DispatchTest("Other", CodextraConstants.rl("test"));
+        DISPATCH_ATTACHMENT.push(ops, Map.of(other.name, other));
+        assertSame(other, codec.parse(ops, input).getOrThrow());
+        assertEquals(2, dispatches.get());
+    }
+
+    @Test
+    void attachmentsCacheTest() {
+        AttachmentsCache<String> cache =
+            AttachmentsCache.of(hello -> AttachmentSet.of(TEST_ATTACHMENT, hello, OTHER_ATTACHMENT, hello + "!"));
+        MapCodec<BasicTest> codec = AttachmentKey.keyAttachingCodec(Codec.STRING.fieldOf("hello"), cache,
+            BasicTest.CODEC.fieldOf("value"), BasicTest::hello);
+
+        JsonElement input = JsonParser.parseString("""
+            {
+              "hello": "Hello World",
+              "value": {
+                "test": "Testing!"
+              }
+            }
+            """);
+        assertEquals("Hello World", codec.codec().parse(JsonOps.INSTANCE, input).getOrThrow().hello);
+        assertEquals("Hello World", codec.codec().parse(JsonOps.INSTANCE, input).getOrThrow().hello);
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+    }
+
+    private static final AttachmentKey<Integer> DERIVED_ATTACHMENT =
+        AttachmentKey.derived(TEST_ATTACHMENT, String::length);
+
+    @Test
+    void derivedTest() {
+        DynamicOps<JsonElement> ops = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "Hello World");
+        assertEquals(11, DERIVED_ATTACHMENT.getOrNull(ops));
+        assertTrue(DERIVED_ATTACHMENT.isPresent(ops));
+
+        TEST_ATTACHMENT.push(ops, "Hello");
+        assertEquals(5, DERIVED_ATTACHMENT.getOrNull(ops));
+
+        TEST_ATTACHMENT.pop(ops);
+        assertEquals(11, DERIVED_ATTACHMENT.getOrNull(ops));
+
+        TEST_ATTACHMENT.pop(ops);
+        assertFalse(DERIVED_ATTACHMENT.isPresent(ops));
+    }
+
+    @Test
+    void derivedReuseTest() {
+        AtomicInteger calls = new AtomicInteger();
+        AttachmentKey<Integer> derived = AttachmentKey.derived(TEST_ATTACHMENT, str -> {
+            calls.incrementAndGet();
+            return str.length();
+        });
+
+        DynamicOps<JsonElement> ops = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "Hello World");
+        assertEquals(11, derived.getOrNull(ops));
+        assertEquals(11, derived.getOrNull(ops));
+        assertEquals(1, calls.get());
+
+        TEST_ATTACHMENT.push(ops, "Hello");
+        assertEquals(5, derived.getOrNull(ops));
+        assertEquals(2, calls.get());
+
+        TEST_ATTACHMENT.pop(ops);
+        assertEquals(11, derived.getOrNull(ops));
+        assertEquals(2, calls.get());
+
+        AttachmentContext context = AttachmentContext.EMPTY.with(TEST_ATTACHMENT, "Hi");
+        assertEquals(2, context.get(derived));
+        assertEquals(2, context.get(derived));
+        assertEquals(3, calls.get());
+    }
+
+    private static final AttachmentKey<IdTable<String>> ID_TABLE_ATTACHMENT = AttachmentKey.ofStaticFieldName();
+
+    @Test
+    void idTableTest() {
+        Codec<String> codec = AttachmentKey.retrieveByIdCodec(ID_TABLE_ATTACHMENT);
+        DynamicOps<JsonElement> ops = ID_TABLE_ATTACHMENT.push(JsonOps.INSTANCE, IdTable.of(List.of("a", "b", "c")));
+
+        JsonElement encoded = codec.encodeStart(ops, "c").getOrThrow();
+        assertEquals(2, encoded.getAsInt());
+        assertEquals("c", codec.parse(ops, encoded).getOrThrow());
+        assertTrue(codec.encodeStart(ops, "d").isError());
+        assertTrue(codec.parse(ops, JsonParser.parseString("3")).isError());
+        ID_TABLE_ATTACHMENT.pop(ops);
+    }
+
+    private static final IntAttachmentKey VERSION_ATTACHMENT = IntAttachmentKey.ofStaticFieldName();
+
+    @Test
+    void primitiveTest() {
+        DynamicOps<JsonElement> ops = VERSION_ATTACHMENT.pushInt(JsonOps.INSTANCE, 2);
+        assertEquals(2, VERSION_ATTACHMENT.getInt(ops, -1));
+        assertEquals(2, VERSION_ATTACHMENT.getOrNull(ops));
+
+        VERSION_ATTACHMENT.push(ops, 3);
+        assertEquals(3, VERSION_ATTACHMENT.getInt(ops, -1));
+        assertEquals(3, VERSION_ATTACHMENT.pop(ops));
+
+        Codec<String> codec = VERSION_ATTACHMENT.dispatchIntCodec(
+            version -> version >= 2 ? Codec.STRING : Codec.INT.xmap(String::valueOf, Integer::parseInt));
+        assertEquals("test", codec.parse(ops, JsonParser.parseString("\"test\"")).getOrThrow());
+        assertEquals(2, AttachmentContext.snapshot(ops).get(VERSION_ATTACHMENT));
+
+        assertEquals(2, VERSION_ATTACHMENT.pop(ops));
+        assertEquals(-1, VERSION_ATTACHMENT.getInt(ops, -1));
+        assertTrue(codec.parse(ops, JsonParser.parseString("\"test\"")).isError());
+    }
 }
@@ -1,5 +1,7 @@
 package com.kneelawk.codextra.api.codec;
 
+import java.util.Optional;
+
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 
@@ -7,14 +9,24 @@ import org.junit.jupiter.api.Test;
 
 import com.mojang.serialization.Codec;
 import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
 import com.mojang.serialization.JsonOps;
+import com.mojang.serialization.MapCodec;
 
 import com.kneelawk.codextra.api.Codextra;
+import com.kneelawk.codextra.api.attach.AttachmentKey;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class CodecTests {
+    private static final AttachmentKey<String> TEST_ATTACHMENT = AttachmentKey.ofStaticFieldName();
+
+    private record CompiledTest(String test, String hello) {}
+
+    private record CompiledOptionalTest(String name, int count, Optional<String> note) {}
+
     @Test
     void unitHandlingMapCodec() {
         Codec<String> codec = Codextra.unitHandlingFieldOf("test", Codec.unit("Hello World")).codec();
@@ -43,4 +55,53 @@ public class CodecTests {
         assertTrue(res.isSuccess());
         assertEquals("{\"test\":\"Hello World\"}", res.getOrThrow().toString());
     }
+
+    @Test
+    void compiledRecordTest() {
+        MapCodec<CompiledTest> codec = Codextra.compiledRecord(CompiledTest.class)
+            .field("test", Codec.STRING)
+            .retrieve(TEST_ATTACHMENT)
+            .build();
+        JsonElement json = JsonParser.parseString("{\"test\": \"Testing!\"}");
+
+        DynamicOps<JsonElement> ops = TEST_ATTACHMENT.push(JsonOps.INSTANCE, "Hello World");
+        assertEquals(new CompiledTest("Testing!", "Hello World"), codec.codec().parse(ops, json).getOrThrow());
+        assertEquals(json, codec.codec().encodeStart(ops, new CompiledTest("Testing!", "Hello World")).getOrThrow());
+
+        assertTrue(codec.codec().parse(JsonOps.INSTANCE, json).isError());
+    }
+
+    @Test
+    void compiledRecordOptionalFields() {
+        Codec<CompiledOptionalTest> codec = Codextra.compiledRecord(CompiledOptionalTest.class)
+            .field("name", Codec.STRING)
+            .optionalField("count", Codec.INT, 1)
+            .optionalField("note", Codec.STRING)
+            .build().codec();
+
+        JsonElement minimal = JsonParser.parseString("{\"name\": \"a\"}");
+        CompiledOptionalTest defaulted = new CompiledOptionalTest("a", 1, Optional.empty());
+        assertEquals(defaulted, codec.parse(JsonOps.INSTANCE, minimal).getOrThrow());
+        assertEquals(minimal, codec.encodeStart(JsonOps.INSTANCE, defaulted).getOrThrow());
+
+        JsonElement full = JsonParser.parseString("{\"name\": \"a\", \"count\": 3, \"note\": \"b\"}");
+        CompiledOptionalTest present = new CompiledOptionalTest("a", 3, Optional.of("b"));
+        assertEquals(present, codec.parse(JsonOps.INSTANCE, full).getOrThrow());
+        assertEquals(full, codec.encodeStart(JsonOps.INSTANCE, present).getOrThrow());
+
+        // optional fields that are present must still be valid
+        assertTrue(codec.parse(JsonOps.INSTANCE, JsonParser.parseString("{\"name\": \"a\", \"note\": 5}")).isError());
+        assertTrue(
+            codec.parse(JsonOps.INSTANCE, JsonParser.parseString("{\"name\": \"a\", \"count\": \"b\"}")).isError());
+    }
+
+    @Test
+    void compiledRecordRejectsInvalidComponents() {
+        assertThrows(NullPointerException.class,
+            () -> Codextra.compiledRecord(CompiledOptionalTest.class).optionalField("count", Codec.INT, null));
+        assertThrows(IllegalArgumentException.class, () -> Codextra.compiledRecord(CompiledTest.class)
+            .optionalField("test", Codec.STRING)
+            .retrieve(TEST_ATTACHMENT)
+            .build());
+    }
 }
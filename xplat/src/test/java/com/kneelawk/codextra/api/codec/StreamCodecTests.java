@@ -0,0 +1,645 @@
+package com.kneelawk.codextra.api.codec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+
+import com.mojang.serialization.Codec;
+import com.mojang.serialization.DataResult;
+import com.mojang.serialization.DynamicOps;
+import com.mojang.serialization.MapCodec;
+import com.mojang.serialization.MapLike;
+import com.mojang.serialization.RecordBuilder;
+import com.mojang.serialization.codecs.RecordCodecBuilder;
+
+import net.minecraft.nbt.NbtAccounter;
+import net.minecraft.nbt.NbtAccounterException;
+import net.minecraft.network.FriendlyByteBuf;
+import net.minecraft.network.VarInt;
+import net.minecraft.network.codec.ByteBufCodecs;
+import net.minecraft.network.codec.StreamCodec;
+
+import com.kneelawk.codextra.api.CodextraStreams;
+import com.kneelawk.codextra.api.attach.AttachmentKey;
+import com.kneelawk.codextra.api.attach.DeltaBaseline;
+import com.kneelawk.codextra.api.attach.StreamDictionary;
+import com.kneelawk.codextra.api.attach.stream.ChildBufferFactory;
+import com.kneelawk.codextra.api.stream.DeltaCodec;
+import com.kneelawk.codextra.impl.CodextraImpl;
+import com.kneelawk.codextra.impl.stream.NbtViewOps;
+import com.kneelawk.codextra.impl.stream.NbtViewStreamCodec;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class StreamCodecTests {
+    private static final AttachmentKey<String> TEST_ATTACHMENT = AttachmentKey.ofStaticFieldName();
+    private static final AttachmentKey<List<String>> PALETTE_ATTACHMENT = AttachmentKey.ofStaticFieldName();
+    private static final AttachmentKey<DeltaBaseline<List<Integer>>> BASELINE_ATTACHMENT =
+        AttachmentKey.ofStaticFieldName();
+
+    private static final Supplier<NbtAccounter> QUOTA = () -> NbtAccounter.create(2097152L);
+
+    private record Inner(String id, int amount) {
+        static final Codec<Inner> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            Codec.STRING.fieldOf("id").forGetter(Inner::id),
+            Codec.INT.fieldOf("amount").forGetter(Inner::amount)
+        ).apply(instance, Inner::new));
+    }
+
+    private record Sample(String name, long big, double scale, boolean flag, List<Integer> values, List<Long> longs,
+                          List<Inner> inners, Map<String, Integer> weights, Optional<String> note) {
+        static final Codec<Sample> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            Codec.STRING.fieldOf("name").forGetter(Sample::name),
+            Codec.LONG.fieldOf("big").forGetter(Sample::big),
+            Codec.DOUBLE.fieldOf("scale").forGetter(Sample::scale),
+            Codec.BOOL.fieldOf("flag").forGetter(Sample::flag),
+            Codec.INT.listOf().fieldOf("values").forGetter(Sample::values),
+            Codec.LONG.listOf().fieldOf("longs").forGetter(Sample::longs),
+            Inner.CODEC.listOf().fieldOf("inners").forGetter(Sample::inners),
+            Codec.unboundedMap(Codec.STRING, Codec.INT).fieldOf("weights").forGetter(Sample::weights),
+            Codec.STRING.optionalFieldOf("note").forGetter(Sample::note)
+        ).apply(instance, Sample::new));
+    }
+
+    private static final Sample SAMPLE =
+        new Sample("Testing!", 1L << 40, 0.5, true, List.of(1, -2, 300), List.of(-1L, 1L << 50),
+            List.of(new Inner("a", 1), new Inner("b", 2)), Map.of("x", 1, "y", -1), Optional.empty());
+
+    private record Retrieving(String test, String hello) {
+        static final Codec<Retrieving> CODEC = RecordCodecBuilder.create(instance -> instance.group(
+            Codec.STRING.fieldOf("test").forGetter(Retrieving::test),
+            TEST_ATTACHMENT.retrieve()
+        ).apply(instance, Retrieving::new));
+    }
+
+    private static FriendlyByteBuf buffer() {
+        return new FriendlyByteBuf(Unpooled.buffer());
+    }
+
+    // a fresh buffer with the written bytes, as the reading side of a connection has its own attachments
+    private static FriendlyByteBuf received(ByteBuf written) {
+        return new FriendlyByteBuf(Unpooled.copiedBuffer(written));
+    }
+
+    // decodes another value from its own buffer while decoding its first field
+    private record Nested(String test, String hello) {
+        static Codec<Nested> codec(FriendlyByteBuf nestedBuf, List<Retrieving> nestedResults) {
+            StreamCodec<ByteBuf, Retrieving> nested = ByteBufCodecs.fromCodec(Retrieving.CODEC);
+            return RecordCodecBuilder.create(instance -> instance.group(
+                Codec.STRING.xmap(str -> {
+                    nestedResults.add(nested.decode(nestedBuf));
+                    return str;
+                }, str -> str).fieldOf("test").forGetter(Nested::test),
+                TEST_ATTACHMENT.retrieve()
+            ).apply(instance, Nested::new));
+        }
+    }
+
+    @Test
+    void streamManagerStack() {
+        FriendlyByteBuf nestedOut = buffer();
+        ByteBufCodecs.fromCodec(Retrieving.CODEC).encode(nestedOut, new Retrieving("Nested", "ignored"));
+        FriendlyByteBuf nestedIn = received(nestedOut);
+        TEST_ATTACHMENT.push(nestedIn, "Inner");
+
+        List<Retrieving> nestedResults = new ArrayList<>();
+        StreamCodec<ByteBuf, Nested> codec = ByteBufCodecs.fromCodec(Nested.codec(nestedIn, nestedResults));
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, new Nested("Testing!", "ignored"));
+        nestedResults.clear();
+
+        FriendlyByteBuf in = received(out);
+        TEST_ATTACHMENT.push(in, "Outer");
+        assertEquals(new Nested("Testing!", "Outer"), codec.decode(in));
+        assertEquals(List.of(new Retrieving("Nested", "Inner")), nestedResults);
+        assertNull(CodextraImpl.streamManager());
+
+        // failing to decode must not leave anything on the stack
+        FriendlyByteBuf unattached = received(out);
+        nestedIn.readerIndex(0);
+        assertThrows(DecoderException.class, () -> codec.decode(unattached));
+        assertNull(CodextraImpl.streamManager());
+    }
+
+    // writes each string as its index in the palette attachment, adding it to the palette if necessary
+    private static final StreamCodec<FriendlyByteBuf, List<String>> PALETTED = StreamCodec.of((buf, value) -> {
+        List<String> palette = PALETTE_ATTACHMENT.getOrThrow(buf);
+        VarInt.write(buf, value.size());
+        for (String str : value) {
+            int index = palette.indexOf(str);
+            if (index < 0) {
+                index = palette.size();
+                palette.add(str);
+            }
+            VarInt.write(buf, index);
+        }
+    }, buf -> {
+        List<String> palette = PALETTE_ATTACHMENT.getOrThrow(buf);
+        int size = VarInt.read(buf);
+        List<String> value = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            value.add(palette.get(VarInt.read(buf)));
+        }
+        return value;
+    });
+
+    @Test
+    void mutReadAttachingRoundTrip() {
+        StreamCodec<FriendlyByteBuf, List<String>> codec = PALETTE_ATTACHMENT.mutReadAttachingStreamCodec(
+            ByteBufCodecs.STRING_UTF8.apply(ByteBufCodecs.list()), ChildBufferFactory.friendly(), PALETTED,
+            value -> new ArrayList<>());
+        List<String> value = List.of("a", "b", "a", "c", "b");
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, value);
+        // the payload was encoded through a buffer wrapping this one, which must have been released again
+        assertEquals(1, out.refCnt());
+        assertFalse(PALETTE_ATTACHMENT.isPresent(out));
+
+        FriendlyByteBuf in = received(out);
+        assertEquals(value, codec.decode(in));
+        assertEquals(0, in.readableBytes());
+        // the payload was read as a slice of the buffer, which must have been released again
+        assertEquals(1, in.refCnt());
+        assertFalse(PALETTE_ATTACHMENT.isPresent(in));
+    }
+
+    @Test
+    void mutReadAttachingCopyingRoundTrip() {
+        // a factory that can't wrap buffers, so the payload has to be copied
+        ChildBufferFactory<FriendlyByteBuf, FriendlyByteBuf> copying =
+            (initialCapacity, parent) -> new FriendlyByteBuf(Unpooled.buffer(initialCapacity));
+        StreamCodec<FriendlyByteBuf, List<String>> codec = PALETTE_ATTACHMENT.mutReadAttachingStreamCodec(
+            ByteBufCodecs.STRING_UTF8.apply(ByteBufCodecs.list()), copying, PALETTED, value -> new ArrayList<>());
+        List<String> value = List.of("a", "b", "a", "c", "b");
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, value);
+        assertEquals(1, out.refCnt());
+
+        FriendlyByteBuf in = received(out);
+        assertEquals(value, codec.decode(in));
+        assertEquals(0, in.readableBytes());
+        assertEquals(1, in.refCnt());
+    }
+
+    @Test
+    void mutReadAttachingEncodeFailure() {
+        StreamCodec<FriendlyByteBuf, List<String>> failing = StreamCodec.of((buf, value) -> {
+            PALETTED.encode(buf, value);
+            throw new EncoderException("Failed after writing");
+        }, PALETTED);
+        StreamCodec<FriendlyByteBuf, List<String>> codec = PALETTE_ATTACHMENT.mutReadAttachingStreamCodec(
+            ByteBufCodecs.STRING_UTF8.apply(ByteBufCodecs.list()), ChildBufferFactory.friendly(), failing,
+            value -> new ArrayList<>());
+
+        FriendlyByteBuf out = buffer();
+        out.writeByte(42);
+        assertThrows(EncoderException.class, () -> codec.encode(out, List.of("a", "b")));
+
+        // nothing from the failed value may be left behind
+        assertEquals(1, out.writerIndex());
+        assertEquals(1, out.refCnt());
+        assertFalse(PALETTE_ATTACHMENT.isPresent(out));
+    }
+
+    @Test
+    void mutReadAttachingMalformed() {
+        StreamCodec<FriendlyByteBuf, List<String>> codec = PALETTE_ATTACHMENT.mutReadAttachingStreamCodec(
+            ByteBufCodecs.STRING_UTF8.apply(ByteBufCodecs.list()), ChildBufferFactory.friendly(), PALETTED,
+            value -> new ArrayList<>());
+
+        // a payload longer than the buffer
+        FriendlyByteBuf tooLong = buffer();
+        VarInt.write(tooLong, 100);
+        assertThrows(IndexOutOfBoundsException.class, () -> codec.decode(tooLong));
+        assertFalse(PALETTE_ATTACHMENT.isPresent(tooLong));
+        assertEquals(1, tooLong.refCnt());
+
+        // a payload without the palette after it
+        FriendlyByteBuf missingKey = buffer();
+        VarInt.write(missingKey, 1);
+        VarInt.write(missingKey, 0);
+        assertThrows(IndexOutOfBoundsException.class, () -> codec.decode(missingKey));
+        assertFalse(PALETTE_ATTACHMENT.isPresent(missingKey));
+        assertEquals(1, missingKey.refCnt());
+
+        // a payload referring to a palette entry that was never sent
+        FriendlyByteBuf badIndex = buffer();
+        VarInt.write(badIndex, 2);
+        VarInt.write(badIndex, 1);
+        VarInt.write(badIndex, 0);
+        VarInt.write(badIndex, 0);
+        assertThrows(IndexOutOfBoundsException.class, () -> codec.decode(badIndex));
+        assertFalse(PALETTE_ATTACHMENT.isPresent(badIndex));
+        assertEquals(1, badIndex.refCnt());
+        assertEquals(0, badIndex.readableBytes());
+    }
+
+    @Test
+    void dictionaryRoundTrip() {
+        StreamCodec<ByteBuf, String> codec = CodextraStreams.dictionaryString();
+        FriendlyByteBuf out = buffer();
+        StreamDictionary.KEY.push(out, StreamDictionary.create());
+
+        codec.encode(out, "minecraft:stone");
+        int literalEnd = out.writerIndex();
+        codec.encode(out, "minecraft:stone");
+        assertEquals(1, out.writerIndex() - literalEnd);
+        codec.encode(out, "minecraft:dirt");
+
+        FriendlyByteBuf in = received(out);
+        StreamDictionary.KEY.push(in, StreamDictionary.create());
+        assertEquals("minecraft:stone", codec.decode(in));
+        assertEquals("minecraft:stone", codec.decode(in));
+        assertEquals("minecraft:dirt", codec.decode(in));
+        assertEquals(0, in.readableBytes());
+    }
+
+    @Test
+    void dictionaryEviction() {
+        StreamCodec<ByteBuf, String> codec = CodextraStreams.dictionaryString();
+        // "a" is evicted by "c", and then "b" by "a" being written in full again
+        List<String> values = List.of("a", "b", "a", "c", "a", "c", "b");
+        boolean[] literal = {true, true, false, true, true, false, true};
+
+        FriendlyByteBuf out = buffer();
+        StreamDictionary.KEY.push(out, StreamDictionary.create(2));
+        for (int i = 0; i < values.size(); i++) {
+            int start = out.writerIndex();
+            codec.encode(out, values.get(i));
+            assertEquals(literal[i], out.writerIndex() - start > 1);
+        }
+
+        FriendlyByteBuf in = received(out);
+        StreamDictionary.KEY.push(in, StreamDictionary.create(2));
+        for (String value : values) {
+            assertEquals(value, codec.decode(in));
+        }
+        assertEquals(0, in.readableBytes());
+    }
+
+    @Test
+    void dictionaryNull() {
+        StreamCodec<ByteBuf, String> nullLiteral = StreamCodec.of((buf, value) -> {}, buf -> null);
+        StreamCodec<ByteBuf, String> codec = CodextraStreams.dictionary(nullLiteral);
+
+        FriendlyByteBuf out = buffer();
+        StreamDictionary.KEY.push(out, StreamDictionary.create());
+        assertThrows(NullPointerException.class, () -> codec.encode(out, null));
+        assertEquals(0, out.writerIndex());
+
+        // the reading side can't assign an id to null, so a literal decoding to null is malformed
+        FriendlyByteBuf in = buffer();
+        VarInt.write(in, 0);
+        StreamDictionary.KEY.push(in, StreamDictionary.create());
+        assertThrows(DecoderException.class, () -> codec.decode(in));
+    }
+
+    @Test
+    void dictionaryMalformed() {
+        StreamCodec<ByteBuf, String> codec = CodextraStreams.dictionaryString();
+
+        FriendlyByteBuf unassigned = buffer();
+        VarInt.write(unassigned, 5);
+        StreamDictionary.KEY.push(unassigned, StreamDictionary.create());
+        assertThrows(DecoderException.class, () -> codec.decode(unassigned));
+
+        FriendlyByteBuf outOfRange = buffer();
+        VarInt.write(outOfRange, 5);
+        StreamDictionary.KEY.push(outOfRange, StreamDictionary.create(4));
+        assertThrows(DecoderException.class, () -> codec.decode(outOfRange));
+
+        FriendlyByteBuf missing = buffer();
+        VarInt.write(missing, 0);
+        assertThrows(DecoderException.class, () -> codec.decode(missing));
+    }
+
+    @Test
+    void deltaRoundTrip() {
+        StreamCodec<ByteBuf, List<Integer>> codec =
+            CodextraStreams.delta(BASELINE_ATTACHMENT, DeltaCodec.list(ByteBufCodecs.VAR_INT));
+        List<List<Integer>> values = List.of(List.of(1, 2, 3), List.of(1, 2, 3), List.of(1, 5, 3, 4), List.of(4));
+
+        FriendlyByteBuf out = buffer();
+        BASELINE_ATTACHMENT.push(out, DeltaBaseline.create());
+        for (List<Integer> value : values) {
+            codec.encode(out, value);
+        }
+
+        FriendlyByteBuf in = received(out);
+        BASELINE_ATTACHMENT.push(in, DeltaBaseline.create());
+        for (List<Integer> value : values) {
+            assertEquals(value, codec.decode(in));
+        }
+        assertEquals(0, in.readableBytes());
+    }
+
+    @Test
+    void deltaMalformed() {
+        StreamCodec<ByteBuf, List<Integer>> codec =
+            CodextraStreams.delta(BASELINE_ATTACHMENT, DeltaCodec.list(ByteBufCodecs.VAR_INT));
+
+        // a delta with nothing to apply it to
+        FriendlyByteBuf noBaseline = buffer();
+        noBaseline.writeByte(2);
+        BASELINE_ATTACHMENT.push(noBaseline, DeltaBaseline.create());
+        assertThrows(DecoderException.class, () -> codec.decode(noBaseline));
+
+        FriendlyByteBuf unknownHeader = buffer();
+        unknownHeader.writeByte(7);
+        DeltaBaseline<List<Integer>> baseline = DeltaBaseline.create();
+        baseline.setRead(List.of(1));
+        BASELINE_ATTACHMENT.push(unknownHeader, baseline);
+        assertThrows(DecoderException.class, () -> codec.decode(unknownHeader));
+
+        FriendlyByteBuf missing = buffer();
+        missing.writeByte(0);
+        assertThrows(DecoderException.class, () -> codec.decode(missing));
+    }
+
+    @Test
+    void backReferenceRoundTrip() {
+        StreamCodec<FriendlyByteBuf, List<String>> codec = CodextraStreams.backReferenceScope(
+            CodextraStreams.<FriendlyByteBuf, String>backReference(ByteBufCodecs.STRING_UTF8)
+                .apply(ByteBufCodecs.list()));
+        List<String> value = List.of("repeated", "other", "repeated", "repeated", "other");
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, value);
+
+        FriendlyByteBuf in = received(out);
+        List<String> decoded = codec.decode(in);
+        assertEquals(value, decoded);
+        assertSame(decoded.get(0), decoded.get(2));
+        assertSame(decoded.get(1), decoded.get(4));
+        assertEquals(0, in.readableBytes());
+
+        // outside a scope, values are written exactly like the wrapped codec
+        StreamCodec<FriendlyByteBuf, String> unscoped = CodextraStreams.backReference(ByteBufCodecs.STRING_UTF8);
+        FriendlyByteBuf plain = buffer();
+        unscoped.encode(plain, "repeated");
+        assertEquals("repeated", ByteBufCodecs.STRING_UTF8.decode(received(plain)));
+    }
+
+    @Test
+    void backReferenceMalformed() {
+        StreamCodec<FriendlyByteBuf, List<String>> codec = CodextraStreams.backReferenceScope(
+            CodextraStreams.<FriendlyByteBuf, String>backReference(ByteBufCodecs.STRING_UTF8)
+                .apply(ByteBufCodecs.list()));
+
+        FriendlyByteBuf unknown = buffer();
+        VarInt.write(unknown, 1);
+        VarInt.write(unknown, 3);
+        assertThrows(DecoderException.class, () -> codec.decode(unknown));
+    }
+
+    @Test
+    void fromCodecBinaryRoundTrip() {
+        StreamCodec<ByteBuf, Sample> codec = CodextraStreams.fromCodecBinary(Sample.CODEC);
+        Sample noted = new Sample("", 0, -1.0, false, List.of(), List.of(), List.of(), Map.of(), Optional.of("note"));
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, SAMPLE);
+        codec.encode(out, noted);
+
+        FriendlyByteBuf in = received(out);
+        assertEquals(SAMPLE, codec.decode(in));
+        assertEquals(noted, codec.decode(in));
+        assertEquals(0, in.readableBytes());
+
+        StreamCodec<ByteBuf, Retrieving> retrieving = CodextraStreams.fromCodecBinary(Retrieving.CODEC);
+        FriendlyByteBuf retrievingOut = buffer();
+        retrieving.encode(retrievingOut, new Retrieving("Testing!", "ignored"));
+        FriendlyByteBuf retrievingIn = received(retrievingOut);
+        TEST_ATTACHMENT.push(retrievingIn, "Hello World");
+        assertEquals(new Retrieving("Testing!", "Hello World"), retrieving.decode(retrievingIn));
+    }
+
+    @Test
+    void fromCodecBinaryMalformed() {
+        StreamCodec<ByteBuf, Sample> codec = CodextraStreams.fromCodecBinary(Sample.CODEC);
+
+        FriendlyByteBuf unknownType = buffer();
+        unknownType.writeByte(99);
+        assertThrows(DecoderException.class, () -> codec.decode(unknownType));
+
+        // a list claiming far more elements than there are bytes left
+        FriendlyByteBuf hugeList = buffer();
+        hugeList.writeByte(13);
+        VarInt.write(hugeList, Integer.MAX_VALUE);
+        assertThrows(DecoderException.class, () -> codec.decode(hugeList));
+
+        FriendlyByteBuf deep = buffer();
+        for (int i = 0; i < 600; i++) {
+            deep.writeByte(13);
+            VarInt.write(deep, 1);
+        }
+        deep.writeByte(0);
+        assertThrows(NbtAccounterException.class, () -> codec.decode(deep));
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, SAMPLE);
+        StreamCodec<ByteBuf, Sample> small =
+            CodextraStreams.fromCodecBinary(Sample.CODEC, () -> NbtAccounter.create(64));
+        assertThrows(NbtAccounterException.class, () -> small.decode(received(out)));
+
+        // valid binary values that don't match the codec
+        FriendlyByteBuf wrongShape = buffer();
+        wrongShape.writeByte(9);
+        VarInt.write(wrongShape, 1);
+        wrongShape.writeByte('a');
+        assertThrows(DecoderException.class, () -> codec.decode(wrongShape));
+
+        FriendlyByteBuf truncated = received(out);
+        truncated.writerIndex(truncated.writerIndex() - 1);
+        assertThrows(RuntimeException.class, () -> codec.decode(truncated));
+    }
+
+    @Test
+    void nbtViewRoundTrip() {
+        StreamCodec<ByteBuf, Sample> codec =
+            new NbtViewStreamCodec<>(ByteBufCodecs.fromCodec(Sample.CODEC), Sample.CODEC, QUOTA,
+                buf -> new NbtViewOps());
+        Sample noted = new Sample("", 0, -1.0, false, List.of(), List.of(), List.of(), Map.of(), Optional.of("note"));
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, SAMPLE);
+        codec.encode(out, noted);
+
+        FriendlyByteBuf in = received(out);
+        assertEquals(SAMPLE, codec.decode(in));
+        assertEquals(noted, codec.decode(in));
+        assertEquals(0, in.readableBytes());
+
+        // the view decodes exactly what vanilla decodes
+        assertEquals(SAMPLE, ByteBufCodecs.fromCodec(Sample.CODEC).decode(received(out)));
+    }
+
+    @Test
+    void nbtViewMalformed() {
+        StreamCodec<ByteBuf, Sample> codec =
+            new NbtViewStreamCodec<>(ByteBufCodecs.fromCodec(Sample.CODEC), Sample.CODEC, QUOTA,
+                buf -> new NbtViewOps());
+
+        FriendlyByteBuf end = buffer();
+        end.writeByte(0);
+        assertThrows(DecoderException.class, () -> codec.decode(end));
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, SAMPLE);
+
+        FriendlyByteBuf truncated = received(out);
+        truncated.writerIndex(truncated.writerIndex() - 1);
+        assertThrows(DecoderException.class, () -> codec.decode(truncated));
+
+        FriendlyByteBuf unknownType = buffer();
+        unknownType.writeByte(42);
+        assertThrows(DecoderException.class, () -> codec.decode(unknownType));
+
+        // a small quota stops the view the same way it stops vanilla decoding
+        Supplier<NbtAccounter> small = () -> NbtAccounter.create(256);
+        assertThrows(NbtAccounterException.class,
+            () -> new NbtViewStreamCodec<>(ByteBufCodecs.fromCodec(Sample.CODEC), Sample.CODEC, small,
+                buf -> new NbtViewOps()).decode(received(out)));
+        assertThrows(NbtAccounterException.class,
+            () -> ByteBufCodecs.fromCodec(Sample.CODEC, small).decode(received(out)));
+    }
+
+    // reports only "value" as its key, but also writes "extra" when there is one, like a flattened dispatch codec
+    private record Flattened(int value, Optional<String> extra) {
+        static final Codec<Flattened> CODEC = new MapCodec<Flattened>() {
+            @Override
+            public <T> Stream<T> keys(DynamicOps<T> ops) {
+                return Stream.of(ops.createString("value"));
+            }
+
+            @Override
+            public <T> DataResult<Flattened> decode(DynamicOps<T> ops, MapLike<T> input) {
+                T extra = input.get("extra");
+                return Codec.INT.parse(ops, input.get("value")).flatMap(value -> extra == null ?
+                    DataResult.success(new Flattened(value, Optional.empty())) :
+                    Codec.STRING.parse(ops, extra).map(str -> new Flattened(value, Optional.of(str))));
+            }
+
+            @Override
+            public <T> RecordBuilder<T> encode(Flattened input, DynamicOps<T> ops, RecordBuilder<T> prefix) {
+                prefix.add("value", ops.createInt(input.value()));
+                input.extra().ifPresent(extra -> prefix.add("extra", ops.createString(extra)));
+                return prefix;
+            }
+        }.codec();
+    }
+
+    @Test
+    void deriveFromCodecRoundTrip() {
+        StreamCodec<ByteBuf, Sample> codec = CodextraStreams.deriveFromCodec(Sample.CODEC);
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, SAMPLE);
+        // positional mode
+        assertEquals(0, out.getByte(0));
+
+        FriendlyByteBuf in = received(out);
+        assertEquals(SAMPLE, codec.decode(in));
+        assertEquals(0, in.readableBytes());
+
+        StreamCodec<ByteBuf, Retrieving> retrieving = CodextraStreams.deriveFromCodec(Retrieving.CODEC);
+        FriendlyByteBuf retrievingOut = buffer();
+        retrieving.encode(retrievingOut, new Retrieving("Testing!", "ignored"));
+        FriendlyByteBuf retrievingIn = received(retrievingOut);
+        TEST_ATTACHMENT.push(retrievingIn, "Hello World");
+        assertEquals(new Retrieving("Testing!", "Hello World"), retrieving.decode(retrievingIn));
+    }
+
+    @Test
+    void deriveFromCodecFallback() {
+        StreamCodec<ByteBuf, Flattened> codec = CodextraStreams.deriveFromCodec(Flattened.CODEC);
+        Flattened positional = new Flattened(3, Optional.empty());
+        Flattened fallback = new Flattened(4, Optional.of("extra"));
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, positional);
+        int fallbackStart = out.writerIndex();
+        codec.encode(out, fallback);
+        assertEquals(0, out.getByte(0));
+        assertEquals(1, out.getByte(fallbackStart));
+
+        FriendlyByteBuf in = received(out);
+        assertEquals(positional, codec.decode(in));
+        assertEquals(fallback, codec.decode(in));
+        assertEquals(0, in.readableBytes());
+    }
+
+    @Test
+    void deriveFromCodecMalformed() {
+        StreamCodec<ByteBuf, Sample> codec = CodextraStreams.deriveFromCodec(Sample.CODEC);
+
+        FriendlyByteBuf unknownMode = buffer();
+        unknownMode.writeByte(5);
+        assertThrows(DecoderException.class, () -> codec.decode(unknownMode));
+
+        // no fields present at all
+        FriendlyByteBuf missingFields = buffer();
+        missingFields.writeByte(0);
+        missingFields.writeBytes(new byte[2]);
+        assertThrows(DecoderException.class, () -> codec.decode(missingFields));
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, SAMPLE);
+        FriendlyByteBuf truncated = received(out);
+        truncated.writerIndex(truncated.writerIndex() - 1);
+        assertThrows(RuntimeException.class, () -> codec.decode(truncated));
+    }
+
+    private record Fused(int id, String name, long big, boolean flag, float ratio, String hello) {}
+
+    @Test
+    void fuseRoundTrip() {
+        StreamCodec<FriendlyByteBuf, Fused> codec = CodextraStreams.<FriendlyByteBuf, Fused>fuse(Fused.class)
+            .varInt()
+            .codec(ByteBufCodecs.STRING_UTF8)
+            .varLong()
+            .bool()
+            .floatValue()
+            .retrieve(TEST_ATTACHMENT)
+            .build();
+        Fused value = new Fused(-7, "Testing!", 1L << 40, true, 0.25f, "ignored");
+
+        FriendlyByteBuf out = buffer();
+        codec.encode(out, value);
+
+        FriendlyByteBuf in = received(out);
+        TEST_ATTACHMENT.push(in, "Hello World");
+        assertEquals(new Fused(-7, "Testing!", 1L << 40, true, 0.25f, "Hello World"), codec.decode(in));
+        assertEquals(0, in.readableBytes());
+
+        assertThrows(DecoderException.class, () -> codec.decode(received(out)));
+
+        FriendlyByteBuf truncated = received(out);
+        truncated.writerIndex(truncated.writerIndex() - 1);
+        TEST_ATTACHMENT.push(truncated, "Hello World");
+        assertThrows(IndexOutOfBoundsException.class, () -> codec.decode(truncated));
+    }
+
+    @Test
+    void fuseRejectsMismatchedComponents() {
+        assertThrows(IllegalArgumentException.class,
+            () -> CodextraStreams.<FriendlyByteBuf, Fused>fuse(Fused.class).varInt().build());
+    }
+}